@@ -113,5 +113,10 @@ public class ReservedFields {
      */
     public static final String COUNT_BACK_REF_FIELD_PREFIX = "count_";
 
+    /**
+     * This is the field of a counter maintained count's single view value which holds the number of back references
+     */
+    public static final String BACK_REF_COUNT = "backRefCount";
+
     public static int EVENT_FIELD_COUNT = 8;
 }
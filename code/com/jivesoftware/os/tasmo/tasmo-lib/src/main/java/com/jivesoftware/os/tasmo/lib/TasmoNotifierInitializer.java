@@ -23,6 +23,9 @@ import com.jivesoftware.os.tasmo.lib.process.WrittenInstanceHelper;
 import com.jivesoftware.os.tasmo.lib.process.bookkeeping.BookkeepingEvent;
 import com.jivesoftware.os.tasmo.lib.process.bookkeeping.EventBookKeeper;
 import com.jivesoftware.os.tasmo.lib.process.notification.ViewChangeNotificationProcessor;
+import com.jivesoftware.os.tasmo.lib.process.traversal.ParallelPathTraversalExecutor;
+import com.jivesoftware.os.tasmo.lib.process.traversal.PathTraversalExecutor;
+import com.jivesoftware.os.tasmo.lib.process.traversal.SerialPathTraversalExecutor;
 import com.jivesoftware.os.tasmo.lib.process.traversal.TasmoEventTraversal;
 import com.jivesoftware.os.tasmo.lib.process.traversal.TasmoEventTraverser;
 import com.jivesoftware.os.tasmo.lib.read.EventValueStoreFieldValueReader;
@@ -35,14 +38,15 @@ import com.jivesoftware.os.tasmo.reference.lib.ReferenceStore;
 import com.jivesoftware.os.tasmo.reference.lib.concur.ConcurrencyStore;
 import com.jivesoftware.os.tasmo.reference.lib.concur.HBaseBackedConcurrencyStore;
 import com.jivesoftware.os.tasmo.reference.lib.traverser.ReferenceTraverser;
-import com.jivesoftware.os.tasmo.reference.lib.traverser.SerialReferenceTraverser;
 import com.jivesoftware.os.tasmo.view.notification.api.ViewNotification;
 import com.jivesoftware.os.tasmo.view.notification.api.ViewNotificationListener;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import org.merlin.config.Config;
+import org.merlin.config.defaults.BooleanDefault;
 import org.merlin.config.defaults.IntDefault;
+import org.merlin.config.defaults.LongDefault;
 
 /**
  *
@@ -58,6 +62,56 @@ public class TasmoNotifierInitializer {
         public Integer getNumberOfEventProcessorThreads();
 
         public void setNumberOfEventProcessorThreads(int numberOfThreads);
+
+        @IntDefault (0)
+        public Integer getNumberOfPathTraversalThreads();
+
+        public void setNumberOfPathTraversalThreads(int numberOfThreads);
+
+        @IntDefault (1_000)
+        public Integer getReferenceStorePageSize();
+
+        public void setReferenceStorePageSize(int pageSize);
+
+        @BooleanDefault (false)
+        public Boolean getCountBackRefs();
+
+        public void setCountBackRefs(boolean countBackRefs);
+
+        @BooleanDefault (false)
+        public Boolean getSoleLinkWriter();
+
+        public void setSoleLinkWriter(boolean soleLinkWriter);
+
+        @IntDefault (0)
+        public Integer getLatestBackRefIndexSize();
+
+        public void setLatestBackRefIndexSize(int latestBackRefIndexSize);
+
+        @IntDefault (0)
+        public Integer getReferenceTraversalBatchSize();
+
+        public void setReferenceTraversalBatchSize(int batchSize);
+
+        @LongDefault (1)
+        public Long getReferenceTraversalLingerMillis();
+
+        public void setReferenceTraversalLingerMillis(long lingerMillis);
+
+        @IntDefault (1)
+        public Integer getNumberOfReferenceTraversalDispatchers();
+
+        public void setNumberOfReferenceTraversalDispatchers(int numberOfDispatchers);
+
+        @IntDefault (8)
+        public Integer getNumberOfReferenceTraverserThreads();
+
+        public void setNumberOfReferenceTraverserThreads(int numberOfThreads);
+
+        @IntDefault (0)
+        public Integer getEventMemoizationCapacity();
+
+        public void setEventMemoizationCapacity(int capacity);
     }
 
     public static TasmoServiceHandle<TasmoEventIngress> initialize(
@@ -72,10 +126,19 @@ public class TasmoNotifierInitializer {
         final Optional<TasmoNotificationsIngress> tasmoNotificationsIngress,
         TasmoNotifierConfig config) throws Exception {
 
+        if (config.getCountBackRefs() && !config.getSoleLinkWriter()) {
+            throw new IllegalArgumentException("countBackRefs requires soleLinkWriter since back ref counts are only adjusted under a"
+                + " lock of this process.");
+        }
+
         ConcurrencyStore concurrencyStore = new HBaseBackedConcurrencyStore(tasmoStorageProvider.concurrencyStorage());
         EventValueStore eventValueStore = new EventValueStore(concurrencyStore, tasmoStorageProvider.eventStorage());
-        ReferenceStore referenceStore = new ReferenceStore(concurrencyStore, tasmoStorageProvider.multiLinksStorage(),
-            tasmoStorageProvider.multiBackLinksStorage());
+        ReferenceStore referenceStore = ReferenceStore.builder(concurrencyStore, tasmoStorageProvider.multiLinksStorage(),
+            tasmoStorageProvider.multiBackLinksStorage())
+            .pageSize(config.getReferenceStorePageSize())
+            .latestBackRefIndexSize(config.getLatestBackRefIndexSize())
+            .countBackRefs(config.getCountBackRefs())
+            .build();
 
         WrittenEventProcessorDecorator bookKeepingEventProcessor = new WrittenEventProcessorDecorator() {
             @Override
@@ -90,7 +153,13 @@ public class TasmoNotifierInitializer {
             }
         };
 
-        ReferenceTraverser referenceTraverser = new SerialReferenceTraverser(referenceStore);
+        final TasmoServiceHandle<ReferenceTraverser> referenceTraverser = TasmoReferenceTraverserInitializer.initialize(referenceStore,
+            tasmoProcessingStats,
+            "notification",
+            config.getReferenceTraversalBatchSize(),
+            config.getReferenceTraversalLingerMillis(),
+            config.getNumberOfReferenceTraversalDispatchers(),
+            config.getNumberOfReferenceTraverserThreads());
 
         TasmoEventTraversal eventTraverser = new TasmoEventTraverser(bookKeepingEventProcessor,
             new OrderIdProviderImpl(new ConstantWriterIdProvider(1)));
@@ -130,6 +199,24 @@ public class TasmoNotifierInitializer {
             }
         };
 
+        PathTraversalExecutor pathTraversalExecutor = new SerialPathTraversalExecutor();
+        ListeningExecutorService pathTraversalThreads = null;
+        if (config.getNumberOfPathTraversalThreads() > 0) {
+            ThreadFactory pathTraversalThreadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("notification-path-traversal-%d")
+                .setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                    @Override
+                    public void uncaughtException(Thread t, Throwable e) {
+                        LOG.error("Thread " + t.getName() + " threw uncaught exception", e);
+                    }
+                })
+                .build();
+            pathTraversalThreads = MoreExecutors.listeningDecorator(
+                Executors.newFixedThreadPool(config.getNumberOfPathTraversalThreads(), pathTraversalThreadFactory));
+            pathTraversalExecutor = new ParallelPathTraversalExecutor(pathTraversalThreads);
+        }
+        final Optional<ListeningExecutorService> optionalPathTraversalThreads = Optional.fromNullable(pathTraversalThreads);
+
         TasmoEventProcessor tasmoEventProcessor = new TasmoEventProcessor(tasmoViewModel,
             eventPersistor,
             writtenEventProvider,
@@ -139,9 +226,11 @@ public class TasmoNotifierInitializer {
             concurrencyStore,
             referenceStore,
             fieldValueReader,
-            referenceTraverser,
+            referenceTraverser.getService(),
             commitChange,
-            tasmoProcessingStats);
+            pathTraversalExecutor,
+            tasmoProcessingStats,
+            config.getEventMemoizationCapacity());
 
         ThreadFactory eventProcessorThreadFactory = new ThreadFactoryBuilder()
             .setNameFormat("event-notofication-processor-%d")
@@ -179,11 +268,16 @@ public class TasmoNotifierInitializer {
 
             @Override
             public void start() throws Exception {
+                referenceTraverser.start();
             }
 
             @Override
             public void stop() throws Exception {
                 listeningExecutorService.shutdownNow();
+                referenceTraverser.stop();
+                if (optionalPathTraversalThreads.isPresent()) {
+                    optionalPathTraversalThreads.get().shutdownNow();
+                }
             }
         };
     }
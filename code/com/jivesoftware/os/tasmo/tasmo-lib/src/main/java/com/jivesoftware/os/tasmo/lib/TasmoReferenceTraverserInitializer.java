@@ -0,0 +1,125 @@
+package com.jivesoftware.os.tasmo.lib;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jivesoftware.os.jive.utils.logger.MetricLogger;
+import com.jivesoftware.os.jive.utils.logger.MetricLoggerFactory;
+import com.jivesoftware.os.tasmo.lib.process.TasmoProcessingStats;
+import com.jivesoftware.os.tasmo.reference.lib.ReferenceStore;
+import com.jivesoftware.os.tasmo.reference.lib.traverser.BatchingReferenceTraverser;
+import com.jivesoftware.os.tasmo.reference.lib.traverser.BatchingReferenceTraverserStats;
+import com.jivesoftware.os.tasmo.reference.lib.traverser.ReferenceTraverser;
+import com.jivesoftware.os.tasmo.reference.lib.traverser.SerialReferenceTraverser;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Builds the ReferenceTraverser used by the write and notification materializers. A batch size of zero or less yields a
+ * SerialReferenceTraverser, otherwise a BatchingReferenceTraverser whose dispatcher and traverser threads are started and stopped by the
+ * returned handle.
+ */
+public class TasmoReferenceTraverserInitializer {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+    private static final String STATS_CATEGORY = "BATCHED REF TRAVERSAL";
+
+    public static TasmoServiceHandle<ReferenceTraverser> initialize(ReferenceStore referenceStore,
+        final TasmoProcessingStats processingStats,
+        String threadNamePrefix,
+        int batchSize,
+        long lingerMillis,
+        final int numberOfDispatchers,
+        int numberOfTraverserThreads) {
+
+        if (batchSize <= 0) {
+            final ReferenceTraverser referenceTraverser = new SerialReferenceTraverser(referenceStore);
+            return new TasmoServiceHandle<ReferenceTraverser>() {
+
+                @Override
+                public ReferenceTraverser getService() {
+                    return referenceTraverser;
+                }
+
+                @Override
+                public void start() throws Exception {
+                }
+
+                @Override
+                public void stop() throws Exception {
+                }
+            };
+        }
+
+        final ExecutorService traverserThreads = Executors.newFixedThreadPool(numberOfTraverserThreads,
+            threadFactory(threadNamePrefix + "-ref-traverser-%d"));
+        final ExecutorService dispatcherThreads = Executors.newFixedThreadPool(numberOfDispatchers,
+            threadFactory(threadNamePrefix + "-ref-traversal-dispatcher-%d"));
+
+        final BatchingReferenceTraverser referenceTraverser = new BatchingReferenceTraverser(referenceStore,
+            MoreExecutors.listeningDecorator(traverserThreads),
+            batchSize,
+            lingerMillis,
+            batchSize * numberOfTraverserThreads * 10,
+            new BatchingReferenceTraverserStats() {
+
+                @Override
+                public void dispatched(int size, int queueDepth, long lingeredMillis) {
+                    processingStats.latency(STATS_CATEGORY, "batchSize", size);
+                    processingStats.latency(STATS_CATEGORY, "queueDepth", queueDepth);
+                    processingStats.latency(STATS_CATEGORY, "linger", lingeredMillis);
+                }
+
+                @Override
+                public void streamed(int size, long elapsedMillis) {
+                    processingStats.latency(STATS_CATEGORY, "multiStreamRefs", elapsedMillis);
+                }
+            });
+
+        return new TasmoServiceHandle<ReferenceTraverser>() {
+
+            @Override
+            public ReferenceTraverser getService() {
+                return referenceTraverser;
+            }
+
+            @Override
+            public void start() throws Exception {
+                for (int i = 0; i < numberOfDispatchers; i++) {
+                    dispatcherThreads.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                referenceTraverser.startProcessingRequests();
+                            } catch (InterruptedException x) {
+                                LOG.info("Reference traversal dispatcher was interrupted.");
+                                Thread.currentThread().interrupt();
+                            } catch (Exception x) {
+                                LOG.error("Reference traversal dispatcher failed.", x);
+                            }
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public void stop() throws Exception {
+                referenceTraverser.stopProcessingRequests();
+                dispatcherThreads.shutdownNow();
+                traverserThreads.shutdownNow();
+            }
+        };
+    }
+
+    private static ThreadFactory threadFactory(String nameFormat) {
+        return new ThreadFactoryBuilder()
+            .setNameFormat(nameFormat)
+            .setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                @Override
+                public void uncaughtException(Thread t, Throwable e) {
+                    LOG.error("Thread " + t.getName() + " threw uncaught exception", e);
+                }
+            })
+            .build();
+    }
+}
@@ -4,16 +4,26 @@ import com.google.common.base.Optional;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jivesoftware.os.jive.utils.base.interfaces.CallbackStream;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
 import com.jivesoftware.os.jive.utils.logger.MetricLogger;
 import com.jivesoftware.os.jive.utils.logger.MetricLoggerFactory;
 import com.jivesoftware.os.jive.utils.ordered.id.ConstantWriterIdProvider;
 import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProvider;
 import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProviderImpl;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.RowColumnValueStore;
+import com.jivesoftware.os.jive.utils.row.column.value.store.marshall.api.TypeMarshaller;
 import com.jivesoftware.os.tasmo.lib.concur.ConcurrencyAndExistenceCommitChange;
+import com.jivesoftware.os.tasmo.lib.events.EventValueCache;
 import com.jivesoftware.os.tasmo.lib.events.EventValueStore;
+import com.jivesoftware.os.tasmo.lib.ingress.CoalescingWrittenEventMaterializer;
 import com.jivesoftware.os.tasmo.lib.ingress.TasmoEventIngress;
+import com.jivesoftware.os.tasmo.lib.ingress.TasmoPipelinedWriteMaterializer;
 import com.jivesoftware.os.tasmo.lib.ingress.TasmoWriteMaterializer;
+import com.jivesoftware.os.tasmo.lib.ingress.WrittenEventMaterializer;
 import com.jivesoftware.os.tasmo.lib.model.TasmoViewModel;
+import com.jivesoftware.os.tasmo.lib.process.InstanceEventScope;
 import com.jivesoftware.os.tasmo.lib.process.TasmoEventProcessor;
 import com.jivesoftware.os.tasmo.lib.process.TasmoProcessingStats;
 import com.jivesoftware.os.tasmo.lib.process.WrittenEventProcessor;
@@ -21,27 +31,42 @@ import com.jivesoftware.os.tasmo.lib.process.WrittenEventProcessorDecorator;
 import com.jivesoftware.os.tasmo.lib.process.WrittenInstanceHelper;
 import com.jivesoftware.os.tasmo.lib.process.bookkeeping.BookkeepingEvent;
 import com.jivesoftware.os.tasmo.lib.process.bookkeeping.EventBookKeeper;
+import com.jivesoftware.os.tasmo.lib.process.bookkeeping.TasmoEventsProcessedNotifier;
 import com.jivesoftware.os.tasmo.lib.process.notification.ViewChangeNotificationProcessor;
+import com.jivesoftware.os.tasmo.lib.process.traversal.ParallelPathTraversalExecutor;
+import com.jivesoftware.os.tasmo.lib.process.traversal.PathTraversalExecutor;
+import com.jivesoftware.os.tasmo.lib.process.traversal.SerialPathTraversalExecutor;
 import com.jivesoftware.os.tasmo.lib.process.traversal.TasmoEventTraversal;
 import com.jivesoftware.os.tasmo.lib.process.traversal.TasmoEventTraverser;
+import com.jivesoftware.os.tasmo.lib.read.BatchingFieldValueReader;
 import com.jivesoftware.os.tasmo.lib.read.EventValueStoreFieldValueReader;
+import com.jivesoftware.os.tasmo.lib.read.FieldValueReader;
 import com.jivesoftware.os.tasmo.lib.read.StatCollectingFieldValueReader;
 import com.jivesoftware.os.tasmo.lib.write.CommitChange;
+import com.jivesoftware.os.tasmo.lib.write.ViewValueChangeDetector;
 import com.jivesoftware.os.tasmo.lib.write.WriteFanoutEventPersistor;
+import com.jivesoftware.os.tasmo.model.process.OpaqueFieldValue;
 import com.jivesoftware.os.tasmo.model.process.WrittenEventProvider;
+import com.jivesoftware.os.tasmo.reference.lib.BackRefFilter;
+import com.jivesoftware.os.tasmo.reference.lib.ClassAndField_IdKey;
+import com.jivesoftware.os.tasmo.reference.lib.LinkRowCache;
 import com.jivesoftware.os.tasmo.reference.lib.ReferenceStore;
+import com.jivesoftware.os.tasmo.reference.lib.concur.CachingConcurrencyStore;
 import com.jivesoftware.os.tasmo.reference.lib.concur.ConcurrencyStore;
 import com.jivesoftware.os.tasmo.reference.lib.concur.HBaseBackedConcurrencyStore;
 import com.jivesoftware.os.tasmo.reference.lib.traverser.ReferenceTraverser;
-import com.jivesoftware.os.tasmo.reference.lib.traverser.SerialReferenceTraverser;
 import com.jivesoftware.os.tasmo.view.notification.api.ViewNotificationListener;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import org.merlin.config.Config;
+import org.merlin.config.defaults.BooleanDefault;
 import org.merlin.config.defaults.IntDefault;
+import org.merlin.config.defaults.LongDefault;
 
 /**
  *
@@ -60,9 +85,219 @@ public class TasmoServiceInitializer {
         @IntDefault(1)
         public Integer getNumberOfEventProcessorThreads();
         public void setNumberOfEventProcessorThreads(int numberOfThreads);
+
+        /**
+         * Number of threads used to run the path traversals of a single event in parallel. Zero or less runs them serially on the
+         * event processor thread.
+         */
+        @IntDefault(0)
+        public Integer getNumberOfPathTraversalThreads();
+        public void setNumberOfPathTraversalThreads(int numberOfThreads);
+
+        /**
+         * When greater than zero events are processed by a continuous pipeline with one stripe per event processor thread, each
+         * stripe queueing up to this many events. Zero keeps batch at a time processing.
+         */
+        @IntDefault(0)
+        public Integer getPipelinedIngressQueueCapacity();
+        public void setPipelinedIngressQueueCapacity(int queueCapacity);
+
+        /**
+         * How many times the pipeline processes an event before it gives up and reports the event to bookkeeping as failed.
+         */
+        @IntDefault(10)
+        public Integer getPipelinedMaxAttempts();
+        public void setPipelinedMaxAttempts(int pipelinedMaxAttempts);
+
+        /**
+         * The pipeline doubles the pause before retrying failed events up to this many millis.
+         */
+        @LongDefault(10_000)
+        public Long getPipelinedMaxRetryPauseMillis();
+        public void setPipelinedMaxRetryPauseMillis(long pipelinedMaxRetryPauseMillis);
+
+        /**
+         * Skip the consecutive non-deletion events for the same instance within a batch whose every field is rewritten by a later
+         * event id of the batch.
+         */
+        @BooleanDefault(false)
+        public Boolean getCoalesceInstanceEvents();
+        public void setCoalesceInstanceEvents(boolean coalesceInstanceEvents);
+
+        /**
+         * Maximum number of links read per scan of a link row when streaming or removing references.
+         */
+        @IntDefault(1_000)
+        public Integer getReferenceStorePageSize();
+        public void setReferenceStorePageSize(int pageSize);
+
+        /**
+         * Maintain the number of back refs of every linked instance as links are added and removed so counter maintained count
+         * steps read a single column. Must be enabled before any view model uses counter maintained counts. Counts are adjusted
+         * read then write under a lock of this process so this may only be enabled along with soleLinkWriter.
+         */
+        @BooleanDefault(false)
+        public Boolean getCountBackRefs();
+        public void setCountBackRefs(boolean countBackRefs);
+
+        /**
+         * Declares that this is the only process which writes to the link stores, which back ref counting, the link cache and
+         * the back ref filters require.
+         */
+        @BooleanDefault(false)
+        public Boolean getSoleLinkWriter();
+        public void setSoleLinkWriter(boolean soleLinkWriter);
+
+        /**
+         * Declares that this is the only process which writes to the event value store, which the event value cache requires.
+         */
+        @BooleanDefault(false)
+        public Boolean getSoleEventValueWriter();
+        public void setSoleEventValueWriter(boolean soleEventValueWriter);
+
+        /**
+         * How many of the most recent back refs of every linked instance are indexed so latest_backRef steps don't scan every back
+         * ref. Every link and unlink pays for the index whether or not a view model has such a step. Zero disables.
+         */
+        @IntDefault(0)
+        public Integer getLatestBackRefIndexSize();
+        public void setLatestBackRefIndexSize(int latestBackRefIndexSize);
+
+        /**
+         * When greater than zero field value reads from every event processor thread are queued and read together, up to this many
+         * per batch, with each instance read once for all the fields its reads asked for. Zero reads each instance as it is requested.
+         */
+        @IntDefault(0)
+        public Integer getFieldValueReadBatchSize();
+        public void setFieldValueReadBatchSize(int batchSize);
+
+        /**
+         * How long the first queued field value read waits for others to join its batch.
+         */
+        @LongDefault(2)
+        public Long getFieldValueReadLingerMillis();
+        public void setFieldValueReadLingerMillis(long lingerMillis);
+
+        /**
+         * How long a batched field value read waits to be queued and answered before it fails.
+         */
+        @LongDefault(30_000)
+        public Long getFieldValueReadTimeoutMillis();
+        public void setFieldValueReadTimeoutMillis(long fieldValueReadTimeoutMillis);
+
+        /**
+         * When greater than zero ref traversals from every event processor thread are queued and streamed together, up to this many
+         * per multi row read. Zero streams each traversal serially on the thread which asked for it.
+         */
+        @IntDefault(0)
+        public Integer getReferenceTraversalBatchSize();
+        public void setReferenceTraversalBatchSize(int batchSize);
+
+        /**
+         * How long the first queued ref traversal waits for others to join its batch.
+         */
+        @LongDefault(1)
+        public Long getReferenceTraversalLingerMillis();
+        public void setReferenceTraversalLingerMillis(long lingerMillis);
+
+        @IntDefault(1)
+        public Integer getNumberOfReferenceTraversalDispatchers();
+        public void setNumberOfReferenceTraversalDispatchers(int numberOfDispatchers);
+
+        @IntDefault(8)
+        public Integer getNumberOfReferenceTraverserThreads();
+        public void setNumberOfReferenceTraverserThreads(int numberOfThreads);
+
+        /**
+         * How many ref streams and field values each event remembers while it is traversed so that paths walking the same edges
+         * only read them once. Zero disables memoization.
+         */
+        @IntDefault(0)
+        public Integer getEventMemoizationCapacity();
+        public void setEventMemoizationCapacity(int capacity);
+
+        /**
+         * Read the prior values of the value fields an event writes and skip the value traversals whose fields are all unchanged
+         * and were completely traversed when they were last written. Costs every event a read of its prior values, a read of the
+         * versions its fields were last traversed through and a write of the versions it traversed through.
+         */
+        @BooleanDefault(false)
+        public Boolean getSkipUnchangedValueTraversals();
+        public void setSkipUnchangedValueTraversals(boolean skipUnchangedValueTraversals);
+
+        /**
+         * Commit the view changes of an event's traversals in chunks of at most this many rather than all at once. Zero disables.
+         */
+        @IntDefault(0)
+        public Integer getViewChangeFlushAtChanges();
+        public void setViewChangeFlushAtChanges(int viewChangeFlushAtChanges);
+
+        /**
+         * Commit the view changes of an event's traversals in chunks whose values, ids and paths hold at most about this many bytes
+         * rather than all at once. Zero disables.
+         */
+        @LongDefault(0)
+        public Long getViewChangeFlushAtBytes();
+        public void setViewChangeFlushAtBytes(long viewChangeFlushAtBytes);
+
+        /**
+         * How many field versions and existences of the instance an event writes are remembered while the event is processed
+         * instead of being read from the concurrency store. Zero disables.
+         */
+        @IntDefault(0)
+        public Integer getConcurrencyCacheCapacity();
+        public void setConcurrencyCacheCapacity(int concurrencyCacheCapacity);
+
+        /**
+         * How many bytes of instances' field values are remembered across events instead of being read from the event value
+         * store. Remembered values are only updated by this process's writes so this may only be enabled along with
+         * soleEventValueWriter. Zero disables.
+         */
+        @LongDefault(0)
+        public Long getEventValueCacheBytes();
+        public void setEventValueCacheBytes(long eventValueCacheBytes);
+
+        /**
+         * How many bytes of direct memory are used to keep forward and back link rows between traversals instead of scanning them
+         * from the link stores. Cached rows are only invalidated by this process's writes so this may only be enabled along with
+         * soleLinkWriter. Zero disables.
+         */
+        @LongDefault(0)
+        public Long getLinkCacheBytes();
+        public void setLinkCacheBytes(long linkCacheBytes);
+
+        /**
+         * Link rows which encode to more than this many bytes are always scanned.
+         */
+        @IntDefault(65_536)
+        public Integer getLinkCacheMaxRowBytes();
+        public void setLinkCacheMaxRowBytes(int linkCacheMaxRowBytes);
+
+        /**
+         * How long a cached link row is used before it is read again.
+         */
+        @LongDefault(1_000)
+        public Long getLinkCacheExpireAfterWriteMillis();
+        public void setLinkCacheExpireAfterWriteMillis(long linkCacheExpireAfterWriteMillis);
+
+        /**
+         * How many back link rows per tenant the Bloom filters used to skip lookups of never linked back link rows start with
+         * room for. The filters are rebuilt from the back link store on startup and only skip once rebuilt. Requires
+         * soleLinkWriter since the filters can't see back links written by other processes. Zero disables.
+         */
+        @IntDefault(0)
+        public Integer getBackRefFilterInitialCapacity();
+        public void setBackRefFilterInitialCapacity(int backRefFilterInitialCapacity);
+
+        /**
+         * Look up the existence of the instances an event's views are built from once per event rather than once per commit.
+         */
+        @BooleanDefault(false)
+        public Boolean getResolveExistencePerEvent();
+        public void setResolveExistencePerEvent(boolean resolveExistencePerEvent);
     }
 
-    public static TasmoEventIngress initialize(
+    public static TasmoServiceHandle<TasmoEventIngress> initialize(
             OrderIdProvider threadTimestamp,
             TasmoViewModel tasmoViewModel,
             WrittenEventProvider writtenEventProvider,
@@ -74,12 +309,89 @@ public class TasmoServiceInitializer {
             final Optional<WrittenEventProcessorDecorator> writtenEventProcessorDecorator,
             TasmoBlacklist tasmoBlacklist,
             TasmoServiceConfig config) throws Exception {
+        return initialize(threadTimestamp, tasmoViewModel, writtenEventProvider, tasmoStorageProvider, commitChange,
+            viewChangeNotificationProcessor, allViewNotificationsListener, bookkeepingStream, writtenEventProcessorDecorator,
+            Optional.<ViewValueChangeDetector>absent(), tasmoBlacklist, config);
+    }
 
+    /**
+     * @param viewValueChangeDetector when present view fields which are already stored unchanged are neither committed nor notified.
+     */
+    public static TasmoServiceHandle<TasmoEventIngress> initialize(
+            OrderIdProvider threadTimestamp,
+            TasmoViewModel tasmoViewModel,
+            WrittenEventProvider writtenEventProvider,
+            TasmoStorageProvider tasmoStorageProvider,
+            CommitChange commitChange,
+            ViewChangeNotificationProcessor viewChangeNotificationProcessor,
+            ViewNotificationListener allViewNotificationsListener,
+            CallbackStream<List<BookkeepingEvent>> bookkeepingStream,
+            final Optional<WrittenEventProcessorDecorator> writtenEventProcessorDecorator,
+            Optional<ViewValueChangeDetector> viewValueChangeDetector,
+            TasmoBlacklist tasmoBlacklist,
+            TasmoServiceConfig config) throws Exception {
+
+        if (config.getCountBackRefs() && !config.getSoleLinkWriter()) {
+            throw new IllegalArgumentException("countBackRefs requires soleLinkWriter since back ref counts are only adjusted under a"
+                + " lock of this process.");
+        }
+        if (config.getBackRefFilterInitialCapacity() > 0 && !config.getSoleLinkWriter()) {
+            throw new IllegalArgumentException("backRefFilterInitialCapacity requires soleLinkWriter since back ref filters only see the"
+                + " links this process writes.");
+        }
+        if (config.getEventValueCacheBytes() > 0 && !config.getSoleEventValueWriter()) {
+            throw new IllegalArgumentException("eventValueCacheBytes requires soleEventValueWriter since remembered field values are only"
+                + " updated by the values this process writes.");
+        }
+        if (config.getLinkCacheBytes() > 0 && !config.getSoleLinkWriter()) {
+            throw new IllegalArgumentException("linkCacheBytes requires soleLinkWriter since cached link rows are only invalidated by"
+                + " the links this process writes.");
+        }
 
+        List<InstanceEventScope> instanceEventScopes = new ArrayList<>();
         ConcurrencyStore concurrencyStore = new HBaseBackedConcurrencyStore(tasmoStorageProvider.concurrencyStorage());
-        EventValueStore eventValueStore = new EventValueStore(concurrencyStore, tasmoStorageProvider.eventStorage());
-        ReferenceStore referenceStore = new ReferenceStore(concurrencyStore, tasmoStorageProvider.multiLinksStorage(),
-            tasmoStorageProvider.multiBackLinksStorage());
+        if (config.getConcurrencyCacheCapacity() > 0) {
+            final CachingConcurrencyStore cachingConcurrencyStore = new CachingConcurrencyStore(concurrencyStore,
+                config.getConcurrencyCacheCapacity());
+            instanceEventScopes.add(new InstanceEventScope() {
+                @Override
+                public void beginEvent(TenantId tenantId, ObjectId instanceId) {
+                    cachingConcurrencyStore.beginEvent(tenantId, instanceId);
+                }
+
+                @Override
+                public void endEvent(TenantId tenantId, ObjectId instanceId) {
+                    cachingConcurrencyStore.endEvent(tenantId, instanceId);
+                }
+            });
+            concurrencyStore = cachingConcurrencyStore;
+        }
+        final TasmoProcessingStats processingStats = new TasmoProcessingStats();
+        EventValueCache eventValueCache = null;
+        if (config.getEventValueCacheBytes() > 0) {
+            eventValueCache = new EventValueCache(config.getEventValueCacheBytes(),
+                (TypeMarshaller<OpaqueFieldValue>) writtenEventProvider.getLiteralFieldValueMarshaller(), processingStats);
+        }
+        EventValueStore eventValueStore = new EventValueStore(concurrencyStore, tasmoStorageProvider.eventStorage(), eventValueCache);
+        LinkRowCache linkRowCache = null;
+        if (config.getLinkCacheBytes() > 0) {
+            linkRowCache = new LinkRowCache(config.getLinkCacheBytes(), config.getLinkCacheMaxRowBytes(),
+                config.getLinkCacheExpireAfterWriteMillis());
+        }
+        BackRefFilter backRefFilter = null;
+        if (config.getBackRefFilterInitialCapacity() > 0) {
+            backRefFilter = new BackRefFilter(config.getBackRefFilterInitialCapacity(), BackRefFilter.DEFAULT_FALSE_POSITIVE_PROBABILITY);
+            startBackRefFilterRebuild(backRefFilter, tasmoStorageProvider.multiBackLinksStorage());
+        }
+        final BackRefFilter reportedBackRefFilter = backRefFilter;
+        ReferenceStore referenceStore = ReferenceStore.builder(concurrencyStore, tasmoStorageProvider.multiLinksStorage(),
+            tasmoStorageProvider.multiBackLinksStorage())
+            .pageSize(config.getReferenceStorePageSize())
+            .latestBackRefIndexSize(config.getLatestBackRefIndexSize())
+            .countBackRefs(config.getCountBackRefs())
+            .linkRowCache(linkRowCache)
+            .backRefFilter(backRefFilter)
+            .build();
 
         WrittenEventProcessorDecorator bookKeepingEventProcessor = new WrittenEventProcessorDecorator() {
             @Override
@@ -94,22 +406,51 @@ public class TasmoServiceInitializer {
             }
         };
 
-        ReferenceTraverser referenceTraverser = new SerialReferenceTraverser(referenceStore);
-
         TasmoEventTraversal eventTraverser = new TasmoEventTraverser(bookKeepingEventProcessor,
             new OrderIdProviderImpl(new ConstantWriterIdProvider(1)));
 
         WrittenInstanceHelper writtenInstanceHelper = new WrittenInstanceHelper();
 
         WriteFanoutEventPersistor eventPersistor = new WriteFanoutEventPersistor(writtenEventProvider,
-            writtenInstanceHelper, concurrencyStore, eventValueStore, referenceStore);
+            writtenInstanceHelper, concurrencyStore, eventValueStore, referenceStore, config.getSkipUnchangedValueTraversals());
 
-        final TasmoProcessingStats processingStats = new TasmoProcessingStats();
-        StatCollectingFieldValueReader fieldValueReader = new StatCollectingFieldValueReader(processingStats,
-            new EventValueStoreFieldValueReader(eventValueStore));
+        final TasmoServiceHandle<ReferenceTraverser> referenceTraverser = TasmoReferenceTraverserInitializer.initialize(referenceStore,
+            processingStats,
+            "write",
+            config.getReferenceTraversalBatchSize(),
+            config.getReferenceTraversalLingerMillis(),
+            config.getNumberOfReferenceTraversalDispatchers(),
+            config.getNumberOfReferenceTraverserThreads());
 
+        FieldValueReader storeFieldValueReader = new EventValueStoreFieldValueReader(eventValueStore);
+        TasmoServiceHandle<BatchingFieldValueReader> batchingFieldValueReader = null;
+        if (config.getFieldValueReadBatchSize() > 0) {
+            batchingFieldValueReader = initializeBatchingFieldValueReader(eventValueStore, processingStats, config);
+            storeFieldValueReader = batchingFieldValueReader.getService();
+        }
+        final Optional<TasmoServiceHandle<BatchingFieldValueReader>> optionalBatchingFieldValueReader = Optional.fromNullable(
+            batchingFieldValueReader);
+        StatCollectingFieldValueReader fieldValueReader = new StatCollectingFieldValueReader(processingStats, storeFieldValueReader);
 
-        commitChange = new ConcurrencyAndExistenceCommitChange(concurrencyStore, commitChange);
+
+        commitChange = new ConcurrencyAndExistenceCommitChange(concurrencyStore, commitChange, config.getResolveExistencePerEvent());
+
+        PathTraversalExecutor pathTraversalExecutor = new SerialPathTraversalExecutor();
+        ExecutorService pathTraversalThreads = null;
+        if (config.getNumberOfPathTraversalThreads() > 0) {
+            ThreadFactory pathTraversalThreadFactory = new ThreadFactoryBuilder()
+                    .setNameFormat("path-traversal-%d")
+                    .setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                        @Override
+                        public void uncaughtException(Thread t, Throwable e) {
+                            LOG.error("Thread " + t.getName() + " threw uncaught exception", e);
+                        }
+                    })
+                    .build();
+            pathTraversalThreads = Executors.newFixedThreadPool(config.getNumberOfPathTraversalThreads(), pathTraversalThreadFactory);
+            pathTraversalExecutor = new ParallelPathTraversalExecutor(MoreExecutors.listeningDecorator(pathTraversalThreads));
+        }
+        final Optional<ExecutorService> optionalPathTraversalThreads = Optional.fromNullable(pathTraversalThreads);
 
         TasmoEventProcessor tasmoEventProcessor = new TasmoEventProcessor(tasmoViewModel,
             eventPersistor,
@@ -120,9 +461,15 @@ public class TasmoServiceInitializer {
             concurrencyStore,
             referenceStore,
             fieldValueReader,
-            referenceTraverser,
+            referenceTraverser.getService(),
             commitChange,
-            processingStats);
+            pathTraversalExecutor,
+            processingStats,
+            config.getEventMemoizationCapacity(),
+            viewValueChangeDetector.orNull(),
+            config.getViewChangeFlushAtChanges(),
+            config.getViewChangeFlushAtBytes(),
+            instanceEventScopes);
 
 
         ThreadFactory eventProcessorThreadFactory = new ThreadFactoryBuilder()
@@ -135,24 +482,163 @@ public class TasmoServiceInitializer {
                 })
                 .build();
 
-        ExecutorService eventProcessorThreads = Executors.newFixedThreadPool(config.getNumberOfEventProcessorThreads(), eventProcessorThreadFactory);
-        TasmoWriteMaterializer materializer = new TasmoWriteMaterializer(bookkeepingStream,
+        final ExecutorService eventProcessorThreads = Executors.newFixedThreadPool(config.getNumberOfEventProcessorThreads(), eventProcessorThreadFactory);
+        WrittenEventMaterializer materializer;
+        TasmoPipelinedWriteMaterializer pipelinedMaterializer = null;
+        if (config.getPipelinedIngressQueueCapacity() > 0) {
+            pipelinedMaterializer = new TasmoPipelinedWriteMaterializer(
+                new TasmoEventsProcessedNotifier(bookkeepingStream),
+                tasmoEventProcessor,
+                tasmoBlacklist,
+                eventProcessorThreads,
+                config.getNumberOfEventProcessorThreads(),
+                config.getPipelinedIngressQueueCapacity(),
+                config.getPipelinedMaxAttempts(),
+                config.getPipelinedMaxRetryPauseMillis());
+            materializer = pipelinedMaterializer;
+        } else {
+            materializer = new TasmoWriteMaterializer(bookkeepingStream,
                 tasmoEventProcessor,
                 MoreExecutors.listeningDecorator(eventProcessorThreads), tasmoBlacklist);
+        }
+        if (config.getCoalesceInstanceEvents()) {
+            materializer = new CoalescingWrittenEventMaterializer(materializer, tasmoBlacklist);
+        }
 
-        TasmoEventIngress tasmoEventIngress = new TasmoEventIngress(materializer);
+        final TasmoEventIngress tasmoEventIngress = new TasmoEventIngress(materializer);
+        final Optional<TasmoPipelinedWriteMaterializer> optionalPipelinedMaterializer = Optional.fromNullable(pipelinedMaterializer);
 
-        Executors.newSingleThreadScheduledExecutor().scheduleWithFixedDelay(new Runnable() {
+        final ScheduledExecutorService statsThread = Executors.newSingleThreadScheduledExecutor();
+        statsThread.scheduleWithFixedDelay(new Runnable() {
             @Override
             public void run() {
                 try {
                     processingStats.logStats();
+                    if (reportedBackRefFilter != null && reportedBackRefFilter.isReady()) {
+                        LOG.info("Back ref filter skipped:{} falsePositiveRate:{}", new Object[]{
+                            reportedBackRefFilter.getSkipped(), reportedBackRefFilter.getFalsePositiveRate() });
+                    }
                 } catch (Exception x) {
                     LOG.error("Issue with logging stats. ", x);
                 }
             }
         }, 60, 60, TimeUnit.SECONDS);
 
-        return tasmoEventIngress;
+        return new TasmoServiceHandle<TasmoEventIngress>() {
+
+            @Override
+            public TasmoEventIngress getService() {
+                return tasmoEventIngress;
+            }
+
+            @Override
+            public void start() throws Exception {
+                referenceTraverser.start();
+                if (optionalBatchingFieldValueReader.isPresent()) {
+                    optionalBatchingFieldValueReader.get().start();
+                }
+                if (optionalPipelinedMaterializer.isPresent()) {
+                    optionalPipelinedMaterializer.get().start();
+                }
+            }
+
+            @Override
+            public void stop() throws Exception {
+                if (optionalPipelinedMaterializer.isPresent()) {
+                    optionalPipelinedMaterializer.get().stop();
+                }
+                eventProcessorThreads.shutdownNow();
+                if (optionalBatchingFieldValueReader.isPresent()) {
+                    optionalBatchingFieldValueReader.get().stop();
+                }
+                referenceTraverser.stop();
+                if (optionalPathTraversalThreads.isPresent()) {
+                    optionalPathTraversalThreads.get().shutdownNow();
+                }
+                statsThread.shutdownNow();
+            }
+        };
+    }
+
+    private static void startBackRefFilterRebuild(final BackRefFilter backRefFilter,
+        final RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiBackLinks) {
+
+        ThreadFactory backRefFilterThreadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("back-ref-filter-rebuild-%d")
+                .setDaemon(true)
+                .build();
+        ExecutorService backRefFilterThread = Executors.newSingleThreadExecutor(backRefFilterThreadFactory);
+        backRefFilterThread.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    backRefFilter.rebuild(multiBackLinks);
+                } catch (Exception x) {
+                    LOG.error("Failed to rebuild the back ref filter. Back ref lookups will not be counted.", x);
+                }
+            }
+        });
+        backRefFilterThread.shutdown();
+    }
+
+    private static TasmoServiceHandle<BatchingFieldValueReader> initializeBatchingFieldValueReader(EventValueStore eventValueStore,
+        TasmoProcessingStats processingStats,
+        TasmoServiceConfig config) {
+
+        ThreadFactory fieldValueReaderThreadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("field-value-reader-%d")
+                .setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                    @Override
+                    public void uncaughtException(Thread t, Throwable e) {
+                        LOG.error("Thread " + t.getName() + " threw uncaught exception", e);
+                    }
+                })
+                .build();
+        final ExecutorService fieldValueReaderThreads = Executors.newFixedThreadPool(config.getNumberOfEventProcessorThreads(),
+            fieldValueReaderThreadFactory);
+
+        int batchSize = config.getFieldValueReadBatchSize();
+        final BatchingFieldValueReader batchingFieldValueReader = new BatchingFieldValueReader(eventValueStore,
+            MoreExecutors.listeningDecorator(fieldValueReaderThreads),
+            processingStats,
+            batchSize,
+            config.getFieldValueReadLingerMillis(),
+            config.getFieldValueReadTimeoutMillis(),
+            batchSize * config.getNumberOfEventProcessorThreads() * 10);
+
+        final ExecutorService dispatcherThread = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("field-value-read-dispatcher-%d").build());
+
+        return new TasmoServiceHandle<BatchingFieldValueReader>() {
+
+            @Override
+            public BatchingFieldValueReader getService() {
+                return batchingFieldValueReader;
+            }
+
+            @Override
+            public void start() throws Exception {
+                dispatcherThread.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            batchingFieldValueReader.startProcessingRequests();
+                        } catch (InterruptedException x) {
+                            LOG.info("Field value read dispatcher was interrupted.");
+                            Thread.currentThread().interrupt();
+                        } catch (Exception x) {
+                            LOG.error("Field value read dispatcher failed.", x);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void stop() throws Exception {
+                batchingFieldValueReader.stopProcessingRequests();
+                dispatcherThread.shutdown();
+                fieldValueReaderThreads.shutdownNow();
+            }
+        };
     }
 }
@@ -10,6 +10,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import org.merlin.config.Config;
+import org.merlin.config.defaults.BooleanDefault;
 import org.merlin.config.defaults.IntDefault;
 import org.merlin.config.defaults.StringDefault;
 
@@ -31,6 +32,18 @@ public class TasmoViewModelInitializer {
         public Integer getPollForModelChangesEveryNSeconds();
         public void setPollForModelChangesEveryNSeconds(Integer seconds);
 
+        @BooleanDefault (false)
+        public Boolean getLevelAtATimeTraversal();
+        public void setLevelAtATimeTraversal(Boolean levelAtATimeTraversal);
+
+        @BooleanDefault (false)
+        public Boolean getCounterMaintainedCounts();
+        public void setCounterMaintainedCounts(Boolean counterMaintainedCounts);
+
+        @BooleanDefault (false)
+        public Boolean getCachedStepWalk();
+        public void setCachedStepWalk(Boolean cachedStepWalk);
+
     }
 
     public static TasmoServiceHandle<TasmoViewModel> initialize(
@@ -42,7 +55,10 @@ public class TasmoViewModelInitializer {
         final TasmoViewModel tasmoViewModel = new TasmoViewModel(
             masterTenantId,
             viewsProvider,
-            viewPathKeyProvider);
+            viewPathKeyProvider,
+            config.getLevelAtATimeTraversal(),
+            config.getCounterMaintainedCounts(),
+            config.getCachedStepWalk());
         tasmoViewModel.loadModel(masterTenantId); // Move to start method?
 
 
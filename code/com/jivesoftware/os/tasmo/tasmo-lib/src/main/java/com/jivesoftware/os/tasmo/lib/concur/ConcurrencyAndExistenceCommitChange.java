@@ -26,11 +26,22 @@ public class ConcurrencyAndExistenceCommitChange implements CommitChange {
 
     private final ConcurrencyStore concurrencyStore;
     private final CommitChange commitChange;
+    private final boolean resolveExistencePerEvent;
 
     public ConcurrencyAndExistenceCommitChange(ConcurrencyStore concurrencyStore,
             CommitChange commitChange) {
+        this(concurrencyStore, commitChange, false);
+    }
+
+    /**
+     * @param resolveExistencePerEvent when true an instance's existence is looked up once per event rather than once per commit.
+     */
+    public ConcurrencyAndExistenceCommitChange(ConcurrencyStore concurrencyStore,
+            CommitChange commitChange,
+            boolean resolveExistencePerEvent) {
         this.concurrencyStore = concurrencyStore;
         this.commitChange = commitChange;
+        this.resolveExistencePerEvent = resolveExistencePerEvent;
     }
 
     @Override
@@ -45,7 +56,9 @@ public class ConcurrencyAndExistenceCommitChange implements CommitChange {
             }
         }
 
-        Set<ObjectId> existence = concurrencyStore.getExistence(tenantIdAndCentricId, check);
+        Set<ObjectId> existence = resolveExistencePerEvent
+                ? batchContext.getResolvedExistence().getExistence(concurrencyStore, tenantIdAndCentricId, check)
+                : concurrencyStore.getExistence(tenantIdAndCentricId, check);
         List<ViewField> acceptableChanges = new ArrayList<>();
         for (ViewField c : changes) {
             Set<ObjectId> ids = new HashSet<>();
@@ -14,6 +14,8 @@ import java.util.Set;
  */
 public class ConcurrencyChecker {
 
+    private static final String TRAVERSED_PREFIX = "*traversed*";
+
     private final ConcurrencyStore concurrencyStore;
 
     public ConcurrencyChecker(ConcurrencyStore concurrencyStore) {
@@ -28,6 +30,31 @@ public class ConcurrencyChecker {
         return concurrencyStore.highests(tenantId, instanceId, refFieldNames);
     }
 
+    /**
+     * @return for each field the timestamp of the latest event whose value traversals, through an instance which carried the field,
+     * all committed. Null where none is known.
+     */
+    public List<Long> traversedVersions(TenantIdAndCentricId tenantId, ObjectId instanceId, String[] fieldNames) {
+        return concurrencyStore.highests(tenantId, instanceId, traversedFieldNames(fieldNames));
+    }
+
+    /**
+     * Records that the value traversals of the event at timestamp, which carried the given fields, all committed.
+     */
+    public void traversed(TenantIdAndCentricId tenantId, ObjectId instanceId, String[] fieldNames, long timestamp) {
+        if (fieldNames.length > 0) {
+            concurrencyStore.updated(tenantId, instanceId, traversedFieldNames(fieldNames), timestamp);
+        }
+    }
+
+    private String[] traversedFieldNames(String[] fieldNames) {
+        String[] traversedFieldNames = new String[fieldNames.length];
+        for (int i = 0; i < fieldNames.length; i++) {
+            traversedFieldNames[i] = TRAVERSED_PREFIX + fieldNames[i];
+        }
+        return traversedFieldNames;
+    }
+
     public void checkIfModifiedOutFromUnderneathMe(TenantIdAndCentricId tenantIdAndCentricId,
             Set<FieldVersion> want) throws PathConsistencyException {
         Set<FieldVersion> got = concurrencyStore.checkIfModified(tenantIdAndCentricId, want);
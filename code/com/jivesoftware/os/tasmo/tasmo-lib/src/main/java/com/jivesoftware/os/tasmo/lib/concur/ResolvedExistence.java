@@ -0,0 +1,60 @@
+package com.jivesoftware.os.tasmo.lib.concur;
+
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.tasmo.reference.lib.concur.ConcurrencyStore;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The existence of every instance one event's commits have checked, so the commits of the event only look up the instances no
+ * earlier commit of it has, with a single getExistence per commit and tenant.
+ *
+ * @author jonathan
+ */
+public class ResolvedExistence {
+
+    private final Map<TenantIdAndCentricId, Map<ObjectId, Boolean>> resolved = new HashMap<>();
+    private int saved;
+
+    public synchronized Set<ObjectId> getExistence(ConcurrencyStore concurrencyStore,
+            TenantIdAndCentricId tenantIdAndCentricId,
+            Set<ObjectId> objectIds) {
+
+        Map<ObjectId, Boolean> tenantResolved = resolved.get(tenantIdAndCentricId);
+        if (tenantResolved == null) {
+            tenantResolved = new HashMap<>();
+            resolved.put(tenantIdAndCentricId, tenantResolved);
+        }
+        Set<ObjectId> unresolved = new HashSet<>();
+        for (ObjectId objectId : objectIds) {
+            if (!tenantResolved.containsKey(objectId)) {
+                unresolved.add(objectId);
+            }
+        }
+        saved += objectIds.size() - unresolved.size();
+        if (!unresolved.isEmpty()) {
+            Set<ObjectId> existence = concurrencyStore.getExistence(tenantIdAndCentricId, unresolved);
+            for (ObjectId objectId : unresolved) {
+                tenantResolved.put(objectId, existence.contains(objectId));
+            }
+        }
+
+        Set<ObjectId> existence = new HashSet<>();
+        for (ObjectId objectId : objectIds) {
+            if (tenantResolved.get(objectId)) {
+                existence.add(objectId);
+            }
+        }
+        return existence;
+    }
+
+    /**
+     * @return how many existence lookups were answered by an earlier commit's.
+     */
+    public synchronized int getSaved() {
+        return saved;
+    }
+}
@@ -0,0 +1,244 @@
+package com.jivesoftware.os.tasmo.lib.events;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.ColumnValueAndTimestamp;
+import com.jivesoftware.os.jive.utils.row.column.value.store.marshall.api.TypeMarshaller;
+import com.jivesoftware.os.tasmo.lib.process.TasmoProcessingStats;
+import com.jivesoftware.os.tasmo.model.process.OpaqueFieldValue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the field values of instances across events, one row per (TenantIdAndCentricId, ObjectId), in at most a fixed number of
+ * bytes with the least recently used rows evicted first, so the rows a traversal reads again and again, such as the user behind
+ * author.* or the container behind parent.*, are read from the event value store once. Each remembered field holds either its stored
+ * value and timestamp or the fact that nothing is stored. EventValueStore tells the cache about every add and remove it writes: an
+ * add newer than the remembered value replaces it, a remove at or after the remembered value's timestamp leaves the field absent,
+ * and anything whose outcome depends on storage, such as an add no newer than what is remembered, is forgotten so the next read goes
+ * to storage.
+ *
+ * Only the writes of this process are seen, so the cache is only correct when this process is the only one which writes field values.
+ *
+ * Hits, misses and evictions are tallied under "EVENT VALUE CACHE".
+ *
+ * @author jonathan
+ */
+public class EventValueCache {
+
+    private static final String STATS = "EVENT VALUE CACHE";
+    private static final int ROW_OVERHEAD_IN_BYTES = 64;
+    private static final int FIELD_OVERHEAD_IN_BYTES = 48;
+
+    private final TypeMarshaller<OpaqueFieldValue> valueMarshaller;
+    private final TasmoProcessingStats processingStats;
+    private final Cache<List<Object>, Row> rows;
+
+    public EventValueCache(long maxBytes, TypeMarshaller<OpaqueFieldValue> valueMarshaller, final TasmoProcessingStats processingStats) {
+        this.valueMarshaller = valueMarshaller;
+        this.processingStats = processingStats;
+        this.rows = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher(new Weigher<List<Object>, Row>() {
+
+                    @Override
+                    public int weigh(List<Object> key, Row row) {
+                        return row.sizeInBytes();
+                    }
+                })
+                .removalListener(new RemovalListener<List<Object>, Row>() {
+
+                    @Override
+                    public void onRemoval(RemovalNotification<List<Object>, Row> notification) {
+                        if (notification.getCause() == RemovalCause.SIZE) {
+                            processingStats.tally(STATS, "evictions", 1);
+                        }
+                    }
+                })
+                .build();
+    }
+
+    private static List<Object> key(TenantIdAndCentricId tenantIdAndCentricId, ObjectId objectId) {
+        return Arrays.<Object>asList(tenantIdAndCentricId, objectId);
+    }
+
+    /**
+     * Answers what is remembered and reads the rest of the given fields from the store, remembering them unless the row was written
+     * while they were being read.
+     *
+     * @return the stored value of each field in the same order as fieldNames, with null where nothing is stored.
+     */
+    @SuppressWarnings("unchecked")
+    public ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] get(TenantIdAndCentricId tenantIdAndCentricId,
+            ObjectId objectId,
+            String[] fieldNames,
+            EventValueStore eventValueStore) {
+
+        List<Object> key = key(tenantIdAndCentricId, objectId);
+        Row row = rows.getIfPresent(key);
+        if (row == null) {
+            row = new Row();
+            Row had = rows.asMap().putIfAbsent(key, row);
+            if (had != null) {
+                row = had;
+            }
+        }
+
+        ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] got = new ColumnValueAndTimestamp[fieldNames.length];
+        List<Integer> unknown = new ArrayList<>();
+        long generation = row.get(fieldNames, got, unknown);
+        processingStats.tally(STATS, "hits", fieldNames.length - unknown.size());
+        processingStats.tally(STATS, "misses", unknown.size());
+        if (unknown.isEmpty()) {
+            return got;
+        }
+
+        String[] unknownFieldNames = new String[unknown.size()];
+        for (int i = 0; i < unknownFieldNames.length; i++) {
+            unknownFieldNames[i] = fieldNames[unknown.get(i)];
+        }
+        ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] read = eventValueStore.getFromStore(tenantIdAndCentricId, objectId,
+                unknownFieldNames);
+        for (int i = 0; i < unknownFieldNames.length; i++) {
+            got[unknown.get(i)] = (read == null) ? null : read[i];
+        }
+        if (row.remember(generation, unknownFieldNames, read)) {
+            reweigh(key, row);
+        }
+        return got;
+    }
+
+    void added(TenantIdAndCentricId tenantIdAndCentricId, ObjectId objectId, String[] fieldNames, OpaqueFieldValue[] values, long timestamp) {
+        List<Object> key = key(tenantIdAndCentricId, objectId);
+        Row row = rows.getIfPresent(key);
+        if (row != null) {
+            row.added(fieldNames, values, timestamp);
+            reweigh(key, row);
+        }
+    }
+
+    void removed(TenantIdAndCentricId tenantIdAndCentricId, ObjectId objectId, String[] fieldNames, long timestamp) {
+        List<Object> key = key(tenantIdAndCentricId, objectId);
+        Row row = rows.getIfPresent(key);
+        if (row != null) {
+            row.removed(fieldNames, timestamp);
+            reweigh(key, row);
+        }
+    }
+
+    /**
+     * Guava only weighs a row when it is put, so a row is put again after it changes.
+     */
+    private void reweigh(List<Object> key, Row row) {
+        rows.asMap().replace(key, row, row);
+    }
+
+    private int valueSizeInBytes(OpaqueFieldValue value) {
+        if (value == null || valueMarshaller == null) {
+            return 0;
+        }
+        try {
+            return valueMarshaller.toBytes(value).length;
+        } catch (Exception x) {
+            return 0;
+        }
+    }
+
+    private static class Field {
+
+        private final ColumnValueAndTimestamp<String, OpaqueFieldValue, Long> value; // null when nothing is stored
+        private final int sizeInBytes;
+
+        Field(ColumnValueAndTimestamp<String, OpaqueFieldValue, Long> value, int sizeInBytes) {
+            this.value = value;
+            this.sizeInBytes = sizeInBytes;
+        }
+    }
+
+    private class Row {
+
+        private final Map<String, Field> fields = new HashMap<>();
+        private long generation;
+        private int sizeInBytes = ROW_OVERHEAD_IN_BYTES;
+
+        synchronized int sizeInBytes() {
+            return sizeInBytes;
+        }
+
+        synchronized long get(String[] fieldNames, ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] got, List<Integer> unknown) {
+            for (int i = 0; i < fieldNames.length; i++) {
+                Field field = fields.get(fieldNames[i]);
+                if (field == null) {
+                    unknown.add(i);
+                } else {
+                    got[i] = field.value;
+                }
+            }
+            return generation;
+        }
+
+        /**
+         * @return false when nothing was remembered because the row was written after generation.
+         */
+        synchronized boolean remember(long generation,
+                String[] fieldNames,
+                ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] read) {
+            if (generation != this.generation) {
+                return false;
+            }
+            for (int i = 0; i < fieldNames.length; i++) {
+                put(fieldNames[i], (read == null) ? null : read[i]);
+            }
+            return true;
+        }
+
+        synchronized void added(String[] fieldNames, OpaqueFieldValue[] values, long timestamp) {
+            generation++;
+            for (int i = 0; i < fieldNames.length; i++) {
+                Field field = fields.get(fieldNames[i]);
+                if (field == null) {
+                    continue;
+                }
+                if (field.value != null && field.value.getTimestamp() < timestamp) {
+                    put(fieldNames[i], new ColumnValueAndTimestamp<>(fieldNames[i], values[i], timestamp));
+                } else if (field.value == null || field.value.getTimestamp() == timestamp) {
+                    forget(fieldNames[i]);
+                }
+            }
+        }
+
+        synchronized void removed(String[] fieldNames, long timestamp) {
+            generation++;
+            for (String fieldName : fieldNames) {
+                Field field = fields.get(fieldName);
+                if (field != null && field.value != null && field.value.getTimestamp() <= timestamp) {
+                    put(fieldName, null);
+                }
+            }
+        }
+
+        private void put(String fieldName, ColumnValueAndTimestamp<String, OpaqueFieldValue, Long> value) {
+            forget(fieldName);
+            int fieldSizeInBytes = FIELD_OVERHEAD_IN_BYTES + fieldName.length()
+                    + ((value == null) ? 0 : valueSizeInBytes(value.getValue()));
+            fields.put(fieldName, new Field(value, fieldSizeInBytes));
+            sizeInBytes += fieldSizeInBytes;
+        }
+
+        private void forget(String fieldName) {
+            Field field = fields.remove(fieldName);
+            if (field != null) {
+                sizeInBytes -= field.sizeInBytes;
+            }
+        }
+    }
+}
@@ -13,11 +13,18 @@ import com.jivesoftware.os.jive.utils.id.ObjectId;
 import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
 import com.jivesoftware.os.jive.utils.row.column.value.store.api.ColumnValueAndTimestamp;
 import com.jivesoftware.os.jive.utils.row.column.value.store.api.RowColumnValueStore;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.TenantRowColumValueTimestampAdd;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.TenantRowColumnTimestampRemove;
 import com.jivesoftware.os.jive.utils.row.column.value.store.api.timestamper.ConstantTimestamper;
 import com.jivesoftware.os.tasmo.model.process.OpaqueFieldValue;
 import com.jivesoftware.os.tasmo.reference.lib.concur.ConcurrencyStore;
+import com.jivesoftware.os.tasmo.reference.lib.concur.ConcurrencyUpdate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -26,15 +33,34 @@ public class EventValueStore {
 
     private final RowColumnValueStore<TenantIdAndCentricId, ObjectId, String, OpaqueFieldValue, RuntimeException> eventValueStore;
     private final ConcurrencyStore concurrencyStore;
+    private final EventValueCache eventValueCache;
 
     public EventValueStore(ConcurrencyStore concurrencyStore,
             RowColumnValueStore<TenantIdAndCentricId, ObjectId, String, OpaqueFieldValue, RuntimeException> classFieldValueStore) {
+        this(concurrencyStore, classFieldValueStore, null);
+    }
+
+    /**
+     * @param eventValueCache when not null get is answered from it where it can, and every commit and remove is written through to it.
+     */
+    public EventValueStore(ConcurrencyStore concurrencyStore,
+            RowColumnValueStore<TenantIdAndCentricId, ObjectId, String, OpaqueFieldValue, RuntimeException> classFieldValueStore,
+            EventValueCache eventValueCache) {
         this.concurrencyStore = concurrencyStore;
         this.eventValueStore = classFieldValueStore;
+        this.eventValueCache = eventValueCache;
     }
 
     public ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] get(
             TenantIdAndCentricId tenantIdAndCentricId, ObjectId objectId, String[] fieldNames) {
+        if (eventValueCache != null) {
+            return eventValueCache.get(tenantIdAndCentricId, objectId, fieldNames, this);
+        }
+        return getFromStore(tenantIdAndCentricId, objectId, fieldNames);
+    }
+
+    ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] getFromStore(
+            TenantIdAndCentricId tenantIdAndCentricId, ObjectId objectId, String[] fieldNames) {
         return eventValueStore.multiGetEntries(tenantIdAndCentricId, objectId, fieldNames, null, null);
     }
 
@@ -42,13 +68,42 @@ public class EventValueStore {
             long removeAtTimestamp,
             ObjectId objectId,
             String[] fieldNames) {
+        removeObjectId(Collections.singletonList(tenantIdAndCentricId), removeAtTimestamp, objectId, fieldNames);
+    }
+
+    /**
+     * Removes the same fields of an instance from several tenantIdAndCentricIds with one concurrency put either side of one multi
+     * row remove.
+     */
+    public void removeObjectId(List<TenantIdAndCentricId> tenantIdAndCentricIds,
+            long removeAtTimestamp,
+            ObjectId objectId,
+            String[] fieldNames) {
         String[] fields = Arrays.copyOf(fieldNames, fieldNames.length + 1);
         fields[fields.length - 1] = "deleted";
-        concurrencyStore.updated(tenantIdAndCentricId, objectId, fields, removeAtTimestamp - 1);
-        if (fieldNames.length > 0) {
-            eventValueStore.multiRemove(tenantIdAndCentricId, objectId, fieldNames, new ConstantTimestamper(removeAtTimestamp + 1));
+
+        List<ConcurrencyUpdate> before = new ArrayList<>(tenantIdAndCentricIds.size());
+        List<ConcurrencyUpdate> after = new ArrayList<>(tenantIdAndCentricIds.size());
+        List<TenantRowColumnTimestampRemove<TenantIdAndCentricId, ObjectId, String>> removes = new ArrayList<>();
+        ConstantTimestamper constantTimestamper = new ConstantTimestamper(removeAtTimestamp + 1);
+        for (TenantIdAndCentricId tenantIdAndCentricId : tenantIdAndCentricIds) {
+            before.add(new ConcurrencyUpdate(tenantIdAndCentricId, objectId, fields, removeAtTimestamp - 1));
+            after.add(new ConcurrencyUpdate(tenantIdAndCentricId, objectId, fields, removeAtTimestamp));
+            for (String fieldName : fieldNames) {
+                removes.add(new TenantRowColumnTimestampRemove<>(tenantIdAndCentricId, objectId, fieldName, constantTimestamper));
+            }
+        }
+
+        concurrencyStore.updated(before);
+        if (!removes.isEmpty()) {
+            eventValueStore.multiRowsMultiRemove(removes);
+            if (eventValueCache != null) {
+                for (TenantIdAndCentricId tenantIdAndCentricId : tenantIdAndCentricIds) {
+                    eventValueCache.removed(tenantIdAndCentricId, objectId, fieldNames, removeAtTimestamp + 1);
+                }
+            }
         }
-        concurrencyStore.updated(tenantIdAndCentricId, objectId, fields, removeAtTimestamp);
+        concurrencyStore.updated(after);
     }
 
     public Transaction begin(TenantIdAndCentricId tenantIdAndCentricId,
@@ -59,43 +114,158 @@ public class EventValueStore {
     }
 
     public void commit(Transaction transaction) {
+        commit(Collections.singletonList(transaction));
+    }
 
-        ObjectId objectInstanceId = transaction.objectInstanceId;
-        if (!transaction.addedFieldNames.isEmpty()) {
-            String[] takeAddedFieldNames = transaction.takeAddedFieldNames();
-            OpaqueFieldValue[] takeAddedValues = transaction.takeAddedValues();
+    /**
+     * Commits several transactions with at most four multi row calls: the concurrency updates for every transaction at t-1, the adds,
+     * the removes, and the concurrency updates at t.
+     */
+    public void commit(List<Transaction> transactions) {
 
-            String[] fields = Arrays.copyOf(takeAddedFieldNames, takeAddedFieldNames.length + 1);
-            fields[fields.length - 1] = "deleted";
+        List<ConcurrencyUpdate> before = new ArrayList<>();
+        List<ConcurrencyUpdate> after = new ArrayList<>();
+        List<TenantRowColumValueTimestampAdd<TenantIdAndCentricId, ObjectId, String, OpaqueFieldValue>> adds = new ArrayList<>();
+        List<TenantRowColumnTimestampRemove<TenantIdAndCentricId, ObjectId, String>> removes = new ArrayList<>();
+        List<Runnable> writeThrough = new ArrayList<>();
 
-            concurrencyStore.updated(transaction.tenantIdAndCentricId, objectInstanceId, fields, transaction.addAtTimestamp - 1);
+        for (Transaction transaction : transactions) {
+            ObjectId objectInstanceId = transaction.objectInstanceId;
+            boolean hasAdds = !transaction.addedFieldNames.isEmpty();
+            boolean hasRemoves = !transaction.removedFieldNames.isEmpty();
+            // "deleted" is only marked once per transaction, with the later of the two timestamps
+            boolean markDeletedWithAdds = hasAdds && (!hasRemoves || transaction.addAtTimestamp >= transaction.removeAtTimestamp);
 
-            eventValueStore.multiAdd(
-                    transaction.tenantIdAndCentricId,
-                    objectInstanceId,
-                    takeAddedFieldNames,
-                    takeAddedValues,
-                    null, new ConstantTimestamper(transaction.addAtTimestamp));
+            if (hasAdds) {
+                String[] takeAddedFieldNames = transaction.takeAddedFieldNames();
+                OpaqueFieldValue[] takeAddedValues = transaction.takeAddedValues();
 
-            concurrencyStore.updated(transaction.tenantIdAndCentricId, objectInstanceId, fields, transaction.addAtTimestamp);
+                ConstantTimestamper constantTimestamper = new ConstantTimestamper(transaction.addAtTimestamp);
+                for (int i = 0; i < takeAddedFieldNames.length; i++) {
+                    adds.add(new TenantRowColumValueTimestampAdd<>(transaction.tenantIdAndCentricId, objectInstanceId,
+                            takeAddedFieldNames[i], takeAddedValues[i], constantTimestamper));
+                }
+                if (eventValueCache != null) {
+                    writeThrough.add(new CacheAdd(transaction, takeAddedFieldNames, takeAddedValues));
+                }
 
+                String[] fields = markDeletedWithAdds ? withDeleted(takeAddedFieldNames) : takeAddedFieldNames;
+                before.add(new ConcurrencyUpdate(transaction.tenantIdAndCentricId, objectInstanceId, fields, transaction.addAtTimestamp - 1));
+                after.add(new ConcurrencyUpdate(transaction.tenantIdAndCentricId, objectInstanceId, fields, transaction.addAtTimestamp));
+            }
+            if (hasRemoves) {
+                String[] takeRemovedFieldNames = transaction.takeRemovedFieldNames();
+
+                ConstantTimestamper constantTimestamper = new ConstantTimestamper(transaction.removeAtTimestamp);
+                for (String fieldName : takeRemovedFieldNames) {
+                    removes.add(new TenantRowColumnTimestampRemove<>(transaction.tenantIdAndCentricId, objectInstanceId,
+                            fieldName, constantTimestamper));
+                }
+                if (eventValueCache != null) {
+                    writeThrough.add(new CacheRemove(transaction, takeRemovedFieldNames));
+                }
+
+                String[] fields = markDeletedWithAdds ? takeRemovedFieldNames : withDeleted(takeRemovedFieldNames);
+                before.add(new ConcurrencyUpdate(transaction.tenantIdAndCentricId, objectInstanceId, fields, transaction.removeAtTimestamp - 1));
+                after.add(new ConcurrencyUpdate(transaction.tenantIdAndCentricId, objectInstanceId, fields, transaction.removeAtTimestamp));
+            }
         }
-        if (!transaction.removedFieldNames.isEmpty()) {
-            String[] takeRemovedFieldNames = transaction.takeRemovedFieldNames();
 
-            String[] fields = Arrays.copyOf(takeRemovedFieldNames, takeRemovedFieldNames.length + 1);
-            fields[fields.length - 1] = "deleted";
-            concurrencyStore.updated(transaction.tenantIdAndCentricId, objectInstanceId, fields, transaction.removeAtTimestamp - 1);
+        if (before.isEmpty()) {
+            return;
+        }
+        concurrencyStore.updated(before);
+        if (!adds.isEmpty()) {
+            eventValueStore.multiRowsMultiAdd(adds);
+        }
+        if (!removes.isEmpty()) {
+            eventValueStore.multiRowsMultiRemove(removes);
+        }
+        for (Runnable cacheWrite : writeThrough) {
+            cacheWrite.run();
+        }
+        concurrencyStore.updated(after);
+    }
+
+    private class CacheAdd implements Runnable {
+
+        private final Transaction transaction;
+        private final String[] fieldNames;
+        private final OpaqueFieldValue[] values;
+
+        CacheAdd(Transaction transaction, String[] fieldNames, OpaqueFieldValue[] values) {
+            this.transaction = transaction;
+            this.fieldNames = fieldNames;
+            this.values = values;
+        }
+
+        @Override
+        public void run() {
+            eventValueCache.added(transaction.tenantIdAndCentricId, transaction.objectInstanceId, fieldNames, values,
+                    transaction.addAtTimestamp);
+        }
+    }
 
-            eventValueStore.multiRemove(
-                    transaction.tenantIdAndCentricId,
-                    objectInstanceId,
-                    takeRemovedFieldNames,
-                    new ConstantTimestamper(transaction.removeAtTimestamp));
+    private class CacheRemove implements Runnable {
 
-            concurrencyStore.updated(transaction.tenantIdAndCentricId, objectInstanceId, fields, transaction.removeAtTimestamp);
+        private final Transaction transaction;
+        private final String[] fieldNames;
 
+        CacheRemove(Transaction transaction, String[] fieldNames) {
+            this.transaction = transaction;
+            this.fieldNames = fieldNames;
         }
+
+        @Override
+        public void run() {
+            eventValueCache.removed(transaction.tenantIdAndCentricId, transaction.objectInstanceId, fieldNames,
+                    transaction.removeAtTimestamp);
+        }
+    }
+
+    /**
+     * Reads the stored value of every field each transaction sets or removes, one multi get per transaction, and then commits the
+     * transactions like commit(transactions) does.
+     *
+     * @return for each transaction the fields the commit leaves as they were, each with the timestamp of the older event which
+     * stored the value left in place: fields set to the value an older event stored, and fields removed which weren't stored,
+     * which have no such timestamp and map to null.
+     */
+    public List<Map<String, Long>> commitAndGetUnchanged(List<Transaction> transactions) {
+        List<Map<String, Long>> unchanged = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            List<String> readFieldNames = new ArrayList<>(transaction.addedFieldNames);
+            readFieldNames.addAll(transaction.removedFieldNames);
+            String[] fieldNames = readFieldNames.toArray(new String[readFieldNames.size()]);
+            int numAdded = transaction.addedFieldNames.size();
+            OpaqueFieldValue[] addedValues = transaction.addedValues.toArray(new OpaqueFieldValue[numAdded]);
+
+            Map<String, Long> unchangedFieldNames = new HashMap<>();
+            if (fieldNames.length > 0) {
+                ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] got = eventValueStore.multiGetEntries(
+                        transaction.tenantIdAndCentricId, transaction.objectInstanceId, fieldNames, null, null);
+                for (int i = 0; i < fieldNames.length; i++) {
+                    ColumnValueAndTimestamp<String, OpaqueFieldValue, Long> was = (got == null) ? null : got[i];
+                    if (i < numAdded) {
+                        if (was != null && was.getTimestamp() < transaction.addAtTimestamp
+                                && was.getValue().equals(addedValues[i])) {
+                            unchangedFieldNames.put(fieldNames[i], was.getTimestamp());
+                        }
+                    } else if (was == null) {
+                        unchangedFieldNames.put(fieldNames[i], null);
+                    }
+                }
+            }
+            unchanged.add(unchangedFieldNames);
+        }
+        commit(transactions);
+        return unchanged;
+    }
+
+    private String[] withDeleted(String[] fieldNames) {
+        String[] fields = Arrays.copyOf(fieldNames, fieldNames.length + 1);
+        fields[fields.length - 1] = "deleted";
+        return fields;
     }
 
     public static class Transaction {
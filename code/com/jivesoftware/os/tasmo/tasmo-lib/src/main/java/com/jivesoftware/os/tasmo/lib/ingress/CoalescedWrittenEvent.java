@@ -0,0 +1,85 @@
+package com.jivesoftware.os.tasmo.lib.ingress;
+
+import com.google.common.base.Optional;
+import com.jivesoftware.os.jive.utils.id.Id;
+import com.jivesoftware.os.jive.utils.id.TenantId;
+import com.jivesoftware.os.tasmo.model.process.WrittenEvent;
+import com.jivesoftware.os.tasmo.model.process.WrittenInstance;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One event of a run of non-deletion events for the same tenant, centric id and instance, standing in for the events of the run it
+ * supersedes. An event is superseded when every field it wrote was also written by an event of the run with a higher event id, so
+ * persisting and traversing only the superseding events leaves the same latest value for every field. The effective event is
+ * processed unchanged, so each of its fields and refs is persisted and traversed with its own event id and a late event whose id
+ * falls inside the run still wins or loses exactly as it would have without coalescing. The originals are kept so bookkeeping and
+ * retries can be reported against every one of them.
+ */
+public class CoalescedWrittenEvent implements WrittenEvent {
+
+    private final WrittenEvent effective;
+    private final List<WrittenEvent> coalesced;
+
+    /**
+     * @param effective the event which is processed.
+     * @param coalesced effective and the events it stands in for, in the order they were received.
+     */
+    CoalescedWrittenEvent(WrittenEvent effective, List<WrittenEvent> coalesced) {
+        this.effective = effective;
+        this.coalesced = Collections.unmodifiableList(new ArrayList<>(coalesced));
+    }
+
+    /**
+     * @return the original events in the order they were received.
+     */
+    public List<WrittenEvent> getCoalescedEvents() {
+        return coalesced;
+    }
+
+    @Override
+    public Optional<String> getCorrelationId() {
+        return effective.getCorrelationId();
+    }
+
+    @Override
+    public long getEventId() {
+        return effective.getEventId();
+    }
+
+    @Override
+    public Id getActorId() {
+        return effective.getActorId();
+    }
+
+    @Override
+    public TenantId getTenantId() {
+        return effective.getTenantId();
+    }
+
+    @Override
+    public Id getCentricId() {
+        return effective.getCentricId();
+    }
+
+    @Override
+    public WrittenInstance getWrittenInstance() {
+        return effective.getWrittenInstance();
+    }
+
+    @Override
+    public boolean isBookKeepingEnabled() {
+        for (WrittenEvent event : coalesced) {
+            if (event.isBookKeepingEnabled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "CoalescedWrittenEvent{" + "effective=" + effective + ", coalesced=" + coalesced + '}';
+    }
+}
@@ -0,0 +1,152 @@
+package com.jivesoftware.os.tasmo.lib.ingress;
+
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantId;
+import com.jivesoftware.os.jive.utils.logger.MetricLogger;
+import com.jivesoftware.os.jive.utils.logger.MetricLoggerFactory;
+import com.jivesoftware.os.tasmo.lib.TasmoBlacklist;
+import com.jivesoftware.os.tasmo.model.process.WrittenEvent;
+import com.jivesoftware.os.tasmo.model.process.WrittenInstance;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Drops the events of a run of consecutive non-deletion events for the same tenant, centric id and instance within a batch whose every
+ * field is rewritten by a later event id of the run, before handing the batch to the delegate, so an instance whose fields are
+ * rewritten over and over is persisted and traversed once per field value that survives rather than once per event. The surviving
+ * events are processed unmerged so every field keeps the event id of the event it came from. The dropped events ride along in a
+ * CoalescedWrittenEvent for bookkeeping. A deletion, a blacklisted event or an event from a different centric id ends the current run
+ * for its instance. Failed coalesced events are expanded back into their original events before they are returned to the caller.
+ */
+public class CoalescingWrittenEventMaterializer implements WrittenEventMaterializer {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final WrittenEventMaterializer delegate;
+    private final TasmoBlacklist tasmoBlacklist;
+
+    public CoalescingWrittenEventMaterializer(WrittenEventMaterializer delegate, TasmoBlacklist tasmoBlacklist) {
+        this.delegate = delegate;
+        this.tasmoBlacklist = tasmoBlacklist;
+    }
+
+    @Override
+    public List<WrittenEvent> process(List<WrittenEvent> writtenEvents) throws Exception {
+        List<WrittenEvent> coalesced = coalesce(writtenEvents);
+        List<WrittenEvent> failed = delegate.process(coalesced);
+        if (failed.isEmpty()) {
+            return failed;
+        }
+        List<WrittenEvent> expanded = new ArrayList<>(failed.size());
+        for (WrittenEvent writtenEvent : failed) {
+            if (writtenEvent instanceof CoalescedWrittenEvent) {
+                expanded.addAll(((CoalescedWrittenEvent) writtenEvent).getCoalescedEvents());
+            } else {
+                expanded.add(writtenEvent);
+            }
+        }
+        return expanded;
+    }
+
+    List<WrittenEvent> coalesce(List<WrittenEvent> writtenEvents) {
+        List<List<WrittenEvent>> runs = new ArrayList<>(writtenEvents.size());
+        Map<List<Object>, List<WrittenEvent>> openRuns = new HashMap<>();
+        for (WrittenEvent writtenEvent : writtenEvents) {
+            if (writtenEvent == null) {
+                continue;
+            }
+            for (WrittenEvent event : flatten(writtenEvent)) {
+                WrittenInstance writtenInstance = event.getWrittenInstance();
+                List<Object> instanceKey = instanceKey(event.getTenantId(), writtenInstance.getInstanceId());
+                List<WrittenEvent> run = openRuns.get(instanceKey);
+                if (writtenInstance.isDeletion() || tasmoBlacklist.blacklisted(event)) {
+                    openRuns.remove(instanceKey);
+                    runs.add(Arrays.asList(event));
+                } else if (run != null && Objects.equals(run.get(0).getCentricId(), event.getCentricId())) {
+                    run.add(event);
+                } else {
+                    run = new ArrayList<>();
+                    run.add(event);
+                    openRuns.put(instanceKey, run);
+                    runs.add(run);
+                }
+            }
+        }
+
+        List<WrittenEvent> coalesced = new ArrayList<>(runs.size());
+        int absorbed = 0;
+        for (List<WrittenEvent> run : runs) {
+            if (run.size() == 1) {
+                coalesced.add(run.get(0));
+            } else {
+                List<WrittenEvent> effective = effective(run);
+                absorbed += run.size() - effective.size();
+                coalesced.addAll(effective);
+            }
+        }
+        if (absorbed > 0) {
+            LOG.inc("coalescedEvents", absorbed);
+        }
+        return coalesced;
+    }
+
+    /**
+     * @return the events of the run which are the latest, by event id, to write at least one of their fields, in the order they were
+     * received. The superseded events are carried by the last of them.
+     */
+    private List<WrittenEvent> effective(List<WrittenEvent> run) {
+        Map<String, WrittenEvent> latestWriters = new HashMap<>();
+        for (WrittenEvent event : run) {
+            for (String fieldName : event.getWrittenInstance().getFieldNames()) {
+                WrittenEvent had = latestWriters.get(fieldName);
+                if (had == null || event.getEventId() >= had.getEventId()) {
+                    latestWriters.put(fieldName, event);
+                }
+            }
+        }
+        Set<WrittenEvent> effective = Collections.newSetFromMap(new IdentityHashMap<WrittenEvent, Boolean>());
+        effective.addAll(latestWriters.values());
+        for (WrittenEvent event : run) {
+            if (!event.getWrittenInstance().getFieldNames().iterator().hasNext()) {
+                effective.add(event);
+            }
+        }
+        if (effective.size() == run.size()) {
+            return run;
+        }
+
+        List<WrittenEvent> kept = new ArrayList<>(effective.size());
+        for (WrittenEvent event : run) {
+            if (effective.contains(event)) {
+                kept.add(event);
+            }
+        }
+        List<WrittenEvent> carried = new ArrayList<>(run.size() - kept.size() + 1);
+        WrittenEvent last = kept.get(kept.size() - 1);
+        for (WrittenEvent event : run) {
+            if (event == last || !effective.contains(event)) {
+                carried.add(event);
+            }
+        }
+        kept.set(kept.size() - 1, new CoalescedWrittenEvent(last, carried));
+        return kept;
+    }
+
+    private List<WrittenEvent> flatten(WrittenEvent writtenEvent) {
+        if (writtenEvent instanceof CoalescedWrittenEvent) {
+            return ((CoalescedWrittenEvent) writtenEvent).getCoalescedEvents();
+        }
+        return Arrays.asList(writtenEvent);
+    }
+
+    private List<Object> instanceKey(TenantId tenantId, ObjectId instanceId) {
+        return Arrays.<Object>asList(tenantId, instanceId);
+    }
+}
@@ -9,9 +9,9 @@ import java.util.List;
  */
 public class TasmoEventIngress implements CallbackStream<List<WrittenEvent>> {
 
-    final TasmoWriteMaterializer materializer;
+    final WrittenEventMaterializer materializer;
 
-    public TasmoEventIngress(TasmoWriteMaterializer materializer) {
+    public TasmoEventIngress(WrittenEventMaterializer materializer) {
         this.materializer = materializer;
     }
 
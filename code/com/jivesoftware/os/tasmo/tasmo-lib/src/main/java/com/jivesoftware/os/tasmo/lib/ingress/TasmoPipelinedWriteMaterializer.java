@@ -0,0 +1,250 @@
+package com.jivesoftware.os.tasmo.lib.ingress;
+
+import com.jivesoftware.os.jive.utils.logger.MetricLogger;
+import com.jivesoftware.os.jive.utils.logger.MetricLoggerFactory;
+import com.jivesoftware.os.tasmo.lib.TasmoBlacklist;
+import com.jivesoftware.os.tasmo.lib.process.TasmoEventProcessor;
+import com.jivesoftware.os.tasmo.lib.process.bookkeeping.TasmoEventsProcessedNotifier;
+import com.jivesoftware.os.tasmo.model.process.WrittenEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Continuous alternative to TasmoWriteMaterializer. Each event is routed by tenant and instance id to one of a fixed number of stripes.
+ * A stripe is a bounded FIFO queue drained by a single thread so events for the same instance are always processed in the order they
+ * were offered, while a slow stripe only holds up the instances which hash to it. When a stripe queue is full process() blocks until
+ * there is room.
+ *
+ * Completion is reported asynchronously through the bookkeeping stream. An event which fails to process is kept by its stripe and
+ * retried ahead of any newer events for its instance, so process() never hands back failed events to its caller. Retries back off
+ * exponentially and an event which fails maxAttempts times is given up on and reported to the bookkeeping stream as failed. A
+ * stripe holds at most its queue capacity of events, queued, in flight and waiting to be retried alike. An event only gives up its
+ * place once it is processed or reported failed, so a stripe stuck retrying blocks process() rather than growing without bound.
+ */
+public class TasmoPipelinedWriteMaterializer implements WrittenEventMaterializer {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+    private static final long RETRY_PAUSE_MILLIS = 100;
+
+    private final TasmoEventsProcessedNotifier processedNotifier;
+    private final TasmoEventProcessor eventProcessor;
+    private final TasmoBlacklist tasmoBlacklist;
+    private final ExecutorService stripeThreads;
+    private final Stripe[] stripes;
+    private final int maxAttempts;
+    private final long maxRetryPauseMillis;
+    private final AtomicLong totalProcessed = new AtomicLong();
+    private final AtomicLong totalRetried = new AtomicLong();
+    private final AtomicLong totalFailed = new AtomicLong();
+
+    /**
+     * @param stripeThreads must be able to run numberOfStripes threads concurrently
+     * @param maxAttempts how many times an event is processed before it is reported as failed
+     * @param maxRetryPauseMillis the most a stripe waits before retrying its failed events
+     */
+    public TasmoPipelinedWriteMaterializer(TasmoEventsProcessedNotifier processedNotifier,
+        TasmoEventProcessor eventProcessor,
+        TasmoBlacklist tasmoBlacklist,
+        ExecutorService stripeThreads,
+        int numberOfStripes,
+        int stripeQueueCapacity,
+        int maxAttempts,
+        long maxRetryPauseMillis) {
+        this.processedNotifier = processedNotifier;
+        this.eventProcessor = eventProcessor;
+        this.tasmoBlacklist = tasmoBlacklist;
+        this.stripeThreads = stripeThreads;
+        this.maxAttempts = maxAttempts;
+        this.maxRetryPauseMillis = maxRetryPauseMillis;
+        this.stripes = new Stripe[numberOfStripes];
+        for (int i = 0; i < numberOfStripes; i++) {
+            stripes[i] = new Stripe(stripeQueueCapacity);
+        }
+    }
+
+    public void start() {
+        for (Stripe stripe : stripes) {
+            stripeThreads.submit(stripe);
+        }
+    }
+
+    public void stop() {
+        stripeThreads.shutdownNow();
+    }
+
+    @Override
+    public List<WrittenEvent> process(List<WrittenEvent> writtenEvents) throws Exception {
+        List<WrittenEvent> blacklisted = new ArrayList<>();
+        for (WrittenEvent writtenEvent : writtenEvents) {
+            if (writtenEvent != null) {
+                if (tasmoBlacklist.blacklisted(writtenEvent)) {
+                    LOG.info("BLACKLISTED event" + writtenEvent);
+                    blacklisted.add(writtenEvent);
+                } else {
+                    Stripe stripe = stripe(writtenEvent);
+                    stripe.room.acquire();
+                    stripe.queue.put(writtenEvent);
+                }
+            }
+        }
+        if (!blacklisted.isEmpty()) {
+            completed(blacklisted, Collections.<WrittenEvent>emptyList());
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return how many events the stripes hold, including those waiting to be retried
+     */
+    public int queueDepth() {
+        int depth = 0;
+        for (Stripe stripe : stripes) {
+            depth += stripe.drainCapacity - stripe.room.availablePermits();
+        }
+        return depth;
+    }
+
+    private Stripe stripe(WrittenEvent writtenEvent) {
+        int hash = 31 * writtenEvent.getTenantId().hashCode() + writtenEvent.getWrittenInstance().getInstanceId().hashCode();
+        return stripes[(hash & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    private void completed(List<WrittenEvent> processed, List<WrittenEvent> failed) {
+        try {
+            synchronized (processedNotifier) {
+                processedNotifier.notify(processed, failed);
+            }
+        } catch (Exception x) {
+            LOG.error("Failed to notify event bookKeeper of " + processed.size() + " processed and " + failed.size() + " failed events.", x);
+        }
+    }
+
+    private long retryPauseMillis(int failedAttempts) {
+        long pause = RETRY_PAUSE_MILLIS << Math.min(failedAttempts - 1, 20);
+        return Math.min(pause, maxRetryPauseMillis);
+    }
+
+    private class Stripe implements Runnable {
+
+        private final BlockingQueue<WrittenEvent> queue;
+        private final Semaphore room;
+        private final int drainCapacity;
+        private final Object lock = new Object();
+
+        Stripe(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.room = new Semaphore(capacity);
+            this.drainCapacity = capacity;
+        }
+
+        @Override
+        public void run() {
+            List<WrittenEvent> batch = new ArrayList<>();
+            List<WrittenEvent> processed = new ArrayList<>();
+            List<WrittenEvent> failed = new ArrayList<>();
+            List<WrittenEvent> retry = new ArrayList<>();
+            Map<WrittenEvent, Integer> failedAttempts = new IdentityHashMap<>();
+            Set<List<Object>> failedInstances = new HashSet<>();
+            long retryAtMillis = 0;
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    if (retry.isEmpty()) {
+                        batch.add(queue.take());
+                    } else {
+                        batch.addAll(retry);
+                        retry.clear();
+                        long pauseMillis = Math.max(0, retryAtMillis - System.currentTimeMillis());
+                        if (batch.size() < drainCapacity) {
+                            WrittenEvent next = queue.poll(pauseMillis, TimeUnit.MILLISECONDS);
+                            if (next != null) {
+                                batch.add(next);
+                            }
+                        } else {
+                            Thread.sleep(pauseMillis);
+                        }
+                    }
+                    queue.drainTo(batch, drainCapacity - batch.size());
+
+                    boolean retryDue = System.currentTimeMillis() >= retryAtMillis;
+                    int mostFailedAttempts = 0;
+                    for (WrittenEvent event : batch) {
+                        List<Object> instanceKey = Arrays.<Object>asList(event.getTenantId(), event.getWrittenInstance().getInstanceId());
+                        if (failedInstances.contains(instanceKey)) {
+                            retry.add(event); // preserve per instance ordering behind the failed event
+                            continue;
+                        }
+                        Integer attempts = failedAttempts.get(event);
+                        if (attempts != null && !retryDue) {
+                            retry.add(event);
+                            failedInstances.add(instanceKey);
+                            continue;
+                        }
+                        try {
+                            eventProcessor.processWrittenEvent(lock, event);
+                            processed.add(event);
+                            failedAttempts.remove(event);
+                        } catch (Exception x) {
+                            attempts = (attempts == null) ? 1 : attempts + 1;
+                            if (attempts >= maxAttempts) {
+                                failedAttempts.remove(event);
+                                failed.add(event);
+                                LOG.error("Gave up on eventId:{} instanceId:{} tenantId:{} after {} attempts.", new Object[]{
+                                    event.getEventId(),
+                                    event.getWrittenInstance().getInstanceId(),
+                                    event.getTenantId(),
+                                    attempts
+                                }, x);
+                                continue;
+                            }
+                            failedAttempts.put(event, attempts);
+                            mostFailedAttempts = Math.max(mostFailedAttempts, attempts);
+                            retry.add(event);
+                            failedInstances.add(instanceKey);
+                            LOG.warn("CONSISTENCY Failed to process eventId:{} instanceId:{} tenantId:{} exception: {}", new Object[]{
+                                event.getEventId(),
+                                event.getWrittenInstance().getInstanceId(),
+                                event.getTenantId(),
+                                x
+                            }, x);
+                            if (LOG.isTraceEnabled()) {
+                                LOG.trace("Failed to process writtenEvent:" + event, x);
+                            }
+                        }
+                    }
+                    if (mostFailedAttempts > 0) {
+                        retryAtMillis = System.currentTimeMillis() + retryPauseMillis(mostFailedAttempts);
+                    }
+                    totalProcessed.addAndGet(processed.size());
+                    totalRetried.addAndGet(retry.size());
+                    totalFailed.addAndGet(failed.size());
+                    room.release(processed.size() + failed.size());
+                    if (!processed.isEmpty() || !failed.isEmpty()) {
+                        completed(processed, failed);
+                    }
+
+                    batch.clear();
+                    processed.clear();
+                    failed.clear();
+                    failedInstances.clear();
+                }
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+            } finally {
+                LOG.info("Pipeline stripe stopped. totalProcessed:{} totalRetried:{} totalFailed:{} abandoned:{}", new Object[]{
+                    totalProcessed.get(), totalRetried.get(), totalFailed.get(), retry.size() + queue.size() });
+            }
+        }
+    }
+}
@@ -24,7 +24,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
-public class TasmoWriteMaterializer {
+public class TasmoWriteMaterializer implements WrittenEventMaterializer {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
     private final CallbackStream<List<BookkeepingEvent>> bookkeepingStream;
@@ -47,6 +47,7 @@ public class TasmoWriteMaterializer {
         this.tasmoBlacklist = tasmoBlacklist;
     }
 
+    @Override
     public List<WrittenEvent> process(List<WrittenEvent> writtenEvents) throws Exception {
         if (writtenEvents.isEmpty()) {
             return Collections.emptyList();
@@ -122,7 +123,7 @@ public class TasmoWriteMaterializer {
 //            }
 
             List<BookkeepingEvent> bookkeepingEvents = new ArrayList<>();
-            for (WrittenEvent p : processed) {
+            for (WrittenEvent p : originals(processed)) {
                 if (p.isBookKeepingEnabled()) {
                     bookkeepingEvents.add(new BookkeepingEvent(p.getTenantId(), p.getActorId(), p.getEventId(), true));
                 }
@@ -133,7 +134,7 @@ public class TasmoWriteMaterializer {
 
             try {
                 List<BookkeepingEvent> bookkeepingEvents = new ArrayList<>();
-                for (WrittenEvent p : processed) {
+                for (WrittenEvent p : originals(processed)) {
                     if (p.isBookKeepingEnabled()) {
                         bookkeepingEvents.add(new BookkeepingEvent(p.getTenantId(), p.getActorId(), p.getEventId(), false));
                     }
@@ -163,4 +164,16 @@ public class TasmoWriteMaterializer {
         return failedToProcess;
     }
 
+    private List<WrittenEvent> originals(List<WrittenEvent> writtenEvents) {
+        List<WrittenEvent> originals = new ArrayList<>(writtenEvents.size());
+        for (WrittenEvent writtenEvent : writtenEvents) {
+            if (writtenEvent instanceof CoalescedWrittenEvent) {
+                originals.addAll(((CoalescedWrittenEvent) writtenEvent).getCoalescedEvents());
+            } else {
+                originals.add(writtenEvent);
+            }
+        }
+        return originals;
+    }
+
 }
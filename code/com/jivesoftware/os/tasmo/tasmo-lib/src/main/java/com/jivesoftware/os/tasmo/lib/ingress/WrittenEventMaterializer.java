@@ -0,0 +1,15 @@
+package com.jivesoftware.os.tasmo.lib.ingress;
+
+import com.jivesoftware.os.tasmo.model.process.WrittenEvent;
+import java.util.List;
+
+/**
+ *
+ */
+public interface WrittenEventMaterializer {
+
+    /**
+     * @return the events which failed to process and should be retried later.
+     */
+    List<WrittenEvent> process(List<WrittenEvent> writtenEvents) throws Exception;
+}
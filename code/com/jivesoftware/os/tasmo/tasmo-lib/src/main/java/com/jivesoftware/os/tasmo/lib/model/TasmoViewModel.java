@@ -27,6 +27,9 @@ public class TasmoViewModel {
     private final TenantId masterTenantId;
     private final ViewsProvider viewsProvider;
     private final ViewPathKeyProvider viewPathKeyProvider;
+    private final boolean levelAtATimeTraversal;
+    private final boolean counterMaintainedCounts;
+    private final boolean cachedStepWalk;
     private final ConcurrentHashMap<TenantId, VersionedTasmoViewModel> versionedViewModels;
     private final StripingLocksProvider<TenantId> loadModelLocks = new StripingLocksProvider<>(1_024);
 
@@ -34,9 +37,51 @@ public class TasmoViewModel {
             TenantId masterTenantId,
             ViewsProvider viewsProvider,
             ViewPathKeyProvider viewPathKeyProvider) {
+        this(masterTenantId, viewsProvider, viewPathKeyProvider, false);
+    }
+
+    /**
+     * @param levelAtATimeTraversal when true write traversals resolve each hop of a path for all instances at once, see
+     * LevelAtATimeStepStreamer.
+     */
+    public TasmoViewModel(
+            TenantId masterTenantId,
+            ViewsProvider viewsProvider,
+            ViewPathKeyProvider viewPathKeyProvider,
+            boolean levelAtATimeTraversal) {
+        this(masterTenantId, viewsProvider, viewPathKeyProvider, levelAtATimeTraversal, false);
+    }
+
+    /**
+     * @param counterMaintainedCounts when true count steps write the back ref count kept by the ReferenceStore as a single view value
+     * instead of a view value per referring instance. Counts are then no longer filtered by the reader's permissions.
+     */
+    public TasmoViewModel(
+            TenantId masterTenantId,
+            ViewsProvider viewsProvider,
+            ViewPathKeyProvider viewPathKeyProvider,
+            boolean levelAtATimeTraversal,
+            boolean counterMaintainedCounts) {
+        this(masterTenantId, viewsProvider, viewPathKeyProvider, levelAtATimeTraversal, counterMaintainedCounts, false);
+    }
+
+    /**
+     * @param cachedStepWalk when true the walk of each write traversal's step tree is cached when the model is loaded rather than
+     * repeated per traversal, see CachedStepWalk. Ignored when levelAtATimeTraversal is true.
+     */
+    public TasmoViewModel(
+            TenantId masterTenantId,
+            ViewsProvider viewsProvider,
+            ViewPathKeyProvider viewPathKeyProvider,
+            boolean levelAtATimeTraversal,
+            boolean counterMaintainedCounts,
+            boolean cachedStepWalk) {
         this.masterTenantId = masterTenantId;
         this.viewsProvider = viewsProvider;
         this.viewPathKeyProvider = viewPathKeyProvider;
+        this.levelAtATimeTraversal = levelAtATimeTraversal;
+        this.counterMaintainedCounts = counterMaintainedCounts;
+        this.cachedStepWalk = cachedStepWalk;
         this.versionedViewModels = new ConcurrentHashMap<>();
     }
 
@@ -64,7 +109,7 @@ public class TasmoViewModel {
         synchronized (loadModelLocks.lock(tenantId)) {
             ChainedVersion currentVersion = viewsProvider.getCurrentViewsVersion(tenantId);
             if (currentVersion == ChainedVersion.NULL) {
-                versionedViewModels.put(tenantId, new VersionedTasmoViewModel(ChainedVersion.NULL, null, null, null, null));
+                versionedViewModels.put(tenantId, new VersionedTasmoViewModel(ChainedVersion.NULL, null, null, null, null, null));
             } else {
                 VersionedTasmoViewModel currentVersionedViewsModel = versionedViewModels.get(tenantId);
                 if (currentVersionedViewsModel == null
@@ -82,8 +127,9 @@ public class TasmoViewModel {
                         Map<String, InitiateReadTraversal> readTraversal = buildViewReaderTraveral(views);
                         SetMultimap<String, FieldNameAndType> eventModel = bindEventFieldTypes(views);
                         Set<String> notifiableViewClassNames = buildNotifiableViewClassNames(views);
+                        Set<String> centricClassNames = buildCentricClassNames(views);
                         versionedViewModels.put(tenantId, new VersionedTasmoViewModel(views.getVersion(),
-                                globalWriteTraversal, readTraversal, eventModel, notifiableViewClassNames));
+                                globalWriteTraversal, readTraversal, eventModel, notifiableViewClassNames, centricClassNames));
                     } else {
                         LOG.info("ViewsProvider failed to provide a 'Views' instance for tenantId:" + tenantId);
                     }
@@ -105,6 +151,23 @@ public class TasmoViewModel {
         return notifiableViewClassNames;
     }
 
+    private Set<String> buildCentricClassNames(Views views) throws IllegalArgumentException {
+        Set<String> centricClassNames = new HashSet<>();
+        for (ViewBinding viewBinding : views.getViewBindings()) {
+            for (ModelPath modelPath : viewBinding.getModelPaths()) {
+                if (modelPath.isCentric()) {
+                    for (ModelPathStep modelPathStep : modelPath.getPathMembers()) {
+                        centricClassNames.addAll(modelPathStep.getOriginClassNames());
+                        if (modelPathStep.getDestinationClassNames() != null) {
+                            centricClassNames.addAll(modelPathStep.getDestinationClassNames());
+                        }
+                    }
+                }
+            }
+        }
+        return centricClassNames;
+    }
+
     private SetMultimap<String, FieldNameAndType> bindEventFieldTypes(Views views) throws IllegalArgumentException {
         SetMultimap<String, FieldNameAndType> eventModel = HashMultimap.create();
         for (ViewBinding viewBinding : views.getViewBindings()) {
@@ -153,7 +216,8 @@ public class TasmoViewModel {
                 }
 
                 long modelPathHashcode = viewPathKeyProvider.modelPathHashcode(modelPath.getId());
-                PathTraversersFactory fieldProcessorFactory = new PathTraversersFactory(viewClassName, modelPathHashcode, modelPath);
+                PathTraversersFactory fieldProcessorFactory = new PathTraversersFactory(viewClassName, modelPathHashcode, modelPath,
+                        counterMaintainedCounts);
                 allFieldProcessorFactories.put(factoryKey, fieldProcessorFactory);
 
                 List<StepTraverser> steps = fieldProcessorFactory.buildReadSteps(viewIdFieldName);
@@ -191,12 +255,22 @@ public class TasmoViewModel {
         List<PathTraverser> pathTraversers = new ArrayList<>();
         for (PathTraverserKey pathTraverserKey : subTrees.keySet()) {
             StepTree stepTree = subTrees.get(pathTraverserKey);
-            pathTraversers.add(new PathTraverser(pathTraverserKey, new PrefixCollapsedStepStreamerFactory(stepTree)));
+            pathTraversers.add(new PathTraverser(pathTraverserKey, stepStreamerFactory(stepTree)));
         }
 
         return pathTraversers;
     }
 
+    private StepStreamerFactory stepStreamerFactory(StepTree stepTree) {
+        if (levelAtATimeTraversal) {
+            return new LevelAtATimeStepStreamerFactory(stepTree);
+        }
+        if (cachedStepWalk) {
+            return new CachedStepWalkStreamerFactory(stepTree);
+        }
+        return new PrefixCollapsedStepStreamerFactory(stepTree);
+    }
+
     private Map<String, InitiateWriteTraversal> buildWriteTraversers(List<ViewBinding> viewBindings) throws IllegalArgumentException {
 
         Map<String, PathTraversersFactory> allFieldProcessorFactories = Maps.newHashMap();
@@ -217,7 +291,8 @@ public class TasmoViewModel {
                 }
 
                 long modelPathHashcode = viewPathKeyProvider.modelPathHashcode(modelPath.getId());
-                PathTraversersFactory fieldProcessorFactory = new PathTraversersFactory(viewClassName, modelPathHashcode, modelPath);
+                PathTraversersFactory fieldProcessorFactory = new PathTraversersFactory(viewClassName, modelPathHashcode, modelPath,
+                        counterMaintainedCounts);
 
                 if (LOG.isTraceEnabled()) {
                     LOG.trace("Bind:{}", factoryKey);
@@ -329,34 +404,65 @@ public class TasmoViewModel {
         return all;
     }
 
+    /**
+     * Collapses every path which is initiated by the same ref field (null for values) at the same path index into one shared step tree.
+     * A hop shared by several view bindings is then streamed once and fans out to each of their view value writers. Every trigger key
+     * maps to the shared traversers its paths ended up in, so a traverser can be reachable from more than one key.
+     */
     ListMultimap<InitiateTraverserKey, PathTraverser> transformToPrefixCollapsedTree(String family,
             ListMultimap<InitiateTraverserKey, TraversablePath> traversablePaths) {
         if (traversablePaths == null) {
             return null;
         }
-        ListMultimap<InitiateTraverserKey, PathTraverser> transformed = ArrayListMultimap.create();
+
+        Map<List<Object>, StepTree> sharedTrees = new LinkedHashMap<>();
+        Map<List<Object>, Set<String>> sharedInitialFieldNames = new HashMap<>();
+        Map<List<Object>, Set<TraversablePath>> sharedPaths = new HashMap<>();
+        ListMultimap<InitiateTraverserKey, List<Object>> sharedTreeKeys = ArrayListMultimap.create();
         for (InitiateTraverserKey key : traversablePaths.keySet()) {
-            Map<PathTraverserKey, StepTree> subTrees = new ConcurrentHashMap<>();
             for (TraversablePath traversablePath : traversablePaths.get(key)) {
                 InitiateTraversalContext initialStepContext = traversablePath.getInitialStepContext();
-                PathTraverserKey pathTraverserKey = new PathTraverserKey(initialStepContext.getInitialFieldNames(),
+                List<Object> sharedTreeKey = Arrays.<Object>asList(key.getRefFieldName(),
                         initialStepContext.getPathIndex(),
                         initialStepContext.getMembersSize(),
                         initialStepContext.isCentric());
 
-                StepTree stepTree = subTrees.get(pathTraverserKey);
+                StepTree stepTree = sharedTrees.get(sharedTreeKey);
                 if (stepTree == null) {
                     stepTree = new StepTree();
-                    subTrees.put(pathTraverserKey, stepTree);
+                    sharedTrees.put(sharedTreeKey, stepTree);
+                    sharedInitialFieldNames.put(sharedTreeKey, new HashSet<String>());
+                    sharedPaths.put(sharedTreeKey, Sets.<TraversablePath>newIdentityHashSet());
+                }
+                if (sharedPaths.get(sharedTreeKey).add(traversablePath)) {
+                    stepTree.add(traversablePath.getStepTraversers());
+                    sharedInitialFieldNames.get(sharedTreeKey).addAll(initialStepContext.getInitialFieldNames());
+                }
+                if (!sharedTreeKeys.containsEntry(key, sharedTreeKey)) {
+                    sharedTreeKeys.put(key, sharedTreeKey);
                 }
-                stepTree.add(traversablePath.getStepTraversers());
             }
+        }
 
-            for (PathTraverserKey pathTraverserKey : subTrees.keySet()) {
-                StepTree stepTree = subTrees.get(pathTraverserKey);
-                PathTraverser pathTraverser = new PathTraverser(pathTraverserKey, new PrefixCollapsedStepStreamerFactory(stepTree));
-                transformed.put(key, pathTraverser);
-            }
+        Map<List<Object>, PathTraverser> sharedTraversers = new HashMap<>();
+        for (Map.Entry<List<Object>, StepTree> entry : sharedTrees.entrySet()) {
+            List<Object> sharedTreeKey = entry.getKey();
+            PathTraverserKey pathTraverserKey = new PathTraverserKey(sharedInitialFieldNames.get(sharedTreeKey),
+                    (Integer) sharedTreeKey.get(1),
+                    (Integer) sharedTreeKey.get(2),
+                    (Boolean) sharedTreeKey.get(3));
+            sharedTraversers.put(sharedTreeKey, new PathTraverser(pathTraverserKey,
+                    stepStreamerFactory(entry.getValue()),
+                    sharedPaths.get(sharedTreeKey).size()));
+        }
+
+        ListMultimap<InitiateTraverserKey, PathTraverser> transformed = ArrayListMultimap.create();
+        for (Map.Entry<InitiateTraverserKey, List<Object>> entry : sharedTreeKeys.entries()) {
+            transformed.put(entry.getKey(), sharedTraversers.get(entry.getValue()));
+        }
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Collapsed {} {} paths into {} shared step trees.",
+                    new Object[]{ new HashSet<>(traversablePaths.values()).size(), family, sharedTrees.size() });
         }
         return transformed;
     }
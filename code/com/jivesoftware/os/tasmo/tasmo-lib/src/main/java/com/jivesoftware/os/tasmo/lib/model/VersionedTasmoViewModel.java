@@ -18,17 +18,20 @@ public class VersionedTasmoViewModel {
     private final Map<String, InitiateReadTraversal> readTraversers;
     private final SetMultimap<String, TasmoViewModel.FieldNameAndType> eventModel;
     private final Set<String> notifiableViews;
+    private final Set<String> centricClassNames;
 
     public VersionedTasmoViewModel(ChainedVersion version,
         Map<String, InitiateWriteTraversal> writeTraversers,
         Map<String, InitiateReadTraversal> readTraversers,
         SetMultimap<String, TasmoViewModel.FieldNameAndType> eventModel,
-        Set<String> notifiableViews) {
+        Set<String> notifiableViews,
+        Set<String> centricClassNames) {
         this.version = version;
         this.writeTraversers = writeTraversers;
         this.readTraversers = readTraversers;
         this.eventModel = eventModel;
         this.notifiableViews = notifiableViews;
+        this.centricClassNames = centricClassNames;
     }
 
     public ChainedVersion getVersion() {
@@ -51,6 +54,13 @@ public class VersionedTasmoViewModel {
         return notifiableViews;
     }
 
+    /**
+     * @return false if no centric model path touches the given class, in which case nothing is ever read from its centric scope.
+     */
+    public boolean hasCentricBindings(String className) {
+        return centricClassNames == null || centricClassNames.contains(className);
+    }
+
     @Override
     public String toString() {
         return "VersionedViewTasmoModel{"
@@ -0,0 +1,16 @@
+package com.jivesoftware.os.tasmo.lib.process;
+
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantId;
+
+/**
+ * Told by TasmoEventProcessor when it starts and finishes processing an event for an instance. Both are called while holding the
+ * lock which serializes the instance's events, so whatever is remembered about the instance in between can't be changed by another
+ * event of this process.
+ */
+public interface InstanceEventScope {
+
+    void beginEvent(TenantId tenantId, ObjectId instanceId);
+
+    void endEvent(TenantId tenantId, ObjectId instanceId);
+}
@@ -11,12 +11,14 @@ import com.jivesoftware.os.tasmo.lib.model.TasmoViewModel;
 import com.jivesoftware.os.tasmo.lib.model.VersionedTasmoViewModel;
 import com.jivesoftware.os.tasmo.lib.process.notification.ViewChangeNotificationProcessor;
 import com.jivesoftware.os.tasmo.lib.process.traversal.InitiateWriteTraversal;
+import com.jivesoftware.os.tasmo.lib.process.traversal.PathTraversalExecutor;
 import com.jivesoftware.os.tasmo.lib.process.traversal.TasmoEventTraversal;
 import com.jivesoftware.os.tasmo.lib.read.FieldValueReader;
 import com.jivesoftware.os.tasmo.lib.write.CommitChange;
 import com.jivesoftware.os.tasmo.lib.write.CommitChangeException;
 import com.jivesoftware.os.tasmo.lib.write.EventPersistor;
 import com.jivesoftware.os.tasmo.lib.write.ViewField;
+import com.jivesoftware.os.tasmo.lib.write.ViewValueChangeDetector;
 import com.jivesoftware.os.tasmo.model.process.InMemoryModifiedViewProvider;
 import com.jivesoftware.os.tasmo.model.process.ModifiedViewInfo;
 import com.jivesoftware.os.tasmo.model.process.ModifiedViewProvider;
@@ -29,6 +31,8 @@ import com.jivesoftware.os.tasmo.reference.lib.traverser.ReferenceTraverser;
 import com.jivesoftware.os.tasmo.view.notification.api.ViewNotification;
 import com.jivesoftware.os.tasmo.view.notification.api.ViewNotificationListener;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -50,7 +54,13 @@ public class TasmoEventProcessor {
     private final FieldValueReader fieldValueReader;
     private final ReferenceTraverser referenceTraverser;
     private final CommitChange commitChange;
+    private final PathTraversalExecutor pathTraversalExecutor;
     private final TasmoProcessingStats processingStats;
+    private final int memoizeUpToNEntriesPerEvent;
+    private final ViewValueChangeDetector viewValueChangeDetector;
+    private final int viewChangeFlushAtChanges;
+    private final long viewChangeFlushAtBytes;
+    private final List<InstanceEventScope> instanceEventScopes;
 
     public TasmoEventProcessor(TasmoViewModel tasmoViewModel,
         EventPersistor eventPersistor,
@@ -63,7 +73,109 @@ public class TasmoEventProcessor {
         FieldValueReader fieldValueReader,
         ReferenceTraverser referenceTraverser,
         CommitChange commitChange,
+        PathTraversalExecutor pathTraversalExecutor,
         TasmoProcessingStats processingStats) {
+        this(tasmoViewModel, eventPersistor, writtenEventProvider, eventTraverser, viewChangeNotificationProcessor,
+            allViewNotificationsListener, concurrencyStore, referenceStore, fieldValueReader, referenceTraverser, commitChange,
+            pathTraversalExecutor, processingStats, 0);
+    }
+
+    /**
+     * @param memoizeUpToNEntriesPerEvent how many ref streams and field values each event remembers while it is traversed. Zero
+     * disables memoization.
+     */
+    public TasmoEventProcessor(TasmoViewModel tasmoViewModel,
+        EventPersistor eventPersistor,
+        WrittenEventProvider writtenEventProvider,
+        TasmoEventTraversal eventTraverser,
+        ViewChangeNotificationProcessor viewChangeNotificationProcessor, //Deprecate
+        ViewNotificationListener allViewNotificationsListener,
+        ConcurrencyStore concurrencyStore,
+        ReferenceStore referenceStore,
+        FieldValueReader fieldValueReader,
+        ReferenceTraverser referenceTraverser,
+        CommitChange commitChange,
+        PathTraversalExecutor pathTraversalExecutor,
+        TasmoProcessingStats processingStats,
+        int memoizeUpToNEntriesPerEvent) {
+        this(tasmoViewModel, eventPersistor, writtenEventProvider, eventTraverser, viewChangeNotificationProcessor,
+            allViewNotificationsListener, concurrencyStore, referenceStore, fieldValueReader, referenceTraverser, commitChange,
+            pathTraversalExecutor, processingStats, memoizeUpToNEntriesPerEvent, null);
+    }
+
+    /**
+     * @param viewValueChangeDetector when not null view fields which are already stored unchanged are neither committed nor notified.
+     */
+    public TasmoEventProcessor(TasmoViewModel tasmoViewModel,
+        EventPersistor eventPersistor,
+        WrittenEventProvider writtenEventProvider,
+        TasmoEventTraversal eventTraverser,
+        ViewChangeNotificationProcessor viewChangeNotificationProcessor, //Deprecate
+        ViewNotificationListener allViewNotificationsListener,
+        ConcurrencyStore concurrencyStore,
+        ReferenceStore referenceStore,
+        FieldValueReader fieldValueReader,
+        ReferenceTraverser referenceTraverser,
+        CommitChange commitChange,
+        PathTraversalExecutor pathTraversalExecutor,
+        TasmoProcessingStats processingStats,
+        int memoizeUpToNEntriesPerEvent,
+        ViewValueChangeDetector viewValueChangeDetector) {
+        this(tasmoViewModel, eventPersistor, writtenEventProvider, eventTraverser, viewChangeNotificationProcessor,
+            allViewNotificationsListener, concurrencyStore, referenceStore, fieldValueReader, referenceTraverser, commitChange,
+            pathTraversalExecutor, processingStats, memoizeUpToNEntriesPerEvent, viewValueChangeDetector, 0, 0);
+    }
+
+    /**
+     * @param viewChangeFlushAtChanges the view changes of a traversal are committed in chunks of at most this many. Zero commits them
+     * all at once.
+     * @param viewChangeFlushAtBytes the view changes of a traversal are committed in chunks whose values, ids and paths hold at most
+     * about this many bytes. Zero commits them all at once.
+     */
+    public TasmoEventProcessor(TasmoViewModel tasmoViewModel,
+        EventPersistor eventPersistor,
+        WrittenEventProvider writtenEventProvider,
+        TasmoEventTraversal eventTraverser,
+        ViewChangeNotificationProcessor viewChangeNotificationProcessor, //Deprecate
+        ViewNotificationListener allViewNotificationsListener,
+        ConcurrencyStore concurrencyStore,
+        ReferenceStore referenceStore,
+        FieldValueReader fieldValueReader,
+        ReferenceTraverser referenceTraverser,
+        CommitChange commitChange,
+        PathTraversalExecutor pathTraversalExecutor,
+        TasmoProcessingStats processingStats,
+        int memoizeUpToNEntriesPerEvent,
+        ViewValueChangeDetector viewValueChangeDetector,
+        int viewChangeFlushAtChanges,
+        long viewChangeFlushAtBytes) {
+        this(tasmoViewModel, eventPersistor, writtenEventProvider, eventTraverser, viewChangeNotificationProcessor,
+            allViewNotificationsListener, concurrencyStore, referenceStore, fieldValueReader, referenceTraverser, commitChange,
+            pathTraversalExecutor, processingStats, memoizeUpToNEntriesPerEvent, viewValueChangeDetector, viewChangeFlushAtChanges,
+            viewChangeFlushAtBytes, Collections.<InstanceEventScope>emptyList());
+    }
+
+    /**
+     * @param instanceEventScopes told when each event of an instance starts and finishes being processed.
+     */
+    public TasmoEventProcessor(TasmoViewModel tasmoViewModel,
+        EventPersistor eventPersistor,
+        WrittenEventProvider writtenEventProvider,
+        TasmoEventTraversal eventTraverser,
+        ViewChangeNotificationProcessor viewChangeNotificationProcessor, //Deprecate
+        ViewNotificationListener allViewNotificationsListener,
+        ConcurrencyStore concurrencyStore,
+        ReferenceStore referenceStore,
+        FieldValueReader fieldValueReader,
+        ReferenceTraverser referenceTraverser,
+        CommitChange commitChange,
+        PathTraversalExecutor pathTraversalExecutor,
+        TasmoProcessingStats processingStats,
+        int memoizeUpToNEntriesPerEvent,
+        ViewValueChangeDetector viewValueChangeDetector,
+        int viewChangeFlushAtChanges,
+        long viewChangeFlushAtBytes,
+        List<InstanceEventScope> instanceEventScopes) {
 
         this.tasmoViewModel = tasmoViewModel;
         this.eventPersistor = eventPersistor;
@@ -76,7 +188,13 @@ public class TasmoEventProcessor {
         this.fieldValueReader = fieldValueReader;
         this.referenceTraverser = referenceTraverser;
         this.commitChange = commitChange;
+        this.pathTraversalExecutor = pathTraversalExecutor;
         this.processingStats = processingStats;
+        this.memoizeUpToNEntriesPerEvent = memoizeUpToNEntriesPerEvent;
+        this.viewValueChangeDetector = viewValueChangeDetector;
+        this.viewChangeFlushAtChanges = viewChangeFlushAtChanges;
+        this.viewChangeFlushAtBytes = viewChangeFlushAtBytes;
+        this.instanceEventScopes = instanceEventScopes;
     }
 
     public void processWrittenEvent(Object lock, WrittenEvent writtenEvent) throws Exception {
@@ -94,6 +212,29 @@ public class TasmoEventProcessor {
                 TenantIdAndCentricId tenantIdAndCentricId,
                 List<ViewField> changes) throws CommitChangeException {
 
+                if (viewValueChangeDetector == null) {
+                    commitAndNotify(context, tenantIdAndCentricId, changes);
+                    return;
+                }
+                List<ViewField> unchanged = new ArrayList<>();
+                changes = viewValueChangeDetector.changed(tenantIdAndCentricId, changes, unchanged);
+                if (!changes.isEmpty()) {
+                    commitAndNotify(context, tenantIdAndCentricId, changes);
+                }
+                if (!unchanged.isEmpty()) {
+                    // a remove may have landed on a dropped add's column since it was read.
+                    List<ViewField> raced = viewValueChangeDetector.changed(tenantIdAndCentricId, unchanged);
+                    processingStats.tally("COMMIT", "unchangedViewFields", unchanged.size() - raced.size());
+                    if (!raced.isEmpty()) {
+                        commitAndNotify(context, tenantIdAndCentricId, raced);
+                    }
+                }
+            }
+
+            private void commitAndNotify(WrittenEventContext context,
+                TenantIdAndCentricId tenantIdAndCentricId,
+                List<ViewField> changes) throws CommitChangeException {
+
                 commitChange.commitChange(context, tenantIdAndCentricId, changes);
 
                 List<ViewNotification> notifications = new ArrayList<>();
@@ -123,14 +264,22 @@ public class TasmoEventProcessor {
         ConcurrencyChecker concurrencyChecker = new ConcurrencyChecker(concurrencyStore);
         WrittenEventContext batchContext = new WrittenEventContext(writtenEvent.getEventId(),
             writtenEvent.getActorId(), writtenEvent.getCentricId(), writtenEvent, writtenEventProvider, concurrencyChecker, referenceStore,
-            fieldValueReader, referenceTraverser, modifiedViewProvider, commitChangeNotifier, processingStats);
+            fieldValueReader, referenceTraverser, modifiedViewProvider, commitChangeNotifier, pathTraversalExecutor, processingStats,
+            memoizeUpToNEntriesPerEvent);
+        batchContext.setViewChangeFlushThresholds(viewChangeFlushAtChanges, viewChangeFlushAtBytes);
 
         WrittenInstance writtenInstance = writtenEvent.getWrittenInstance();
         String className = writtenInstance.getInstanceId().getClassName();
 
         TenantIdAndCentricId globalCentricId = new TenantIdAndCentricId(tenantId, Id.NULL);
         TenantIdAndCentricId userCentricId = new TenantIdAndCentricId(tenantId, writtenEvent.getCentricId());
-        process(lock, model, model.getWriteTraversers(), className, writtenInstance, globalCentricId, userCentricId, batchContext, writtenEvent);
+        try {
+            process(lock, model, model.getWriteTraversers(), className, writtenInstance, globalCentricId, userCentricId, batchContext,
+                writtenEvent);
+        } finally {
+            batchContext.getMemoizer().discard(processingStats);
+            processingStats.tally("COMMIT", "existenceLookupsSaved", batchContext.getResolvedExistence().getSaved());
+        }
 
         long start = System.currentTimeMillis();
         viewChangeNotificationProcessor.process(batchContext, writtenEvent);
@@ -142,13 +291,13 @@ public class TasmoEventProcessor {
         LOG.info("{} millis valuePaths:{} refPaths:{} backRefPaths:{} "
             + "fanDepth:{} fanBreath:{} value:{} changes:{}  DONE PROCESSING {} event:{} instance:{} tenant:{}",
             new Object[]{ elapse,
-                batchContext.valuePaths,
-                batchContext.refPaths,
-                batchContext.backRefPaths,
-                batchContext.fanDepth,
-                batchContext.fanBreath,
-                batchContext.readLeaves,
-                batchContext.changes,
+                batchContext.valuePaths.get(),
+                batchContext.refPaths.get(),
+                batchContext.backRefPaths.get(),
+                batchContext.fanDepth.get(),
+                batchContext.fanBreath.get(),
+                batchContext.readLeaves.get(),
+                batchContext.changes.get(),
                 writtenEvent.getWrittenInstance().isDeletion() ? "DELETE" : "UPDATE",
                 writtenEvent.getEventId(),
                 writtenEvent.getWrittenInstance().getInstanceId(),
@@ -172,15 +321,26 @@ public class TasmoEventProcessor {
             long timestamp = writtenEvent.getEventId();
             long start = System.currentTimeMillis();
             synchronized (lock) {
-                if (writtenInstance.isDeletion()) {
-                    eventPersistor.removeValueFields(model, className, globalCentricId, instanceId, timestamp);
-                    eventPersistor.removeValueFields(model, className, userCentricId, instanceId, timestamp);
-                } else {
-                    eventPersistor.updateValueFields(model, className, globalCentricId, instanceId, timestamp, writtenInstance);
-                    eventPersistor.updateValueFields(model, className, userCentricId, instanceId, timestamp, writtenInstance);
+                for (InstanceEventScope instanceEventScope : instanceEventScopes) {
+                    instanceEventScope.beginEvent(globalCentricId.getTenantId(), instanceId);
+                }
+                try {
+                    List<TenantIdAndCentricId> tenantIdAndCentricIds = model.hasCentricBindings(className)
+                        ? Arrays.asList(globalCentricId, userCentricId)
+                        : Collections.singletonList(globalCentricId);
+                    if (writtenInstance.isDeletion()) {
+                        eventPersistor.removeValueFields(model, className, tenantIdAndCentricIds, instanceId, timestamp);
+                    } else {
+                        batchContext.setUnchangedValueFields(
+                            eventPersistor.updateValueFields(model, className, tenantIdAndCentricIds, instanceId, timestamp, writtenInstance));
+                    }
+                    processingStats.latency("UPDATE", className, System.currentTimeMillis() - start);
+                    eventTraverser.traverseEvent(initiateTraversal, batchContext, globalCentricId, userCentricId, writtenEvent);
+                } finally {
+                    for (InstanceEventScope instanceEventScope : instanceEventScopes) {
+                        instanceEventScope.endEvent(globalCentricId.getTenantId(), instanceId);
+                    }
                 }
-                processingStats.latency("UPDATE", className, System.currentTimeMillis() - start);
-                eventTraverser.traverseEvent(initiateTraversal, batchContext, globalCentricId, userCentricId, writtenEvent);
             }
         }
     }
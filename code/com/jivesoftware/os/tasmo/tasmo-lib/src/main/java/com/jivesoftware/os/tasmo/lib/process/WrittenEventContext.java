@@ -1,7 +1,10 @@
 package com.jivesoftware.os.tasmo.lib.process;
 
 import com.jivesoftware.os.jive.utils.id.Id;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
 import com.jivesoftware.os.tasmo.lib.concur.ConcurrencyChecker;
+import com.jivesoftware.os.tasmo.lib.concur.ResolvedExistence;
+import com.jivesoftware.os.tasmo.lib.process.traversal.PathTraversalExecutor;
 import com.jivesoftware.os.tasmo.lib.read.FieldValueReader;
 import com.jivesoftware.os.tasmo.lib.write.CommitChange;
 import com.jivesoftware.os.tasmo.model.process.ModifiedViewProvider;
@@ -9,6 +12,9 @@ import com.jivesoftware.os.tasmo.model.process.WrittenEvent;
 import com.jivesoftware.os.tasmo.model.process.WrittenEventProvider;
 import com.jivesoftware.os.tasmo.reference.lib.ReferenceStore;
 import com.jivesoftware.os.tasmo.reference.lib.traverser.ReferenceTraverser;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class WrittenEventContext {
 
@@ -23,15 +29,21 @@ public class WrittenEventContext {
     private final ReferenceTraverser referenceTraverser;
     private final ModifiedViewProvider modifiedViewProvider;
     private final CommitChange commitChange;
+    private final PathTraversalExecutor pathTraversalExecutor;
     private final TasmoProcessingStats processingStats;
-
-    public int valuePaths; // hack
-    public int refPaths; // hack
-    public int backRefPaths; // hack
-    public int fanDepth; // hack
-    public int fanBreath; // hack
-    public int readLeaves; // hack
-    public int changes;
+    private final WrittenEventMemoizer memoizer;
+    private final ResolvedExistence resolvedExistence = new ResolvedExistence();
+    private Map<TenantIdAndCentricId, Map<String, Long>> unchangedValueFields = Collections.emptyMap();
+    private int viewChangeFlushAtChanges;
+    private long viewChangeFlushAtBytes;
+
+    public final AtomicInteger valuePaths = new AtomicInteger(); // hack
+    public final AtomicInteger refPaths = new AtomicInteger(); // hack
+    public final AtomicInteger backRefPaths = new AtomicInteger(); // hack
+    public final AtomicInteger fanDepth = new AtomicInteger(); // hack
+    public final AtomicInteger fanBreath = new AtomicInteger(); // hack
+    public final AtomicInteger readLeaves = new AtomicInteger(); // hack
+    public final AtomicInteger changes = new AtomicInteger();
 
     public WrittenEventContext(long eventId,
         Id actorId,
@@ -44,7 +56,30 @@ public class WrittenEventContext {
         ReferenceTraverser referenceTraverser,
         ModifiedViewProvider modifiedViewProvider,
         CommitChange commitChange,
+        PathTraversalExecutor pathTraversalExecutor,
         TasmoProcessingStats processingStats) {
+        this(eventId, actorId, userId, event, writtenEventProvider, concurrencyChecker, referenceStore, fieldValueReader, referenceTraverser,
+            modifiedViewProvider, commitChange, pathTraversalExecutor, processingStats, 0);
+    }
+
+    /**
+     * @param memoizeUpToNEntries how many ref streams and field values this event remembers. Zero disables memoization.
+     */
+    public WrittenEventContext(long eventId,
+        Id actorId,
+        Id userId,
+        WrittenEvent event,
+        WrittenEventProvider writtenEventProvider,
+        ConcurrencyChecker concurrencyChecker,
+        ReferenceStore referenceStore,
+        FieldValueReader fieldValueReader,
+        ReferenceTraverser referenceTraverser,
+        ModifiedViewProvider modifiedViewProvider,
+        CommitChange commitChange,
+        PathTraversalExecutor pathTraversalExecutor,
+        TasmoProcessingStats processingStats,
+        int memoizeUpToNEntries) {
+        this.memoizer = new WrittenEventMemoizer(memoizeUpToNEntries);
         this.eventId = eventId;
         this.actorId = actorId;
         this.userId = userId;
@@ -52,10 +87,11 @@ public class WrittenEventContext {
         this.writtenEventProvider = writtenEventProvider;
         this.concurrencyChecker = concurrencyChecker;
         this.referenceStore = referenceStore;
-        this.fieldValueReader = fieldValueReader;
-        this.referenceTraverser = referenceTraverser;
+        this.fieldValueReader = memoizer.memoize(fieldValueReader);
+        this.referenceTraverser = memoizer.memoize(referenceTraverser);
         this.modifiedViewProvider = modifiedViewProvider;
         this.commitChange = commitChange;
+        this.pathTraversalExecutor = pathTraversalExecutor;
         this.processingStats = processingStats;
     }
 
@@ -107,4 +143,50 @@ public class WrittenEventContext {
         return commitChange;
     }
 
+    public PathTraversalExecutor getPathTraversalExecutor() {
+        return pathTraversalExecutor;
+    }
+
+    public WrittenEventMemoizer getMemoizer() {
+        return memoizer;
+    }
+
+    public ResolvedExistence getResolvedExistence() {
+        return resolvedExistence;
+    }
+
+    /**
+     * @param unchangedValueFields for each tenantIdAndCentricId the value fields persisting the event left as they were, each with
+     * the timestamp of the older event whose value was left in place. See EventPersistor.updateValueFields.
+     */
+    public void setUnchangedValueFields(Map<TenantIdAndCentricId, Map<String, Long>> unchangedValueFields) {
+        this.unchangedValueFields = unchangedValueFields;
+    }
+
+    /**
+     * @param viewChangeFlushAtChanges commit the view changes of a traversal once this many have accumulated. Zero never does.
+     * @param viewChangeFlushAtBytes commit the view changes of a traversal once their values, ids and paths hold about this many bytes.
+     * Zero never does.
+     */
+    public void setViewChangeFlushThresholds(int viewChangeFlushAtChanges, long viewChangeFlushAtBytes) {
+        this.viewChangeFlushAtChanges = viewChangeFlushAtChanges;
+        this.viewChangeFlushAtBytes = viewChangeFlushAtBytes;
+    }
+
+    public int getViewChangeFlushAtChanges() {
+        return viewChangeFlushAtChanges;
+    }
+
+    public long getViewChangeFlushAtBytes() {
+        return viewChangeFlushAtBytes;
+    }
+
+    /**
+     * @return the value fields persisting the event left as they were with the timestamps of the values left in place, or null when
+     * the prior values weren't read.
+     */
+    public Map<String, Long> getUnchangedValueFields(TenantIdAndCentricId tenantIdAndCentricId) {
+        return unchangedValueFields.get(tenantIdAndCentricId);
+    }
+
 }
@@ -0,0 +1,263 @@
+package com.jivesoftware.os.tasmo.lib.process;
+
+import com.jivesoftware.os.jive.utils.base.interfaces.CallbackStream;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.ColumnValueAndTimestamp;
+import com.jivesoftware.os.tasmo.lib.read.FieldValueReader;
+import com.jivesoftware.os.tasmo.model.process.OpaqueFieldValue;
+import com.jivesoftware.os.tasmo.reference.lib.ReferenceWithTimestamp;
+import com.jivesoftware.os.tasmo.reference.lib.traverser.ReferenceTraverser;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the ref streams and field values read while processing a single event so that the many path traversers which walk the same
+ * edges only hit the stores once. Holds at most maxEntries memoized ref streams and field values; once full further reads go straight
+ * to the stores. Lives and dies with its WrittenEventContext.
+ *
+ * Links written by the event are visible to every traversal because the event is persisted before it is traversed. Links the
+ * traversal itself unlinks must be forgotten through forgetRefs.
+ */
+public class WrittenEventMemoizer {
+
+    private static final String STATS_CATEGORY = "EVENT MEMO";
+    private static final int MAX_MEMOIZED_REFS_PER_STREAM = 1_000;
+
+    private final int maxEntries;
+    private final Map<List<Object>, Map<List<Object>, List<ReferenceWithTimestamp>>> refStreams = new HashMap<>();
+    private final Map<List<Object>, Map<String, ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>>> fieldValues = new HashMap<>();
+    private int entries;
+    private final AtomicLong refHits = new AtomicLong();
+    private final AtomicLong refMisses = new AtomicLong();
+    private final AtomicLong fieldHits = new AtomicLong();
+    private final AtomicLong fieldMisses = new AtomicLong();
+
+    public WrittenEventMemoizer(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    public ReferenceTraverser memoize(final ReferenceTraverser referenceTraverser) {
+        if (!isEnabled()) {
+            return referenceTraverser;
+        }
+        return new ReferenceTraverser() {
+
+            @Override
+            public void traverseForwardRef(TenantIdAndCentricId tenantIdAndCentricId,
+                    Set<String> classNames,
+                    String fieldName,
+                    ObjectId id,
+                    long threadTimestamp,
+                    CallbackStream<ReferenceWithTimestamp> refStream) throws InterruptedException, Exception {
+                traverse(referenceTraverser, false, false, tenantIdAndCentricId, classNames, fieldName, id, threadTimestamp, refStream);
+            }
+
+            @Override
+            public void traversBackRefs(TenantIdAndCentricId tenantIdAndCentricId,
+                    Set<String> classNames,
+                    String fieldName,
+                    ObjectId id,
+                    long threadTimestamp,
+                    CallbackStream<ReferenceWithTimestamp> refStream) throws InterruptedException, Exception {
+                traverse(referenceTraverser, true, false, tenantIdAndCentricId, classNames, fieldName, id, threadTimestamp, refStream);
+            }
+
+            @Override
+            public void traverseLatestBackRefs(TenantIdAndCentricId tenantIdAndCentricId,
+                    Set<String> classNames,
+                    String fieldName,
+                    ObjectId id,
+                    long threadTimestamp,
+                    CallbackStream<ReferenceWithTimestamp> refStream) throws InterruptedException, Exception {
+                traverse(referenceTraverser, true, true, tenantIdAndCentricId, classNames, fieldName, id, threadTimestamp, refStream);
+            }
+        };
+    }
+
+    public FieldValueReader memoize(final FieldValueReader fieldValueReader) {
+        if (!isEnabled()) {
+            return fieldValueReader;
+        }
+        return new FieldValueReader() {
+
+            @Override
+            public ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] readFieldValues(TenantIdAndCentricId tenantIdAndCentricId,
+                    ObjectId objectInstanceId,
+                    String[] fieldNamesArray) {
+                return read(fieldValueReader, tenantIdAndCentricId, objectInstanceId, fieldNamesArray);
+            }
+        };
+    }
+
+    /**
+     * Forgets every memoized ref stream, in either direction, of the given field of the given instance.
+     */
+    synchronized public void forgetRefs(TenantIdAndCentricId tenantIdAndCentricId, String fieldName, ObjectId id) {
+        Map<List<Object>, List<ReferenceWithTimestamp>> streams = refStreams.remove(Arrays.<Object>asList(tenantIdAndCentricId, fieldName, id));
+        if (streams != null) {
+            entries -= streams.size();
+        }
+    }
+
+    synchronized public void forgetRefs() {
+        for (Map<List<Object>, List<ReferenceWithTimestamp>> streams : refStreams.values()) {
+            entries -= streams.size();
+        }
+        refStreams.clear();
+    }
+
+    /**
+     * Tallies this event's hits and misses and lets go of everything memoized.
+     */
+    public void discard(TasmoProcessingStats processingStats) {
+        if (!isEnabled()) {
+            return;
+        }
+        report(processingStats, "refs", refHits.get(), refMisses.get());
+        report(processingStats, "fields", fieldHits.get(), fieldMisses.get());
+        synchronized (this) {
+            refStreams.clear();
+            fieldValues.clear();
+            entries = 0;
+        }
+    }
+
+    private void report(TasmoProcessingStats processingStats, String name, long hits, long misses) {
+        processingStats.tally(STATS_CATEGORY, name + "Hits", hits);
+        processingStats.tally(STATS_CATEGORY, name + "Misses", misses);
+    }
+
+    private void traverse(ReferenceTraverser referenceTraverser,
+            boolean backRefs,
+            boolean latest,
+            TenantIdAndCentricId tenantIdAndCentricId,
+            Set<String> classNames,
+            String fieldName,
+            ObjectId id,
+            long threadTimestamp,
+            final CallbackStream<ReferenceWithTimestamp> refStream) throws Exception {
+
+        List<Object> instanceKey = Arrays.<Object>asList(tenantIdAndCentricId, fieldName, id);
+        List<Object> streamKey = Arrays.<Object>asList(backRefs, latest, classNames, threadTimestamp);
+        List<ReferenceWithTimestamp> memoized = null;
+        synchronized (this) {
+            Map<List<Object>, List<ReferenceWithTimestamp>> streams = refStreams.get(instanceKey);
+            if (streams != null) {
+                memoized = streams.get(streamKey);
+            }
+        }
+        if (memoized != null) {
+            refHits.incrementAndGet();
+            for (ReferenceWithTimestamp ref : memoized) {
+                refStream.callback(ref);
+            }
+            refStream.callback(null);
+            return;
+        }
+
+        refMisses.incrementAndGet();
+        final List<ReferenceWithTimestamp> streamed = new ArrayList<>();
+        final boolean[] complete = new boolean[1];
+        CallbackStream<ReferenceWithTimestamp> memoizingStream = new CallbackStream<ReferenceWithTimestamp>() {
+
+            @Override
+            public ReferenceWithTimestamp callback(ReferenceWithTimestamp v) throws Exception {
+                if (v == null) {
+                    complete[0] = true;
+                } else if (streamed.size() < MAX_MEMOIZED_REFS_PER_STREAM) {
+                    streamed.add(v);
+                }
+                return refStream.callback(v);
+            }
+        };
+        if (latest) {
+            referenceTraverser.traverseLatestBackRefs(tenantIdAndCentricId, classNames, fieldName, id, threadTimestamp, memoizingStream);
+        } else if (backRefs) {
+            referenceTraverser.traversBackRefs(tenantIdAndCentricId, classNames, fieldName, id, threadTimestamp, memoizingStream);
+        } else {
+            referenceTraverser.traverseForwardRef(tenantIdAndCentricId, classNames, fieldName, id, threadTimestamp, memoizingStream);
+        }
+
+        if (complete[0] && streamed.size() < MAX_MEMOIZED_REFS_PER_STREAM) {
+            synchronized (this) {
+                if (entries < maxEntries) {
+                    Map<List<Object>, List<ReferenceWithTimestamp>> streams = refStreams.get(instanceKey);
+                    if (streams == null) {
+                        streams = new HashMap<>();
+                        refStreams.put(instanceKey, streams);
+                    }
+                    if (streams.put(streamKey, streamed) == null) {
+                        entries++;
+                    }
+                }
+            }
+        }
+    }
+
+    private ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] read(FieldValueReader fieldValueReader,
+            TenantIdAndCentricId tenantIdAndCentricId,
+            ObjectId objectInstanceId,
+            String[] fieldNamesArray) {
+
+        List<Object> instanceKey = Arrays.<Object>asList(tenantIdAndCentricId, objectInstanceId);
+        @SuppressWarnings("unchecked")
+        ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] got = new ColumnValueAndTimestamp[fieldNamesArray.length];
+        List<String> unread = new ArrayList<>();
+        synchronized (this) {
+            Map<String, ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>> fields = fieldValues.get(instanceKey);
+            for (int i = 0; i < fieldNamesArray.length; i++) {
+                if (fields != null && fields.containsKey(fieldNamesArray[i])) {
+                    got[i] = fields.get(fieldNamesArray[i]);
+                } else {
+                    unread.add(fieldNamesArray[i]);
+                }
+            }
+        }
+        if (unread.isEmpty()) {
+            fieldHits.incrementAndGet();
+            return got;
+        }
+
+        fieldMisses.incrementAndGet();
+        String[] unreadArray = unread.toArray(new String[unread.size()]);
+        ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] read = fieldValueReader.readFieldValues(tenantIdAndCentricId,
+                objectInstanceId, unreadArray);
+        Map<String, ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>> readFields = new HashMap<>();
+        for (int i = 0; i < unreadArray.length; i++) {
+            readFields.put(unreadArray[i], read[i]);
+        }
+        for (int i = 0; i < fieldNamesArray.length; i++) {
+            if (readFields.containsKey(fieldNamesArray[i])) {
+                got[i] = readFields.get(fieldNamesArray[i]);
+            }
+        }
+
+        synchronized (this) {
+            Map<String, ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>> fields = fieldValues.get(instanceKey);
+            if (fields == null) {
+                fields = new HashMap<>();
+                fieldValues.put(instanceKey, fields);
+            }
+            for (Map.Entry<String, ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>> e : readFields.entrySet()) {
+                if (entries >= maxEntries) {
+                    break;
+                }
+                if (!fields.containsKey(e.getKey())) {
+                    fields.put(e.getKey(), e.getValue());
+                    entries++;
+                }
+            }
+        }
+        return got;
+    }
+}
@@ -11,6 +11,7 @@ package com.jivesoftware.os.tasmo.lib.process.bookkeeping;
 import com.jivesoftware.os.jive.utils.base.interfaces.CallbackStream;
 import com.jivesoftware.os.jive.utils.id.Id;
 import com.jivesoftware.os.jive.utils.id.TenantId;
+import com.jivesoftware.os.tasmo.lib.ingress.CoalescedWrittenEvent;
 import com.jivesoftware.os.tasmo.model.process.WrittenEvent;
 import java.util.ArrayList;
 import java.util.List;
@@ -38,6 +39,10 @@ public class TasmoEventsProcessedNotifier {
             if (writtenEvent == null) {
                 continue;
             }
+            if (writtenEvent instanceof CoalescedWrittenEvent) {
+                notifications.addAll(transformToBookkeepingEvents(((CoalescedWrittenEvent) writtenEvent).getCoalescedEvents(), successful));
+                continue;
+            }
             TenantId tenantId = writtenEvent.getTenantId();
             Id actorId = writtenEvent.getActorId();
             long eventId = writtenEvent.getEventId();
@@ -0,0 +1,27 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+/**
+ *
+ * @author jonathan
+ */
+public class CachedStepWalkStreamerFactory implements StepStreamerFactory {
+
+    private final StepTree stepTree;
+    private final StepStream cached;
+
+    public CachedStepWalkStreamerFactory(StepTree stepTree) {
+        this.stepTree = stepTree;
+        this.cached = CachedStepWalk.cache(stepTree);
+    }
+
+    @Override
+    public StepStream create() {
+        return cached;
+    }
+
+    @Override
+    public String toString() {
+        return "CachedStepWalkStreamerFactory{" + "stepTree=" + stepTree + '}';
+    }
+
+}
@@ -55,6 +55,7 @@ public class InitiateReadTraversal {
             referenceTraverser,
             modifiedViewProvider,
             commitChange,
+            new SerialPathTraversalExecutor(),
             processingStats);
 
         TenantIdAndCentricId globalCentricId = new TenantIdAndCentricId(tenantId, Id.NULL);
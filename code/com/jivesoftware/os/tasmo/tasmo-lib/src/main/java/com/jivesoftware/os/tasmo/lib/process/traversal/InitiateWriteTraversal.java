@@ -15,22 +15,28 @@ import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
 import com.jivesoftware.os.jive.utils.logger.MetricLogger;
 import com.jivesoftware.os.jive.utils.logger.MetricLoggerFactory;
 import com.jivesoftware.os.jive.utils.row.column.value.store.api.ColumnValueAndTimestamp;
+import com.jivesoftware.os.tasmo.event.api.ReservedFields;
 import com.jivesoftware.os.tasmo.lib.concur.ConcurrencyChecker;
 import com.jivesoftware.os.tasmo.lib.process.WrittenEventContext;
+import com.jivesoftware.os.tasmo.lib.process.WrittenEventMemoizer;
 import com.jivesoftware.os.tasmo.lib.process.WrittenEventProcessor;
+import com.jivesoftware.os.tasmo.lib.process.WrittenInstanceHelper;
 import com.jivesoftware.os.tasmo.lib.write.PathId;
 import com.jivesoftware.os.tasmo.lib.write.ViewField;
 import com.jivesoftware.os.tasmo.model.process.OpaqueFieldValue;
 import com.jivesoftware.os.tasmo.model.process.WrittenEvent;
 import com.jivesoftware.os.tasmo.model.process.WrittenInstance;
+import com.jivesoftware.os.tasmo.reference.lib.Reference;
 import com.jivesoftware.os.tasmo.reference.lib.ReferenceStore;
 import com.jivesoftware.os.tasmo.reference.lib.ReferenceWithTimestamp;
 import com.jivesoftware.os.tasmo.reference.lib.concur.FieldVersion;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -40,12 +46,12 @@ public class InitiateWriteTraversal implements WrittenEventProcessor {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
-    private final ListMultimap<InitiateTraverserKey, PathTraverser> globalValueTraversers;
-    private final ListMultimap<InitiateTraverserKey, PathTraverser> userValueTraversers;
-    private final ListMultimap<InitiateTraverserKey, PathTraverser> globalForwardRefTraversers;
-    private final ListMultimap<InitiateTraverserKey, PathTraverser> userForwardRefTraversers;
-    private final ListMultimap<InitiateTraverserKey, PathTraverser> globalBackRefTraversers;
-    private final ListMultimap<InitiateTraverserKey, PathTraverser> userBackRefTraversers;
+    private final WrittenInstanceHelper writtenInstanceHelper = new WrittenInstanceHelper();
+
+    private final ValueTraverserIndex globalValueTraversers;
+    private final ValueTraverserIndex userValueTraversers;
+    private final RefTraverserIndex globalRefTraversers;
+    private final RefTraverserIndex userRefTraversers;
 
     public InitiateWriteTraversal(ListMultimap<InitiateTraverserKey, PathTraverser> globalValueTraversers,
             ListMultimap<InitiateTraverserKey, PathTraverser> userValueTraversers,
@@ -53,12 +59,10 @@ public class InitiateWriteTraversal implements WrittenEventProcessor {
             ListMultimap<InitiateTraverserKey, PathTraverser> userForwardRefTraversers,
             ListMultimap<InitiateTraverserKey, PathTraverser> globalBackRefTraversers,
             ListMultimap<InitiateTraverserKey, PathTraverser> userBackRefTraversers) {
-        this.globalValueTraversers = globalValueTraversers;
-        this.userValueTraversers = userValueTraversers;
-        this.globalForwardRefTraversers = globalForwardRefTraversers;
-        this.userForwardRefTraversers = userForwardRefTraversers;
-        this.globalBackRefTraversers = globalBackRefTraversers;
-        this.userBackRefTraversers = userBackRefTraversers;
+        this.globalValueTraversers = new ValueTraverserIndex(globalValueTraversers);
+        this.userValueTraversers = new ValueTraverserIndex(userValueTraversers);
+        this.globalRefTraversers = new RefTraverserIndex(globalForwardRefTraversers, globalBackRefTraversers);
+        this.userRefTraversers = new RefTraverserIndex(userForwardRefTraversers, userBackRefTraversers);
     }
 
     @Override
@@ -73,14 +77,14 @@ public class InitiateWriteTraversal implements WrittenEventProcessor {
         processValues(userValueTraversers, "values.centric",
                 batchContext, userCentricId, globalCentricId, userCentricId, writtenEvent, threadTimestamp);
 
-        processRefs(globalForwardRefTraversers, globalBackRefTraversers, "refs.global",
+        processRefs(globalRefTraversers, "refs.global",
                 batchContext, globalCentricId, globalCentricId, userCentricId, writtenEvent, threadTimestamp);
-        processRefs(userForwardRefTraversers, userBackRefTraversers, "refs.global",
+        processRefs(userRefTraversers, "refs.global",
                 batchContext, userCentricId, globalCentricId, userCentricId, writtenEvent, threadTimestamp);
 
     }
 
-    private void processValues(ListMultimap<InitiateTraverserKey, PathTraverser> valueTraversers,
+    private void processValues(ValueTraverserIndex valueTraversers,
             String timerName,
             WrittenEventContext batchContext,
             TenantIdAndCentricId tenantIdAndCentricId,
@@ -88,7 +92,7 @@ public class InitiateWriteTraversal implements WrittenEventProcessor {
             TenantIdAndCentricId userCentricId,
             WrittenEvent writtenEvent,
             long threadTimestamp) throws Exception {
-        if (valueTraversers != null && !valueTraversers.isEmpty()) {
+        if (!valueTraversers.isEmpty()) {
             LOG.startTimer(timerName);
             try {
                 processValues(batchContext, tenantIdAndCentricId, globalCentricId, userCentricId, writtenEvent, valueTraversers, threadTimestamp);
@@ -98,8 +102,7 @@ public class InitiateWriteTraversal implements WrittenEventProcessor {
         }
     }
 
-    private void processRefs(ListMultimap<InitiateTraverserKey, PathTraverser> forwardRefTraversers,
-            ListMultimap<InitiateTraverserKey, PathTraverser> backRefTraversers,
+    private void processRefs(RefTraverserIndex refTraversers,
             String timerName,
             WrittenEventContext batchContext,
             TenantIdAndCentricId tenantIdAndCentricId,
@@ -107,10 +110,14 @@ public class InitiateWriteTraversal implements WrittenEventProcessor {
             TenantIdAndCentricId userCentricId,
             WrittenEvent writtenEvent,
             long threadTimestamp) throws Exception {
+        if (refTraversers.isEmpty()) {
+            // e.g. the centric scope of a class no centric path touches
+            return;
+        }
         LOG.startTimer(timerName);
         try {
             processRefs(batchContext,
-                    tenantIdAndCentricId, globalCentricId, userCentricId, writtenEvent, forwardRefTraversers, backRefTraversers, threadTimestamp);
+                    tenantIdAndCentricId, globalCentricId, userCentricId, writtenEvent, refTraversers, threadTimestamp);
         } finally {
             LOG.stopTimer(timerName);
         }
@@ -121,7 +128,7 @@ public class InitiateWriteTraversal implements WrittenEventProcessor {
             final TenantIdAndCentricId globalCentricId,
             final TenantIdAndCentricId userCentricId,
             final WrittenEvent writtenEvent,
-            final ListMultimap<InitiateTraverserKey, PathTraverser> valueTraversers,
+            final ValueTraverserIndex valueTraversers,
             final long threadTimestamp) throws Exception {
         final ConcurrencyChecker concurrencyChecker = writtenEventContext.getConcurrencyChecker();
         final long timestamp = writtenEvent.getEventId();
@@ -131,44 +138,37 @@ public class InitiateWriteTraversal implements WrittenEventProcessor {
         if (writtenInstance.isDeletion()) {
             long highest = concurrencyChecker.highestVersion(tenantIdAndCentricId, instanceId, "*exists*", timestamp);
             if (highest <= timestamp) {
+                final ViewChangeFlusher flusher = new ViewChangeFlusher(writtenEventContext, tenantIdAndCentricId);
                 List<Callable<List<ViewField>>> callables = new ArrayList<>();
-                for (InitiateTraverserKey key : valueTraversers.keySet()) {
-                    if (writtenInstance.hasField(key.getTriggerFieldName()) || key.getRefFieldName() == null) { // TODO fix == null HACK!
-                        for (final PathTraverser pathTraverser : valueTraversers.get(key)) {
-                            callables.add(new Callable<List<ViewField>>() {
-
-                                @Override
-                                public List<ViewField> call() throws Exception {
-                                    PathTraversalContext context = pathTraverser.createContext(writtenEventContext, writtenEvent, threadTimestamp, true);
-                                    PathContext pathContext = pathTraverser.createPathContext();
-                                    LeafContext leafContext = new WriteLeafContext();
-                                    pathContext.setPathId(writtenEventContext, pathTraverser.getPathIndex(), instanceId, timestamp);
-
-                                    List<ReferenceWithTimestamp> valueVersions = leafContext.removeLeafNodeFields(writtenEventContext, pathContext);
-                                    pathContext.addVersions(pathTraverser.getPathIndex(), valueVersions);
-
-                                    pathTraverser.traverse(globalCentricId, userCentricId, writtenEventContext, context, pathContext, leafContext,
-                                            new PathId(instanceId, timestamp));
-                                    writtenEventContext.valuePaths++;
-                                    List<ViewField> takeChanges = context.takeChanges(); // TODO add auto flush if writeableChanges is to large.
-                                    writtenEventContext.changes += takeChanges.size();
-                                    return takeChanges;
-                                }
-                            });
+                for (final PathTraverser pathTraverser : triggeredValueTraversers(writtenEventContext, writtenInstance, valueTraversers)) {
+                    callables.add(new Callable<List<ViewField>>() {
+
+                        @Override
+                        public List<ViewField> call() throws Exception {
+                            PathTraversalContext context = pathTraverser.createContext(writtenEventContext, writtenEvent, threadTimestamp, true);
+                            context.flushTo(flusher);
+                            PathContext pathContext = pathTraverser.createPathContext();
+                            LeafContext leafContext = new WriteLeafContext();
+                            pathContext.setPathId(writtenEventContext, pathTraverser.getPathIndex(), instanceId, timestamp);
+
+                            pathTraverser.traverse(globalCentricId, userCentricId, writtenEventContext, context, pathContext, leafContext,
+                                    new PathId(instanceId, timestamp));
+                            writtenEventContext.valuePaths.incrementAndGet();
+                            return context.takeChanges();
                         }
-                    }
+                    });
                 }
-                commit(writtenEventContext, tenantIdAndCentricId, callables);
+                commit(writtenEventContext, flusher, callables);
             }
 
         } else {
+            List<PathTraverser> pathTraversers = triggeredValueTraversers(writtenEventContext, writtenInstance, valueTraversers);
+            if (pathTraversers.isEmpty()) {
+                return;
+            }
             Set<String> fieldNames = new HashSet<>();
-            for (InitiateTraverserKey key : valueTraversers.keySet()) {
-                if (writtenInstance.hasField(key.getTriggerFieldName()) || key.getRefFieldName() == null) { // TODO fix == null HACK!
-                    for (final PathTraverser pathTraverser : valueTraversers.get(key)) {
-                        fieldNames.addAll(pathTraverser.getInitialFieldNames());
-                    }
-                }
+            for (PathTraverser pathTraverser : pathTraversers) {
+                fieldNames.addAll(pathTraverser.getInitialFieldNames());
             }
 
             String[] fieldNamesArray = fieldNames.toArray(new String[fieldNames.size()]);
@@ -176,50 +176,124 @@ public class InitiateWriteTraversal implements WrittenEventProcessor {
                     .getFieldValueReader()
                     .readFieldValues(tenantIdAndCentricId, instanceId, fieldNamesArray);
 
+            Map<String, Long> unchangedValueFields = writtenEventContext.getUnchangedValueFields(tenantIdAndCentricId);
+            String[] carriedFieldNames = null;
+            if (unchangedValueFields != null) {
+                List<String> carried = new ArrayList<>();
+                for (String fieldName : fieldNamesArray) {
+                    if (writtenInstance.hasField(fieldName)) {
+                        carried.add(fieldName);
+                    }
+                }
+                carriedFieldNames = carried.toArray(new String[carried.size()]);
+                skipUnchanged(writtenEventContext, tenantIdAndCentricId, writtenInstance, unchangedValueFields, fieldNamesArray, got,
+                        pathTraversers);
+                if (pathTraversers.isEmpty()) {
+                    concurrencyChecker.traversed(tenantIdAndCentricId, instanceId, carriedFieldNames, timestamp);
+                    return;
+                }
+            }
+
             final Map<String, ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>> fieldValues = new HashMap<>();
             for (int i = 0; i < fieldNamesArray.length; i++) {
                 fieldValues.put(fieldNamesArray[i], got[i]);
             }
 
             final Set<FieldVersion> want = new HashSet<>();
+            for (int i = 0; i < fieldNamesArray.length; i++) {
+                if (got[i] != null) {
+                    want.add(new FieldVersion(instanceId, fieldNamesArray[i], got[i].getTimestamp()));
+                }
+            }
+
+            final ViewChangeFlusher flusher = new ViewChangeFlusher(writtenEventContext, tenantIdAndCentricId);
             List<Callable<List<ViewField>>> callables = new ArrayList<>();
-            for (InitiateTraverserKey key : valueTraversers.keySet()) {
-                if (writtenInstance.hasField(key.getTriggerFieldName()) || key.getRefFieldName() == null) { // TODO fix == null HACK!
-                    for (final PathTraverser pathTraverser : valueTraversers.get(key)) {
-                        callables.add(new Callable<List<ViewField>>() {
-
-                            @Override
-                            public List<ViewField> call() throws Exception {
-                                PathTraversalContext context = pathTraverser.createContext(writtenEventContext, writtenEvent, threadTimestamp, false);
-                                PathContext pathContext = pathTraverser.createPathContext();
-                                LeafContext leafContext = new WriteLeafContext();
-
-                                Set<String> fieldNames = pathTraverser.getInitialFieldNames();
-                                List<ReferenceWithTimestamp> valueVersions = leafContext.populateLeafNodeFields(writtenEventContext,
-                                        pathContext,
-                                        instanceId,
-                                        fieldNames,
-                                        fieldValues);
-
-                                pathContext.setPathId(writtenEventContext, pathTraverser.getPathIndex(), instanceId, timestamp);
-                                pathContext.addVersions(pathTraverser.getPathIndex(), valueVersions);
-                                pathTraverser.traverse(globalCentricId, userCentricId, writtenEventContext, context, pathContext, leafContext,
-                                        new PathId(instanceId, timestamp));
-                                writtenEventContext.valuePaths++;
-                                for (ReferenceWithTimestamp valueVersion : valueVersions) {
-                                    want.add(new FieldVersion(instanceId, valueVersion.getFieldName(), valueVersion.getTimestamp()));
-                                }
-                                List<ViewField> takeChanges = context.takeChanges(); // TODO add auto flush if writeableChanges is to large.
-                                writtenEventContext.changes += takeChanges.size();
-                                return takeChanges;
-                            }
-                        });
+            for (final PathTraverser pathTraverser : pathTraversers) {
+                callables.add(new Callable<List<ViewField>>() {
 
+                    @Override
+                    public List<ViewField> call() throws Exception {
+                        PathTraversalContext context = pathTraverser.createContext(writtenEventContext, writtenEvent, threadTimestamp, false);
+                        context.setInitialFieldValues(fieldValues);
+                        context.flushTo(flusher);
+                        PathContext pathContext = pathTraverser.createPathContext();
+                        LeafContext leafContext = new WriteLeafContext();
+
+                        pathContext.setPathId(writtenEventContext, pathTraverser.getPathIndex(), instanceId, timestamp);
+                        pathTraverser.traverse(globalCentricId, userCentricId, writtenEventContext, context, pathContext, leafContext,
+                                new PathId(instanceId, timestamp));
+                        writtenEventContext.valuePaths.incrementAndGet();
+                        return context.takeChanges();
                     }
-                }
+                });
             }
-            commit(writtenEventContext, tenantIdAndCentricId, callables);
+            commit(writtenEventContext, flusher, callables);
             concurrencyChecker.checkIfModifiedOutFromUnderneathMe(tenantIdAndCentricId, want);
+            if (carriedFieldNames != null) {
+                concurrencyChecker.traversed(tenantIdAndCentricId, instanceId, carriedFieldNames, timestamp);
+            }
+        }
+    }
+
+    /**
+     * The distinct value traversers the written instance triggers. Traversers are shared across trigger keys so each is only walked once.
+     */
+    private List<PathTraverser> triggeredValueTraversers(WrittenEventContext writtenEventContext,
+            WrittenInstance writtenInstance,
+            ValueTraverserIndex valueTraversers) {
+        List<PathTraverser> pathTraversers = new ArrayList<>();
+        int triggeredPaths = valueTraversers.triggered(writtenInstance, pathTraversers);
+        traversalsSaved(writtenEventContext, triggeredPaths, pathTraversers);
+        return pathTraversers;
+    }
+
+    /**
+     * Removes the traversers whose initial fields all hold values whose own events were completely traversed, since the views they
+     * would write already hold the same values. A field the event carries must be unchanged and traversed through the older event
+     * which stored its value. A field it doesn't carry must be traversed through the event which stored it, or through the
+     * instance's prior event when it isn't stored. Anything else, such as a value whose traversal failed or never ran, is traversed.
+     */
+    private void skipUnchanged(WrittenEventContext writtenEventContext,
+            TenantIdAndCentricId tenantIdAndCentricId,
+            WrittenInstance writtenInstance,
+            Map<String, Long> unchangedValueFields,
+            String[] fieldNames,
+            ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] got,
+            List<PathTraverser> pathTraversers) {
+        if (unchangedValueFields.isEmpty()) {
+            // a new instance or a replayed event
+            return;
+        }
+        Long priorEvent = unchangedValueFields.get(ReservedFields.NIL_FIELD);
+        List<Long> traversed = writtenEventContext.getConcurrencyChecker().traversedVersions(tenantIdAndCentricId,
+                writtenInstance.getInstanceId(), fieldNames);
+        Set<String> materialized = new HashSet<>();
+        for (int i = 0; i < fieldNames.length; i++) {
+            Long written;
+            if (writtenInstance.hasField(fieldNames[i])) {
+                written = unchangedValueFields.get(fieldNames[i]);
+            } else {
+                written = (got[i] == null) ? priorEvent : got[i].getTimestamp();
+            }
+            Long traversedThrough = traversed.get(i);
+            if (written != null && traversedThrough != null && traversedThrough >= written) {
+                materialized.add(fieldNames[i]);
+            }
+        }
+        int skipped = 0;
+        for (Iterator<PathTraverser> iterator = pathTraversers.iterator(); iterator.hasNext();) {
+            PathTraverser pathTraverser = iterator.next();
+            if (materialized.containsAll(pathTraverser.getInitialFieldNames())) {
+                iterator.remove();
+                skipped++;
+            }
+        }
+        writtenEventContext.getProcessingStats().tally("WRITE TRAVERSAL", "unchangedValueTraversalsSkipped", skipped);
+    }
+
+    private void traversalsSaved(WrittenEventContext writtenEventContext, int triggeredPaths, Collection<PathTraverser> pathTraversers) {
+        if (!pathTraversers.isEmpty()) {
+            writtenEventContext.getProcessingStats().tally("WRITE TRAVERSAL", "traversalsSaved", triggeredPaths - pathTraversers.size());
         }
     }
 
@@ -228,63 +302,74 @@ public class InitiateWriteTraversal implements WrittenEventProcessor {
             final TenantIdAndCentricId globalCentricId,
             final TenantIdAndCentricId userCentricId,
             final WrittenEvent writtenEvent,
-            final ListMultimap<InitiateTraverserKey, PathTraverser> forwardRefTraversers,
-            final ListMultimap<InitiateTraverserKey, PathTraverser> backRefTraversers,
+            final RefTraverserIndex refTraversers,
             final long threadTimestamp) throws Exception {
         final ConcurrencyChecker concurrencyChecker = writtenEventContext.getConcurrencyChecker();
         final ReferenceStore referenceStore = writtenEventContext.getReferenceStore();
+        final WrittenEventMemoizer memoizer = writtenEventContext.getMemoizer();
         final long timestamp = writtenEvent.getEventId();
         WrittenInstance writtenInstance = writtenEvent.getWrittenInstance();
         final ObjectId instanceId = writtenInstance.getInstanceId();
 
-        Set<InitiateTraverserKey> allKeys = new HashSet<>();
-        allKeys.addAll(forwardRefTraversers.keySet());
-        allKeys.addAll(backRefTraversers.keySet());
-
-        List<InitiateTraverserKey> keys = new ArrayList<>();
+        // Traversers are shared across the trigger keys of a ref field so each ref field is only traversed once.
+        List<Set<PathTraverser>> forwardTraversers = new ArrayList<>();
+        List<Set<PathTraverser>> backTraversers = new ArrayList<>();
         List<String> accumulateRefFieldNames = new ArrayList<>();
-        for (final InitiateTraverserKey key : allKeys) {
-            if (writtenInstance.hasField(key.getTriggerFieldName())
-                    && (writtenInstance.hasField(key.getRefFieldName()) || writtenInstance.isDeletion())) {
-                keys.add(key);
-                accumulateRefFieldNames.add(key.getRefFieldName());
-            }
-        }
+        Set<PathTraverser> triggeredTraversers = new HashSet<>();
+        int triggeredPaths = refTraversers.triggered(writtenInstance, accumulateRefFieldNames, forwardTraversers, backTraversers,
+                triggeredTraversers);
+        traversalsSaved(writtenEventContext, triggeredPaths, triggeredTraversers);
 
         String[] refFieldNames = accumulateRefFieldNames.toArray(new String[accumulateRefFieldNames.size()]);
         List<Long> highestVersions = concurrencyChecker.highestVersions(tenantIdAndCentricId, instanceId, refFieldNames);
 
+        final ViewChangeFlusher flusher = new ViewChangeFlusher(writtenEventContext, tenantIdAndCentricId);
         List<Callable<List<ViewField>>> callables = new ArrayList<>();
         for (int i = 0; i < refFieldNames.length; i++) {
-            final InitiateTraverserKey key = keys.get(i);
+            final Set<PathTraverser> forwardRefPaths = forwardTraversers.get(i);
+            final Set<PathTraverser> backRefPaths = backTraversers.get(i);
             final String refFieldName = refFieldNames[i];
             final long highest = highestVersions.get(i) == null ? timestamp : highestVersions.get(i);
+            if (highest > timestamp) {
+                // A newer event has already relinked this field and will unlink anything it didn't retain.
+                continue;
+            }
+            final Set<ObjectId> retainTos = writtenInstance.isDeletion()
+                    ? Collections.<ObjectId>emptySet() : referencedIds(writtenInstance, refFieldName);
             callables.add(new Callable<List<ViewField>>() {
 
                 @Override
                 public List<ViewField> call() throws Exception {
-                    final List<ViewField> writeableChanges = new ArrayList<>();
-                    referenceStore.unlink(tenantIdAndCentricId, Math.max(timestamp, highest), instanceId, refFieldName, threadTimestamp,
+                    final ViewChangeBuffer writeableChanges = new ViewChangeBuffer(flusher);
+                    referenceStore.unlink(tenantIdAndCentricId, timestamp, instanceId, refFieldName, retainTos, threadTimestamp,
                             new CallbackStream<ReferenceWithTimestamp>() {
                                 @Override
                                 public ReferenceWithTimestamp callback(ReferenceWithTimestamp to) throws Exception {
+                                    if (to != null) {
+                                        // the link is gone so anything memoized on either side of it is stale.
+                                        memoizer.forgetRefs(tenantIdAndCentricId, refFieldName, instanceId);
+                                        memoizer.forgetRefs(tenantIdAndCentricId, refFieldName, to.getObjectId());
+                                    }
                                     if (to != null && to.getTimestamp() < timestamp) {
                                         traverse(writtenEventContext,
                                                 globalCentricId, userCentricId, writtenEvent,
-                                                forwardRefTraversers,
-                                                backRefTraversers,
-                                                key, instanceId, refFieldName, to, threadTimestamp, true,
-                                                writeableChanges);
+                                                forwardRefPaths,
+                                                backRefPaths,
+                                                instanceId, refFieldName, to, threadTimestamp, true,
+                                                flusher, writeableChanges);
                                     }
                                     return to;
                                 }
                             });
-                    return writeableChanges;
+                    return writeableChanges.take();
                 }
             });
         }
 
-        commit(writtenEventContext, tenantIdAndCentricId, callables);
+        commit(writtenEventContext, flusher, callables);
+        if (!callables.isEmpty()) {
+            memoizer.forgetRefs();
+        }
 
         if (!writtenInstance.isDeletion()) {
             Set<FieldVersion> fieldVersions = new HashSet<>();
@@ -296,13 +381,14 @@ public class InitiateWriteTraversal implements WrittenEventProcessor {
 
             callables.clear();
             for (int i = 0; i < refFieldNames.length; i++) {
-                final InitiateTraverserKey key = keys.get(i);
+                final Set<PathTraverser> forwardRefPaths = forwardTraversers.get(i);
+                final Set<PathTraverser> backRefPaths = backTraversers.get(i);
                 final String refFieldName = refFieldNames[i];
                 callables.add(new Callable<List<ViewField>>() {
 
                     @Override
                     public List<ViewField> call() throws Exception {
-                        final List<ViewField> writeableChanges = new ArrayList<>();
+                        final ViewChangeBuffer writeableChanges = new ViewChangeBuffer(flusher);
                         referenceStore.streamForwardRefs(tenantIdAndCentricId,
                                 Collections.singleton(instanceId.getClassName()),
                                 refFieldName,
@@ -312,46 +398,60 @@ public class InitiateWriteTraversal implements WrittenEventProcessor {
 
                                     @Override
                                     public ReferenceWithTimestamp callback(ReferenceWithTimestamp to) throws Exception {
-                                        if (to != null) {
+                                        // Links retained from an earlier event were traversed when they were added.
+                                        if (to != null && to.getTimestamp() >= timestamp) {
                                             traverse(writtenEventContext,
                                                     globalCentricId, userCentricId, writtenEvent,
-                                                    forwardRefTraversers,
-                                                    backRefTraversers,
-                                                    key, instanceId, refFieldName, to, threadTimestamp, false,
-                                                    writeableChanges);
+                                                    forwardRefPaths,
+                                                    backRefPaths,
+                                                    instanceId, refFieldName, to, threadTimestamp, false,
+                                                    flusher, writeableChanges);
                                         }
                                         return to;
                                     }
                                 });
-                        return writeableChanges;
+                        return writeableChanges.take();
                     }
                 });
             }
-            commit(writtenEventContext, tenantIdAndCentricId, callables);
+            commit(writtenEventContext, flusher, callables);
             concurrencyChecker.checkIfModifiedOutFromUnderneathMe(tenantIdAndCentricId, fieldVersions);
         }
 
     }
 
+    private Set<ObjectId> referencedIds(WrittenInstance writtenInstance, String refFieldName) {
+        OpaqueFieldValue fieldValue = writtenInstance.getFieldValue(refFieldName);
+        if (fieldValue == null || fieldValue.isNull()) {
+            return Collections.emptySet();
+        }
+        Set<ObjectId> ids = new HashSet<>();
+        for (Reference reference : writtenInstanceHelper.getReferencesFromInstanceField(writtenInstance, refFieldName)) {
+            ids.add(reference.getObjectId());
+        }
+        return ids;
+    }
+
     private void traverse(final WrittenEventContext writtenEventContext,
             final TenantIdAndCentricId globalCentricId,
             final TenantIdAndCentricId userCentricId,
             final WrittenEvent writtenEvent,
-            final ListMultimap<InitiateTraverserKey, PathTraverser> forwardRefTraversers,
-            final ListMultimap<InitiateTraverserKey, PathTraverser> backRefTraversers,
-            InitiateTraverserKey key,
+            final Set<PathTraverser> forwardRefTraversers,
+            final Set<PathTraverser> backRefTraversers,
             final ObjectId instanceId,
             String refFieldName,
             final ReferenceWithTimestamp to,
             final long threadTimestamp,
             final boolean removal,
-            List<ViewField> writeableChanges) throws Exception {
+            ViewChangeFlusher flusher,
+            ViewChangeBuffer writeableChanges) throws Exception {
 
         final ReferenceWithTimestamp from = new ReferenceWithTimestamp(instanceId,
                 refFieldName, to.getTimestamp());
 
-        for (final PathTraverser pathTraverser : forwardRefTraversers.get(key)) {
+        for (final PathTraverser pathTraverser : forwardRefTraversers) {
             PathTraversalContext context = pathTraverser.createContext(writtenEventContext, writtenEvent, threadTimestamp, removal);
+            context.flushTo(flusher);
             PathContext pathContext = pathTraverser.createPathContext();
             LeafContext leafContext = new WriteLeafContext();
             pathContext.setPathId(writtenEventContext, pathTraverser.getPathIndex(), from.getObjectId(), from.getTimestamp());
@@ -359,14 +459,13 @@ public class InitiateWriteTraversal implements WrittenEventProcessor {
 
             pathTraverser.traverse(globalCentricId, userCentricId, writtenEventContext, context, pathContext, leafContext,
                     new PathId(to.getObjectId(), to.getTimestamp()));
-            writtenEventContext.refPaths++;
-            List<ViewField> takeChanges = context.takeChanges();
-            writtenEventContext.changes += takeChanges.size();
-            writeableChanges.addAll(takeChanges); // TODO add auto flush if writeableChanges is getting to be to large.
+            writtenEventContext.refPaths.incrementAndGet();
+            writeableChanges.addAll(context.takeChanges());
         }
 
-        for (final PathTraverser pathTraverser : backRefTraversers.get(key)) {
+        for (final PathTraverser pathTraverser : backRefTraversers) {
             PathTraversalContext context = pathTraverser.createContext(writtenEventContext, writtenEvent, threadTimestamp, removal);
+            context.flushTo(flusher);
             PathContext pathContext = pathTraverser.createPathContext();
             LeafContext leafContext = new WriteLeafContext();
             pathContext.setPathId(writtenEventContext, pathTraverser.getPathIndex(), to.getObjectId(), to.getTimestamp());
@@ -374,23 +473,18 @@ public class InitiateWriteTraversal implements WrittenEventProcessor {
 
             pathTraverser.traverse(globalCentricId, userCentricId, writtenEventContext, context, pathContext, leafContext,
                     new PathId(instanceId, to.getTimestamp()));
-            writtenEventContext.backRefPaths++;
-            List<ViewField> takeChanges = context.takeChanges();
-            writtenEventContext.changes += takeChanges.size();
-            writeableChanges.addAll(takeChanges); // TODO add auto flush if writeableChanges is getting to be to large.
+            writtenEventContext.backRefPaths.incrementAndGet();
+            writeableChanges.addAll(context.takeChanges());
         }
 
     }
 
     private void commit(WrittenEventContext writtenEventContext,
-            TenantIdAndCentricId tenantIdAndCentricId,
+            ViewChangeFlusher flusher,
             List<Callable<List<ViewField>>> callables) throws Exception {
 
-        List<ViewField> writeableChanges = new ArrayList<>();
-        for (Callable<List<ViewField>> changes : callables) {
-            writeableChanges.addAll(changes.call());
-        }
-        writtenEventContext.getCommitChange().commitChange(writtenEventContext, tenantIdAndCentricId, writeableChanges);
+        List<ViewField> writeableChanges = writtenEventContext.getPathTraversalExecutor().execute(callables);
+        flusher.commit(writeableChanges);
     }
 
 }
@@ -0,0 +1,205 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.jivesoftware.os.jive.utils.base.interfaces.CallbackStream;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.jive.utils.logger.MetricLogger;
+import com.jivesoftware.os.jive.utils.logger.MetricLoggerFactory;
+import com.jivesoftware.os.tasmo.lib.process.TasmoProcessingStats;
+import com.jivesoftware.os.tasmo.lib.process.WrittenEventContext;
+import com.jivesoftware.os.tasmo.lib.write.PathId;
+import com.jivesoftware.os.tasmo.reference.lib.RefStreamRequestContext;
+import com.jivesoftware.os.tasmo.reference.lib.ReferenceStore;
+import com.jivesoftware.os.tasmo.reference.lib.ReferenceWithTimestamp;
+import com.jivesoftware.os.tasmo.reference.lib.traverser.ReferenceTraverser;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Walks a StepTree one hop at a time. Every ref stream the next hop needs is resolved with a single
+ * ReferenceStore.multiStreamRefs call and then the tree is walked depth first exactly like StepTreeStreamer does, replaying the
+ * prefetched streams. Streams which could not be prefetched are read as usual so the produced ViewFields are the same.
+ *
+ * @author jonathan
+ */
+public class LevelAtATimeStepStreamer implements StepStream {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+    private static final String STATS_CATEGORY = "LEVEL AT A TIME";
+
+    private final StepTree stepTree;
+    private final int maxFrontierSize;
+
+    public LevelAtATimeStepStreamer(StepTree stepTree, int maxFrontierSize) {
+        this.stepTree = stepTree;
+        this.maxFrontierSize = maxFrontierSize;
+    }
+
+    @Override
+    public void stream(TenantIdAndCentricId globalCentricId,
+            TenantIdAndCentricId userCentricId,
+            WrittenEventContext writtenEventContext,
+            PathTraversalContext context,
+            PathContext pathContext,
+            LeafContext leafContext,
+            PathId pathId) throws Exception {
+
+        ReferenceStore referenceStore = writtenEventContext.getReferenceStore();
+        if (referenceStore == null) {
+            new StepTreeStreamer(stepTree).stream(globalCentricId, userCentricId, writtenEventContext, context, pathContext, leafContext,
+                    pathId);
+            return;
+        }
+
+        PrefetchedReferenceTraverser prefetched = new PrefetchedReferenceTraverser(writtenEventContext.getReferenceTraverser());
+        prefetch(referenceStore, prefetched, globalCentricId, userCentricId, writtenEventContext, context, pathContext, pathId);
+        stream(stepTree, prefetched, globalCentricId, userCentricId, writtenEventContext, context, pathContext, leafContext, pathId);
+    }
+
+    private void prefetch(ReferenceStore referenceStore,
+            PrefetchedReferenceTraverser prefetched,
+            TenantIdAndCentricId globalCentricId,
+            TenantIdAndCentricId userCentricId,
+            WrittenEventContext writtenEventContext,
+            PathTraversalContext context,
+            PathContext pathContext,
+            PathId pathId) throws Exception {
+
+        TasmoProcessingStats processingStats = writtenEventContext.getProcessingStats();
+        List<Frontier> frontier = new ArrayList<>();
+        frontier.add(new Frontier(stepTree, pathId));
+        while (!frontier.isEmpty()) {
+            Map<List<Object>, RefStreamRequestContext> requests = new LinkedHashMap<>();
+            List<Hop> hops = new ArrayList<>();
+            for (int i = 0; i < frontier.size(); i++) {
+                Frontier at = frontier.get(i);
+                for (Map.Entry<StepTraverser, StepTree> entry : at.stepTree.map.entrySet()) {
+                    StepTraverser step = entry.getKey();
+                    if (step instanceof RefStepTraverser) {
+                        RefStepTraverser refStep = (RefStepTraverser) step;
+                        RefStreamRequestContext request = refStep.refStreamRequest(globalCentricId, userCentricId,
+                                at.pathId.getObjectId(), context.getThreadTimestamp());
+                        if (request == null) {
+                            continue; // streamed as usual when the tree is walked
+                        }
+                        List<Object> key = PrefetchedReferenceTraverser.key(request);
+                        if (!prefetched.isPrefetched(key) && !requests.containsKey(key)) {
+                            requests.put(key, request);
+                        }
+                        hops.add(new Hop(refStep, entry.getValue(), key));
+                    } else if (step instanceof TraverseValue) {
+                        // value steps don't hop, they hand the traversal back to the id the event was processed from.
+                        PathId to = pathContext.getPathId(((TraverseValue) step).getProcessingPathIndex());
+                        if (to != null) {
+                            frontier.add(new Frontier(entry.getValue(), to));
+                        }
+                    } else if (step instanceof TraverseInitialFields) {
+                        frontier.add(new Frontier(entry.getValue(), at.pathId));
+                    }
+                }
+            }
+            if (requests.isEmpty()) {
+                break;
+            }
+
+            long start = System.currentTimeMillis();
+            List<RefStreamRequestContext> batch = new ArrayList<>(requests.values());
+            referenceStore.multiStreamRefs(batch);
+            for (Map.Entry<List<Object>, RefStreamRequestContext> entry : requests.entrySet()) {
+                final List<ReferenceWithTimestamp> refs = new ArrayList<>();
+                entry.getValue().traverse(new CallbackStream<ReferenceWithTimestamp>() {
+
+                    @Override
+                    public ReferenceWithTimestamp callback(ReferenceWithTimestamp v) throws Exception {
+                        if (v != null) {
+                            refs.add(v);
+                        }
+                        return v;
+                    }
+                });
+                prefetched.prefetched(entry.getKey(), refs);
+            }
+            processingStats.latency(STATS_CATEGORY, "multiStreamRefs", System.currentTimeMillis() - start);
+            processingStats.tally(STATS_CATEGORY, "hops", 1);
+            processingStats.tally(STATS_CATEGORY, "requests", batch.size());
+
+            List<Frontier> nextFrontier = new ArrayList<>();
+            for (Hop hop : hops) {
+                if (hop.stepTree.map.isEmpty()) {
+                    continue;
+                }
+                for (ReferenceWithTimestamp to : prefetched.get(hop.key)) {
+                    if (hop.step.streamsTo(to)) {
+                        nextFrontier.add(new Frontier(hop.stepTree, new PathId(to.getObjectId(), to.getTimestamp())));
+                    }
+                }
+            }
+            if (nextFrontier.size() > maxFrontierSize) {
+                LOG.inc("levelAtATime>frontierExceeded");
+                break;
+            }
+            frontier = nextFrontier;
+        }
+    }
+
+    private void stream(StepTree tree,
+            final ReferenceTraverser referenceTraverser,
+            TenantIdAndCentricId globalCentricId,
+            TenantIdAndCentricId userCentricId,
+            WrittenEventContext writtenEventContext,
+            PathTraversalContext context,
+            PathContext pathContext,
+            LeafContext leafContext,
+            PathId pathId) throws Exception {
+
+        for (Map.Entry<StepTraverser, StepTree> entry : tree.map.entrySet()) {
+            final StepTree nextStepTree = entry.getValue();
+            StepStream streamTo = new StepStream() {
+
+                @Override
+                public void stream(TenantIdAndCentricId globalCentricId,
+                        TenantIdAndCentricId userCentricId,
+                        WrittenEventContext writtenEventContext,
+                        PathTraversalContext context,
+                        PathContext pathContext,
+                        LeafContext leafContext,
+                        PathId pathId) throws Exception {
+                    LevelAtATimeStepStreamer.this.stream(nextStepTree, referenceTraverser,
+                            globalCentricId, userCentricId, writtenEventContext, context, pathContext, leafContext, pathId);
+                }
+            };
+            StepTraverser step = entry.getKey();
+            if (step instanceof RefStepTraverser) {
+                ((RefStepTraverser) step).process(referenceTraverser,
+                        globalCentricId, userCentricId, writtenEventContext, context, pathContext, leafContext, pathId, streamTo);
+            } else {
+                step.process(globalCentricId, userCentricId, writtenEventContext, context, pathContext, leafContext, pathId, streamTo);
+            }
+        }
+    }
+
+    private static class Frontier {
+
+        private final StepTree stepTree;
+        private final PathId pathId;
+
+        Frontier(StepTree stepTree, PathId pathId) {
+            this.stepTree = stepTree;
+            this.pathId = pathId;
+        }
+    }
+
+    private static class Hop {
+
+        private final RefStepTraverser step;
+        private final StepTree stepTree;
+        private final List<Object> key;
+
+        Hop(RefStepTraverser step, StepTree stepTree, List<Object> key) {
+            this.step = step;
+            this.stepTree = stepTree;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+/**
+ *
+ * @author jonathan
+ */
+public class LevelAtATimeStepStreamerFactory implements StepStreamerFactory {
+
+    private static final int MAX_FRONTIER_SIZE = 10_000;
+
+    private final StepTree stepTree;
+
+    public LevelAtATimeStepStreamerFactory(StepTree stepTree) {
+        this.stepTree = stepTree;
+    }
+
+    @Override
+    public StepStream create() {
+        return new LevelAtATimeStepStreamer(stepTree, MAX_FRONTIER_SIZE);
+    }
+
+    @Override
+    public String toString() {
+        return "LevelAtATimeStepStreamerFactory{" + "stepTree=" + stepTree + '}';
+    }
+
+}
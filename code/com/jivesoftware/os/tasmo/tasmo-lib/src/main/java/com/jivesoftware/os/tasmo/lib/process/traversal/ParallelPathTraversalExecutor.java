@@ -0,0 +1,68 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.jivesoftware.os.tasmo.lib.write.ViewField;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Fans the path traversals of a single commit out across a bounded pool. The calling thread blocks until every traversal is done so
+ * the commit, and the concurrency checks that follow it, still happen after all of the traversals have completed. Changes are merged
+ * in submission order so the committed list is the same as the serial executor would produce.
+ *
+ * Traversals must not submit work back into the same pool.
+ *
+ * @author jonathan
+ */
+public class ParallelPathTraversalExecutor implements PathTraversalExecutor {
+
+    private final ListeningExecutorService traversalThreads;
+
+    public ParallelPathTraversalExecutor(ListeningExecutorService traversalThreads) {
+        this.traversalThreads = traversalThreads;
+    }
+
+    @Override
+    public List<ViewField> execute(List<Callable<List<ViewField>>> pathTraversals) throws Exception {
+        if (pathTraversals.size() < 2) {
+            List<ViewField> changes = new ArrayList<>();
+            for (Callable<List<ViewField>> pathTraversal : pathTraversals) {
+                changes.addAll(pathTraversal.call());
+            }
+            return changes;
+        }
+
+        List<ListenableFuture<List<ViewField>>> futures = new ArrayList<>(pathTraversals.size());
+        for (Callable<List<ViewField>> pathTraversal : pathTraversals) {
+            futures.add(traversalThreads.submit(pathTraversal));
+        }
+
+        List<ViewField> changes = new ArrayList<>();
+        try {
+            for (ListenableFuture<List<ViewField>> future : futures) {
+                changes.addAll(future.get());
+            }
+        } catch (ExecutionException x) {
+            cancel(futures);
+            Throwable cause = x.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw x;
+        } catch (InterruptedException x) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw x;
+        }
+        return changes;
+    }
+
+    private void cancel(List<ListenableFuture<List<ViewField>>> futures) {
+        for (ListenableFuture<List<ViewField>> future : futures) {
+            future.cancel(true);
+        }
+    }
+}
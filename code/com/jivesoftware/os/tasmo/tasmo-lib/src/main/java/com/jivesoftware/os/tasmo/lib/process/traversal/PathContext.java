@@ -9,9 +9,13 @@ import com.jivesoftware.os.tasmo.reference.lib.ReferenceWithTimestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 /**
+ * The ids, timestamps and versions of one path traversal indexed by path position. Steps walk depth first over the same context and
+ * overwrite the slot of their position, so nothing is copied per hop. Versions of a single ref are kept as their parts and PathIds
+ * and ReferenceWithTimestamps are only built, once per slot, when a view field is written or a step asks for them.
  *
  * @author jonathan.colt
  */
@@ -19,51 +23,73 @@ public class PathContext {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
+    private final ObjectId[] modelPathObjectIds;
     private final PathId[] modelPathInstanceIds;
     private final long[] modelPathTimestamps;
     private final List<ReferenceWithTimestamp>[] modelPathVersionState;
+    private final ObjectId[] versionObjectIds;
+    private final String[] versionFieldNames;
+    private final long[] versionTimestamps;
     private int lastPathIndex = 0;
 
     public PathContext(int numberOfPathIds) {
+        this.modelPathObjectIds = new ObjectId[numberOfPathIds];
         this.modelPathInstanceIds = new PathId[numberOfPathIds];
         this.modelPathTimestamps = new long[numberOfPathIds + 1];
         this.modelPathVersionState = new List[numberOfPathIds];
+        this.versionObjectIds = new ObjectId[numberOfPathIds];
+        this.versionFieldNames = new String[numberOfPathIds];
+        this.versionTimestamps = new long[numberOfPathIds];
         for (int i = 0; i < numberOfPathIds; i++) {
-            modelPathVersionState[i] = new ArrayList<>();
+            modelPathVersionState[i] = Collections.emptyList();
         }
     }
 
-    private PathContext(PathId[] modelPathInstanceIds,
-            long[] modelPathTimestamps,
-            List<ReferenceWithTimestamp>[] modelPathVersionState,
-            int lastPathIndex) {
-        this.modelPathInstanceIds = modelPathInstanceIds;
-        this.modelPathTimestamps = modelPathTimestamps;
-        this.modelPathVersionState = modelPathVersionState;
-        this.lastPathIndex = lastPathIndex;
-    }
-
-    public PathContext getCopy() {
-        return new PathContext(modelPathInstanceIds, modelPathTimestamps, modelPathVersionState, lastPathIndex);
-    }
-
     public void setPathId(WrittenEventContext writtenEventContext, int pathIndex, ObjectId id, long timestamp) {
-        this.modelPathInstanceIds[pathIndex] = new PathId(id, timestamp);
+        this.modelPathObjectIds[pathIndex] = id;
+        this.modelPathInstanceIds[pathIndex] = null;
         this.modelPathTimestamps[pathIndex] = timestamp;
         if (pathIndex == lastPathIndex) {
-            writtenEventContext.fanBreath++;
+            writtenEventContext.fanBreath.incrementAndGet();
         } else {
-            writtenEventContext.fanDepth++;
+            writtenEventContext.fanDepth.incrementAndGet();
         }
         lastPathIndex = pathIndex;
     }
 
+    int getLastPathIndex() {
+        return lastPathIndex;
+    }
+
+    /**
+     * Steps which set path ids restore the last path index they were called with once they return, so the fan breath and depth
+     * counts are the same as when every hop worked on its own copy.
+     */
+    void setLastPathIndex(int lastPathIndex) {
+        this.lastPathIndex = lastPathIndex;
+    }
+
     public void addVersions(int pathIndex, Collection<ReferenceWithTimestamp> versions) {
         this.modelPathVersionState[pathIndex] = new ArrayList<>(versions);
+        this.versionObjectIds[pathIndex] = null;
+    }
+
+    /**
+     * The same as addVersions with a single version, without building it.
+     */
+    public void setVersion(int pathIndex, ObjectId objectId, String fieldName, long timestamp) {
+        this.modelPathVersionState[pathIndex] = null;
+        this.versionObjectIds[pathIndex] = objectId;
+        this.versionFieldNames[pathIndex] = fieldName;
+        this.versionTimestamps[pathIndex] = timestamp;
     }
 
     public PathId[] copyOfModelPathInstanceIds() {
-        return Arrays.copyOf(modelPathInstanceIds, modelPathInstanceIds.length);
+        PathId[] copy = new PathId[modelPathInstanceIds.length];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = getPathId(i);
+        }
+        return copy;
     }
 
     public long[] copyOfModelPathTimestamps() {
@@ -71,16 +97,36 @@ public class PathContext {
     }
 
     public List<ReferenceWithTimestamp> copyOfVersions() {
-        List<ReferenceWithTimestamp> copy = new ArrayList<>();
-        for (List<ReferenceWithTimestamp> versiosns : modelPathVersionState) {
-            copy.addAll(versiosns);
+        int size = 0;
+        for (int i = 0; i < modelPathVersionState.length; i++) {
+            size += getVersions(i).size();
+        }
+        List<ReferenceWithTimestamp> copy = new ArrayList<>(size);
+        for (int i = 0; i < modelPathVersionState.length; i++) {
+            copy.addAll(getVersions(i));
         }
         return copy;
     }
 
+    private List<ReferenceWithTimestamp> getVersions(int pathIndex) {
+        List<ReferenceWithTimestamp> versions = modelPathVersionState[pathIndex];
+        if (versions == null) {
+            versions = Collections.singletonList(new ReferenceWithTimestamp(versionObjectIds[pathIndex],
+                    versionFieldNames[pathIndex],
+                    versionTimestamps[pathIndex]));
+            modelPathVersionState[pathIndex] = versions;
+        }
+        return versions;
+    }
+
     public PathId getPathId(int pathIndex) {
         if (pathIndex > -1) {
-            return this.modelPathInstanceIds[pathIndex];
+            PathId pathId = this.modelPathInstanceIds[pathIndex];
+            if (pathId == null && modelPathObjectIds[pathIndex] != null) {
+                pathId = new PathId(modelPathObjectIds[pathIndex], modelPathTimestamps[pathIndex]);
+                this.modelPathInstanceIds[pathIndex] = pathId;
+            }
+            return pathId;
         }
         return null;
     }
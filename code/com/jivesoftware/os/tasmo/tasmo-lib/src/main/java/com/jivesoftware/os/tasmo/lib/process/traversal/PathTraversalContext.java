@@ -8,9 +8,13 @@
  */
 package com.jivesoftware.os.tasmo.lib.process.traversal;
 
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.ColumnValueAndTimestamp;
+import com.jivesoftware.os.tasmo.lib.write.CommitChangeException;
 import com.jivesoftware.os.tasmo.lib.write.ViewField;
-import java.util.ArrayList;
+import com.jivesoftware.os.tasmo.model.process.OpaqueFieldValue;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Context used while processing an event for a specific model path. Passed to ChainableProcessSteps which implement the operations performed at each step in
@@ -20,7 +24,8 @@ public class PathTraversalContext {
 
     private final long threadTimestamp;
     private final boolean removalContext;
-    private final List<ViewField> changes = new ArrayList<>();
+    private ViewChangeBuffer changes = new ViewChangeBuffer(null);
+    private Map<String, ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>> initialFieldValues = Collections.emptyMap();
 
     public PathTraversalContext(long threadTimestamp,
             boolean removalContext) {
@@ -36,13 +41,29 @@ public class PathTraversalContext {
         return threadTimestamp;
     }
 
+    /**
+     * The field values of the written instance which a TraverseInitialFields step populates the leaf with.
+     */
+    void setInitialFieldValues(Map<String, ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>> initialFieldValues) {
+        this.initialFieldValues = initialFieldValues;
+    }
+
+    Map<String, ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>> getInitialFieldValues() {
+        return initialFieldValues;
+    }
+
+    /**
+     * Changes are flushed through the given flusher whenever they reach its thresholds, instead of all waiting for takeChanges.
+     */
+    void flushTo(ViewChangeFlusher flusher) {
+        this.changes = new ViewChangeBuffer(flusher);
+    }
+
     public List<ViewField> takeChanges() {
-        List<ViewField> take = new ArrayList<>(changes);
-        changes.clear();
-        return take;
+        return changes.take();
     }
 
-    void addChange(ViewField change) {
+    void addChange(ViewField change) throws CommitChangeException {
         changes.add(change);
     }
 
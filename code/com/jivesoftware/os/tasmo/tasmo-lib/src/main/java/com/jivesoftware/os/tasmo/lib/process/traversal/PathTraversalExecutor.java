@@ -0,0 +1,15 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.jivesoftware.os.tasmo.lib.write.ViewField;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs the per path traversals produced for a single commit and returns their changes in the order the traversals were supplied.
+ *
+ * @author jonathan
+ */
+public interface PathTraversalExecutor {
+
+    List<ViewField> execute(List<Callable<List<ViewField>>> pathTraversals) throws Exception;
+}
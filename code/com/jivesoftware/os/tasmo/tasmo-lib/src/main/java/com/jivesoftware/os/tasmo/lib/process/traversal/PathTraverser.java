@@ -10,10 +10,19 @@ public class PathTraverser {
 
     private final PathTraverserKey pathTraverserKey;
     private final StepStreamerFactory streamerFactory;
+    private final int pathCount;
 
     public PathTraverser(PathTraverserKey pathTraverserKey, StepStreamerFactory streamerFactory) {
+        this(pathTraverserKey, streamerFactory, 1);
+    }
+
+    /**
+     * @param pathCount how many traversable paths were collapsed into this traverser's step tree
+     */
+    public PathTraverser(PathTraverserKey pathTraverserKey, StepStreamerFactory streamerFactory, int pathCount) {
         this.pathTraverserKey = pathTraverserKey;
         this.streamerFactory = streamerFactory;
+        this.pathCount = pathCount;
     }
 
     public PathTraverserKey getPathTraverserKey() {
@@ -47,6 +56,10 @@ public class PathTraverser {
         return pathTraverserKey.getPathIndex();
     }
 
+    public int getPathCount() {
+        return pathCount;
+    }
+
     public void traverse(TenantIdAndCentricId globalCentricId,
             TenantIdAndCentricId userCentricId,
             WrittenEventContext writtenEventContext,
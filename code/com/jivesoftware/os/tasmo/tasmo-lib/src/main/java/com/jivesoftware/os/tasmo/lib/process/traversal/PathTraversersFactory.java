@@ -14,6 +14,7 @@ import com.jivesoftware.os.tasmo.model.path.ModelPathStep;
 import com.jivesoftware.os.tasmo.model.path.ModelPathStepType;
 import com.jivesoftware.os.tasmo.reference.lib.BackRefStreamer;
 import com.jivesoftware.os.tasmo.reference.lib.ForwardRefStreamer;
+import com.jivesoftware.os.tasmo.reference.lib.LatestBackRefStreamer;
 import com.jivesoftware.os.tasmo.reference.lib.RefStreamer;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -28,14 +29,28 @@ public class PathTraversersFactory {
     private final String viewClassName;
     private final long modelPathIdHashcode;
     private final ModelPath modelPath;
+    private final boolean counterMaintainedCounts;
 
     public PathTraversersFactory(
             String viewClassName,
             long modelPathIdHashcode,
             ModelPath modelPath) {
+        this(viewClassName, modelPathIdHashcode, modelPath, false);
+    }
+
+    /**
+     * @param counterMaintainedCounts when true a count step which is followed only by the value of its referring instances is
+     * traversed with a TraverseCount, so the referring instances are neither streamed nor written to the view.
+     */
+    public PathTraversersFactory(
+            String viewClassName,
+            long modelPathIdHashcode,
+            ModelPath modelPath,
+            boolean counterMaintainedCounts) {
         this.viewClassName = viewClassName;
         this.modelPathIdHashcode = modelPathIdHashcode;
         this.modelPath = modelPath;
+        this.counterMaintainedCounts = counterMaintainedCounts;
     }
 
     public List<StepTraverser> buildReadSteps(String viewIdFieldName) {
@@ -51,6 +66,9 @@ public class PathTraversersFactory {
         List<TraversablePath> pathTraversers = Lists.newArrayList();
         List<ModelPathStep> modelPathMembers = modelPath.getPathMembers();
         for (int i = 0; i < modelPathMembers.size(); i++) {
+            if (isCounted(i - 1, modelPathMembers)) {
+                continue; // the values of the referring instances are not part of their count
+            }
             pathTraversers.add(buildPathTraverser(viewIdFieldName, modelPathMembers, i));
         }
         return pathTraversers;
@@ -70,6 +88,9 @@ public class PathTraversersFactory {
         List<StepTraverser> steps = new ArrayList<>();
         steps.addAll(buildLeafwardTraversers(initialPathIndex, modelPathSteps));
         steps.addAll(buildRootwardTraversers(initialPathIndex, modelPathSteps));
+        if (firstStep.getInitialModelPathStepType().isValue()) {
+            steps.add(new TraverseInitialFields(firstStep.getInitialFieldNames(), initialPathIndex));
+        }
         steps.add(new TraverseViewValueWriter(viewIdFieldName, viewClassName, modelPath, modelPathIdHashcode));
         return new TraversablePath(firstStep, steps);
     }
@@ -117,8 +138,14 @@ public class PathTraversersFactory {
                     };
 
             List<StepTraverser> steps = new ArrayList<>();
-            steps.add(new TraverseBackref(modelPathStep, modelPathStep.getOriginClassNames(), modelPathStep.getStepType().isCentric()));
-            steps.addAll(buildLeafwardTraversers(initialPathIndex, modelPathSteps));
+            steps.add(new TraverseInitialFields(firstStep.getInitialFieldNames(), initialPathIndex));
+            if (isCounted(initialPathIndex, modelPathSteps)) {
+                steps.add(new TraverseCount(modelPathStep.getOriginClassNames(), modelPathStep.getRefFieldName(),
+                        initialPathIndex, initialPathIndex, modelPathStep.getStepType().isCentric(), false));
+            } else {
+                steps.add(new TraverseBackref(modelPathStep, modelPathStep.getOriginClassNames(), modelPathStep.getStepType().isCentric()));
+                steps.addAll(buildLeafwardTraversers(initialPathIndex, modelPathSteps));
+            }
             steps.addAll(buildRootwardTraversers(initialPathIndex, modelPathSteps));
             steps.add(new TraverseViewValueWriter(viewIdFieldName, viewClassName, modelPath, modelPathIdHashcode));
             return new TraversablePath(firstStep, steps);
@@ -129,17 +156,28 @@ public class PathTraversersFactory {
 
     private List<StepTraverser> buildLeafwardTraversers(int initialPathIndex, List<ModelPathStep> modelPathMembers) {
         List<StepTraverser> steps = new ArrayList<>();
-
-        int modelPathMembersSize = modelPathMembers.size();
         ModelPathStep member;
         ModelPathStepType memberType;
+        if (isCounted(initialPathIndex, modelPathMembers)) {
+            // a link or unlink of the counted ref field hands us the referring instance
+            member = modelPathMembers.get(initialPathIndex);
+            steps.add(new TraverseCount(member.getOriginClassNames(), member.getRefFieldName(),
+                    initialPathIndex, initialPathIndex, member.getStepType().isCentric(), true));
+            return steps;
+        }
+
+        int modelPathMembersSize = modelPathMembers.size();
         // leafward
         for (int pathIndex = initialPathIndex + 1; pathIndex < modelPathMembersSize; pathIndex++) {
             member = modelPathMembers.get(pathIndex);
             boolean centric = member.getStepType().isCentric();
 
             StepTraverser processStep;
-            if (pathIndex == modelPathMembersSize - 1) {
+            if (isCounted(pathIndex, modelPathMembers)) {
+                steps.add(new TraverseCount(member.getOriginClassNames(), member.getRefFieldName(),
+                        initialPathIndex, pathIndex, centric, false));
+                break;
+            } else if (pathIndex == modelPathMembersSize - 1) {
 
                 processStep = new TraverseValue(new HashSet<>(member.getFieldNames()), initialPathIndex, pathIndex, centric);
 
@@ -159,6 +197,18 @@ public class PathTraversersFactory {
         return steps;
     }
 
+    /**
+     * Only count steps which are immediately followed by the value of their referring instances, the last member of the path,
+     * are counter maintained.
+     */
+    private boolean isCounted(int pathIndex, List<ModelPathStep> modelPathMembers) {
+        if (!counterMaintainedCounts || pathIndex < 0 || pathIndex != modelPathMembers.size() - 2) {
+            return false;
+        }
+        ModelPathStepType stepType = modelPathMembers.get(pathIndex).getStepType();
+        return stepType == ModelPathStepType.count || stepType == ModelPathStepType.centric_count;
+    }
+
     private RefStreamer createLeafwardStreamer(Set<String> classNames, String fieldName, ModelPathStepType fieldType) {
         switch (fieldType) {
             case ref:
@@ -169,11 +219,12 @@ public class PathTraversersFactory {
                 return new ForwardRefStreamer(fieldName);
             case backRefs:
             case count:
-            case latest_backRef:
             case centric_backRefs:
             case centric_count:
-            case centric_latest_backRef:
                 return new BackRefStreamer(classNames, fieldName);
+            case latest_backRef:
+            case centric_latest_backRef:
+                return new LatestBackRefStreamer(classNames, fieldName);
             default:
                 throw new IllegalArgumentException("fieldType:" + fieldType + " doesn't support rev streaming");
         }
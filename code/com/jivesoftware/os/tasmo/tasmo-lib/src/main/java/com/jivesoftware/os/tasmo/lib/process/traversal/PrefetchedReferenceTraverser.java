@@ -0,0 +1,103 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.jivesoftware.os.jive.utils.base.interfaces.CallbackStream;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.tasmo.reference.lib.RefStreamRequestContext;
+import com.jivesoftware.os.tasmo.reference.lib.ReferenceWithTimestamp;
+import com.jivesoftware.os.tasmo.reference.lib.traverser.ReferenceTraverser;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replays ref streams which were resolved ahead of time and hands everything else to the given traverser.
+ */
+class PrefetchedReferenceTraverser implements ReferenceTraverser {
+
+    private final ReferenceTraverser referenceTraverser;
+    private final Map<List<Object>, List<ReferenceWithTimestamp>> prefetched = new HashMap<>();
+
+    PrefetchedReferenceTraverser(ReferenceTraverser referenceTraverser) {
+        this.referenceTraverser = referenceTraverser;
+    }
+
+    static List<Object> key(RefStreamRequestContext request) {
+        return key(request.isBackRefStream(),
+                request.getTenantIdAndCentricId(),
+                request.getReferringClassNames(),
+                request.getReferringFieldName(),
+                request.getReferringObjectId(),
+                request.getReadTime());
+    }
+
+    private static List<Object> key(boolean backRefs,
+            TenantIdAndCentricId tenantIdAndCentricId,
+            Set<String> classNames,
+            String fieldName,
+            ObjectId id,
+            long threadTimestamp) {
+        return Arrays.<Object>asList(backRefs, tenantIdAndCentricId, classNames, fieldName, id, threadTimestamp);
+    }
+
+    boolean isPrefetched(List<Object> key) {
+        return prefetched.containsKey(key);
+    }
+
+    List<ReferenceWithTimestamp> get(List<Object> key) {
+        return prefetched.get(key);
+    }
+
+    void prefetched(List<Object> key, List<ReferenceWithTimestamp> refs) {
+        prefetched.put(key, refs);
+    }
+
+    @Override
+    public void traverseForwardRef(TenantIdAndCentricId tenantIdAndCentricId,
+            Set<String> classNames,
+            String fieldName,
+            ObjectId id,
+            long threadTimestamp,
+            CallbackStream<ReferenceWithTimestamp> refStream) throws InterruptedException, Exception {
+        List<ReferenceWithTimestamp> refs = prefetched.get(key(false, tenantIdAndCentricId, classNames, fieldName, id, threadTimestamp));
+        if (refs == null) {
+            referenceTraverser.traverseForwardRef(tenantIdAndCentricId, classNames, fieldName, id, threadTimestamp, refStream);
+        } else {
+            replay(refs, refStream);
+        }
+    }
+
+    @Override
+    public void traversBackRefs(TenantIdAndCentricId tenantIdAndCentricId,
+            Set<String> classNames,
+            String fieldName,
+            ObjectId id,
+            long threadTimestamp,
+            CallbackStream<ReferenceWithTimestamp> refStream) throws InterruptedException, Exception {
+        List<ReferenceWithTimestamp> refs = prefetched.get(key(true, tenantIdAndCentricId, classNames, fieldName, id, threadTimestamp));
+        if (refs == null) {
+            referenceTraverser.traversBackRefs(tenantIdAndCentricId, classNames, fieldName, id, threadTimestamp, refStream);
+        } else {
+            replay(refs, refStream);
+        }
+    }
+
+    @Override
+    public void traverseLatestBackRefs(TenantIdAndCentricId tenantIdAndCentricId,
+            Set<String> classNames,
+            String fieldName,
+            ObjectId id,
+            long threadTimestamp,
+            CallbackStream<ReferenceWithTimestamp> refStream) throws InterruptedException, Exception {
+        referenceTraverser.traverseLatestBackRefs(tenantIdAndCentricId, classNames, fieldName, id, threadTimestamp, refStream);
+    }
+
+    private void replay(List<ReferenceWithTimestamp> refs, CallbackStream<ReferenceWithTimestamp> refStream) throws Exception {
+        for (ReferenceWithTimestamp ref : refs) {
+            refStream.callback(ref);
+        }
+        refStream.callback(null);
+    }
+}
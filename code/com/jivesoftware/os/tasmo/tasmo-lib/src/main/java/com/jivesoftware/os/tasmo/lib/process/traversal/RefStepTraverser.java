@@ -0,0 +1,36 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.tasmo.lib.process.WrittenEventContext;
+import com.jivesoftware.os.tasmo.lib.write.PathId;
+import com.jivesoftware.os.tasmo.reference.lib.RefStreamRequestContext;
+import com.jivesoftware.os.tasmo.reference.lib.ReferenceWithTimestamp;
+import com.jivesoftware.os.tasmo.reference.lib.traverser.ReferenceTraverser;
+
+/**
+ * A step which streams refs from the id it is given, so its ref stream can be resolved ahead of time by a
+ * LevelAtATimeStepStreamer.
+ */
+interface RefStepTraverser extends StepTraverser {
+
+    RefStreamRequestContext refStreamRequest(TenantIdAndCentricId globalCentricId,
+            TenantIdAndCentricId userCentricId,
+            ObjectId from,
+            long threadTimestamp);
+
+    /**
+     * @return true if the step continues on to the given streamed ref
+     */
+    boolean streamsTo(ReferenceWithTimestamp to);
+
+    void process(ReferenceTraverser referenceTraverser,
+            TenantIdAndCentricId globalCentricId,
+            TenantIdAndCentricId userCentricId,
+            WrittenEventContext writtenEventContext,
+            PathTraversalContext context,
+            PathContext pathContext,
+            LeafContext leafContext,
+            PathId from,
+            StepStream streamTo) throws Exception;
+}
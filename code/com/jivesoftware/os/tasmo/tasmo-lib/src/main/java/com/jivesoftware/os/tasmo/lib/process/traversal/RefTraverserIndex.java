@@ -0,0 +1,156 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.google.common.collect.ListMultimap;
+import com.jivesoftware.os.tasmo.model.process.WrittenInstance;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The forward and back ref traversers of one event class grouped by ref field and indexed by the field which triggers them. Field
+ * names are interned to dense ids when the model is loaded, so dispatching an event walks the fields the event carries instead of
+ * every trigger key.
+ *
+ * @author jonathan
+ */
+class RefTraverserIndex {
+
+    private final Map<String, Integer> fieldIds = new HashMap<>();
+    private final List<String> refFieldNames = new ArrayList<>();
+    private final int[] refFieldIds;
+    private final Key[][] triggeredBy;
+
+    RefTraverserIndex(ListMultimap<InitiateTraverserKey, PathTraverser> forwardRefTraversers,
+            ListMultimap<InitiateTraverserKey, PathTraverser> backRefTraversers) {
+        Set<InitiateTraverserKey> allKeys = new HashSet<>();
+        allKeys.addAll(forwardRefTraversers.keySet());
+        allKeys.addAll(backRefTraversers.keySet());
+
+        List<Integer> groupFieldIds = new ArrayList<>();
+        Map<Integer, List<Key>> keys = new HashMap<>();
+        for (InitiateTraverserKey key : allKeys) {
+            int group = refFieldNames.indexOf(key.getRefFieldName());
+            if (group == -1) {
+                group = refFieldNames.size();
+                refFieldNames.add(key.getRefFieldName());
+                groupFieldIds.add(intern(key.getRefFieldName()));
+            }
+            int triggerFieldId = intern(key.getTriggerFieldName());
+            List<Key> triggered = keys.get(triggerFieldId);
+            if (triggered == null) {
+                triggered = new ArrayList<>();
+                keys.put(triggerFieldId, triggered);
+            }
+            triggered.add(new Key(group, forwardRefTraversers.get(key), backRefTraversers.get(key)));
+        }
+
+        this.refFieldIds = new int[groupFieldIds.size()];
+        for (int i = 0; i < refFieldIds.length; i++) {
+            refFieldIds[i] = groupFieldIds.get(i);
+        }
+        this.triggeredBy = new Key[fieldIds.size()][];
+        for (int i = 0; i < triggeredBy.length; i++) {
+            List<Key> triggered = keys.get(i);
+            triggeredBy[i] = (triggered == null) ? new Key[0] : triggered.toArray(new Key[triggered.size()]);
+        }
+    }
+
+    private int intern(String fieldName) {
+        Integer fieldId = fieldIds.get(fieldName);
+        if (fieldId == null) {
+            fieldId = fieldIds.size();
+            fieldIds.put(fieldName, fieldId);
+        }
+        return fieldId;
+    }
+
+    boolean isEmpty() {
+        return refFieldNames.isEmpty();
+    }
+
+    /**
+     * A key is triggered when the written instance carries its trigger field and either carries its ref field or is a deletion. For
+     * every triggered ref field the distinct forward and back traversers are added at the same index of the given lists.
+     *
+     * @return how many paths the triggered traversers were reached through, counting a shared traverser once per trigger.
+     */
+    int triggered(WrittenInstance writtenInstance,
+            List<String> triggeredRefFieldNames,
+            List<Set<PathTraverser>> forwardTraversers,
+            List<Set<PathTraverser>> backTraversers,
+            Set<PathTraverser> triggeredTraversers) {
+
+        boolean[] present = new boolean[triggeredBy.length];
+        for (String fieldName : writtenInstance.getFieldNames()) {
+            Integer fieldId = fieldIds.get(fieldName);
+            if (fieldId != null) {
+                present[fieldId] = true;
+            }
+        }
+        boolean deletion = writtenInstance.isDeletion();
+
+        int[] slots = new int[refFieldIds.length];
+        Arrays.fill(slots, -1);
+        int triggeredPaths = 0;
+        for (int fieldId = 0; fieldId < present.length; fieldId++) {
+            if (!present[fieldId]) {
+                continue;
+            }
+            for (Key key : triggeredBy[fieldId]) {
+                if (!present[refFieldIds[key.group]] && !deletion) {
+                    continue;
+                }
+                int slot = slots[key.group];
+                if (slot == -1) {
+                    slot = triggeredRefFieldNames.size();
+                    slots[key.group] = slot;
+                    triggeredRefFieldNames.add(refFieldNames.get(key.group));
+                    forwardTraversers.add(new LinkedHashSet<PathTraverser>());
+                    backTraversers.add(new LinkedHashSet<PathTraverser>());
+                }
+                for (PathTraverser pathTraverser : key.forward) {
+                    forwardTraversers.get(slot).add(pathTraverser);
+                    triggeredTraversers.add(pathTraverser);
+                }
+                for (PathTraverser pathTraverser : key.back) {
+                    backTraversers.get(slot).add(pathTraverser);
+                    triggeredTraversers.add(pathTraverser);
+                }
+                triggeredPaths += key.pathCount;
+            }
+        }
+        return triggeredPaths;
+    }
+
+    @Override
+    public String toString() {
+        return "RefTraverserIndex{" + "fieldIds=" + fieldIds + ", refFieldNames=" + refFieldNames + '}';
+    }
+
+    private static class Key {
+
+        private final int group;
+        private final PathTraverser[] forward;
+        private final PathTraverser[] back;
+        private final int pathCount;
+
+        Key(int group, List<PathTraverser> forward, List<PathTraverser> back) {
+            this.group = group;
+            this.forward = forward.toArray(new PathTraverser[forward.size()]);
+            this.back = back.toArray(new PathTraverser[back.size()]);
+            int paths = 0;
+            for (PathTraverser pathTraverser : forward) {
+                paths += pathTraverser.getPathCount();
+            }
+            for (PathTraverser pathTraverser : back) {
+                paths += pathTraverser.getPathCount();
+            }
+            this.pathCount = paths;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.jivesoftware.os.tasmo.lib.write.ViewField;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ *
+ * @author jonathan
+ */
+public class SerialPathTraversalExecutor implements PathTraversalExecutor {
+
+    @Override
+    public List<ViewField> execute(List<Callable<List<ViewField>>> pathTraversals) throws Exception {
+        List<ViewField> changes = new ArrayList<>();
+        for (Callable<List<ViewField>> pathTraversal : pathTraversals) {
+            changes.addAll(pathTraversal.call());
+        }
+        return changes;
+    }
+}
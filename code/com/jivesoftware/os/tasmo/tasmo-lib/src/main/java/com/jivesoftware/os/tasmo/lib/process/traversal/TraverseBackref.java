@@ -9,13 +9,16 @@
 package com.jivesoftware.os.tasmo.lib.process.traversal;
 
 import com.jivesoftware.os.jive.utils.base.interfaces.CallbackStream;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
 import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
 import com.jivesoftware.os.tasmo.lib.process.WrittenEventContext;
 import com.jivesoftware.os.tasmo.lib.write.PathId;
 import com.jivesoftware.os.tasmo.model.path.ModelPathStep;
 import com.jivesoftware.os.tasmo.reference.lib.BackRefStreamer;
+import com.jivesoftware.os.tasmo.reference.lib.RefStreamRequestContext;
 import com.jivesoftware.os.tasmo.reference.lib.RefStreamer;
 import com.jivesoftware.os.tasmo.reference.lib.ReferenceWithTimestamp;
+import com.jivesoftware.os.tasmo.reference.lib.traverser.ReferenceTraverser;
 import java.util.Objects;
 import java.util.Set;
 
@@ -23,7 +26,7 @@ import java.util.Set;
  *
  * @author jonathan.colt
  */
-public class TraverseBackref implements StepTraverser {
+public class TraverseBackref implements RefStepTraverser {
 
     private final ModelPathStep initialModelPathMember;
     private final Set<String> validDownStreamTypes;
@@ -45,11 +48,25 @@ public class TraverseBackref implements StepTraverser {
             final LeafContext leafContext,
             final PathId from,
             final StepStream streamTo) throws Exception {
+        process(writtenEventContext.getReferenceTraverser(),
+                globalCentricId, userCentricId, writtenEventContext, context, pathContext, leafContext, from, streamTo);
+    }
+
+    @Override
+    public void process(final ReferenceTraverser referenceTraverser,
+            final TenantIdAndCentricId globalCentricId,
+            final TenantIdAndCentricId userCentricId,
+            final WrittenEventContext writtenEventContext,
+            final PathTraversalContext context,
+            final PathContext pathContext,
+            final LeafContext leafContext,
+            final PathId from,
+            final StepStream streamTo) throws Exception {
 
         final RefStreamer streamer = new BackRefStreamer(initialModelPathMember.getOriginClassNames(),
                 initialModelPathMember.getRefFieldName());
 
-        streamer.stream(writtenEventContext.getReferenceTraverser(),
+        streamer.stream(referenceTraverser,
                 (centric ? userCentricId : globalCentricId),
                 from.getObjectId(),
                 context.getThreadTimestamp(),
@@ -65,6 +82,20 @@ public class TraverseBackref implements StepTraverser {
                 });
     }
 
+    @Override
+    public RefStreamRequestContext refStreamRequest(TenantIdAndCentricId globalCentricId,
+            TenantIdAndCentricId userCentricId,
+            ObjectId from,
+            long threadTimestamp) {
+        return new BackRefStreamer(initialModelPathMember.getOriginClassNames(), initialModelPathMember.getRefFieldName())
+                .request((centric ? userCentricId : globalCentricId), from, threadTimestamp);
+    }
+
+    @Override
+    public boolean streamsTo(ReferenceWithTimestamp to) {
+        return isValidDownStreamObject(to);
+    }
+
     private boolean isValidDownStreamObject(ReferenceWithTimestamp ref) {
         return validDownStreamTypes == null || validDownStreamTypes.isEmpty() || validDownStreamTypes.contains(ref.getObjectId().getClassName());
     }
@@ -0,0 +1,208 @@
+/*
+ * $Revision$
+ * $Date$
+ *
+ * Copyright (C) 1999-$year$ Jive Software. All rights reserved.
+ *
+ * This software is the proprietary information of Jive Software. Use is subject to license terms.
+ */
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.jivesoftware.os.jive.utils.base.interfaces.CallbackStream;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.ColumnValueAndTimestamp;
+import com.jivesoftware.os.tasmo.event.api.ReservedFields;
+import com.jivesoftware.os.tasmo.lib.process.WrittenEventContext;
+import com.jivesoftware.os.tasmo.lib.write.PathId;
+import com.jivesoftware.os.tasmo.lib.write.ViewField;
+import com.jivesoftware.os.tasmo.model.process.OpaqueFieldValue;
+import com.jivesoftware.os.tasmo.reference.lib.BackRefCount;
+import com.jivesoftware.os.tasmo.reference.lib.BackRefStreamer;
+import com.jivesoftware.os.tasmo.reference.lib.ReferenceStore;
+import com.jivesoftware.os.tasmo.reference.lib.ReferenceWithTimestamp;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Writes the number of back refs of a count step as a single view value instead of a view value per referring instance. The value is
+ * keyed by the counted instance at both pathIndex and pathIndex + 1 and holds the count in the ReservedFields.BACK_REF_COUNT field.
+ * When back refs are counted the value, and its removal, are stamped with the timestamp the counters hand out as the count is read.
+ *
+ * @author jonathan
+ */
+public class TraverseCount implements StepTraverser {
+
+    private static final Set<String> COUNT_FIELD_NAMES = Collections.singleton(ReservedFields.BACK_REF_COUNT);
+
+    private final Set<String> classNames;
+    private final String fieldName;
+    private final int processingPathIndex;
+    private final int pathIndex;
+    private final boolean centric;
+    private final boolean streamedFromReferrer;
+
+    /**
+     * @param streamedFromReferrer true when the step is handed the referring instance of a link or unlink of fieldName, in which case
+     * the counted instance has already been placed at pathIndex. Otherwise the step is handed the counted instance.
+     */
+    public TraverseCount(Set<String> classNames,
+            String fieldName,
+            int processingPathIndex,
+            int pathIndex,
+            boolean centric,
+            boolean streamedFromReferrer) {
+        this.classNames = classNames;
+        this.fieldName = fieldName;
+        this.processingPathIndex = processingPathIndex;
+        this.pathIndex = pathIndex;
+        this.centric = centric;
+        this.streamedFromReferrer = streamedFromReferrer;
+    }
+
+    @Override
+    public void process(TenantIdAndCentricId globalCentricId,
+            TenantIdAndCentricId userCentricId,
+            WrittenEventContext writtenEventContext,
+            PathTraversalContext pathTraversalContext,
+            PathContext pathContext,
+            LeafContext leafContext,
+            PathId from,
+            StepStream streamTo) throws Exception {
+
+        PathId counted = from;
+        if (streamedFromReferrer) {
+            counted = pathContext.getPathId(pathIndex);
+        } else {
+            pathContext.setPathId(writtenEventContext, pathIndex, from.getObjectId(), from.getTimestamp());
+        }
+        pathContext.setPathId(writtenEventContext, pathIndex + 1, counted.getObjectId(), counted.getTimestamp());
+
+        PathId to = pathContext.getPathId(processingPathIndex);
+        BackRefCount count = count(writtenEventContext, (centric ? userCentricId : globalCentricId), counted.getObjectId(),
+                pathTraversalContext.getThreadTimestamp());
+        if (pathTraversalContext.isRemovalContext() && !streamedFromReferrer) {
+            List<ReferenceWithTimestamp> versions = leafContext.removeLeafNodeFields(writtenEventContext, pathContext);
+            pathContext.addVersions(pathIndex + 1, versions);
+            PathTraversalContext removalContext = new PathTraversalContext(pathTraversalContext.getThreadTimestamp(), true);
+            streamTo.stream(globalCentricId, userCentricId, writtenEventContext, removalContext, pathContext, leafContext, to);
+            for (ViewField change : removalContext.takeChanges()) {
+                pathTraversalContext.addChange(stamped(change, count.getTimestamp()));
+            }
+            return;
+        }
+
+        OpaqueFieldValue countValue = writtenEventContext.getWrittenEventProvider().getLiteralFieldValueMarshaller()
+                .fromBytes(Long.toString(count.getCount()).getBytes(StandardCharsets.UTF_8));
+        Map<String, ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>> fieldValues = Collections.singletonMap(
+                ReservedFields.BACK_REF_COUNT,
+                new ColumnValueAndTimestamp<>(ReservedFields.BACK_REF_COUNT, countValue, from.getTimestamp()));
+        List<ReferenceWithTimestamp> versions = leafContext.populateLeafNodeFields(writtenEventContext,
+                pathContext,
+                counted.getObjectId(),
+                COUNT_FIELD_NAMES,
+                fieldValues);
+        pathContext.addVersions(pathIndex + 1, versions);
+
+        // unlinking a referrer changes the count rather than removing it.
+        PathTraversalContext countContext = new PathTraversalContext(pathTraversalContext.getThreadTimestamp(), false);
+        streamTo.stream(globalCentricId, userCentricId, writtenEventContext, countContext, pathContext, leafContext, to);
+        for (ViewField change : countContext.takeChanges()) {
+            pathTraversalContext.addChange(stamped(change, count.getTimestamp()));
+        }
+    }
+
+    /**
+     * Two traversals can read a count in the opposite order to their event ids, so both the count and its removal are written stamped
+     * with the timestamp the counters handed out when the count was read. Whatever was read later then always lands on top.
+     */
+    private ViewField stamped(ViewField change, long countTimestamp) {
+        if (countTimestamp <= change.getTimestamp()) {
+            return change;
+        }
+        return new ViewField(change.getEventId(),
+                change.getActorId(),
+                change.getUserId(),
+                change.getType(),
+                change.getViewObjectId(),
+                change.getModelPath(),
+                change.getModelPathIdHashcode(),
+                change.getModelPathInstanceIds(),
+                change.getModelPathVersions(),
+                change.getModelPathTimestamps(),
+                change.getValue(),
+                countTimestamp);
+    }
+
+    private BackRefCount count(WrittenEventContext writtenEventContext,
+            TenantIdAndCentricId tenantIdAndCentricId,
+            ObjectId id,
+            long threadTimestamp) throws Exception {
+
+        ReferenceStore referenceStore = writtenEventContext.getReferenceStore();
+        if (referenceStore != null) {
+            return referenceStore.getStampedBackRefCount(tenantIdAndCentricId, id, classNames, fieldName, threadTimestamp);
+        }
+        final Set<ObjectId> referrers = new HashSet<>();
+        new BackRefStreamer(classNames, fieldName).stream(writtenEventContext.getReferenceTraverser(), tenantIdAndCentricId, id,
+                threadTimestamp, new CallbackStream<ReferenceWithTimestamp>() {
+                    @Override
+                    public ReferenceWithTimestamp callback(ReferenceWithTimestamp backRef) throws Exception {
+                        if (backRef != null) {
+                            referrers.add(backRef.getObjectId());
+                        }
+                        return backRef;
+                    }
+                });
+        return new BackRefCount(referrers.size(), 0);
+    }
+
+    @Override
+    public String toString() {
+        return "Count(classNames=" + classNames + ", fieldName=" + fieldName + ", processingPathIndex=" + processingPathIndex
+                + ", pathIndex=" + pathIndex + ", streamedFromReferrer=" + streamedFromReferrer + ')';
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 41 * hash + Objects.hashCode(this.classNames);
+        hash = 41 * hash + Objects.hashCode(this.fieldName);
+        hash = 41 * hash + this.processingPathIndex;
+        hash = 41 * hash + this.pathIndex;
+        hash = 41 * hash + (this.streamedFromReferrer ? 1 : 0);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final TraverseCount other = (TraverseCount) obj;
+        if (!Objects.equals(this.classNames, other.classNames)) {
+            return false;
+        }
+        if (!Objects.equals(this.fieldName, other.fieldName)) {
+            return false;
+        }
+        if (this.processingPathIndex != other.processingPathIndex) {
+            return false;
+        }
+        if (this.pathIndex != other.pathIndex) {
+            return false;
+        }
+        if (this.centric != other.centric) {
+            return false;
+        }
+        return this.streamedFromReferrer == other.streamedFromReferrer;
+    }
+}
@@ -0,0 +1,82 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.tasmo.lib.process.WrittenEventContext;
+import com.jivesoftware.os.tasmo.lib.write.PathId;
+import com.jivesoftware.os.tasmo.reference.lib.ReferenceWithTimestamp;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Populates the leaf with the fields of the written instance a path was initiated from. Value paths do this just before their
+ * view value writer so paths which only differ by the fields they bind can share every hop in front of it.
+ *
+ * @author jonathan
+ */
+public class TraverseInitialFields implements StepTraverser {
+
+    private final Set<String> fieldNames;
+    private final int pathIndex;
+
+    public TraverseInitialFields(Set<String> fieldNames, int pathIndex) {
+        this.fieldNames = fieldNames;
+        this.pathIndex = pathIndex;
+    }
+
+    @Override
+    public void process(TenantIdAndCentricId globalCentricId,
+            TenantIdAndCentricId userCentricId,
+            WrittenEventContext writtenEventContext,
+            PathTraversalContext pathTraversalContext,
+            PathContext pathContext,
+            LeafContext leafContext,
+            PathId from,
+            StepStream streamTo) throws Exception {
+
+        List<ReferenceWithTimestamp> versions;
+        if (pathTraversalContext.isRemovalContext()) {
+            versions = leafContext.removeLeafNodeFields(writtenEventContext, pathContext);
+        } else {
+            versions = leafContext.populateLeafNodeFields(writtenEventContext,
+                    pathContext,
+                    pathContext.getPathId(pathIndex).getObjectId(),
+                    fieldNames,
+                    pathTraversalContext.getInitialFieldValues());
+        }
+        pathContext.addVersions(pathIndex, versions);
+        streamTo.stream(globalCentricId, userCentricId, writtenEventContext, pathTraversalContext, pathContext, leafContext, from);
+    }
+
+    @Override
+    public String toString() {
+        return "InitialFields(fieldNames=" + fieldNames + ", pathIndex=" + pathIndex + ')';
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 5;
+        hash = 43 * hash + Objects.hashCode(this.fieldNames);
+        hash = 43 * hash + this.pathIndex;
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final TraverseInitialFields other = (TraverseInitialFields) obj;
+        if (!Objects.equals(this.fieldNames, other.fieldNames)) {
+            return false;
+        }
+        if (this.pathIndex != other.pathIndex) {
+            return false;
+        }
+        return true;
+    }
+
+}
@@ -9,19 +9,21 @@
 package com.jivesoftware.os.tasmo.lib.process.traversal;
 
 import com.jivesoftware.os.jive.utils.base.interfaces.CallbackStream;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
 import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
 import com.jivesoftware.os.tasmo.lib.process.WrittenEventContext;
 import com.jivesoftware.os.tasmo.lib.write.PathId;
+import com.jivesoftware.os.tasmo.reference.lib.RefStreamRequestContext;
 import com.jivesoftware.os.tasmo.reference.lib.RefStreamer;
 import com.jivesoftware.os.tasmo.reference.lib.ReferenceWithTimestamp;
-import java.util.Arrays;
+import com.jivesoftware.os.tasmo.reference.lib.traverser.ReferenceTraverser;
 import java.util.Objects;
 import java.util.Set;
 
 /**
  *
  */
-class TraverseRootward implements StepTraverser {
+class TraverseRootward implements RefStepTraverser {
 
     private final RefStreamer streamer;
     private final int pathIndex;
@@ -40,36 +42,69 @@ class TraverseRootward implements StepTraverser {
             final TenantIdAndCentricId userCentricId,
             final WrittenEventContext writtenEventContext,
             final PathTraversalContext context,
-            PathContext pathContext,
+            final PathContext pathContext,
             final LeafContext leafContext,
             final PathId from,
             final StepStream streamTo) throws Exception {
+        process(writtenEventContext.getReferenceTraverser(),
+                globalCentricId, userCentricId, writtenEventContext, context, pathContext, leafContext, from, streamTo);
+    }
 
-        final PathContext copyOfPathContext = pathContext.getCopy();
-        copyOfPathContext.setPathId(writtenEventContext, pathIndex, from.getObjectId(), from.getTimestamp());
-
-        streamer.stream(writtenEventContext.getReferenceTraverser(),
-                (centric ? userCentricId : globalCentricId),
-                from.getObjectId(),
-                context.getThreadTimestamp(),
-                new CallbackStream<ReferenceWithTimestamp>() {
-                    @Override
-                    public ReferenceWithTimestamp callback(ReferenceWithTimestamp to) throws Exception {
-                        if (to != null && isValidUpStreamObject(to)) {
+    @Override
+    public void process(final ReferenceTraverser referenceTraverser,
+            final TenantIdAndCentricId globalCentricId,
+            final TenantIdAndCentricId userCentricId,
+            final WrittenEventContext writtenEventContext,
+            final PathTraversalContext context,
+            final PathContext pathContext,
+            final LeafContext leafContext,
+            final PathId from,
+            final StepStream streamTo) throws Exception {
 
-                            copyOfPathContext.setPathId(writtenEventContext, pathIndex, to.getObjectId(), to.getTimestamp());
+        int lastPathIndex = pathContext.getLastPathIndex();
+        pathContext.setPathId(writtenEventContext, pathIndex, from.getObjectId(), from.getTimestamp());
+        try {
+            streamer.stream(referenceTraverser,
+                    (centric ? userCentricId : globalCentricId),
+                    from.getObjectId(),
+                    context.getThreadTimestamp(),
+                    new CallbackStream<ReferenceWithTimestamp>() {
+                        @Override
+                        public ReferenceWithTimestamp callback(ReferenceWithTimestamp to) throws Exception {
+                            if (to != null && isValidUpStreamObject(to)) {
+                                pathContext.setPathId(writtenEventContext, pathIndex, to.getObjectId(), to.getTimestamp());
 
-                            ReferenceWithTimestamp ref = new ReferenceWithTimestamp(
-                                    (streamer.isBackRefStreamer()) ? to.getObjectId() : from.getObjectId(),
-                                    to.getFieldName(),
-                                    to.getTimestamp());
-                            copyOfPathContext.addVersions(pathIndex, Arrays.asList(ref));
-                            streamTo.stream(globalCentricId, userCentricId, writtenEventContext, context, copyOfPathContext, leafContext,
-                                    new PathId(to.getObjectId(), to.getTimestamp()));
+                                pathContext.setVersion(pathIndex,
+                                        (streamer.isBackRefStreamer()) ? to.getObjectId() : from.getObjectId(),
+                                        to.getFieldName(),
+                                        to.getTimestamp());
+                                streamTo.stream(globalCentricId,
+                                        userCentricId,
+                                        writtenEventContext,
+                                        context,
+                                        pathContext,
+                                        leafContext,
+                                        new PathId(to.getObjectId(), to.getTimestamp()));
+                            }
+                            return to;
                         }
-                        return to;
-                    }
-                });
+                    });
+        } finally {
+            pathContext.setLastPathIndex(lastPathIndex);
+        }
+    }
+
+    @Override
+    public RefStreamRequestContext refStreamRequest(TenantIdAndCentricId globalCentricId,
+            TenantIdAndCentricId userCentricId,
+            ObjectId from,
+            long threadTimestamp) {
+        return streamer.request((centric ? userCentricId : globalCentricId), from, threadTimestamp);
+    }
+
+    @Override
+    public boolean streamsTo(ReferenceWithTimestamp to) {
+        return isValidUpStreamObject(to);
     }
 
     private boolean isValidUpStreamObject(ReferenceWithTimestamp ref) {
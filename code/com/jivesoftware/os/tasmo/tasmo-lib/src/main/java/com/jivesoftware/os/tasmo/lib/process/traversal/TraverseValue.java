@@ -76,6 +76,10 @@ public class TraverseValue implements StepTraverser {
         streamTo.stream(globalCentricId, userCentricId, writtenEventContext, pathTraversalContext, pathContext, leafContext, to);
     }
 
+    int getProcessingPathIndex() {
+        return processingPathIndex;
+    }
+
     @Override
     public String toString() {
         return "Value(fieldNames=" + fieldNames + ", processingPathIndex=" + processingPathIndex + ", pathIndex=" + pathIndex + ')';
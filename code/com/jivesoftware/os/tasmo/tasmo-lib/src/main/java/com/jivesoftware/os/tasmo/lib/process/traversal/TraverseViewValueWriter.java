@@ -4,6 +4,7 @@ import com.jivesoftware.os.jive.utils.id.Id;
 import com.jivesoftware.os.jive.utils.id.ObjectId;
 import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
 import com.jivesoftware.os.tasmo.lib.process.WrittenEventContext;
+import com.jivesoftware.os.tasmo.lib.write.CommitChangeException;
 import com.jivesoftware.os.tasmo.lib.write.PathId;
 import com.jivesoftware.os.tasmo.lib.write.ViewField;
 import com.jivesoftware.os.tasmo.model.path.ModelPath;
@@ -54,7 +55,7 @@ public class TraverseViewValueWriter implements StepTraverser {
         LeafContext leafContext,
         String viewClassName,
         long modelPathIdHashcode,
-        Id viewId) throws IOException {
+        Id viewId) throws IOException, CommitChangeException {
 
         byte[] leafAsBytes = leafContext.toBytes();
         if (leafAsBytes != null) {
@@ -0,0 +1,136 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.google.common.collect.ListMultimap;
+import com.jivesoftware.os.tasmo.model.process.WrittenInstance;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The value traversers of one event class indexed by the field which triggers them. Field names are interned to dense ids when the
+ * model is loaded, so dispatching an event walks the fields the event carries instead of every trigger key.
+ *
+ * @author jonathan
+ */
+class ValueTraverserIndex {
+
+    private final Map<String, Integer> fieldIds = new HashMap<>();
+    private final PathTraverser[] traversers;
+    private final int[] always;
+    private final int alwaysPathCount;
+    private final int[][] triggeredBy;
+    private final int[] triggeredPathCount;
+
+    ValueTraverserIndex(ListMultimap<InitiateTraverserKey, PathTraverser> valueTraversers) {
+        Map<PathTraverser, Integer> traverserIds = new HashMap<>();
+        List<PathTraverser> allTraversers = new ArrayList<>();
+        Set<Integer> alwaysIds = new LinkedHashSet<>();
+        int pathCount = 0;
+        List<Set<Integer>> fieldTraverserIds = new ArrayList<>();
+        List<Integer> fieldPathCounts = new ArrayList<>();
+        if (valueTraversers != null) {
+            for (InitiateTraverserKey key : valueTraversers.keySet()) {
+                Set<Integer> into;
+                if (key.getRefFieldName() == null) { // TODO fix == null HACK! value paths are walked for every event.
+                    into = alwaysIds;
+                } else {
+                    int fieldId = intern(key.getTriggerFieldName());
+                    if (fieldId == fieldTraverserIds.size()) {
+                        fieldTraverserIds.add(new LinkedHashSet<Integer>());
+                        fieldPathCounts.add(0);
+                    }
+                    into = fieldTraverserIds.get(fieldId);
+                }
+                for (PathTraverser pathTraverser : valueTraversers.get(key)) {
+                    Integer traverserId = traverserIds.get(pathTraverser);
+                    if (traverserId == null) {
+                        traverserId = allTraversers.size();
+                        traverserIds.put(pathTraverser, traverserId);
+                        allTraversers.add(pathTraverser);
+                    }
+                    into.add(traverserId);
+                    if (into == alwaysIds) {
+                        pathCount += pathTraverser.getPathCount();
+                    } else {
+                        int fieldId = fieldIds.get(key.getTriggerFieldName());
+                        fieldPathCounts.set(fieldId, fieldPathCounts.get(fieldId) + pathTraverser.getPathCount());
+                    }
+                }
+            }
+        }
+        this.traversers = allTraversers.toArray(new PathTraverser[allTraversers.size()]);
+        this.always = toArray(alwaysIds);
+        this.alwaysPathCount = pathCount;
+        this.triggeredBy = new int[fieldTraverserIds.size()][];
+        this.triggeredPathCount = new int[fieldTraverserIds.size()];
+        for (int i = 0; i < triggeredBy.length; i++) {
+            triggeredBy[i] = toArray(fieldTraverserIds.get(i));
+            triggeredPathCount[i] = fieldPathCounts.get(i);
+        }
+    }
+
+    private int intern(String fieldName) {
+        Integer fieldId = fieldIds.get(fieldName);
+        if (fieldId == null) {
+            fieldId = fieldIds.size();
+            fieldIds.put(fieldName, fieldId);
+        }
+        return fieldId;
+    }
+
+    private static int[] toArray(Set<Integer> ids) {
+        int[] array = new int[ids.size()];
+        int i = 0;
+        for (Integer id : ids) {
+            array[i] = id;
+            i++;
+        }
+        return array;
+    }
+
+    boolean isEmpty() {
+        return traversers.length == 0;
+    }
+
+    /**
+     * Adds the distinct traversers the written instance triggers to triggered.
+     *
+     * @return how many paths the triggered traversers were reached through, counting a shared traverser once per trigger.
+     */
+    int triggered(WrittenInstance writtenInstance, List<PathTraverser> triggered) {
+        for (int traverserId : always) {
+            triggered.add(traversers[traverserId]);
+        }
+        if (triggeredBy.length == 0) {
+            return alwaysPathCount;
+        }
+
+        int triggeredPaths = alwaysPathCount;
+        boolean[] seen = new boolean[traversers.length];
+        for (int traverserId : always) {
+            seen[traverserId] = true;
+        }
+        for (String fieldName : writtenInstance.getFieldNames()) {
+            Integer fieldId = fieldIds.get(fieldName);
+            if (fieldId != null) {
+                triggeredPaths += triggeredPathCount[fieldId];
+                for (int traverserId : triggeredBy[fieldId]) {
+                    if (!seen[traverserId]) {
+                        seen[traverserId] = true;
+                        triggered.add(traversers[traverserId]);
+                    }
+                }
+            }
+        }
+        return triggeredPaths;
+    }
+
+    @Override
+    public String toString() {
+        return "ValueTraverserIndex{" + "fieldIds=" + fieldIds + ", always=" + Arrays.toString(always) + '}';
+    }
+}
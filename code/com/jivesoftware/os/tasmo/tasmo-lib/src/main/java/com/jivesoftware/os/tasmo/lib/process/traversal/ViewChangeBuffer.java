@@ -0,0 +1,49 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.jivesoftware.os.tasmo.lib.write.CommitChangeException;
+import com.jivesoftware.os.tasmo.lib.write.ViewField;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The view changes a single traversal has produced but not yet handed on. When the buffer reaches its flusher's thresholds its
+ * changes are flushed instead of growing further. Not thread safe.
+ *
+ * @author jonathan
+ */
+class ViewChangeBuffer {
+
+    private final ViewChangeFlusher flusher;
+    private List<ViewField> changes = new ArrayList<>();
+    private long bytes;
+
+    /**
+     * @param flusher null never flushes.
+     */
+    ViewChangeBuffer(ViewChangeFlusher flusher) {
+        this.flusher = flusher;
+    }
+
+    void add(ViewField change) throws CommitChangeException {
+        changes.add(change);
+        if (flusher != null) {
+            bytes += ViewChangeFlusher.sizeInBytes(change);
+            if (flusher.isFull(changes.size(), bytes)) {
+                flusher.flush(take());
+            }
+        }
+    }
+
+    void addAll(List<ViewField> add) throws CommitChangeException {
+        for (ViewField change : add) {
+            add(change);
+        }
+    }
+
+    List<ViewField> take() {
+        List<ViewField> take = changes;
+        changes = new ArrayList<>();
+        bytes = 0;
+        return take;
+    }
+}
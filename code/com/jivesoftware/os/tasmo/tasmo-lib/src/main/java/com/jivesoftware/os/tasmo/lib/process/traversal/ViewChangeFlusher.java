@@ -0,0 +1,123 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.tasmo.lib.process.WrittenEventContext;
+import com.jivesoftware.os.tasmo.lib.write.CommitChangeException;
+import com.jivesoftware.os.tasmo.lib.write.PathId;
+import com.jivesoftware.os.tasmo.lib.write.ViewField;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands the view changes of one commit to the event's CommitChange in chunks of at most the configured number of changes or bytes,
+ * so an event which fans out to a great many views neither holds all of its changes nor writes them as one batch. Every chunk goes
+ * through the same CommitChange, and so the same concurrency and existence checks, as an unchunked commit would. With no
+ * thresholds the changes are committed as a single batch. Shared by the path traversals of a commit, which may run on several threads.
+ * The CommitChange is only ever called by one thread at a time. A traversal which flushes while another chunk is committing queues its
+ * chunk for the committing thread and carries on rather than waiting.
+ *
+ * @author jonathan
+ */
+class ViewChangeFlusher {
+
+    private static final int COLUMN_KEY_PREFIX_BYTES = 16; // model path id and view path key
+    private static final int ID_BYTES = 8;
+    private static final int TIMESTAMP_BYTES = 8;
+
+    private final WrittenEventContext writtenEventContext;
+    private final TenantIdAndCentricId tenantIdAndCentricId;
+    private final int flushAtChanges;
+    private final long flushAtBytes;
+    private final Queue<List<ViewField>> pending = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock committing = new ReentrantLock();
+
+    ViewChangeFlusher(WrittenEventContext writtenEventContext, TenantIdAndCentricId tenantIdAndCentricId) {
+        this.writtenEventContext = writtenEventContext;
+        this.tenantIdAndCentricId = tenantIdAndCentricId;
+        this.flushAtChanges = writtenEventContext.getViewChangeFlushAtChanges();
+        this.flushAtBytes = writtenEventContext.getViewChangeFlushAtBytes();
+    }
+
+    boolean isFull(int changes, long bytes) {
+        return (flushAtChanges > 0 && changes >= flushAtChanges) || (flushAtBytes > 0 && bytes >= flushAtBytes);
+    }
+
+    /**
+     * @return an estimate of what the change writes: its value, path timestamps, view id and path ids.
+     */
+    static long sizeInBytes(ViewField change) {
+        long bytes = COLUMN_KEY_PREFIX_BYTES + sizeInBytes(change.getViewObjectId());
+        PathId[] modelPathInstanceIds = change.getModelPathInstanceIds();
+        if (modelPathInstanceIds != null) {
+            for (PathId pathId : modelPathInstanceIds) {
+                bytes += sizeInBytes(pathId.getObjectId());
+            }
+        }
+        long[] modelPathTimestamps = change.getModelPathTimestamps();
+        if (modelPathTimestamps != null) {
+            bytes += TIMESTAMP_BYTES * modelPathTimestamps.length;
+        }
+        byte[] value = change.getValue();
+        if (value != null) {
+            bytes += value.length;
+        }
+        return bytes;
+    }
+
+    private static long sizeInBytes(ObjectId objectId) {
+        return (objectId == null) ? 0 : objectId.getClassName().length() + ID_BYTES;
+    }
+
+    /**
+     * Commits changes a traversal buffered up to a threshold before the traversal is done.
+     */
+    void flush(List<ViewField> changes) throws CommitChangeException {
+        writtenEventContext.changes.addAndGet(changes.size());
+        writtenEventContext.getProcessingStats().tally("WRITE TRAVERSAL", "viewChangeAutoFlushes", 1);
+        pending.add(changes);
+        while (!pending.isEmpty() && committing.tryLock()) {
+            try {
+                commitPending();
+            } finally {
+                committing.unlock();
+            }
+        }
+    }
+
+    /**
+     * Commits what the traversals of the commit left, in chunks when thresholds are set, after any flushed chunks still queued.
+     */
+    void commit(List<ViewField> changes) throws CommitChangeException {
+        writtenEventContext.changes.addAndGet(changes.size());
+        committing.lock();
+        try {
+            commitPending();
+            List<ViewField> chunk = new ArrayList<>();
+            long bytes = 0;
+            for (int i = 0; i < changes.size(); i++) {
+                ViewField change = changes.get(i);
+                chunk.add(change);
+                bytes += sizeInBytes(change);
+                if (isFull(chunk.size(), bytes) && i < changes.size() - 1) {
+                    writtenEventContext.getCommitChange().commitChange(writtenEventContext, tenantIdAndCentricId, chunk);
+                    chunk = new ArrayList<>();
+                    bytes = 0;
+                }
+            }
+            writtenEventContext.getCommitChange().commitChange(writtenEventContext, tenantIdAndCentricId, chunk);
+        } finally {
+            committing.unlock();
+        }
+    }
+
+    private void commitPending() throws CommitChangeException {
+        List<ViewField> chunk;
+        while ((chunk = pending.poll()) != null) {
+            writtenEventContext.getCommitChange().commitChange(writtenEventContext, tenantIdAndCentricId, chunk);
+        }
+    }
+}
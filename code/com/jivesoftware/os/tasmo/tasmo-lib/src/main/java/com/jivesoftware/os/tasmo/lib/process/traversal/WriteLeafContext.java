@@ -55,7 +55,7 @@ public class WriteLeafContext implements LeafContext {
 
         String[] fieldNamesArray = fieldNames.toArray(new String[fieldNames.size()]);
 
-        writtenEventContext.readLeaves++;
+        writtenEventContext.readLeaves.incrementAndGet();
         for (String fieldName : fieldNamesArray) {
             ColumnValueAndTimestamp<String, OpaqueFieldValue, Long> g = fieldValues.get(fieldName);
             if (g != null) {
@@ -0,0 +1,215 @@
+package com.jivesoftware.os.tasmo.lib.read;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.SettableFuture;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.jive.utils.logger.MetricLogger;
+import com.jivesoftware.os.jive.utils.logger.MetricLoggerFactory;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.ColumnValueAndTimestamp;
+import com.jivesoftware.os.tasmo.lib.events.EventValueStore;
+import com.jivesoftware.os.tasmo.lib.process.TasmoProcessingStats;
+import com.jivesoftware.os.tasmo.model.process.OpaqueFieldValue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Queues readFieldValues calls from every traversal thread and reads each batch of them together. A batch is flushed once it holds
+ * maxBatchSize requests or its first request has waited lingerMillis. Each instance in a batch is read once, for the union of the
+ * fields its requests asked for. Callers block until their batch has been read, or for at most readTimeoutMillis, so
+ * startProcessingRequests must be running on its own thread.
+ *
+ * @author jonathan
+ */
+public class BatchingFieldValueReader implements FieldValueReader {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+    private static final String STATS_CATEGORY = "BATCHED READ FIELDS";
+    private static final FieldValueRequest POISON = new FieldValueRequest(null, null, new String[0]);
+
+    private final EventValueStore eventValueStore;
+    private final ListeningExecutorService readerExecutors;
+    private final TasmoProcessingStats processingStats;
+    private final int maxBatchSize;
+    private final long lingerMillis;
+    private final long readTimeoutMillis;
+    private final BlockingQueue<FieldValueRequest> requestsQueue;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public BatchingFieldValueReader(EventValueStore eventValueStore,
+            ListeningExecutorService readerExecutors,
+            TasmoProcessingStats processingStats,
+            int maxBatchSize,
+            long lingerMillis,
+            long readTimeoutMillis,
+            int requestQueueCapacity) {
+        this.eventValueStore = eventValueStore;
+        this.readerExecutors = readerExecutors;
+        this.processingStats = processingStats;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.requestsQueue = new ArrayBlockingQueue<>(requestQueueCapacity);
+    }
+
+    public void startProcessingRequests() throws InterruptedException {
+        if (running.compareAndSet(false, true)) {
+            try {
+                while (running.get()) {
+                    final List<FieldValueRequest> requests = new ArrayList<>(maxBatchSize);
+                    requests.add(requestsQueue.take());
+                    long lingerUntil = System.currentTimeMillis() + lingerMillis;
+                    while (requests.size() < maxBatchSize && !requests.contains(POISON)) {
+                        requestsQueue.drainTo(requests, maxBatchSize - requests.size());
+                        long remaining = lingerUntil - System.currentTimeMillis();
+                        if (requests.size() >= maxBatchSize || remaining <= 0) {
+                            break;
+                        }
+                        FieldValueRequest next = requestsQueue.poll(remaining, TimeUnit.MILLISECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        requests.add(next);
+                    }
+                    if (requests.remove(POISON)) {
+                        running.set(false);
+                    }
+                    if (requests.isEmpty()) {
+                        continue;
+                    }
+
+                    LOG.inc("batchingFieldValueReader>batches");
+                    LOG.inc("batchingFieldValueReader>requests", requests.size());
+                    processingStats.latency(STATS_CATEGORY, "batchSize", requests.size());
+                    processingStats.latency(STATS_CATEGORY, "queueDepth", requestsQueue.size());
+
+                    readerExecutors.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            read(requests);
+                        }
+                    });
+                }
+            } finally {
+                running.set(false);
+                List<FieldValueRequest> abandoned = new ArrayList<>();
+                requestsQueue.drainTo(abandoned);
+                abandoned.remove(POISON);
+                for (FieldValueRequest request : abandoned) {
+                    request.result.setException(new IllegalStateException("Field value reader was stopped."));
+                }
+            }
+        }
+    }
+
+    /**
+     * Wakes startProcessingRequests up so it returns once the batch it is building has been handed off.
+     */
+    public void stopProcessingRequests() {
+        if (running.compareAndSet(true, false)) {
+            requestsQueue.offer(POISON);
+        }
+    }
+
+    public int queueDepth() {
+        return requestsQueue.size();
+    }
+
+    @Override
+    public ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] readFieldValues(TenantIdAndCentricId tenantIdAndCentricId,
+            ObjectId objectInstanceId,
+            String[] fieldNamesArray) {
+
+        FieldValueRequest request = new FieldValueRequest(tenantIdAndCentricId, objectInstanceId, fieldNamesArray);
+        long start = System.currentTimeMillis();
+        try {
+            if (!requestsQueue.offer(request, readTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new RuntimeException("Timed out queueing a read of the fields of " + objectInstanceId);
+            }
+            long remaining = Math.max(0, readTimeoutMillis - (System.currentTimeMillis() - start));
+            return request.result.get(remaining, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to read fields of " + objectInstanceId, x);
+        } catch (ExecutionException x) {
+            throw new RuntimeException("Failed to read fields of " + objectInstanceId, x.getCause());
+        } catch (TimeoutException x) {
+            throw new RuntimeException("Timed out waiting to read fields of " + objectInstanceId, x);
+        }
+    }
+
+    private void read(List<FieldValueRequest> requests) {
+        long start = System.currentTimeMillis();
+        Map<List<Object>, Set<String>> instanceFieldNames = new LinkedHashMap<>();
+        for (FieldValueRequest request : requests) {
+            List<Object> instanceKey = Arrays.<Object>asList(request.tenantIdAndCentricId, request.objectInstanceId);
+            Set<String> fieldNames = instanceFieldNames.get(instanceKey);
+            if (fieldNames == null) {
+                fieldNames = new LinkedHashSet<>();
+                instanceFieldNames.put(instanceKey, fieldNames);
+            }
+            fieldNames.addAll(Arrays.asList(request.fieldNames));
+        }
+
+        Map<List<Object>, Map<String, ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>>> instances = new HashMap<>();
+        try {
+            for (Map.Entry<List<Object>, Set<String>> entry : instanceFieldNames.entrySet()) {
+                String[] fieldNames = entry.getValue().toArray(new String[entry.getValue().size()]);
+                ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] got = eventValueStore.get(
+                        (TenantIdAndCentricId) entry.getKey().get(0), (ObjectId) entry.getKey().get(1), fieldNames);
+                Map<String, ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>> fields = new HashMap<>();
+                for (int i = 0; i < fieldNames.length; i++) {
+                    if (got[i] != null) {
+                        fields.put(fieldNames[i], got[i]);
+                    }
+                }
+                instances.put(entry.getKey(), fields);
+            }
+        } catch (Exception x) {
+            LOG.warn("Failed to read fields for " + requests.size() + " requests.", x);
+            for (FieldValueRequest request : requests) {
+                request.result.setException(x);
+            }
+            return;
+        }
+
+        for (FieldValueRequest request : requests) {
+            Map<String, ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>> fields = instances.get(
+                    Arrays.<Object>asList(request.tenantIdAndCentricId, request.objectInstanceId));
+            @SuppressWarnings("unchecked")
+            ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] got = new ColumnValueAndTimestamp[request.fieldNames.length];
+            for (int i = 0; i < got.length; i++) {
+                got[i] = fields.get(request.fieldNames[i]);
+            }
+            request.result.set(got);
+        }
+        LOG.inc("batchingFieldValueReader>instances", instances.size());
+        processingStats.latency(STATS_CATEGORY, "instanceReads", System.currentTimeMillis() - start);
+    }
+
+    private static class FieldValueRequest {
+
+        private final TenantIdAndCentricId tenantIdAndCentricId;
+        private final ObjectId objectInstanceId;
+        private final String[] fieldNames;
+        private final SettableFuture<ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[]> result = SettableFuture.create();
+
+        FieldValueRequest(TenantIdAndCentricId tenantIdAndCentricId, ObjectId objectInstanceId, String[] fieldNames) {
+            this.tenantIdAndCentricId = tenantIdAndCentricId;
+            this.objectInstanceId = objectInstanceId;
+            this.fieldNames = fieldNames;
+        }
+    }
+}
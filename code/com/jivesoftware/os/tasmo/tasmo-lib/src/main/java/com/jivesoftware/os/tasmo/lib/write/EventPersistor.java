@@ -4,6 +4,8 @@ import com.jivesoftware.os.jive.utils.id.ObjectId;
 import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
 import com.jivesoftware.os.tasmo.lib.model.VersionedTasmoViewModel;
 import com.jivesoftware.os.tasmo.model.process.WrittenInstance;
+import java.util.List;
+import java.util.Map;
 
 public interface EventPersistor {
 
@@ -20,4 +22,27 @@ public interface EventPersistor {
         long timestamp,
         WrittenInstance writtenInstance) throws Exception;
 
+    /**
+     * Removes the instance from each of the tenantIdAndCentricIds. Implementations are free to batch the writes.
+     */
+    void removeValueFields(VersionedTasmoViewModel model,
+        String className,
+        List<TenantIdAndCentricId> tenantIdAndCentricIds,
+        ObjectId instanceId,
+        long timestamp) throws Exception;
+
+    /**
+     * Updates the instance for each of the tenantIdAndCentricIds. Implementations are free to batch the writes.
+     *
+     * @return for each tenantIdAndCentricId the value fields of the instance this update left as they were, each with the timestamp
+     * of the older event whose value was left in place. Every tenantIdAndCentricId is present, with no fields when the instance is
+     * new or the event is replayed. Implementations which don't read the prior values return an empty map.
+     */
+    Map<TenantIdAndCentricId, Map<String, Long>> updateValueFields(VersionedTasmoViewModel model,
+        String className,
+        List<TenantIdAndCentricId> tenantIdAndCentricIds,
+        ObjectId instanceId,
+        long timestamp,
+        WrittenInstance writtenInstance) throws Exception;
+
 }
@@ -21,7 +21,9 @@ import com.jivesoftware.os.tasmo.model.path.ModelPathStepType;
 import com.jivesoftware.os.tasmo.model.process.WrittenEvent;
 import com.jivesoftware.os.tasmo.model.process.WrittenInstance;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -117,14 +119,14 @@ public class SyncEventWriter implements CallbackStream<List<WrittenEvent>> {
                                     long timestamp = event.getEventId();
 
                                     synchronized (lock) {
+                                        List<TenantIdAndCentricId> tenantIdAndCentricIds = model.hasCentricBindings(className)
+                                            ? Arrays.asList(globalCentricId, userCentricId)
+                                            : Collections.singletonList(globalCentricId);
                                         if (event.getWrittenInstance().isDeletion()) {
-                                            tasmoEventPersistor.removeValueFields(model, className, globalCentricId, instanceId, timestamp - 1);
-                                            tasmoEventPersistor.removeValueFields(model, className, userCentricId, instanceId, timestamp - 1);
+                                            tasmoEventPersistor.removeValueFields(model, className, tenantIdAndCentricIds, instanceId, timestamp - 1);
                                         } else {
-                                            tasmoEventPersistor.updateValueFields(model, className, globalCentricId, instanceId, timestamp,
+                                            tasmoEventPersistor.updateValueFields(model, className, tenantIdAndCentricIds, instanceId, timestamp,
                                                 writtenInstance);
-                                            tasmoEventPersistor.
-                                                updateValueFields(model, className, userCentricId, instanceId, timestamp, writtenInstance);
                                         }
                                         Set<ObjectId> ids = eventToRefId(model, className, instanceId, writtenInstance);
                                         modifierStore.add(tenantId, event.getActorId(), ids, timestamp);
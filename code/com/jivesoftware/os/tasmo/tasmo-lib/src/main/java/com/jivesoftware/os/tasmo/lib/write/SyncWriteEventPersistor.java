@@ -24,6 +24,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class SyncWriteEventPersistor implements EventPersistor {
@@ -82,6 +83,30 @@ public class SyncWriteEventPersistor implements EventPersistor {
         }
     }
 
+    @Override
+    public void removeValueFields(VersionedTasmoViewModel model,
+        String className,
+        List<TenantIdAndCentricId> tenantIdAndCentricIds,
+        ObjectId instanceId,
+        long timestamp) throws Exception {
+        for (TenantIdAndCentricId tenantIdAndCentricId : tenantIdAndCentricIds) {
+            removeValueFields(model, className, tenantIdAndCentricId, instanceId, timestamp);
+        }
+    }
+
+    @Override
+    public Map<TenantIdAndCentricId, Map<String, Long>> updateValueFields(VersionedTasmoViewModel model,
+        String className,
+        List<TenantIdAndCentricId> tenantIdAndCentricIds,
+        ObjectId instanceId,
+        long timestamp,
+        WrittenInstance writtenInstance) throws Exception {
+        for (TenantIdAndCentricId tenantIdAndCentricId : tenantIdAndCentricIds) {
+            updateValueFields(model, className, tenantIdAndCentricId, instanceId, timestamp, writtenInstance);
+        }
+        return Collections.emptyMap();
+    }
+
     @Override
     public void updateValueFields(VersionedTasmoViewModel model,
         String className,
@@ -0,0 +1,99 @@
+package com.jivesoftware.os.tasmo.lib.write;
+
+import com.jivesoftware.os.jive.utils.id.ImmutableByteArray;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.jive.utils.logger.MetricLogger;
+import com.jivesoftware.os.jive.utils.logger.MetricLoggerFactory;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.ColumnValueAndTimestamp;
+import com.jivesoftware.os.tasmo.id.ViewValue;
+import com.jivesoftware.os.tasmo.view.reader.service.shared.ViewValueStore;
+import com.jivesoftware.os.tasmo.view.reader.service.writer.ViewWriteFieldChange;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drops view field adds whose value and model path timestamps are already stored, so replaying an unchanged field neither rewrites
+ * the views which contain it nor notifies them. Only the columns of the adds are read. The timestamp a column was written at isn't
+ * compared since every traversal stamps its adds with its own thread timestamp. Because the read and the commit which follows
+ * aren't atomic, a remove can land on a column in between and leave the view without a value a dropped add would have restored.
+ * Callers therefore collect the dropped adds and run them through changed again once the rest are committed, committing any whose
+ * column no longer holds them. Removes are always kept because a remove also guards against older adds which arrive late.
+ *
+ * @author jonathan
+ */
+public class ViewValueChangeDetector {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final ViewValueStore viewValueStore;
+
+    public ViewValueChangeDetector(ViewValueStore viewValueStore) {
+        this.viewValueStore = viewValueStore;
+    }
+
+    public List<ViewField> changed(TenantIdAndCentricId tenantIdAndCentricId, List<ViewField> changes) throws CommitChangeException {
+        return changed(tenantIdAndCentricId, changes, null);
+    }
+
+    /**
+     * @param unchanged when not null collects the adds which were dropped.
+     * @return the changes less the adds whose value and model path timestamps are already stored.
+     */
+    public List<ViewField> changed(TenantIdAndCentricId tenantIdAndCentricId,
+            List<ViewField> changes,
+            List<ViewField> unchanged) throws CommitChangeException {
+        List<ViewWriteFieldChange> adds = new ArrayList<>();
+        for (ViewField change : changes) {
+            if (change.getType() == ViewField.ViewFieldChangeType.add) {
+                PathId[] modelPathInstanceIds = change.getModelPathInstanceIds();
+                ObjectId[] ids = new ObjectId[modelPathInstanceIds.length];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = modelPathInstanceIds[i].getObjectId();
+                }
+                adds.add(new ViewWriteFieldChange(change.getEventId(),
+                        tenantIdAndCentricId,
+                        change.getActorId(),
+                        ViewWriteFieldChange.Type.add,
+                        change.getViewObjectId(),
+                        change.getModelPathIdHashcode(),
+                        ids,
+                        new ViewValue(change.getModelPathTimestamps(), change.getValue()),
+                        change.getTimestamp()));
+            }
+        }
+        if (adds.isEmpty()) {
+            return changes;
+        }
+
+        List<ColumnValueAndTimestamp<ImmutableByteArray, ViewValue, Long>> stored;
+        try {
+            stored = viewValueStore.multiGetEntries(tenantIdAndCentricId, adds);
+        } catch (IOException x) {
+            throw new CommitChangeException("Failed to read the stored view values of " + adds.size() + " changes.", x);
+        }
+
+        List<ViewField> changed = new ArrayList<>(changes.size());
+        int dropped = 0;
+        int a = 0;
+        for (ViewField change : changes) {
+            if (change.getType() == ViewField.ViewFieldChangeType.add) {
+                ColumnValueAndTimestamp<ImmutableByteArray, ViewValue, Long> was = stored.get(a);
+                ViewWriteFieldChange is = adds.get(a);
+                a++;
+                if (was != null && is.getValue().equals(was.getValue())) {
+                    dropped++;
+                    if (unchanged != null) {
+                        unchanged.add(change);
+                    }
+                    continue;
+                }
+            }
+            changed.add(change);
+        }
+        LOG.inc("viewValueChangeDetector>unchanged", dropped);
+        LOG.inc("viewValueChangeDetector>changed", changed.size());
+        return changed;
+    }
+}
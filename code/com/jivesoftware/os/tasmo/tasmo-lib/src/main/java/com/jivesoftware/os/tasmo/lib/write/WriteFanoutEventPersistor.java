@@ -17,11 +17,12 @@ import com.jivesoftware.os.tasmo.reference.lib.ReferenceStore;
 import com.jivesoftware.os.tasmo.reference.lib.concur.ConcurrencyStore;
 import com.jivesoftware.os.tasmo.reference.lib.concur.ExistenceUpdate;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class WriteFanoutEventPersistor implements EventPersistor {
@@ -31,21 +32,44 @@ public class WriteFanoutEventPersistor implements EventPersistor {
     private final ConcurrencyStore concurrencyStore;
     private final EventValueStore eventValueStore;
     private final ReferenceStore referenceStore;
+    private final boolean readUnchangedValueFields;
 
     public WriteFanoutEventPersistor(WrittenEventProvider writtenEventProvider, WrittenInstanceHelper writtenInstanceHelper,
         ConcurrencyStore concurrencyStore,
         EventValueStore eventValueStore, ReferenceStore referenceStore) {
+        this(writtenEventProvider, writtenInstanceHelper, concurrencyStore, eventValueStore, referenceStore, false);
+    }
+
+    /**
+     * @param readUnchangedValueFields read the prior value of every written value field so updateValueFields can report which
+     * fields the update left as they were.
+     */
+    public WriteFanoutEventPersistor(WrittenEventProvider writtenEventProvider, WrittenInstanceHelper writtenInstanceHelper,
+        ConcurrencyStore concurrencyStore,
+        EventValueStore eventValueStore, ReferenceStore referenceStore,
+        boolean readUnchangedValueFields) {
         this.writtenEventProvider = writtenEventProvider;
         this.writtenInstanceHelper = writtenInstanceHelper;
         this.concurrencyStore = concurrencyStore;
         this.eventValueStore = eventValueStore;
         this.referenceStore = referenceStore;
+        this.readUnchangedValueFields = readUnchangedValueFields;
     }
 
     @Override
     public void removeValueFields(VersionedTasmoViewModel model, String className, TenantIdAndCentricId tenantIdAndCentricId, ObjectId instanceId,
         long timestamp) {
-        concurrencyStore.removeObjectId(Arrays.asList(new ExistenceUpdate(tenantIdAndCentricId, timestamp, instanceId)));
+        removeValueFields(model, className, Collections.singletonList(tenantIdAndCentricId), instanceId, timestamp);
+    }
+
+    @Override
+    public void removeValueFields(VersionedTasmoViewModel model, String className, List<TenantIdAndCentricId> tenantIdAndCentricIds,
+        ObjectId instanceId, long timestamp) {
+        List<ExistenceUpdate> existenceUpdates = new ArrayList<>(tenantIdAndCentricIds.size());
+        for (TenantIdAndCentricId tenantIdAndCentricId : tenantIdAndCentricIds) {
+            existenceUpdates.add(new ExistenceUpdate(tenantIdAndCentricId, timestamp, instanceId));
+        }
+        concurrencyStore.removeObjectId(existenceUpdates);
 
         SetMultimap<String, TasmoViewModel.FieldNameAndType> eventModel = model.getEventModel();
         Set<String> fieldNames = new HashSet<>();
@@ -55,19 +79,33 @@ public class WriteFanoutEventPersistor implements EventPersistor {
                 fieldNames.add(fieldName);
             }
         }
-        eventValueStore.removeObjectId(tenantIdAndCentricId, timestamp, instanceId, fieldNames.toArray(new String[fieldNames.size()]));
+        // the nil field signals presence so it goes with the instance.
+        fieldNames.add(ReservedFields.NIL_FIELD);
+        eventValueStore.removeObjectId(tenantIdAndCentricIds, timestamp, instanceId, fieldNames.toArray(new String[fieldNames.size()]));
     }
 
     @Override
     public void updateValueFields(VersionedTasmoViewModel model, String className, TenantIdAndCentricId tenantIdAndCentricId, ObjectId instanceId,
         long timestamp, WrittenInstance writtenInstance) throws Exception {
+        updateValueFields(model, className, Collections.singletonList(tenantIdAndCentricId), instanceId, timestamp, writtenInstance);
+    }
 
-        concurrencyStore.addObjectId(Arrays.asList(new ExistenceUpdate(tenantIdAndCentricId, timestamp, instanceId)));
+    @Override
+    public Map<TenantIdAndCentricId, Map<String, Long>> updateValueFields(VersionedTasmoViewModel model, String className,
+        List<TenantIdAndCentricId> tenantIdAndCentricIds,
+        ObjectId instanceId, long timestamp, WrittenInstance writtenInstance) throws Exception {
 
-        EventValueStore.Transaction transaction = eventValueStore.begin(tenantIdAndCentricId,
-            timestamp,
-            timestamp,
-            instanceId);
+        List<ExistenceUpdate> existenceUpdates = new ArrayList<>(tenantIdAndCentricIds.size());
+        List<EventValueStore.Transaction> transactions = new ArrayList<>(tenantIdAndCentricIds.size());
+        for (TenantIdAndCentricId tenantIdAndCentricId : tenantIdAndCentricIds) {
+            existenceUpdates.add(new ExistenceUpdate(tenantIdAndCentricId, timestamp, instanceId));
+            transactions.add(eventValueStore.begin(tenantIdAndCentricId,
+                timestamp,
+                timestamp,
+                instanceId));
+        }
+        // 1 multi row put
+        concurrencyStore.addObjectId(existenceUpdates);
 
         SetMultimap<String, TasmoViewModel.FieldNameAndType> eventModel = model.getEventModel();
 
@@ -79,10 +117,12 @@ public class WriteFanoutEventPersistor implements EventPersistor {
                     refFieldNames.add(fieldName);
                 } else {
                     OpaqueFieldValue got = writtenInstance.getFieldValue(fieldName);
-                    if (got == null || got.isNull()) {
-                        transaction.remove(fieldName);
-                    } else {
-                        transaction.set(fieldName, got);
+                    for (EventValueStore.Transaction transaction : transactions) {
+                        if (got == null || got.isNull()) {
+                            transaction.remove(fieldName);
+                        } else {
+                            transaction.set(fieldName, got);
+                        }
                     }
                 }
             }
@@ -90,28 +130,64 @@ public class WriteFanoutEventPersistor implements EventPersistor {
 
         // Always emit the nil field to signal presence
         OpaqueFieldValue nilValue = writtenEventProvider.createNilValue();
-        transaction.set(ReservedFields.NIL_FIELD, nilValue);
-
-        // 1 multiget
-        List<Long> highests = concurrencyStore.highests(tenantIdAndCentricId, instanceId, refFieldNames.toArray(new String[refFieldNames.size()]));
-        List<ReferenceStore.LinkTo> batchLinkTos = new ArrayList<>(refFieldNames.size());
-        for (int i = 0; i < refFieldNames.size(); i++) {
-            String fieldName = refFieldNames.get(i);
-            if (highests == null || highests.get(i) == null || timestamp >= highests.get(i)) {
-                // 4 multi puts
-                OpaqueFieldValue fieldValue = writtenInstance.getFieldValue(fieldName);
-                if (fieldValue.isNull()) {
-                    batchLinkTos.add(new ReferenceStore.LinkTo(fieldName, Collections.<Reference>emptyList()));
-                } else {
-                    Collection<Reference> tos = writtenInstanceHelper.getReferencesFromInstanceField(writtenInstance, fieldName);
-                    batchLinkTos.add(new ReferenceStore.LinkTo(fieldName, tos));
+        for (EventValueStore.Transaction transaction : transactions) {
+            transaction.set(ReservedFields.NIL_FIELD, nilValue);
+        }
+
+        if (!refFieldNames.isEmpty()) {
+            String[] refFields = refFieldNames.toArray(new String[refFieldNames.size()]);
+            Map<TenantIdAndCentricId, List<ReferenceStore.LinkTo>> centricBatchLinkTos = new HashMap<>();
+            for (TenantIdAndCentricId tenantIdAndCentricId : tenantIdAndCentricIds) {
+                // 1 multiget
+                List<Long> highests = concurrencyStore.highests(tenantIdAndCentricId, instanceId, refFields);
+                List<ReferenceStore.LinkTo> batchLinkTos = new ArrayList<>(refFieldNames.size());
+                for (int i = 0; i < refFieldNames.size(); i++) {
+                    String fieldName = refFieldNames.get(i);
+                    if (highests == null || highests.get(i) == null || timestamp >= highests.get(i)) {
+                        OpaqueFieldValue fieldValue = writtenInstance.getFieldValue(fieldName);
+                        if (fieldValue.isNull()) {
+                            batchLinkTos.add(new ReferenceStore.LinkTo(fieldName, Collections.<Reference>emptyList()));
+                        } else {
+                            Collection<Reference> tos = writtenInstanceHelper.getReferencesFromInstanceField(writtenInstance, fieldName);
+                            batchLinkTos.add(new ReferenceStore.LinkTo(fieldName, tos));
+                        }
+                    }
+                }
+                if (!batchLinkTos.isEmpty()) {
+                    centricBatchLinkTos.put(tenantIdAndCentricId, batchLinkTos);
                 }
             }
+            if (!centricBatchLinkTos.isEmpty()) {
+                // 2 multi row puts and 2 multi row adds for all the tenantIdAndCentricIds. Only links which don't already exist are
+                // written, see InitiateWriteTraversal.processRefs for the matching unlink
+                referenceStore.linkDelta(centricBatchLinkTos, instanceId, timestamp);
+            }
         }
-        if (!batchLinkTos.isEmpty()) {
-            referenceStore.link(tenantIdAndCentricId, instanceId, timestamp, batchLinkTos);
+        if (!readUnchangedValueFields) {
+            // 4 multi row puts for all the tenantIdAndCentricIds
+            eventValueStore.commit(transactions);
+            return Collections.emptyMap();
+        }
+
+        // 1 multi get per tenantIdAndCentricId then the same 4 multi row puts
+        List<Map<String, Long>> unchanged = eventValueStore.commitAndGetUnchanged(transactions);
+        Map<TenantIdAndCentricId, Map<String, Long>> unchangedValueFields = new HashMap<>();
+        for (int i = 0; i < tenantIdAndCentricIds.size(); i++) {
+            Map<String, Long> unchangedFields = unchanged.get(i);
+            // nothing is unchanged for an instance which didn't exist before or for a replayed event.
+            Long priorEvent = unchangedFields.get(ReservedFields.NIL_FIELD);
+            if (priorEvent == null) {
+                unchangedFields = Collections.emptyMap();
+            } else {
+                // a field removed which wasn't stored was last written no later than the instance's prior event.
+                for (Map.Entry<String, Long> unchangedField : unchangedFields.entrySet()) {
+                    if (unchangedField.getValue() == null) {
+                        unchangedField.setValue(priorEvent);
+                    }
+                }
+            }
+            unchangedValueFields.put(tenantIdAndCentricIds.get(i), unchangedFields);
         }
-        // 3 to 6 multiputs
-        eventValueStore.commit(transaction);
+        return unchangedValueFields;
     }
 }
@@ -41,6 +41,7 @@ public class BaseTest {
 
         List<Object[]> paramList = new ArrayList<>();
         paramList.add(new Object[]{asyncHarness(TasmoMaterializerHarnessFactory.createInmemoryTasmoStorageProvider())});
+        paramList.add(new Object[]{levelAtATimeHarness(TasmoMaterializerHarnessFactory.createInmemoryTasmoStorageProvider())});
         paramList.add(new Object[]{syncHarness(TasmoMaterializerHarnessFactory.createInmemoryTasmoStorageProvider())});
         paramList.add(new Object[]{syncWithAsyncReadMaterializerHarness(TasmoMaterializerHarnessFactory.createInmemoryTasmoStorageProvider(),
             TasmoMaterializerHarnessFactory.createInmemoryTasmoStorageProvider())});
@@ -91,6 +92,17 @@ public class BaseTest {
                 TasmoMaterializerHarnessFactory.createNoOpViewPermissionChecker());
     }
 
+    private TasmoMaterializerHarness levelAtATimeHarness(
+            TasmoStorageProvider asyncTasmoStorageProvider) throws Exception {
+        return TasmoMaterializerHarnessFactory.createWriteTimeMaterializer(
+                TasmoMaterializerHarnessFactory.createOrderIdProvider(),
+                asyncTasmoStorageProvider,
+                TasmoMaterializerHarnessFactory.createNoOpEventBookkeeper(),
+                TasmoMaterializerHarnessFactory.createNoOpViewChangeNotificationProcessor(),
+                TasmoMaterializerHarnessFactory.createNoOpViewPermissionChecker(),
+                true);
+    }
+
     private TasmoMaterializerHarness syncHarness(TasmoStorageProvider syncTasmoStorageProvider) throws Exception {
         return TasmoMaterializerHarnessFactory.createSyncWriteSyncReadsMaterializer(
                 TasmoMaterializerHarnessFactory.createOrderIdProvider(),
@@ -203,6 +203,16 @@ public class TasmoMaterializerHarnessFactory {
             final CallbackStream<List<BookkeepingEvent>> bookkeepingStream,
             final ViewChangeNotificationProcessor changeNotificationProcessor,
             final ViewPermissionChecker viewPermissionChecker) throws Exception {
+        return createWriteTimeMaterializer(idProvider, tasmoStorageProvider, bookkeepingStream, changeNotificationProcessor,
+                viewPermissionChecker, false);
+    }
+
+    static TasmoMaterializerHarness createWriteTimeMaterializer(final OrderIdProvider idProvider,
+            final TasmoStorageProvider tasmoStorageProvider,
+            final CallbackStream<List<BookkeepingEvent>> bookkeepingStream,
+            final ViewChangeNotificationProcessor changeNotificationProcessor,
+            final ViewPermissionChecker viewPermissionChecker,
+            final boolean levelAtATimeTraversal) throws Exception {
 
         final ChainedVersion currentVersion = new ChainedVersion("0", "1");
         final JsonViewMerger merger = new JsonViewMerger(new ObjectMapper());
@@ -225,6 +235,7 @@ public class TasmoMaterializerHarnessFactory {
 
         final TasmoViewModelInitializer.TasmoViewModelConfig tasmoViewModelConfig = BindInterfaceToConfiguration
                 .bindDefault(TasmoViewModelInitializer.TasmoViewModelConfig.class);
+        tasmoViewModelConfig.setLevelAtATimeTraversal(levelAtATimeTraversal);
         TasmoServiceHandle<TasmoViewModel> tasmoViewModel = TasmoViewModelInitializer.initialize(viewsProvider, pathKeyProvider, tasmoViewModelConfig);
         tasmoViewModel.start();
 
@@ -238,7 +249,7 @@ public class TasmoMaterializerHarnessFactory {
 
         TasmoServiceConfig serviceConfig = BindInterfaceToConfiguration.bindDefault(TasmoServiceConfig.class);
 
-        final TasmoEventIngress tasmoEventIngress = TasmoServiceInitializer.initialize(idProvider,
+        TasmoServiceHandle<TasmoEventIngress> tasmoEventIngressHandle = TasmoServiceInitializer.initialize(idProvider,
                 tasmoViewModel.getService(),
                 writtenEventProvider,
                 tasmoStorageProvider,
@@ -249,6 +260,8 @@ public class TasmoMaterializerHarnessFactory {
                 Optional.<WrittenEventProcessorDecorator>absent(),
                 tasmoBlacklist,
                 serviceConfig);
+        tasmoEventIngressHandle.start();
+        final TasmoEventIngress tasmoEventIngress = tasmoEventIngressHandle.getService();
 
         JsonEventWriter jsonEventWriter = jsonEventWriter(idProvider, writtenEventProvider, tasmoEventIngress);
         final EventWriter eventWriter = new EventWriter(jsonEventWriter);
@@ -329,7 +342,7 @@ public class TasmoMaterializerHarnessFactory {
 
             @Override
             public String toString() {
-                return "WriteMaterializeHarness";
+                return "WriteMaterializeHarness" + (levelAtATimeTraversal ? "(levelAtATime)" : "");
             }
         };
     }
@@ -561,7 +574,7 @@ public class TasmoMaterializerHarnessFactory {
         CommitChange commitChange = new NoOpCommitChange();
         //CommitChange commitChange = createCommitToViewValueStore(viewValueStorage, pathKeyProvider);
         TasmoServiceConfig serviceConfig = BindInterfaceToConfiguration.bindDefault(TasmoServiceConfig.class);
-        final TasmoEventIngress tasmoEventIngress = TasmoServiceInitializer.initialize(idProvider,
+        TasmoServiceHandle<TasmoEventIngress> tasmoEventIngressHandle = TasmoServiceInitializer.initialize(idProvider,
                 tasmoViewModel.getService(),
                 writtenEventProvider,
                 asyncTasmoStorageProvider,
@@ -572,6 +585,8 @@ public class TasmoMaterializerHarnessFactory {
                 Optional.<WrittenEventProcessorDecorator>absent(),
                 tasmoBlacklist,
                 serviceConfig);
+        tasmoEventIngressHandle.start();
+        final TasmoEventIngress tasmoEventIngress = tasmoEventIngressHandle.getService();
 
         JsonEventWriter jsonEventWriter = jsonEventWriter(idProvider, writtenEventProvider, syncEventWriter, tasmoEventIngress);
         final EventWriter eventWriter = new EventWriter(jsonEventWriter);
@@ -0,0 +1,228 @@
+package com.jivesoftware.os.tasmo.lib;
+
+import com.jivesoftware.os.jive.utils.base.interfaces.CallbackStream;
+import com.jivesoftware.os.jive.utils.id.Id;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantId;
+import com.jivesoftware.os.tasmo.lib.ingress.TasmoPipelinedWriteMaterializer;
+import com.jivesoftware.os.tasmo.lib.process.TasmoEventProcessor;
+import com.jivesoftware.os.tasmo.lib.process.bookkeeping.BookkeepingEvent;
+import com.jivesoftware.os.tasmo.lib.process.bookkeeping.TasmoEventsProcessedNotifier;
+import com.jivesoftware.os.tasmo.model.process.WrittenEvent;
+import com.jivesoftware.os.tasmo.model.process.WrittenInstance;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TasmoPipelinedWriteMaterializerTest {
+
+    @Test
+    public void testPerInstanceOrderingRetryAndBookkeeping() throws Exception {
+        int numberOfInstances = 8;
+        int eventsPerInstance = 50;
+        final CountDownLatch bookkept = new CountDownLatch(numberOfInstances * eventsPerInstance);
+        final List<Long> bookkeptEventIds = Collections.synchronizedList(new ArrayList<Long>());
+        CallbackStream<List<BookkeepingEvent>> bookkeepingStream = new CallbackStream<List<BookkeepingEvent>>() {
+            @Override
+            public List<BookkeepingEvent> callback(List<BookkeepingEvent> value) throws Exception {
+                for (BookkeepingEvent bookkeepingEvent : value) {
+                    Assert.assertTrue(bookkeepingEvent.isSuccessful());
+                    bookkeptEventIds.add(bookkeepingEvent.getEventId());
+                    bookkept.countDown();
+                }
+                return value;
+            }
+        };
+
+        final ConcurrentHashMap<ObjectId, Long> lastProcessed = new ConcurrentHashMap<>();
+        final AtomicBoolean outOfOrder = new AtomicBoolean();
+        final AtomicBoolean failedOnce = new AtomicBoolean();
+        TasmoEventProcessor eventProcessor = Mockito.mock(TasmoEventProcessor.class);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                WrittenEvent event = (WrittenEvent) invocation.getArguments()[1];
+                if (event.getEventId() == 10 && failedOnce.compareAndSet(false, true)) {
+                    throw new RuntimeException("expected");
+                }
+                Long last = lastProcessed.put(event.getWrittenInstance().getInstanceId(), event.getEventId());
+                if (last != null && last > event.getEventId()) {
+                    outOfOrder.set(true);
+                }
+                return null;
+            }
+        }).when(eventProcessor).processWrittenEvent(Mockito.any(), Mockito.any(WrittenEvent.class));
+
+        TasmoPipelinedWriteMaterializer materializer = new TasmoPipelinedWriteMaterializer(new TasmoEventsProcessedNotifier(bookkeepingStream),
+            eventProcessor,
+            new TasmoBlacklist(),
+            Executors.newFixedThreadPool(3),
+            3,
+            4,
+            10,
+            1_000);
+        materializer.start();
+        try {
+            long eventId = 0;
+            for (int e = 0; e < eventsPerInstance; e++) {
+                List<WrittenEvent> batch = new ArrayList<>();
+                for (int i = 0; i < numberOfInstances; i++) {
+                    batch.add(event(eventId++, new ObjectId("Content", new Id(i))));
+                }
+                Assert.assertTrue(materializer.process(batch).isEmpty());
+            }
+
+            Assert.assertTrue(bookkept.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(failedOnce.get());
+            Assert.assertFalse(outOfOrder.get());
+            Assert.assertEquals(bookkeptEventIds.size(), numberOfInstances * eventsPerInstance);
+        } finally {
+            materializer.stop();
+        }
+    }
+
+    @Test
+    public void testEventIsReportedFailedAfterMaxAttempts() throws Exception {
+        final CountDownLatch bookkept = new CountDownLatch(2);
+        final List<BookkeepingEvent> bookkeepingEvents = Collections.synchronizedList(new ArrayList<BookkeepingEvent>());
+        CallbackStream<List<BookkeepingEvent>> bookkeepingStream = new CallbackStream<List<BookkeepingEvent>>() {
+            @Override
+            public List<BookkeepingEvent> callback(List<BookkeepingEvent> value) throws Exception {
+                for (BookkeepingEvent bookkeepingEvent : value) {
+                    bookkeepingEvents.add(bookkeepingEvent);
+                    bookkept.countDown();
+                }
+                return value;
+            }
+        };
+
+        final AtomicInteger attempts = new AtomicInteger();
+        TasmoEventProcessor eventProcessor = Mockito.mock(TasmoEventProcessor.class);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                WrittenEvent event = (WrittenEvent) invocation.getArguments()[1];
+                if (event.getEventId() == 1) {
+                    attempts.incrementAndGet();
+                    throw new RuntimeException("expected");
+                }
+                return null;
+            }
+        }).when(eventProcessor).processWrittenEvent(Mockito.any(), Mockito.any(WrittenEvent.class));
+
+        TasmoPipelinedWriteMaterializer materializer = new TasmoPipelinedWriteMaterializer(new TasmoEventsProcessedNotifier(bookkeepingStream),
+            eventProcessor,
+            new TasmoBlacklist(),
+            Executors.newFixedThreadPool(1),
+            1,
+            4,
+            3,
+            10);
+        materializer.start();
+        try {
+            ObjectId instanceId = new ObjectId("Content", new Id(1));
+            materializer.process(Arrays.asList(event(1, instanceId), event(2, instanceId)));
+
+            Assert.assertTrue(bookkept.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(attempts.get(), 3);
+            for (BookkeepingEvent bookkeepingEvent : bookkeepingEvents) {
+                Assert.assertEquals(bookkeepingEvent.isSuccessful(), bookkeepingEvent.getEventId() == 2);
+            }
+        } finally {
+            materializer.stop();
+        }
+    }
+
+    @Test
+    public void testRetriesCountAgainstStripeCapacity() throws Exception {
+        final CountDownLatch bookkept = new CountDownLatch(3);
+        CallbackStream<List<BookkeepingEvent>> bookkeepingStream = new CallbackStream<List<BookkeepingEvent>>() {
+            @Override
+            public List<BookkeepingEvent> callback(List<BookkeepingEvent> value) throws Exception {
+                for (BookkeepingEvent bookkeepingEvent : value) {
+                    Assert.assertTrue(bookkeepingEvent.isSuccessful());
+                    bookkept.countDown();
+                }
+                return value;
+            }
+        };
+
+        final AtomicBoolean failing = new AtomicBoolean(true);
+        TasmoEventProcessor eventProcessor = Mockito.mock(TasmoEventProcessor.class);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                WrittenEvent event = (WrittenEvent) invocation.getArguments()[1];
+                if (event.getEventId() == 1 && failing.get()) {
+                    throw new RuntimeException("expected");
+                }
+                return null;
+            }
+        }).when(eventProcessor).processWrittenEvent(Mockito.any(), Mockito.any(WrittenEvent.class));
+
+        final TasmoPipelinedWriteMaterializer materializer = new TasmoPipelinedWriteMaterializer(
+            new TasmoEventsProcessedNotifier(bookkeepingStream),
+            eventProcessor,
+            new TasmoBlacklist(),
+            Executors.newFixedThreadPool(1),
+            1,
+            2,
+            Integer.MAX_VALUE,
+            10);
+        materializer.start();
+        ExecutorService producer = Executors.newSingleThreadExecutor();
+        try {
+            final ObjectId instanceId = new ObjectId("Content", new Id(1));
+            materializer.process(Arrays.asList(event(1, instanceId), event(2, instanceId)));
+
+            Future<List<WrittenEvent>> third = producer.submit(new Callable<List<WrittenEvent>>() {
+                @Override
+                public List<WrittenEvent> call() throws Exception {
+                    return materializer.process(Arrays.asList(event(3, instanceId)));
+                }
+            });
+            try {
+                third.get(500, TimeUnit.MILLISECONDS);
+                Assert.fail("The stripe took a third event while holding two retries.");
+            } catch (TimeoutException x) {
+                // expected, both places are held by events waiting to be retried
+            }
+            Assert.assertEquals(materializer.queueDepth(), 2);
+
+            failing.set(false);
+            Assert.assertTrue(third.get(10, TimeUnit.SECONDS).isEmpty());
+            Assert.assertTrue(bookkept.await(10, TimeUnit.SECONDS));
+        } finally {
+            producer.shutdownNow();
+            materializer.stop();
+        }
+    }
+
+    private WrittenEvent event(long eventId, ObjectId instanceId) {
+        WrittenInstance writtenInstance = Mockito.mock(WrittenInstance.class);
+        Mockito.when(writtenInstance.getInstanceId()).thenReturn(instanceId);
+        WrittenEvent writtenEvent = Mockito.mock(WrittenEvent.class);
+        Mockito.when(writtenEvent.getEventId()).thenReturn(eventId);
+        Mockito.when(writtenEvent.getTenantId()).thenReturn(new TenantId("test"));
+        Mockito.when(writtenEvent.getActorId()).thenReturn(new Id(1));
+        Mockito.when(writtenEvent.getWrittenInstance()).thenReturn(writtenInstance);
+        Mockito.when(writtenEvent.isBookKeepingEnabled()).thenReturn(true);
+        return writtenEvent;
+    }
+}
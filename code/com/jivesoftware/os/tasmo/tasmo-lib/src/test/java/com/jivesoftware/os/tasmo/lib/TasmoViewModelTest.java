@@ -96,6 +96,28 @@ public class TasmoViewModelTest {
 
     }
 
+    @Test
+    public void testCentricBindings() throws Exception {
+        ChainedVersion version = new ChainedVersion("0", "1");
+        List<ModelPath> modelPaths = new ArrayList<>();
+        modelPaths.add(ModelPath.builder("global")
+                .addPathMember(new ModelPathStep(true, Sets.newHashSet("A"), null, ModelPathStepType.value, null, Arrays.asList("x")))
+                .build());
+        modelPaths.add(ModelPath.builder("centric")
+                .addPathMember(new ModelPathStep(true, Sets.newHashSet("B"), null, ModelPathStepType.centric_value, null, Arrays.asList("y")))
+                .build());
+        Views views = new Views(tenantId, version, Arrays.asList(new ViewBinding("Foo", modelPaths, false, false, null)));
+
+        Mockito.when(viewsProvider.getCurrentViewsVersion(tenantId)).thenReturn(version);
+        Mockito.when(viewsProvider.getViews(Mockito.any(ViewsProcessorId.class))).thenReturn(views);
+
+        tasmoViewModel.loadModel(tenantId);
+        VersionedTasmoViewModel model = tasmoViewModel.getVersionedTasmoViewModel(tenantId);
+        Assert.assertFalse(model.hasCentricBindings("A"));
+        Assert.assertTrue(model.hasCentricBindings("B"));
+        Assert.assertFalse(model.hasCentricBindings("C"));
+    }
+
     private Views makeViews(String className, ChainedVersion version, String pathName, String... fieldNames) {
         List<ModelPath> modelPaths = new ArrayList<>();
         modelPaths.add(ModelPath.builder(pathName)
@@ -0,0 +1,44 @@
+package com.jivesoftware.os.tasmo.lib.concur;
+
+import com.jivesoftware.os.jive.utils.id.Id;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.tasmo.reference.lib.concur.ConcurrencyStore;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author jonathan
+ */
+public class ResolvedExistenceTest {
+
+    @Test
+    public void testOnlyUnresolvedIdsAreLookedUp() throws Exception {
+        TenantIdAndCentricId tenantIdAndCentricId = new TenantIdAndCentricId(new TenantId("exists"), Id.NULL);
+        ObjectId container = new ObjectId("Container", new Id(1));
+        ObjectId content = new ObjectId("Content", new Id(2));
+        ObjectId deleted = new ObjectId("Content", new Id(3));
+
+        ConcurrencyStore concurrencyStore = Mockito.mock(ConcurrencyStore.class);
+        Mockito.when(concurrencyStore.getExistence(tenantIdAndCentricId, new HashSet<>(Arrays.asList(container, deleted))))
+            .thenReturn(Collections.singleton(container));
+        Mockito.when(concurrencyStore.getExistence(tenantIdAndCentricId, Collections.singleton(content)))
+            .thenReturn(Collections.singleton(content));
+
+        ResolvedExistence resolvedExistence = new ResolvedExistence();
+        Assert.assertEquals(resolvedExistence.getExistence(concurrencyStore, tenantIdAndCentricId,
+            new HashSet<>(Arrays.asList(container, deleted))), Collections.singleton(container));
+        Assert.assertEquals(resolvedExistence.getExistence(concurrencyStore, tenantIdAndCentricId,
+            new HashSet<>(Arrays.asList(container, content, deleted))), new HashSet<>(Arrays.asList(container, content)));
+        Assert.assertEquals(resolvedExistence.getSaved(), 2);
+
+        Mockito.verify(concurrencyStore).getExistence(tenantIdAndCentricId, Collections.singleton(content));
+        Mockito.verify(concurrencyStore, Mockito.times(2)).getExistence(Mockito.eq(tenantIdAndCentricId), Mockito.anySetOf(ObjectId.class));
+    }
+}
@@ -0,0 +1,146 @@
+package com.jivesoftware.os.tasmo.lib.events;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jivesoftware.os.jive.utils.id.Id;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.ColumnValueAndTimestamp;
+import com.jivesoftware.os.jive.utils.row.column.value.store.inmemory.RowColumnValueStoreImpl;
+import com.jivesoftware.os.tasmo.lib.events.EventValueStore.Transaction;
+import com.jivesoftware.os.tasmo.lib.process.TasmoProcessingStats;
+import com.jivesoftware.os.tasmo.model.process.JsonWrittenEventProvider;
+import com.jivesoftware.os.tasmo.model.process.OpaqueFieldValue;
+import com.jivesoftware.os.tasmo.model.process.WrittenEventProvider;
+import com.jivesoftware.os.tasmo.reference.lib.concur.HBaseBackedConcurrencyStore;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author jonathan
+ */
+public class EventValueCacheTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private final WrittenEventProvider<ObjectNode, JsonNode> eventProvider = new JsonWrittenEventProvider();
+    private final TenantIdAndCentricId tenantIdAndCentricId = new TenantIdAndCentricId(new TenantId("tenantId"), Id.NULL);
+    private final AtomicInteger storeReads = new AtomicInteger();
+    private TasmoProcessingStats processingStats;
+
+    @BeforeMethod
+    public void setUp() {
+        storeReads.set(0);
+        processingStats = Mockito.mock(TasmoProcessingStats.class);
+    }
+
+    private EventValueCache eventValueCache;
+
+    private EventValueStore eventValueStore(long maxBytes) {
+        eventValueCache = new EventValueCache(maxBytes, eventProvider.getLiteralFieldValueMarshaller(), processingStats);
+        return new EventValueStore(new HBaseBackedConcurrencyStore(new RowColumnValueStoreImpl<TenantIdAndCentricId, ObjectId, String, Long>()),
+                new RowColumnValueStoreImpl<TenantIdAndCentricId, ObjectId, String, OpaqueFieldValue>(),
+                eventValueCache) {
+
+            @Override
+            ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] getFromStore(TenantIdAndCentricId tenantIdAndCentricId,
+                    ObjectId objectId,
+                    String[] fieldNames) {
+                storeReads.incrementAndGet();
+                return super.getFromStore(tenantIdAndCentricId, objectId, fieldNames);
+            }
+        };
+    }
+
+    @Test
+    public void testCommitsAndRemovesAreWrittenThrough() {
+        EventValueStore eventValueStore = eventValueStore(1024 * 1024);
+        ObjectId objectId = new ObjectId("foo", new Id(1));
+
+        Transaction transaction = eventValueStore.begin(tenantIdAndCentricId, 10, 10, objectId);
+        transaction.set("bar", fieldVal("bar"));
+        eventValueStore.commit(transaction);
+
+        Assert.assertEquals(eventValueStore.get(tenantIdAndCentricId, objectId, new String[]{ "bar", "bazz" })[0].getValue(), fieldVal("bar"));
+        Assert.assertNull(eventValueStore.get(tenantIdAndCentricId, objectId, new String[]{ "bar", "bazz" })[1]);
+        verifyStoreReads(1);
+
+        transaction = eventValueStore.begin(tenantIdAndCentricId, 11, 11, objectId);
+        transaction.set("bar", fieldVal("changed"));
+        eventValueStore.commit(transaction);
+        Assert.assertEquals(eventValueStore.get(tenantIdAndCentricId, objectId, new String[]{ "bar" })[0].getValue(), fieldVal("changed"));
+        Assert.assertEquals(eventValueStore.get(tenantIdAndCentricId, objectId, new String[]{ "bar" })[0].getTimestamp(), (Long) 11L);
+        verifyStoreReads(1);
+
+        transaction = eventValueStore.begin(tenantIdAndCentricId, 9, 9, objectId);
+        transaction.set("bar", fieldVal("older"));
+        eventValueStore.commit(transaction);
+        Assert.assertEquals(eventValueStore.get(tenantIdAndCentricId, objectId, new String[]{ "bar" })[0].getValue(), fieldVal("changed"));
+        verifyStoreReads(1);
+
+        transaction = eventValueStore.begin(tenantIdAndCentricId, 12, 12, objectId);
+        transaction.set("bazz", fieldVal("bazz"));
+        eventValueStore.commit(transaction);
+        Assert.assertEquals(eventValueStore.get(tenantIdAndCentricId, objectId, new String[]{ "bazz" })[0].getValue(), fieldVal("bazz"));
+        verifyStoreReads(2);
+
+        eventValueStore.removeObjectId(tenantIdAndCentricId, 20, objectId, new String[]{ "bar", "bazz" });
+        Assert.assertEquals(Arrays.asList(eventValueStore.get(tenantIdAndCentricId, objectId, new String[]{ "bar", "bazz" })),
+                Arrays.asList(null, null));
+        verifyStoreReads(2);
+    }
+
+    @Test
+    public void testRowsAreRememberedAcrossEvents() {
+        EventValueStore eventValueStore = eventValueStore(1024 * 1024);
+        ObjectId author = new ObjectId("User", new Id(1));
+
+        Transaction transaction = eventValueStore.begin(tenantIdAndCentricId, 10, 10, author);
+        transaction.set("name", fieldVal("ted"));
+        eventValueStore.commit(transaction);
+
+        // every traversal through author.* of every later event reads the same row
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(eventValueStore.get(tenantIdAndCentricId, author, new String[]{ "name" })[0].getValue(), fieldVal("ted"));
+        }
+        verifyStoreReads(1);
+
+        transaction = eventValueStore.begin(tenantIdAndCentricId, 20, 20, author);
+        transaction.set("name", fieldVal("theodore"));
+        eventValueStore.commit(transaction);
+        Assert.assertEquals(eventValueStore.get(tenantIdAndCentricId, author, new String[]{ "name" })[0].getValue(), fieldVal("theodore"));
+        verifyStoreReads(1);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedRowsAreEvictedBySize() {
+        EventValueStore eventValueStore = eventValueStore(2048);
+        for (int i = 0; i < 100; i++) {
+            ObjectId objectId = new ObjectId("foo", new Id(i));
+            Transaction transaction = eventValueStore.begin(tenantIdAndCentricId, 10, 10, objectId);
+            transaction.set("bar", fieldVal("bar" + i));
+            eventValueStore.commit(transaction);
+            Assert.assertEquals(eventValueStore.get(tenantIdAndCentricId, objectId, new String[]{ "bar" })[0].getValue(), fieldVal("bar" + i));
+        }
+        verifyStoreReads(100);
+        Mockito.verify(processingStats, Mockito.atLeastOnce()).tally("EVENT VALUE CACHE", "evictions", 1);
+
+        ObjectId first = new ObjectId("foo", new Id(0));
+        Assert.assertEquals(eventValueStore.get(tenantIdAndCentricId, first, new String[]{ "bar" })[0].getValue(), fieldVal("bar0"));
+        verifyStoreReads(101);
+    }
+
+    private void verifyStoreReads(int times) {
+        Assert.assertEquals(storeReads.get(), times);
+    }
+
+    private OpaqueFieldValue fieldVal(Object value) {
+        return eventProvider.convertFieldValue(mapper.convertValue(value, JsonNode.class));
+    }
+}
@@ -20,6 +20,11 @@ import com.jivesoftware.os.tasmo.model.process.OpaqueFieldValue;
 import com.jivesoftware.os.tasmo.model.process.WrittenEventProvider;
 import com.jivesoftware.os.tasmo.reference.lib.concur.ConcurrencyStore;
 import com.jivesoftware.os.tasmo.reference.lib.concur.HBaseBackedConcurrencyStore;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import org.testng.Assert;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
@@ -84,6 +89,63 @@ public class EventValueStoreTest {
 
     }
 
+    @Test
+    public void testBatchedCommitAcrossCentrics() {
+        TenantId tenantId = new TenantId("batched");
+        TenantIdAndCentricId globalCentricId = new TenantIdAndCentricId(tenantId, Id.NULL);
+        TenantIdAndCentricId userCentricId = new TenantIdAndCentricId(tenantId, new Id(100));
+        ObjectId objectId = new ObjectId("foo", new Id(1));
+
+        Transaction global = eventValueStore.begin(globalCentricId, 10, 10, objectId);
+        global.set("bar", fieldVal("bar"));
+        global.remove("bazz");
+        Transaction user = eventValueStore.begin(userCentricId, 10, 10, objectId);
+        user.set("bar", fieldVal("bar"));
+        user.remove("bazz");
+        eventValueStore.commit(Arrays.asList(global, user));
+
+        for (TenantIdAndCentricId tenantIdAndCentricId : Arrays.asList(globalCentricId, userCentricId)) {
+            Assert.assertEquals(eventValueStore.get(tenantIdAndCentricId, objectId, new String[]{"bar"})[0].getValue(), fieldVal("bar"));
+            List<Long> highests = concurrencyStore.highests(tenantIdAndCentricId, objectId, new String[]{"bar", "bazz", "deleted"});
+            Assert.assertEquals(highests, Arrays.asList(10L, 10L, 10L));
+        }
+
+        eventValueStore.removeObjectId(Arrays.asList(globalCentricId, userCentricId), 20, objectId, new String[]{"bar"});
+
+        for (TenantIdAndCentricId tenantIdAndCentricId : Arrays.asList(globalCentricId, userCentricId)) {
+            Assert.assertNull(eventValueStore.get(tenantIdAndCentricId, objectId, new String[]{"bar"})[0]);
+            List<Long> highests = concurrencyStore.highests(tenantIdAndCentricId, objectId, new String[]{"bar", "deleted"});
+            Assert.assertEquals(highests, Arrays.asList(20L, 20L));
+        }
+    }
+
+    @Test
+    public void testCommitAndGetUnchanged() {
+        TenantIdAndCentricId tenantIdAndCentricId = new TenantIdAndCentricId(new TenantId("unchanged"), Id.NULL);
+        ObjectId objectId = new ObjectId("foo", new Id(1));
+
+        Transaction transaction = eventValueStore.begin(tenantIdAndCentricId, 10, 10, objectId);
+        transaction.set("bar", fieldVal("bar"));
+        transaction.set("bazz", fieldVal("bazz"));
+        Assert.assertEquals(eventValueStore.commitAndGetUnchanged(Arrays.asList(transaction)),
+                Arrays.asList(Collections.<String, Long>emptyMap()));
+
+        transaction = eventValueStore.begin(tenantIdAndCentricId, 11, 11, objectId);
+        transaction.set("bar", fieldVal("bar"));
+        transaction.set("bazz", fieldVal("changed"));
+        transaction.remove("missing");
+        Map<String, Long> unchanged = new HashMap<>();
+        unchanged.put("bar", 10L);
+        unchanged.put("missing", null);
+        Assert.assertEquals(eventValueStore.commitAndGetUnchanged(Arrays.asList(transaction)), Arrays.asList(unchanged));
+        Assert.assertEquals(eventValueStore.get(tenantIdAndCentricId, objectId, new String[]{"bazz"})[0].getValue(), fieldVal("changed"));
+
+        transaction = eventValueStore.begin(tenantIdAndCentricId, 11, 11, objectId);
+        transaction.set("bar", fieldVal("bar"));
+        Assert.assertEquals(eventValueStore.commitAndGetUnchanged(Arrays.asList(transaction)),
+                Arrays.asList(Collections.<String, Long>emptyMap()), "a replayed event changes everything it writes");
+    }
+
     private OpaqueFieldValue fieldVal(Object value) {
         return eventProvider.convertFieldValue(mapper.convertValue(value, JsonNode.class));
     }
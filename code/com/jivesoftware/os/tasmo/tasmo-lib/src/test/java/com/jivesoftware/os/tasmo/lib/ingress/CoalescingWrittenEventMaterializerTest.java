@@ -0,0 +1,105 @@
+package com.jivesoftware.os.tasmo.lib.ingress;
+
+import com.jivesoftware.os.jive.utils.id.Id;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantId;
+import com.jivesoftware.os.tasmo.lib.TasmoBlacklist;
+import com.jivesoftware.os.tasmo.model.process.OpaqueFieldValue;
+import com.jivesoftware.os.tasmo.model.process.WrittenEvent;
+import com.jivesoftware.os.tasmo.model.process.WrittenInstance;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class CoalescingWrittenEventMaterializerTest {
+
+    private final TenantId tenantId = new TenantId("test");
+    private final ObjectId content = new ObjectId("Content", new Id(1));
+    private final ObjectId other = new ObjectId("Content", new Id(2));
+
+    @Test
+    public void testSupersededEventsAreDroppedAndDeletesBreakRuns() throws Exception {
+        final List<WrittenEvent> delegated = new ArrayList<>();
+        CoalescingWrittenEventMaterializer materializer = new CoalescingWrittenEventMaterializer(new WrittenEventMaterializer() {
+            @Override
+            public List<WrittenEvent> process(List<WrittenEvent> writtenEvents) throws Exception {
+                delegated.addAll(writtenEvents);
+                return writtenEvents;
+            }
+        }, new TasmoBlacklist());
+
+        WrittenEvent e1 = event(1, content, Id.NULL, false, "title");
+        WrittenEvent e2 = event(2, other, Id.NULL, false, "title");
+        WrittenEvent e3 = event(3, content, Id.NULL, false, "title", "tags");
+        WrittenEvent e4 = event(4, content, Id.NULL, true);
+        WrittenEvent e5 = event(5, content, Id.NULL, false, "title");
+
+        List<WrittenEvent> failed = materializer.process(Arrays.asList(e1, e2, e3, e4, e5));
+
+        Assert.assertEquals(delegated.size(), 4);
+        Assert.assertTrue(delegated.get(0) instanceof CoalescedWrittenEvent);
+        Assert.assertSame(delegated.get(1), e2);
+        Assert.assertSame(delegated.get(2), e4);
+        Assert.assertSame(delegated.get(3), e5);
+
+        CoalescedWrittenEvent coalesced = (CoalescedWrittenEvent) delegated.get(0);
+        Assert.assertEquals(coalesced.getEventId(), 3);
+        Assert.assertEquals(coalesced.getCoalescedEvents(), Arrays.asList(e1, e3));
+        Assert.assertSame(coalesced.getWrittenInstance(), e3.getWrittenInstance());
+
+        // failures are expanded back to the original events
+        Assert.assertEquals(failed, Arrays.asList(e1, e3, e2, e4, e5));
+    }
+
+    @Test
+    public void testFieldsAreNeverStampedWithAnotherEventsId() throws Exception {
+        CoalescingWrittenEventMaterializer materializer = new CoalescingWrittenEventMaterializer(null, new TasmoBlacklist());
+        WrittenEvent e1 = event(1, content, Id.NULL, false, "title", "body");
+        WrittenEvent e2 = event(2, content, Id.NULL, false, "title");
+
+        // body is only written by e1 so e1 must be persisted with its own event id rather than merged into e2
+        Assert.assertEquals(materializer.coalesce(Arrays.asList(e1, e2)), Arrays.asList(e1, e2));
+    }
+
+    @Test
+    public void testLatestEventIdWinsRegardlessOfArrivalOrder() throws Exception {
+        CoalescingWrittenEventMaterializer materializer = new CoalescingWrittenEventMaterializer(null, new TasmoBlacklist());
+        WrittenEvent e9 = event(9, content, Id.NULL, false, "title");
+        WrittenEvent e7 = event(7, content, Id.NULL, false, "title");
+
+        List<WrittenEvent> coalesced = materializer.coalesce(Arrays.asList(e9, e7));
+        Assert.assertEquals(coalesced.size(), 1);
+        Assert.assertEquals(coalesced.get(0).getEventId(), 9);
+        Assert.assertEquals(((CoalescedWrittenEvent) coalesced.get(0)).getCoalescedEvents(), Arrays.asList(e9, e7));
+    }
+
+    @Test
+    public void testDifferentCentricIdsAreNotCoalesced() throws Exception {
+        CoalescingWrittenEventMaterializer materializer = new CoalescingWrittenEventMaterializer(null, new TasmoBlacklist());
+        WrittenEvent e1 = event(1, content, new Id(7), false, "title");
+        WrittenEvent e2 = event(2, content, new Id(8), false, "title");
+
+        List<WrittenEvent> coalesced = materializer.coalesce(Arrays.asList(e1, e2));
+        Assert.assertEquals(coalesced, Arrays.asList(e1, e2));
+    }
+
+    private WrittenEvent event(long eventId, ObjectId instanceId, Id centricId, boolean deletion, String... fieldNames) {
+        WrittenInstance writtenInstance = Mockito.mock(WrittenInstance.class);
+        Mockito.when(writtenInstance.getInstanceId()).thenReturn(instanceId);
+        Mockito.when(writtenInstance.isDeletion()).thenReturn(deletion);
+        Mockito.when(writtenInstance.getFieldNames()).thenReturn(Arrays.asList(fieldNames));
+        for (String fieldName : fieldNames) {
+            Mockito.when(writtenInstance.hasField(fieldName)).thenReturn(true);
+            Mockito.when(writtenInstance.getFieldValue(fieldName)).thenReturn(Mockito.mock(OpaqueFieldValue.class));
+        }
+        WrittenEvent writtenEvent = Mockito.mock(WrittenEvent.class);
+        Mockito.when(writtenEvent.getEventId()).thenReturn(eventId);
+        Mockito.when(writtenEvent.getTenantId()).thenReturn(tenantId);
+        Mockito.when(writtenEvent.getCentricId()).thenReturn(centricId);
+        Mockito.when(writtenEvent.getWrittenInstance()).thenReturn(writtenInstance);
+        return writtenEvent;
+    }
+}
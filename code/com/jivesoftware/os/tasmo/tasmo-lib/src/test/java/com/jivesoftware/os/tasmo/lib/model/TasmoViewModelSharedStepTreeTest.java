@@ -0,0 +1,70 @@
+package com.jivesoftware.os.tasmo.lib.model;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Sets;
+import com.jivesoftware.os.jive.utils.id.TenantId;
+import com.jivesoftware.os.tasmo.lib.process.traversal.InitiateTraverserKey;
+import com.jivesoftware.os.tasmo.lib.process.traversal.PathTraverser;
+import com.jivesoftware.os.tasmo.lib.process.traversal.PathTraversersFactory;
+import com.jivesoftware.os.tasmo.lib.process.traversal.TraversablePath;
+import com.jivesoftware.os.tasmo.model.ViewsProvider;
+import com.jivesoftware.os.tasmo.model.path.ModelPath;
+import com.jivesoftware.os.tasmo.model.path.ModelPathStep;
+import com.jivesoftware.os.tasmo.model.path.ModelPathStepType;
+import com.jivesoftware.os.tasmo.model.path.StringHashcodeViewPathKeyProvider;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author jonathan
+ */
+public class TasmoViewModelSharedStepTreeTest {
+
+    @Test
+    public void testValuePathsOfDifferentViewsShareOneStepTree() throws Exception {
+        TasmoViewModel tasmoViewModel = new TasmoViewModel(new TenantId("master"),
+                Mockito.mock(ViewsProvider.class),
+                new StringHashcodeViewPathKeyProvider());
+
+        ListMultimap<InitiateTraverserKey, TraversablePath> valuePaths = ArrayListMultimap.create();
+        addUserValuePaths(valuePaths, "NameView", authorPath("authorName", "name"));
+        addUserValuePaths(valuePaths, "EmailView", authorPath("authorEmail", "email"));
+
+        ListMultimap<InitiateTraverserKey, PathTraverser> transformed = tasmoViewModel.transformToPrefixCollapsedTree("values", valuePaths);
+
+        Set<PathTraverser> distinct = Sets.newIdentityHashSet();
+        distinct.addAll(transformed.values());
+        Assert.assertEquals(distinct.size(), 1, "both views walk the same rootward hop so they should share one tree");
+
+        PathTraverser shared = distinct.iterator().next();
+        Assert.assertEquals(shared.getPathCount(), 2);
+        Assert.assertEquals(shared.getInitialFieldNames(), new HashSet<>(Arrays.asList("name", "email", "deleted")));
+        Assert.assertSame(transformed.get(new InitiateTraverserKey("name", null, false)).get(0), shared);
+        Assert.assertSame(transformed.get(new InitiateTraverserKey("email", null, false)).get(0), shared);
+        Assert.assertEquals(transformed.get(new InitiateTraverserKey("deleted", null, false)).size(), 1);
+    }
+
+    private ModelPath authorPath(String id, String fieldName) {
+        return ModelPath.builder(id)
+                .addPathMember(new ModelPathStep(true, Sets.newHashSet("Content"), "author", ModelPathStepType.ref, Sets.newHashSet("User"), null))
+                .addPathMember(new ModelPathStep(false, Sets.newHashSet("User"), null, ModelPathStepType.value, null, Arrays.asList(fieldName)))
+                .build();
+    }
+
+    private void addUserValuePaths(ListMultimap<InitiateTraverserKey, TraversablePath> valuePaths, String viewClassName, ModelPath modelPath) {
+        PathTraversersFactory factory = new PathTraversersFactory(viewClassName, modelPath.getId().hashCode(), modelPath);
+        for (TraversablePath traversablePath : factory.buildPathTraversers(null)) {
+            if (traversablePath.getInitialModelPathStepType().isValue()) {
+                for (String fieldName : traversablePath.getInitialFieldNames()) {
+                    valuePaths.put(new InitiateTraverserKey(fieldName, null, false), traversablePath);
+                }
+            }
+        }
+    }
+}
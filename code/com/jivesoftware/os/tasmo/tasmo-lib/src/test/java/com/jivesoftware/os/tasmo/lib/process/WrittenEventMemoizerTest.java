@@ -0,0 +1,154 @@
+package com.jivesoftware.os.tasmo.lib.process;
+
+import com.jivesoftware.os.jive.utils.base.interfaces.CallbackStream;
+import com.jivesoftware.os.jive.utils.id.Id;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.ColumnValueAndTimestamp;
+import com.jivesoftware.os.tasmo.lib.read.FieldValueReader;
+import com.jivesoftware.os.tasmo.model.process.OpaqueFieldValue;
+import com.jivesoftware.os.tasmo.reference.lib.ReferenceWithTimestamp;
+import com.jivesoftware.os.tasmo.reference.lib.traverser.ReferenceTraverser;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author jonathan
+ */
+public class WrittenEventMemoizerTest {
+
+    private final TenantIdAndCentricId tenantIdAndCentricId = new TenantIdAndCentricId(new TenantId("memo"), Id.NULL);
+    private final ObjectId author = new ObjectId("User", new Id(1));
+    private final ObjectId content = new ObjectId("Content", new Id(2));
+
+    @Test
+    public void testRefStreamsAreReadOncePerEvent() throws Exception {
+        final AtomicInteger reads = new AtomicInteger();
+        ReferenceTraverser store = new ReferenceTraverser() {
+
+            @Override
+            public void traverseForwardRef(TenantIdAndCentricId tenantIdAndCentricId, Set<String> classNames, String fieldName, ObjectId id,
+                    long threadTimestamp, CallbackStream<ReferenceWithTimestamp> refStream) throws Exception {
+                reads.incrementAndGet();
+                refStream.callback(new ReferenceWithTimestamp(author, fieldName, 1));
+                refStream.callback(null);
+            }
+
+            @Override
+            public void traversBackRefs(TenantIdAndCentricId tenantIdAndCentricId, Set<String> classNames, String fieldName, ObjectId id,
+                    long threadTimestamp, CallbackStream<ReferenceWithTimestamp> refStream) throws Exception {
+                reads.incrementAndGet();
+                refStream.callback(new ReferenceWithTimestamp(content, fieldName, 1));
+                refStream.callback(null);
+            }
+
+            @Override
+            public void traverseLatestBackRefs(TenantIdAndCentricId tenantIdAndCentricId, Set<String> classNames, String fieldName, ObjectId id,
+                    long threadTimestamp, CallbackStream<ReferenceWithTimestamp> refStream) throws Exception {
+                traversBackRefs(tenantIdAndCentricId, classNames, fieldName, id, threadTimestamp, refStream);
+            }
+        };
+
+        WrittenEventMemoizer memoizer = new WrittenEventMemoizer(10);
+        ReferenceTraverser memoized = memoizer.memoize(store);
+
+        Set<String> classNames = Collections.singleton("Content");
+        Assert.assertEquals(forward(memoized, classNames, "author", content), Arrays.asList(author));
+        Assert.assertEquals(forward(memoized, classNames, "author", content), Arrays.asList(author));
+        Assert.assertEquals(reads.get(), 1);
+
+        Assert.assertEquals(back(memoized, classNames, "author", author), Arrays.asList(content));
+        Assert.assertEquals(reads.get(), 2, "back refs are memoized separately from forward refs");
+
+        memoizer.forgetRefs(tenantIdAndCentricId, "author", content);
+        forward(memoized, classNames, "author", content);
+        back(memoized, classNames, "author", author);
+        Assert.assertEquals(reads.get(), 3, "only the forgotten instance is read again");
+
+        TasmoProcessingStats processingStats = new TasmoProcessingStats();
+        memoizer.discard(processingStats);
+        forward(memoized, classNames, "author", content);
+        Assert.assertEquals(reads.get(), 4);
+    }
+
+    @Test
+    public void testFieldValuesAreReadOncePerEvent() throws Exception {
+        final List<List<String>> reads = new ArrayList<>();
+        FieldValueReader store = new FieldValueReader() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] readFieldValues(TenantIdAndCentricId tenantIdAndCentricId,
+                    ObjectId objectInstanceId, String[] fieldNamesArray) {
+                reads.add(Arrays.asList(fieldNamesArray));
+                ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] got = new ColumnValueAndTimestamp[fieldNamesArray.length];
+                for (int i = 0; i < got.length; i++) {
+                    if (!fieldNamesArray[i].equals("missing")) {
+                        got[i] = new ColumnValueAndTimestamp<>(fieldNamesArray[i], null, 1L);
+                    }
+                }
+                return got;
+            }
+        };
+
+        WrittenEventMemoizer memoizer = new WrittenEventMemoizer(10);
+        FieldValueReader memoized = memoizer.memoize(store);
+
+        ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] got = memoized.readFieldValues(tenantIdAndCentricId, author,
+                new String[]{ "name", "missing" });
+        Assert.assertEquals(got[0].getColumn(), "name");
+        Assert.assertNull(got[1]);
+
+        got = memoized.readFieldValues(tenantIdAndCentricId, author, new String[]{ "missing", "email", "name" });
+        Assert.assertNull(got[0]);
+        Assert.assertEquals(got[1].getColumn(), "email");
+        Assert.assertEquals(got[2].getColumn(), "name");
+
+        memoized.readFieldValues(tenantIdAndCentricId, author, new String[]{ "email" });
+        Assert.assertEquals(reads, Arrays.asList(Arrays.asList("name", "missing"), Arrays.asList("email")));
+    }
+
+    @Test
+    public void testDisabledMemoizerPassesThrough() {
+        ReferenceTraverser referenceTraverser = org.mockito.Mockito.mock(ReferenceTraverser.class);
+        FieldValueReader fieldValueReader = org.mockito.Mockito.mock(FieldValueReader.class);
+        WrittenEventMemoizer memoizer = new WrittenEventMemoizer(0);
+        Assert.assertSame(memoizer.memoize(referenceTraverser), referenceTraverser);
+        Assert.assertSame(memoizer.memoize(fieldValueReader), fieldValueReader);
+    }
+
+    private List<ObjectId> forward(ReferenceTraverser referenceTraverser, Set<String> classNames, String fieldName, ObjectId id)
+            throws Exception {
+        final List<ObjectId> got = new ArrayList<>();
+        referenceTraverser.traverseForwardRef(tenantIdAndCentricId, classNames, fieldName, id, 1, collect(got));
+        return got;
+    }
+
+    private List<ObjectId> back(ReferenceTraverser referenceTraverser, Set<String> classNames, String fieldName, ObjectId id)
+            throws Exception {
+        final List<ObjectId> got = new ArrayList<>();
+        referenceTraverser.traversBackRefs(tenantIdAndCentricId, classNames, fieldName, id, 1, collect(got));
+        return got;
+    }
+
+    private CallbackStream<ReferenceWithTimestamp> collect(final List<ObjectId> got) {
+        return new CallbackStream<ReferenceWithTimestamp>() {
+
+            @Override
+            public ReferenceWithTimestamp callback(ReferenceWithTimestamp v) throws Exception {
+                if (v != null) {
+                    got.add(v.getObjectId());
+                }
+                return v;
+            }
+        };
+    }
+}
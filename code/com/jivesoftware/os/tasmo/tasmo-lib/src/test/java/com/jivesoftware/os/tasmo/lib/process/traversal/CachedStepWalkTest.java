@@ -0,0 +1,86 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.tasmo.lib.process.WrittenEventContext;
+import com.jivesoftware.os.tasmo.lib.write.PathId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author jonathan
+ */
+public class CachedStepWalkTest {
+
+    private final List<String> visited = new ArrayList<>();
+
+    @Test
+    public void testCachedWalkVisitsLikeTheStepTree() throws Exception {
+        StepTree stepTree = stepTree();
+
+        visited.clear();
+        new StepTreeStreamer(stepTree).stream(null, null, null, null, null, null, null);
+        List<String> interpreted = new ArrayList<>(visited);
+
+        visited.clear();
+        CachedStepWalk.cache(stepTree).stream(null, null, null, null, null, null, null);
+        Assert.assertEquals(visited, interpreted);
+        Assert.assertEquals(visited.size(), 1 + 2 + 4 + 2 + 2 + 1);
+    }
+
+    @Test
+    public void testEmptyTreeStreamsNothing() throws Exception {
+        visited.clear();
+        CachedStepWalk.cache(new StepTree()).stream(null, null, null, null, null, null, null);
+        Assert.assertTrue(visited.isEmpty());
+    }
+
+    private StepTree stepTree() {
+        StepTraverser root = new RecordingStep("root", 2);
+        StepTraverser author = new RecordingStep("author", 2);
+        StepTraverser name = new RecordingStep("name", 1);
+        StepTraverser tags = new RecordingStep("tags", 1);
+        StepTraverser tag = new RecordingStep("tag", 1);
+        StepTraverser count = new RecordingStep("count", 1);
+
+        StepTree stepTree = new StepTree();
+        stepTree.add(Arrays.asList(root, author, name));
+        stepTree.add(Arrays.asList(root, tags, tag));
+        stepTree.add(Arrays.asList(count));
+        return stepTree;
+    }
+
+    private class RecordingStep implements StepTraverser {
+
+        private final String name;
+        private final int fanout;
+
+        RecordingStep(String name, int fanout) {
+            this.name = name;
+            this.fanout = fanout;
+        }
+
+        @Override
+        public void process(TenantIdAndCentricId globalCentricId,
+                TenantIdAndCentricId userCentricId,
+                WrittenEventContext writtenEventContext,
+                PathTraversalContext viewFieldContext,
+                PathContext pathContext,
+                LeafContext leafContext,
+                PathId pathId,
+                StepStream streamTo) throws Exception {
+            visited.add(name);
+            for (int i = 0; i < fanout; i++) {
+                streamTo.stream(globalCentricId, userCentricId, writtenEventContext, viewFieldContext, pathContext, leafContext, pathId);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.jivesoftware.os.jive.utils.id.Id;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.ColumnValueAndTimestamp;
+import com.jivesoftware.os.jive.utils.row.column.value.store.inmemory.RowColumnValueStoreImpl;
+import com.jivesoftware.os.tasmo.event.api.ReservedFields;
+import com.jivesoftware.os.tasmo.lib.concur.ConcurrencyChecker;
+import com.jivesoftware.os.tasmo.lib.process.TasmoProcessingStats;
+import com.jivesoftware.os.tasmo.lib.process.WrittenEventContext;
+import com.jivesoftware.os.tasmo.lib.read.FieldValueReader;
+import com.jivesoftware.os.tasmo.lib.write.CommitChange;
+import com.jivesoftware.os.tasmo.lib.write.PathId;
+import com.jivesoftware.os.tasmo.model.process.OpaqueFieldValue;
+import com.jivesoftware.os.tasmo.model.process.WrittenEvent;
+import com.jivesoftware.os.tasmo.model.process.WrittenInstance;
+import com.jivesoftware.os.tasmo.reference.lib.concur.HBaseBackedConcurrencyStore;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.mockito.Mockito;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author jonathan
+ */
+public class InitiateWriteTraversalTest {
+
+    private final TenantIdAndCentricId tenantIdAndCentricId = new TenantIdAndCentricId(new TenantId("skip"), Id.NULL);
+    private final ObjectId instanceId = new ObjectId("Content", new Id(1));
+
+    private ConcurrencyChecker concurrencyChecker;
+    private PathTraverser title;
+    private InitiateWriteTraversal initiateWriteTraversal;
+
+    @BeforeMethod
+    public void setUp() {
+        concurrencyChecker = new ConcurrencyChecker(new HBaseBackedConcurrencyStore(
+            new RowColumnValueStoreImpl<TenantIdAndCentricId, ObjectId, String, Long>()));
+
+        title = Mockito.mock(PathTraverser.class);
+        Mockito.when(title.getPathCount()).thenReturn(1);
+        Mockito.when(title.getInitialFieldNames()).thenReturn(Collections.singleton("title"));
+        Mockito.when(title.createContext(Mockito.any(WrittenEventContext.class), Mockito.any(WrittenEvent.class), Mockito.anyLong(),
+            Mockito.anyBoolean())).thenReturn(Mockito.mock(PathTraversalContext.class));
+        Mockito.when(title.createPathContext()).thenReturn(Mockito.mock(PathContext.class));
+
+        ListMultimap<InitiateTraverserKey, PathTraverser> valueTraversers = ArrayListMultimap.create();
+        valueTraversers.put(new InitiateTraverserKey("title", null, false), title);
+        ListMultimap<InitiateTraverserKey, PathTraverser> none = ArrayListMultimap.create();
+        initiateWriteTraversal = new InitiateWriteTraversal(valueTraversers, none, none, none, none, none);
+    }
+
+    @Test
+    public void testOnlyTraversalsOfCompletelyTraversedValuesAreSkipped() throws Exception {
+        TasmoProcessingStats processingStats = Mockito.mock(TasmoProcessingStats.class);
+
+        process(10, processingStats, Collections.<String, Long>emptyMap());
+        verifyTraversed(1);
+
+        process(20, processingStats, unchanged(10L, 10L));
+        verifyTraversed(1);
+        Mockito.verify(processingStats).tally("WRITE TRAVERSAL", "unchangedValueTraversalsSkipped", 1);
+
+        // stored by an event at 25 whose traversal never completed
+        process(30, processingStats, unchanged(25L, 25L));
+        verifyTraversed(2);
+
+        process(40, processingStats, unchanged(30L, 30L));
+        verifyTraversed(2);
+        Mockito.verify(processingStats, Mockito.times(2)).tally("WRITE TRAVERSAL", "unchangedValueTraversalsSkipped", 1);
+    }
+
+    @Test
+    public void testNothingIsSkippedWhenPriorValuesWerentRead() throws Exception {
+        TasmoProcessingStats processingStats = Mockito.mock(TasmoProcessingStats.class);
+
+        process(10, processingStats, Collections.<String, Long>emptyMap());
+        process(20, processingStats, null);
+        verifyTraversed(2);
+
+        process(30, processingStats, unchanged(20L, 20L));
+        verifyTraversed(3);
+    }
+
+    private Map<String, Long> unchanged(long titleTimestamp, long priorEvent) {
+        Map<String, Long> unchanged = new HashMap<>();
+        unchanged.put("title", titleTimestamp);
+        unchanged.put(ReservedFields.NIL_FIELD, priorEvent);
+        return unchanged;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void process(long eventId, TasmoProcessingStats processingStats, Map<String, Long> unchangedValueFields) throws Exception {
+        WrittenInstance writtenInstance = Mockito.mock(WrittenInstance.class);
+        Mockito.when(writtenInstance.getInstanceId()).thenReturn(instanceId);
+        Mockito.when(writtenInstance.getFieldNames()).thenReturn(Arrays.asList("title"));
+        Mockito.when(writtenInstance.hasField("title")).thenReturn(true);
+        WrittenEvent writtenEvent = Mockito.mock(WrittenEvent.class);
+        Mockito.when(writtenEvent.getEventId()).thenReturn(eventId);
+        Mockito.when(writtenEvent.getWrittenInstance()).thenReturn(writtenInstance);
+
+        FieldValueReader fieldValueReader = Mockito.mock(FieldValueReader.class);
+        Mockito.when(fieldValueReader.readFieldValues(tenantIdAndCentricId, instanceId, new String[]{ "title" })).thenReturn(
+            new ColumnValueAndTimestamp[]{ new ColumnValueAndTimestamp<>("title", Mockito.mock(OpaqueFieldValue.class), eventId) });
+
+        WrittenEventContext writtenEventContext = new WrittenEventContext(eventId, Id.NULL, Id.NULL, writtenEvent, null,
+            concurrencyChecker, null, fieldValueReader, null, null, Mockito.mock(CommitChange.class), new SerialPathTraversalExecutor(),
+            processingStats);
+        if (unchangedValueFields != null) {
+            writtenEventContext.setUnchangedValueFields(Collections.singletonMap(tenantIdAndCentricId, unchangedValueFields));
+        }
+        initiateWriteTraversal.process(writtenEventContext, tenantIdAndCentricId, tenantIdAndCentricId, writtenEvent, eventId);
+    }
+
+    private void verifyTraversed(int times) throws Exception {
+        Mockito.verify(title, Mockito.times(times)).traverse(Mockito.any(TenantIdAndCentricId.class),
+            Mockito.any(TenantIdAndCentricId.class),
+            Mockito.any(WrittenEventContext.class),
+            Mockito.any(PathTraversalContext.class),
+            Mockito.any(PathContext.class),
+            Mockito.any(LeafContext.class),
+            Mockito.any(PathId.class));
+    }
+}
@@ -0,0 +1,81 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.jivesoftware.os.tasmo.lib.write.ViewField;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class ParallelPathTraversalExecutorTest {
+
+    private ListeningExecutorService traversalThreads;
+
+    @BeforeClass
+    public void setUp() {
+        traversalThreads = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+    }
+
+    @AfterClass
+    public void tearDown() {
+        traversalThreads.shutdownNow();
+    }
+
+    @Test
+    public void testChangesMatchSerialOrder() throws Exception {
+        List<Callable<List<ViewField>>> pathTraversals = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            final long eventId = i;
+            pathTraversals.add(new Callable<List<ViewField>>() {
+
+                @Override
+                public List<ViewField> call() throws Exception {
+                    Thread.sleep(16 - eventId);
+                    return Arrays.asList(viewField(eventId), viewField(eventId));
+                }
+            });
+        }
+
+        List<ViewField> serial = new SerialPathTraversalExecutor().execute(pathTraversals);
+        List<ViewField> parallel = new ParallelPathTraversalExecutor(traversalThreads).execute(pathTraversals);
+
+        Assert.assertEquals(parallel.size(), serial.size());
+        for (int i = 0; i < serial.size(); i++) {
+            Assert.assertEquals(parallel.get(i).getEventId(), serial.get(i).getEventId());
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testFailedTraversalIsRethrown() throws Exception {
+        List<Callable<List<ViewField>>> pathTraversals = new ArrayList<>();
+        pathTraversals.add(new Callable<List<ViewField>>() {
+
+            @Override
+            public List<ViewField> call() throws Exception {
+                return Arrays.asList(viewField(1));
+            }
+        });
+        pathTraversals.add(new Callable<List<ViewField>>() {
+
+            @Override
+            public List<ViewField> call() throws Exception {
+                throw new IllegalStateException("expected");
+            }
+        });
+
+        new ParallelPathTraversalExecutor(traversalThreads).execute(pathTraversals);
+    }
+
+    private ViewField viewField(long eventId) {
+        return new ViewField(eventId, null, null, ViewField.ViewFieldChangeType.add, null, null, 0, null, null, null, null, eventId);
+    }
+}
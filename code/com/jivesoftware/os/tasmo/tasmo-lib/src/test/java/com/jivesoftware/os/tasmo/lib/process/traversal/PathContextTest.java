@@ -0,0 +1,45 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.jivesoftware.os.jive.utils.id.Id;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.tasmo.lib.process.WrittenEventContext;
+import com.jivesoftware.os.tasmo.lib.write.PathId;
+import com.jivesoftware.os.tasmo.reference.lib.ReferenceWithTimestamp;
+import java.util.Arrays;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author jonathan
+ */
+public class PathContextTest {
+
+    @Test
+    public void testSlotsAreOverwrittenAndBuiltOnce() {
+        WrittenEventContext writtenEventContext = Mockito.mock(WrittenEventContext.class);
+        ObjectId content = new ObjectId("Content", new Id(1));
+        ObjectId user = new ObjectId("User", new Id(2));
+        ObjectId otherUser = new ObjectId("User", new Id(3));
+
+        PathContext pathContext = new PathContext(2);
+        pathContext.setPathId(writtenEventContext, 0, content, 10);
+        pathContext.addVersions(0, Arrays.asList(new ReferenceWithTimestamp(content, "author", 10)));
+        pathContext.setPathId(writtenEventContext, 1, user, 11);
+        pathContext.setVersion(1, content, "author", 11);
+
+        PathId[] pathIds = pathContext.copyOfModelPathInstanceIds();
+        Assert.assertEquals(pathIds, new PathId[]{ new PathId(content, 10), new PathId(user, 11) });
+        Assert.assertSame(pathContext.getPathId(1), pathIds[1]);
+        Assert.assertEquals(pathContext.copyOfVersions(), Arrays.asList(new ReferenceWithTimestamp(content, "author", 10),
+                new ReferenceWithTimestamp(content, "author", 11)));
+
+        pathContext.setPathId(writtenEventContext, 1, otherUser, 12);
+        pathContext.setVersion(1, content, "author", 12);
+        Assert.assertSame(pathContext.getPathId(0), pathIds[0]);
+        Assert.assertEquals(pathContext.getPathId(1), new PathId(otherUser, 12));
+        Assert.assertEquals(pathContext.copyOfVersions().get(1), new ReferenceWithTimestamp(content, "author", 12));
+        Assert.assertEquals(pathContext.copyOfModelPathTimestamps(), new long[]{ 10, 12, 0 });
+    }
+}
@@ -0,0 +1,91 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.jivesoftware.os.tasmo.model.process.WrittenInstance;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author jonathan
+ */
+public class TraverserIndexTest {
+
+    @Test
+    public void testValueTraversersAreDispatchedByField() {
+        PathTraverser name = traverser(2);
+        PathTraverser email = traverser(1);
+        PathTraverser always = traverser(1);
+        ListMultimap<InitiateTraverserKey, PathTraverser> valueTraversers = ArrayListMultimap.create();
+        valueTraversers.put(new InitiateTraverserKey("name", "name", false), name);
+        valueTraversers.put(new InitiateTraverserKey("email", "email", false), email);
+        valueTraversers.put(new InitiateTraverserKey("email", "email", false), name);
+        valueTraversers.put(new InitiateTraverserKey("title", null, false), always);
+
+        ValueTraverserIndex index = new ValueTraverserIndex(valueTraversers);
+        List<PathTraverser> triggered = new ArrayList<>();
+        Assert.assertEquals(index.triggered(instance(false, "name", "email", "other"), triggered), 6);
+        Assert.assertEquals(new HashSet<>(triggered), new HashSet<>(Arrays.asList(name, email, always)));
+        Assert.assertEquals(triggered.size(), 3);
+
+        triggered.clear();
+        Assert.assertEquals(index.triggered(instance(false, "other"), triggered), 1);
+        Assert.assertEquals(triggered, Arrays.asList(always));
+    }
+
+    @Test
+    public void testRefTraversersNeedTheirRefFieldOrADeletion() {
+        PathTraverser forward = traverser(1);
+        PathTraverser back = traverser(1);
+        ListMultimap<InitiateTraverserKey, PathTraverser> forwardRefTraversers = ArrayListMultimap.create();
+        ListMultimap<InitiateTraverserKey, PathTraverser> backRefTraversers = ArrayListMultimap.create();
+        forwardRefTraversers.put(new InitiateTraverserKey("author", "author", false), forward);
+        forwardRefTraversers.put(new InitiateTraverserKey("name", "author", false), forward);
+        backRefTraversers.put(new InitiateTraverserKey("author", "author", false), back);
+
+        RefTraverserIndex index = new RefTraverserIndex(forwardRefTraversers, backRefTraversers);
+
+        List<String> refFieldNames = new ArrayList<>();
+        List<Set<PathTraverser>> forwardTraversers = new ArrayList<>();
+        List<Set<PathTraverser>> backTraversers = new ArrayList<>();
+        Set<PathTraverser> triggeredTraversers = new HashSet<>();
+        Assert.assertEquals(index.triggered(instance(false, "name"), refFieldNames, forwardTraversers, backTraversers,
+                triggeredTraversers), 0);
+        Assert.assertTrue(refFieldNames.isEmpty());
+
+        Assert.assertEquals(index.triggered(instance(false, "name", "author"), refFieldNames, forwardTraversers, backTraversers,
+                triggeredTraversers), 3);
+        Assert.assertEquals(refFieldNames, Arrays.asList("author"));
+        Assert.assertEquals(forwardTraversers.get(0), new HashSet<>(Arrays.asList(forward)));
+        Assert.assertEquals(backTraversers.get(0), new HashSet<>(Arrays.asList(back)));
+        Assert.assertEquals(triggeredTraversers.size(), 2);
+
+        refFieldNames.clear();
+        forwardTraversers.clear();
+        backTraversers.clear();
+        Assert.assertEquals(index.triggered(instance(true, "name"), refFieldNames, forwardTraversers, backTraversers,
+                triggeredTraversers), 1);
+        Assert.assertEquals(refFieldNames, Arrays.asList("author"));
+        Assert.assertTrue(backTraversers.get(0).isEmpty());
+    }
+
+    private PathTraverser traverser(int pathCount) {
+        PathTraverser pathTraverser = Mockito.mock(PathTraverser.class);
+        Mockito.when(pathTraverser.getPathCount()).thenReturn(pathCount);
+        return pathTraverser;
+    }
+
+    private WrittenInstance instance(boolean deletion, String... fieldNames) {
+        WrittenInstance writtenInstance = Mockito.mock(WrittenInstance.class);
+        Mockito.when(writtenInstance.getFieldNames()).thenReturn(Arrays.asList(fieldNames));
+        Mockito.when(writtenInstance.isDeletion()).thenReturn(deletion);
+        return writtenInstance;
+    }
+}
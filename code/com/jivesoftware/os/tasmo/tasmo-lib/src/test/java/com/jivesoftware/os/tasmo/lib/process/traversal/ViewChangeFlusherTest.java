@@ -0,0 +1,166 @@
+package com.jivesoftware.os.tasmo.lib.process.traversal;
+
+import com.jivesoftware.os.jive.utils.id.Id;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.tasmo.lib.process.TasmoProcessingStats;
+import com.jivesoftware.os.tasmo.lib.process.WrittenEventContext;
+import com.jivesoftware.os.tasmo.lib.write.CommitChange;
+import com.jivesoftware.os.tasmo.lib.write.CommitChangeException;
+import com.jivesoftware.os.tasmo.lib.write.PathId;
+import com.jivesoftware.os.tasmo.lib.write.ViewField;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author jonathan
+ */
+public class ViewChangeFlusherTest {
+
+    private final TenantIdAndCentricId tenantIdAndCentricId = new TenantIdAndCentricId(new TenantId("flush"), Id.NULL);
+
+    @Test
+    public void testBuffersFlushAtTheirThreshold() throws Exception {
+        final List<List<ViewField>> commits = new ArrayList<>();
+        ViewChangeFlusher flusher = new ViewChangeFlusher(context(commits, 2, 0), tenantIdAndCentricId);
+        ViewChangeBuffer buffer = new ViewChangeBuffer(flusher);
+        List<ViewField> changes = changes(5, 1);
+        buffer.addAll(changes);
+
+        Assert.assertEquals(commits, Arrays.asList(changes.subList(0, 2), changes.subList(2, 4)));
+        Assert.assertEquals(buffer.take(), changes.subList(4, 5));
+        Assert.assertTrue(buffer.take().isEmpty());
+    }
+
+    @Test
+    public void testCommitIsChunkedByBytes() throws Exception {
+        final List<List<ViewField>> commits = new ArrayList<>();
+        List<ViewField> changes = changes(5, 10);
+        WrittenEventContext writtenEventContext = context(commits, 0, 2 * ViewChangeFlusher.sizeInBytes(changes.get(0)));
+        ViewChangeFlusher flusher = new ViewChangeFlusher(writtenEventContext, tenantIdAndCentricId);
+        flusher.commit(changes);
+
+        Assert.assertEquals(commits, Arrays.asList(changes.subList(0, 2), changes.subList(2, 4), changes.subList(4, 5)));
+        Assert.assertEquals(writtenEventContext.changes.get(), 5);
+    }
+
+    @Test
+    public void testWithoutThresholdsEverythingIsCommittedOnce() throws Exception {
+        final List<List<ViewField>> commits = new ArrayList<>();
+        ViewChangeFlusher flusher = new ViewChangeFlusher(context(commits, 0, 0), tenantIdAndCentricId);
+        ViewChangeBuffer buffer = new ViewChangeBuffer(flusher);
+        List<ViewField> changes = changes(5, 10);
+        buffer.addAll(changes);
+        Assert.assertTrue(commits.isEmpty());
+
+        flusher.commit(buffer.take());
+        Assert.assertEquals(commits, Arrays.asList(changes));
+
+        flusher.commit(new ArrayList<ViewField>());
+        Assert.assertEquals(commits.size(), 2);
+    }
+
+    @Test
+    public void testSizeIncludesIdsAndPaths() throws Exception {
+        ViewField shortPath = change(1, 10);
+        ViewField longPath = change(3, 10);
+        Assert.assertTrue(ViewChangeFlusher.sizeInBytes(shortPath) > 10);
+        Assert.assertTrue(ViewChangeFlusher.sizeInBytes(longPath) > ViewChangeFlusher.sizeInBytes(shortPath));
+    }
+
+    @Test(timeOut = 10_000)
+    public void testFlushHandsOffWhileAnotherChunkCommits() throws Exception {
+        final List<List<ViewField>> commits = Collections.synchronizedList(new ArrayList<List<ViewField>>());
+        final CountDownLatch committing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ViewChangeFlusher flusher = new ViewChangeFlusher(context(new CommitChange() {
+
+            @Override
+            public void commitChange(WrittenEventContext context, TenantIdAndCentricId tenantIdAndCentricId, List<ViewField> changes) {
+                commits.add(new ArrayList<>(changes));
+                if (committing.getCount() > 0) {
+                    committing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }, 2, 0), tenantIdAndCentricId);
+
+        final List<ViewField> changes = changes(5, 1);
+        Thread first = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    flusher.flush(changes.subList(0, 2));
+                } catch (CommitChangeException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        first.start();
+        committing.await();
+
+        flusher.flush(changes.subList(2, 4));
+        Assert.assertEquals(commits.size(), 1, "the second flush should be handed to the committing thread");
+
+        release.countDown();
+        first.join();
+        flusher.commit(changes.subList(4, 5));
+
+        Assert.assertEquals(commits, Arrays.asList(changes.subList(0, 2), changes.subList(2, 4), changes.subList(4, 5)));
+    }
+
+    private WrittenEventContext context(final List<List<ViewField>> commits, int flushAtChanges, long flushAtBytes) throws Exception {
+        return context(new CommitChange() {
+
+            @Override
+            public void commitChange(WrittenEventContext context, TenantIdAndCentricId tenantIdAndCentricId, List<ViewField> changes) {
+                commits.add(new ArrayList<>(changes));
+            }
+        }, flushAtChanges, flushAtBytes);
+    }
+
+    private WrittenEventContext context(CommitChange commitChange, int flushAtChanges, long flushAtBytes) throws Exception {
+        WrittenEventContext writtenEventContext = Mockito.mock(WrittenEventContext.class);
+        Mockito.when(writtenEventContext.getViewChangeFlushAtChanges()).thenReturn(flushAtChanges);
+        Mockito.when(writtenEventContext.getViewChangeFlushAtBytes()).thenReturn(flushAtBytes);
+        Mockito.when(writtenEventContext.getProcessingStats()).thenReturn(Mockito.mock(TasmoProcessingStats.class));
+        Mockito.when(writtenEventContext.getCommitChange()).thenReturn(commitChange);
+        return writtenEventContext;
+    }
+
+    private List<ViewField> changes(int count, int valueBytes) {
+        List<ViewField> changes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            changes.add(change(1, valueBytes));
+        }
+        return changes;
+    }
+
+    private ViewField change(int pathLength, int valueBytes) {
+        PathId[] pathIds = new PathId[pathLength];
+        long[] timestamps = new long[pathLength];
+        for (int i = 0; i < pathLength; i++) {
+            pathIds[i] = new PathId(new ObjectId("Content", new Id(i + 1)), i + 1);
+            timestamps[i] = i + 1;
+        }
+        ViewField change = Mockito.mock(ViewField.class);
+        Mockito.when(change.getViewObjectId()).thenReturn(new ObjectId("ContentView", new Id(1)));
+        Mockito.when(change.getModelPathInstanceIds()).thenReturn(pathIds);
+        Mockito.when(change.getModelPathTimestamps()).thenReturn(timestamps);
+        Mockito.when(change.getValue()).thenReturn(new byte[valueBytes]);
+        return change;
+    }
+}
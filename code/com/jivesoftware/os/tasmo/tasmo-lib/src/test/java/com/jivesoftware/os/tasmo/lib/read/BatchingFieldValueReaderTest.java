@@ -0,0 +1,139 @@
+package com.jivesoftware.os.tasmo.lib.read;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.jivesoftware.os.jive.utils.id.Id;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.ColumnValueAndTimestamp;
+import com.jivesoftware.os.jive.utils.row.column.value.store.inmemory.RowColumnValueStoreImpl;
+import com.jivesoftware.os.tasmo.lib.events.EventValueStore;
+import com.jivesoftware.os.tasmo.lib.process.TasmoProcessingStats;
+import com.jivesoftware.os.tasmo.model.process.JsonWrittenEventProvider;
+import com.jivesoftware.os.tasmo.model.process.OpaqueFieldValue;
+import com.jivesoftware.os.tasmo.model.process.WrittenEventProvider;
+import com.jivesoftware.os.tasmo.reference.lib.concur.HBaseBackedConcurrencyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class BatchingFieldValueReaderTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private final WrittenEventProvider<ObjectNode, JsonNode> eventProvider = new JsonWrittenEventProvider();
+    private final TenantIdAndCentricId tenantIdAndCentricId = new TenantIdAndCentricId(new TenantId("batching"), Id.NULL);
+
+    private EventValueStore eventValueStore;
+    private ExecutorService readerThreads;
+    private ExecutorService dispatcherThread;
+    private BatchingFieldValueReader batchingFieldValueReader;
+
+    @BeforeMethod
+    public void setUp() {
+        eventValueStore = new EventValueStore(new HBaseBackedConcurrencyStore(new RowColumnValueStoreImpl<TenantIdAndCentricId, ObjectId, String, Long>()),
+                new RowColumnValueStoreImpl<TenantIdAndCentricId, ObjectId, String, OpaqueFieldValue>());
+        readerThreads = Executors.newFixedThreadPool(2);
+        batchingFieldValueReader = new BatchingFieldValueReader(eventValueStore, MoreExecutors.listeningDecorator(readerThreads),
+                new TasmoProcessingStats(), 10, 5, 10_000, 1_000);
+        dispatcherThread = Executors.newSingleThreadExecutor();
+        dispatcherThread.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                batchingFieldValueReader.startProcessingRequests();
+                return null;
+            }
+        });
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        batchingFieldValueReader.stopProcessingRequests();
+        dispatcherThread.shutdownNow();
+        readerThreads.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentReadsAreAnswered() throws Exception {
+        int numberOfInstances = 25;
+        for (int i = 0; i < numberOfInstances; i++) {
+            EventValueStore.Transaction transaction = eventValueStore.begin(tenantIdAndCentricId, 1, 1, instance(i));
+            transaction.set("name", fieldVal("name" + i));
+            eventValueStore.commit(transaction);
+        }
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[]>> futures = new ArrayList<>();
+            for (int i = 0; i < numberOfInstances; i++) {
+                final ObjectId instanceId = instance(i);
+                futures.add(callers.submit(new Callable<ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[]>() {
+                    @Override
+                    public ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] call() throws Exception {
+                        return batchingFieldValueReader.readFieldValues(tenantIdAndCentricId, instanceId, new String[]{ "name", "missing" });
+                    }
+                }));
+            }
+
+            for (int i = 0; i < numberOfInstances; i++) {
+                ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] got = futures.get(i).get();
+                Assert.assertEquals(got.length, 2);
+                Assert.assertEquals(got[0].getValue(), fieldVal("name" + i));
+                Assert.assertEquals(got[0].getTimestamp().longValue(), 1L);
+                Assert.assertNull(got[1]);
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testReadsOfDifferentFieldsOfTheSameInstanceAreAnswered() throws Exception {
+        EventValueStore.Transaction transaction = eventValueStore.begin(tenantIdAndCentricId, 1, 1, instance(0));
+        transaction.set("name", fieldVal("name"));
+        transaction.set("title", fieldVal("title"));
+        eventValueStore.commit(transaction);
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[]>> futures = new ArrayList<>();
+            for (final String fieldName : new String[]{ "name", "title" }) {
+                futures.add(callers.submit(new Callable<ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[]>() {
+                    @Override
+                    public ColumnValueAndTimestamp<String, OpaqueFieldValue, Long>[] call() throws Exception {
+                        return batchingFieldValueReader.readFieldValues(tenantIdAndCentricId, instance(0), new String[]{ fieldName });
+                    }
+                }));
+            }
+
+            Assert.assertEquals(futures.get(0).get()[0].getValue(), fieldVal("name"));
+            Assert.assertEquals(futures.get(1).get()[0].getValue(), fieldVal("title"));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void testReadTimesOutWhenNotDispatched() throws Exception {
+        BatchingFieldValueReader notDispatched = new BatchingFieldValueReader(eventValueStore, MoreExecutors.listeningDecorator(readerThreads),
+                new TasmoProcessingStats(), 10, 5, 50, 1_000);
+        notDispatched.readFieldValues(tenantIdAndCentricId, instance(0), new String[]{ "name" });
+    }
+
+    private ObjectId instance(int i) {
+        return new ObjectId("Foo", new Id(i + 1));
+    }
+
+    private OpaqueFieldValue fieldVal(Object value) {
+        return eventProvider.convertFieldValue(mapper.convertValue(value, JsonNode.class));
+    }
+}
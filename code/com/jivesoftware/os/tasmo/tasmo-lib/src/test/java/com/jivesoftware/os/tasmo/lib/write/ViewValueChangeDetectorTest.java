@@ -0,0 +1,94 @@
+package com.jivesoftware.os.tasmo.lib.write;
+
+import com.jivesoftware.os.jive.utils.id.Id;
+import com.jivesoftware.os.jive.utils.id.ImmutableByteArray;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.RowColumnValueStore;
+import com.jivesoftware.os.jive.utils.row.column.value.store.inmemory.RowColumnValueStoreImpl;
+import com.jivesoftware.os.tasmo.id.ViewValue;
+import com.jivesoftware.os.tasmo.model.path.StringHashcodeViewPathKeyProvider;
+import com.jivesoftware.os.tasmo.reference.lib.ReferenceWithTimestamp;
+import com.jivesoftware.os.tasmo.view.reader.service.shared.ViewValueStore;
+import com.jivesoftware.os.tasmo.view.reader.service.writer.ViewWriteFieldChange;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author jonathan
+ */
+public class ViewValueChangeDetectorTest {
+
+    private final TenantIdAndCentricId tenantIdAndCentricId = new TenantIdAndCentricId(new TenantId("detect"), Id.NULL);
+    private final ObjectId view = new ObjectId("ContentView", new Id(1));
+    private final ObjectId content = new ObjectId("Content", new Id(2));
+
+    @Test
+    public void testOnlyChangedAddsAreKept() throws Exception {
+        RowColumnValueStore<TenantIdAndCentricId, ImmutableByteArray, ImmutableByteArray, ViewValue, RuntimeException> store =
+            new RowColumnValueStoreImpl<>();
+        ViewValueStore viewValueStore = new ViewValueStore(store, new StringHashcodeViewPathKeyProvider());
+        viewValueStore.add(tenantIdAndCentricId, Arrays.asList(
+            new ViewWriteFieldChange(1, tenantIdAndCentricId, Id.NULL, ViewWriteFieldChange.Type.add, view, 10,
+                new ObjectId[]{ content }, new ViewValue(new long[]{ 1 }, bytes("title")), 1)));
+
+        ViewField unchanged = field(ViewField.ViewFieldChangeType.add, 10, 1, "title");
+        ViewField newValue = field(ViewField.ViewFieldChangeType.add, 10, 2, "retitled");
+        ViewField newPath = field(ViewField.ViewFieldChangeType.add, 11, 1, "title");
+        ViewField remove = field(ViewField.ViewFieldChangeType.remove, 10, 1, "title");
+        ViewField rewritten = field(ViewField.ViewFieldChangeType.add, 10, 1, 5, "title");
+        ViewField newPathTimestamp = field(ViewField.ViewFieldChangeType.add, 10, 3, 1, "title");
+
+        ViewValueChangeDetector detector = new ViewValueChangeDetector(viewValueStore);
+        List<ViewField> dropped = new ArrayList<>();
+        Assert.assertEquals(detector.changed(tenantIdAndCentricId,
+            Arrays.asList(unchanged, newValue, newPath, remove, rewritten, newPathTimestamp), dropped),
+            Arrays.asList(newValue, newPath, remove, newPathTimestamp));
+        Assert.assertEquals(dropped, Arrays.asList(unchanged, rewritten), "the timestamp a column was written at must not matter");
+        Assert.assertEquals(detector.changed(tenantIdAndCentricId, Arrays.asList(unchanged)), Collections.emptyList());
+    }
+
+    @Test
+    public void testDroppedAddsAreKeptOnceARemoveLandsOnTheirColumn() throws Exception {
+        RowColumnValueStore<TenantIdAndCentricId, ImmutableByteArray, ImmutableByteArray, ViewValue, RuntimeException> store =
+            new RowColumnValueStoreImpl<>();
+        ViewValueStore viewValueStore = new ViewValueStore(store, new StringHashcodeViewPathKeyProvider());
+        ViewWriteFieldChange stored = new ViewWriteFieldChange(1, tenantIdAndCentricId, Id.NULL, ViewWriteFieldChange.Type.add, view, 10,
+            new ObjectId[]{ content }, new ViewValue(new long[]{ 1 }, bytes("title")), 1);
+        viewValueStore.add(tenantIdAndCentricId, Arrays.asList(stored));
+
+        ViewField add = field(ViewField.ViewFieldChangeType.add, 10, 1, 5, "title");
+        ViewValueChangeDetector detector = new ViewValueChangeDetector(viewValueStore);
+        List<ViewField> dropped = new ArrayList<>();
+        Assert.assertEquals(detector.changed(tenantIdAndCentricId, Arrays.asList(add), dropped), Collections.emptyList());
+        Assert.assertEquals(dropped, Arrays.asList(add));
+
+        // a remove older than the dropped add lands between the read and the commit
+        viewValueStore.remove(tenantIdAndCentricId, Arrays.asList(new ViewWriteFieldChange(2, tenantIdAndCentricId, Id.NULL,
+            ViewWriteFieldChange.Type.remove, view, 10, new ObjectId[]{ content }, null, 3)));
+        Assert.assertEquals(detector.changed(tenantIdAndCentricId, dropped), Arrays.asList(add),
+            "rechecking the dropped adds must keep the ones whose column was removed");
+    }
+
+    private ViewField field(ViewField.ViewFieldChangeType type, long modelPathIdHashcode, long timestamp, String value) {
+        return field(type, modelPathIdHashcode, timestamp, timestamp, value);
+    }
+
+    private ViewField field(ViewField.ViewFieldChangeType type, long modelPathIdHashcode, long pathTimestamp, long timestamp,
+        String value) {
+        return new ViewField(1, Id.NULL, Id.NULL, type, view, null, modelPathIdHashcode,
+            new PathId[]{ new PathId(content, pathTimestamp) }, Collections.<ReferenceWithTimestamp>emptyList(),
+            new long[]{ pathTimestamp }, bytes(value), timestamp);
+    }
+
+    private byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -5,7 +5,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.collect.Lists;
-import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.jivesoftware.os.jive.utils.base.interfaces.CallbackStream;
 import com.jivesoftware.os.jive.utils.id.ChainedVersion;
@@ -30,7 +29,10 @@ import com.jivesoftware.os.tasmo.event.api.write.JsonEventWriteException;
 import com.jivesoftware.os.tasmo.event.api.write.JsonEventWriter;
 import com.jivesoftware.os.tasmo.lib.read.StatCollectingFieldValueReader;
 import com.jivesoftware.os.tasmo.lib.TasmoBlacklist;
+import com.jivesoftware.os.tasmo.lib.TasmoReferenceTraverserInitializer;
+import com.jivesoftware.os.tasmo.lib.TasmoServiceHandle;
 import com.jivesoftware.os.tasmo.lib.process.TasmoEventProcessor;
+import com.jivesoftware.os.tasmo.lib.process.traversal.SerialPathTraversalExecutor;
 import com.jivesoftware.os.tasmo.lib.process.traversal.TasmoEventTraversal;
 import com.jivesoftware.os.tasmo.lib.process.traversal.TasmoEventTraverser;
 import com.jivesoftware.os.tasmo.lib.process.TasmoProcessingStats;
@@ -63,7 +65,7 @@ import com.jivesoftware.os.tasmo.model.process.WrittenEventProvider;
 import com.jivesoftware.os.tasmo.reference.lib.ReferenceStore;
 import com.jivesoftware.os.tasmo.reference.lib.concur.ConcurrencyStore;
 import com.jivesoftware.os.tasmo.reference.lib.concur.HBaseBackedConcurrencyStore;
-import com.jivesoftware.os.tasmo.reference.lib.traverser.BatchingReferenceTraverser;
+import com.jivesoftware.os.tasmo.reference.lib.traverser.ReferenceTraverser;
 import com.jivesoftware.os.tasmo.view.notification.api.NoOpViewNotificationListener;
 import com.jivesoftware.os.tasmo.view.reader.api.ViewDescriptor;
 import com.jivesoftware.os.tasmo.view.reader.api.ViewReader;
@@ -184,22 +186,6 @@ public class LocalMaterializationSystemBuilder implements LocalMaterializationSy
             }
         };
 
-        ListeningExecutorService traverserExecutors = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(32));
-        final BatchingReferenceTraverser referenceTraverser = new BatchingReferenceTraverser(referenceStore,
-            traverserExecutors, 100, 10_000); // TODO expose to config
-        Executors.newSingleThreadExecutor().submit(new Runnable() {
-
-            @Override
-            public void run() {
-                try {
-                    referenceTraverser.startProcessingRequests();
-                } catch (InterruptedException x) {
-                    LOG.error("Reference Traversal failed for the folloing reasons.", x);
-                    Thread.currentThread().interrupt();
-                }
-            }
-        });
-
         TasmoEventTraversal eventTraverser = new TasmoEventTraverser(writtenEventProcessorDecorator,
             new OrderIdProviderImpl(new ConstantWriterIdProvider(1)));
 
@@ -209,6 +195,10 @@ public class LocalMaterializationSystemBuilder implements LocalMaterializationSy
             writtenInstanceHelper, concurrencyStore, eventValueStore, referenceStore);
 
         TasmoProcessingStats processingStats = new TasmoProcessingStats();
+        TasmoServiceHandle<ReferenceTraverser> referenceTraverser = TasmoReferenceTraverserInitializer.initialize(referenceStore,
+            processingStats, "local", 100, 0, 1, 32);
+        referenceTraverser.start();
+
         StatCollectingFieldValueReader fieldValueReader = new StatCollectingFieldValueReader(processingStats,
             new EventValueStoreFieldValueReader(eventValueStore));
 
@@ -221,8 +211,9 @@ public class LocalMaterializationSystemBuilder implements LocalMaterializationSy
             concurrencyStore,
             referenceStore,
             fieldValueReader,
-            referenceTraverser,
+            referenceTraverser.getService(),
             commitChange,
+            new SerialPathTraversalExecutor(),
             processingStats);
 
         return new TasmoWriteMaterializer(new CallbackStream<List<BookkeepingEvent>>() {
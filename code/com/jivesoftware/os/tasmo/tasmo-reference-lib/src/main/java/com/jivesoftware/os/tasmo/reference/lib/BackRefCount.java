@@ -0,0 +1,32 @@
+package com.jivesoftware.os.tasmo.reference.lib;
+
+/**
+ * A number of back refs and the timestamp of the latest back ref count it was read from. Every adjustment of a count is stamped later
+ * than the one before it, so of two counts read from the same counters the one read later never has the lower timestamp. Counts which
+ * were scanned rather than read from a counter have a timestamp of zero.
+ *
+ * @author jonathan
+ */
+public class BackRefCount {
+
+    private final long count;
+    private final long timestamp;
+
+    public BackRefCount(long count, long timestamp) {
+        this.count = count;
+        this.timestamp = timestamp;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "BackRefCount{" + "count=" + count + ", timestamp=" + timestamp + '}';
+    }
+}
@@ -0,0 +1,191 @@
+package com.jivesoftware.os.tasmo.reference.lib;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+import com.jivesoftware.os.jive.utils.base.interfaces.CallbackStream;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.jive.utils.logger.MetricLogger;
+import com.jivesoftware.os.jive.utils.logger.MetricLoggerFactory;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.RowColumnValueStore;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.TenantIdAndRow;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A scalable Bloom filter per TenantIdAndCentricId of every back link row which has been linked, used to skip back ref lookups of
+ * rows which were never linked, such as every possible origin class of a polymorphic path. Each filter starts with room for
+ * initialCapacity rows and, whenever it fills, adds a filter of twice the capacity and half the false positive probability, the
+ * first having half of falsePositiveProbability, so the overall probability stays below falsePositiveProbability however many rows a
+ * tenant links.
+ *
+ * The filter only ever sees the back links written by its own ReferenceStore and the rows found by rebuild, so a negative only proves
+ * a row is empty when that ReferenceStore is the only writer of links. Nothing is skipped until rebuild has added every row already
+ * in the back link store.
+ *
+ * @author jonathan
+ */
+public class BackRefFilter {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+    public static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final int initialCapacity;
+    private final double falsePositiveProbability;
+    private final ConcurrentMap<TenantIdAndCentricId, ScalableBloomFilter> filters = new ConcurrentHashMap<>();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong passed = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+    private volatile boolean ready;
+
+    public BackRefFilter(int initialCapacity, double falsePositiveProbability) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("initialCapacity must be greater than zero. initialCapacity:" + initialCapacity);
+        }
+        this.initialCapacity = initialCapacity;
+        this.falsePositiveProbability = falsePositiveProbability;
+    }
+
+    /**
+     * Adds every back link row of the given back link store and then starts skipping lookups. Rows linked while the store is being
+     * scanned are added by linked.
+     */
+    public void rebuild(RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiBackLinks)
+        throws Exception {
+
+        final AtomicLong rows = new AtomicLong();
+        multiBackLinks.getAllRowKeys(1_000, null, new CallbackStream<TenantIdAndRow<TenantIdAndCentricId, ClassAndField_IdKey>>() {
+            @Override
+            public TenantIdAndRow<TenantIdAndCentricId, ClassAndField_IdKey> callback(TenantIdAndRow<TenantIdAndCentricId, ClassAndField_IdKey> row)
+                throws Exception {
+                if (row != null && !ReferenceStore.isIndexRow(row.getRow())) {
+                    linked(row.getTenantId(), row.getRow());
+                    rows.incrementAndGet();
+                }
+                return row;
+            }
+        });
+        ready = true;
+        LOG.info("Back ref filter rebuilt from {} back link rows.", rows.get());
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    void linked(TenantIdAndCentricId tenantIdAndCentricId, ClassAndField_IdKey backLinkRow) {
+        ScalableBloomFilter filter = filters.get(tenantIdAndCentricId);
+        if (filter == null) {
+            filter = new ScalableBloomFilter(initialCapacity, falsePositiveProbability);
+            ScalableBloomFilter had = filters.putIfAbsent(tenantIdAndCentricId, filter);
+            if (had != null) {
+                filter = had;
+            }
+        }
+        filter.put(backLinkRow);
+    }
+
+    /**
+     * @return false when the given back link row was never linked and so needn't be read. Always true until rebuild is done.
+     */
+    boolean mightBeLinked(TenantIdAndCentricId tenantIdAndCentricId, ClassAndField_IdKey backLinkRow) {
+        if (!ready) {
+            return true;
+        }
+        ScalableBloomFilter filter = filters.get(tenantIdAndCentricId);
+        if (filter == null || !filter.mightContain(backLinkRow)) {
+            skipped.incrementAndGet();
+            LOG.inc("backRefFilter>skipped");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records the outcome of a read of a back link row which passed the filter.
+     */
+    void looked(boolean empty) {
+        if (!ready) {
+            return;
+        }
+        passed.incrementAndGet();
+        LOG.inc("backRefFilter>passed");
+        if (empty) {
+            falsePositives.incrementAndGet();
+            LOG.inc("backRefFilter>falsePositive");
+        }
+    }
+
+    /**
+     * @return how many lookups the filter skipped.
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * @return the fraction of lookups which passed the filter and found nothing.
+     */
+    public double getFalsePositiveRate() {
+        long passedLookups = passed.get();
+        return (passedLookups == 0) ? 0d : (double) falsePositives.get() / passedLookups;
+    }
+
+    private static class ScalableBloomFilter {
+
+        private final List<BloomFilter<ClassAndField_IdKey>> filters = new ArrayList<>();
+        private int capacity;
+        private double falsePositiveProbability;
+        private int count;
+
+        ScalableBloomFilter(int capacity, double falsePositiveProbability) {
+            this.capacity = capacity;
+            this.falsePositiveProbability = falsePositiveProbability / 2;
+            filters.add(BloomFilter.create(KeyFunnel.INSTANCE, capacity, this.falsePositiveProbability));
+        }
+
+        synchronized void put(ClassAndField_IdKey key) {
+            if (mightContain(key)) {
+                return;
+            }
+            if (count >= capacity) {
+                capacity *= 2;
+                falsePositiveProbability /= 2;
+                count = 0;
+                filters.add(BloomFilter.create(KeyFunnel.INSTANCE, capacity, falsePositiveProbability));
+            }
+            filters.get(filters.size() - 1).put(key);
+            count++;
+        }
+
+        synchronized boolean mightContain(ClassAndField_IdKey key) {
+            for (BloomFilter<ClassAndField_IdKey> filter : filters) {
+                if (filter.mightContain(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static enum KeyFunnel implements Funnel<ClassAndField_IdKey> {
+
+        INSTANCE;
+
+        private static final Charset UTF8 = Charset.forName("UTF-8");
+
+        @Override
+        public void funnel(ClassAndField_IdKey key, PrimitiveSink into) {
+            byte[] className = key.getClassName().getBytes(UTF8);
+            byte[] fieldName = key.getFieldName().getBytes(UTF8);
+            into.putInt(className.length).putBytes(className);
+            into.putInt(fieldName.length).putBytes(fieldName);
+            into.putBytes(key.getObjectId().toLexBytes().array());
+        }
+    }
+}
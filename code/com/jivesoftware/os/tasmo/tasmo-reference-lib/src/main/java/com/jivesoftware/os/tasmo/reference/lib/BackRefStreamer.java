@@ -44,6 +44,16 @@ public class BackRefStreamer implements RefStreamer {
                 froms);
     }
 
+    @Override
+    public RefStreamRequestContext request(TenantIdAndCentricId tenantIdAndCentricId, ObjectId referringObjectId, long readTime) {
+        return new RefStreamRequestContext(tenantIdAndCentricId,
+                referringClassNames,
+                referringFieldName,
+                referringObjectId,
+                readTime,
+                true);
+    }
+
     @Override
     public boolean isBackRefStreamer() {
         return true;
@@ -38,6 +38,16 @@ public class ForwardRefStreamer implements RefStreamer {
                 tos);
     }
 
+    @Override
+    public RefStreamRequestContext request(TenantIdAndCentricId tenantIdAndCentricId, ObjectId referringObjectId, long readTime) {
+        return new RefStreamRequestContext(tenantIdAndCentricId,
+                Collections.singleton(referringObjectId.getClassName()),
+                referringFieldName,
+                referringObjectId,
+                readTime,
+                false);
+    }
+
     @Override
     public boolean isBackRefStreamer() {
         return false;
@@ -0,0 +1,158 @@
+package com.jivesoftware.os.tasmo.reference.lib;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.jive.utils.logger.MetricLogger;
+import com.jivesoftware.os.jive.utils.logger.MetricLoggerFactory;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.ColumnValueAndTimestamp;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps whole link rows of tasmo.links and tasmo.back.links off heap. Each row is encoded into a single direct ByteBuffer as its
+ * number of links followed by each linked ObjectId's lex bytes and link timestamp, so a cached row costs the heap one small buffer
+ * object no matter how many links it holds and the byte budget is what the rows really take. Rows are evicted least recently used
+ * first once the encoded rows exceed the budget, and rows larger than maxRowBytes are never cached. The direct memory of an evicted
+ * row is released when its buffer is collected, so -XX:MaxDirectMemorySize must leave room above maxBytes.
+ *
+ * ReferenceStore invalidates every row it writes. Each write also advances a striped stamp so a row read while it was being written
+ * is never left cached: readers take the stamp before scanning and drop the row they put if the stamp has moved since. Invalidation
+ * only reaches this process's cache, so it is only correct when this process is the only one which writes links. Rows also expire
+ * expireAfterWriteMillis after they were read.
+ *
+ * @author jonathan
+ */
+public class LinkRowCache {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+    private static final int STAMP_STRIPES = 1_024;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int maxRowBytes;
+    private final Cache<List<Object>, ByteBuffer> rows;
+    private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+
+    public LinkRowCache(long maxBytes, int maxRowBytes, long expireAfterWriteMillis) {
+        this(maxBytes, maxRowBytes, expireAfterWriteMillis, Ticker.systemTicker());
+    }
+
+    LinkRowCache(long maxBytes, int maxRowBytes, long expireAfterWriteMillis, Ticker ticker) {
+        this.maxRowBytes = maxRowBytes;
+        this.rows = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher(new Weigher<List<Object>, ByteBuffer>() {
+
+                    @Override
+                    public int weigh(List<Object> key, ByteBuffer row) {
+                        return row.capacity();
+                    }
+                })
+                .expireAfterWrite(expireAfterWriteMillis, TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    private static List<Object> key(TenantIdAndCentricId tenantIdAndCentricId, boolean backLinks, ClassAndField_IdKey rowKey) {
+        return Arrays.<Object>asList(tenantIdAndCentricId, backLinks, rowKey);
+    }
+
+    private int stripe(List<Object> key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % STAMP_STRIPES;
+    }
+
+    /**
+     * @return the links of the given row in column order, or null when the row isn't cached.
+     */
+    List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> get(TenantIdAndCentricId tenantIdAndCentricId,
+            boolean backLinks,
+            ClassAndField_IdKey rowKey) {
+
+        ByteBuffer row = rows.getIfPresent(key(tenantIdAndCentricId, backLinks, rowKey));
+        if (row == null) {
+            LOG.inc("linkCache>miss");
+            return null;
+        }
+        LOG.inc("linkCache>hit");
+        byte[] bytes = new byte[row.capacity()];
+        row.duplicate().get(bytes);
+        ByteBuffer bb = ByteBuffer.wrap(bytes);
+        int count = bb.getInt();
+        List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> links = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ObjectId objectId = new ObjectId(bb);
+            long timestamp = bb.getLong();
+            links.add(new ColumnValueAndTimestamp<>(objectId, EMPTY, timestamp));
+        }
+        return links;
+    }
+
+    /**
+     * Begins reading a row from storage. Every link the read streams is added to the returned loader and the loader is put once the
+     * read completes.
+     */
+    Loader load(TenantIdAndCentricId tenantIdAndCentricId, boolean backLinks, ClassAndField_IdKey rowKey) {
+        List<Object> key = key(tenantIdAndCentricId, backLinks, rowKey);
+        return new Loader(key, stamps.get(stripe(key)));
+    }
+
+    void invalidate(TenantIdAndCentricId tenantIdAndCentricId, boolean backLinks, ClassAndField_IdKey rowKey) {
+        List<Object> key = key(tenantIdAndCentricId, backLinks, rowKey);
+        stamps.incrementAndGet(stripe(key));
+        rows.invalidate(key);
+    }
+
+    class Loader {
+
+        private final List<Object> key;
+        private final long stamp;
+        private final List<ByteBuffer> objectIds = new ArrayList<>();
+        private final List<Long> timestamps = new ArrayList<>();
+        private int sizeInBytes = 4;
+
+        private Loader(List<Object> key, long stamp) {
+            this.key = key;
+            this.stamp = stamp;
+        }
+
+        void add(ColumnValueAndTimestamp<ObjectId, byte[], Long> link) {
+            if (sizeInBytes > maxRowBytes) {
+                return;
+            }
+            ByteBuffer objectId = link.getColumn().toLexBytes();
+            sizeInBytes += objectId.remaining() + 8;
+            if (sizeInBytes > maxRowBytes) {
+                LOG.inc("linkCache>tooLarge");
+                objectIds.clear();
+                timestamps.clear();
+                return;
+            }
+            objectIds.add(objectId);
+            timestamps.add(link.getTimestamp());
+        }
+
+        void put() {
+            if (sizeInBytes > maxRowBytes) {
+                return;
+            }
+            ByteBuffer row = ByteBuffer.allocateDirect(sizeInBytes);
+            row.putInt(objectIds.size());
+            for (int i = 0; i < objectIds.size(); i++) {
+                row.put(objectIds.get(i).duplicate());
+                row.putLong(timestamps.get(i));
+            }
+            row.flip();
+            rows.put(key, row);
+            if (stamps.get(stripe(key)) != stamp) {
+                rows.invalidate(key);
+            }
+        }
+    }
+}
@@ -16,5 +16,13 @@ public interface RefStreamer {
             long readTime,
             CallbackStream<ReferenceWithTimestamp> referencedIdsStream) throws Exception;
 
+    /**
+     * Describes the same stream as a request which can be resolved along with others by ReferenceStore.multiStreamRefs, or null if
+     * the stream can't be resolved that way.
+     */
+    RefStreamRequestContext request(TenantIdAndCentricId tenantIdAndCentricId,
+            ObjectId referringObjectId,
+            long readTime);
+
     boolean isBackRefStreamer();
 }
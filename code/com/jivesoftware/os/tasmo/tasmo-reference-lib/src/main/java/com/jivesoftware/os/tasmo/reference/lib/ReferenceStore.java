@@ -8,23 +8,32 @@
  */
 package com.jivesoftware.os.tasmo.reference.lib;
 
+import com.google.common.primitives.Longs;
 import com.jivesoftware.os.jive.utils.base.interfaces.CallbackStream;
+import com.jivesoftware.os.jive.utils.base.util.locks.StripingLocksProvider;
 import com.jivesoftware.os.jive.utils.id.ObjectId;
 import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
 import com.jivesoftware.os.jive.utils.logger.MetricLogger;
 import com.jivesoftware.os.jive.utils.logger.MetricLoggerFactory;
 import com.jivesoftware.os.jive.utils.row.column.value.store.api.ColumnValueAndTimestamp;
-import com.jivesoftware.os.jive.utils.row.column.value.store.api.KeyedColumnValueCallbackStream;
 import com.jivesoftware.os.jive.utils.row.column.value.store.api.RowColumnTimestampRemove;
 import com.jivesoftware.os.jive.utils.row.column.value.store.api.RowColumnValueStore;
 import com.jivesoftware.os.jive.utils.row.column.value.store.api.TenantKeyedColumnValueCallbackStream;
 import com.jivesoftware.os.jive.utils.row.column.value.store.api.TenantRowColumValueTimestampAdd;
 import com.jivesoftware.os.jive.utils.row.column.value.store.api.timestamper.ConstantTimestamper;
 import com.jivesoftware.os.tasmo.reference.lib.concur.ConcurrencyStore;
+import com.jivesoftware.os.tasmo.reference.lib.concur.ConcurrencyUpdate;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Add a link result in the following: A.a -> B
@@ -38,50 +47,181 @@ import java.util.Set;
  * For an A where is step 1 and we need A.a.TA and we want step 2 to B.b.TB calling get_bIds() from a concurrency perspective: B,TA is not correct. For an B
  * get_aIds() from a concurrency perspective: A,TA is correct.
  *
+ * When latestBackRefIndexSize is greater than zero the latest latestBackRefIndexSize back refs of every B are also kept alongside
+ * B <- A.a in their own small row so that latest_backRef style steps can stream them without scanning every A which refers to B.
+ * Keeping the index costs every link and unlink of every field a read and a write, so it is off by default.
+ *
+ * When back ref counting is enabled the number of A's which refer to each B is also kept up to date by link and unlink so count
+ * style steps can read a single column instead of scanning every A which refers to B. A count is read, adjusted and written back
+ * under a lock shared by every ReferenceStore of the process, since the link stores have no atomic increment, so counting is only
+ * correct when this process is the only one which links and unlinks.
+ *
  */
 public class ReferenceStore {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
     private static final byte[] EMPTY = new byte[0];
-    private static final int MAX_FAN_OUT_BEFORE_WARN = 10_000;
+    public static final int DEFAULT_PAGE_SIZE = 1_000;
+    public static final int DEFAULT_LATEST_BACK_REF_INDEX_SIZE = 0;
+    private static final String LATEST_BACK_REF_INDEX_PREFIX = "*latest*";
+    private static final String BACK_REF_COUNT_PREFIX = "*count*";
+    private static final Comparator<ReferenceWithTimestamp> NEWEST_FIRST = new Comparator<ReferenceWithTimestamp>() {
+        @Override
+        public int compare(ReferenceWithTimestamp o1, ReferenceWithTimestamp o2) {
+            int c = Long.compare(o2.getTimestamp(), o1.getTimestamp());
+            if (c == 0) {
+                c = o1.getObjectId().toString().compareTo(o2.getObjectId().toString());
+            }
+            return c;
+        }
+    };
     private final ConcurrencyStore concurrencyStore;
     private final RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiLinks;
     private final RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiBackLinks;
+    private final int pageSize;
+    private final int latestBackRefIndexSize;
+    private final boolean countBackRefs;
+    private final LinkRowCache linkRowCache;
+    private final BackRefFilter backRefFilter;
+    private static final StripingLocksProvider<ClassAndField_IdKey> COUNT_LOCKS = new StripingLocksProvider<>(1_024);
 
     public ReferenceStore(
             ConcurrencyStore concurrencyStore,
             RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiLinks,
             RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiBackLinks) {
-        this.concurrencyStore = concurrencyStore;
-        this.multiLinks = multiLinks;
-        this.multiBackLinks = multiBackLinks;
+        this(builder(concurrencyStore, multiLinks, multiBackLinks));
+    }
+
+    private ReferenceStore(Builder builder) {
+        this.concurrencyStore = builder.concurrencyStore;
+        this.multiLinks = builder.multiLinks;
+        this.multiBackLinks = builder.multiBackLinks;
+        this.pageSize = builder.pageSize;
+        this.latestBackRefIndexSize = builder.latestBackRefIndexSize;
+        this.countBackRefs = builder.countBackRefs;
+        this.linkRowCache = builder.linkRowCache;
+        this.backRefFilter = builder.backRefFilter;
+    }
+
+    public static Builder builder(
+            ConcurrencyStore concurrencyStore,
+            RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiLinks,
+            RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiBackLinks) {
+        return new Builder(concurrencyStore, multiLinks, multiBackLinks);
+    }
+
+    public static class Builder {
+
+        private final ConcurrencyStore concurrencyStore;
+        private final RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiLinks;
+        private final RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiBackLinks;
+        private int pageSize = DEFAULT_PAGE_SIZE;
+        private int latestBackRefIndexSize = DEFAULT_LATEST_BACK_REF_INDEX_SIZE;
+        private boolean countBackRefs;
+        private LinkRowCache linkRowCache;
+        private BackRefFilter backRefFilter;
+
+        private Builder(ConcurrencyStore concurrencyStore,
+                RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiLinks,
+                RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiBackLinks) {
+            this.concurrencyStore = concurrencyStore;
+            this.multiLinks = multiLinks;
+            this.multiBackLinks = multiBackLinks;
+        }
+
+        /**
+         * @param pageSize the maximum number of links read from a link row per scan. Forward refs, back refs and unlinks are
+         * delivered and removed one page at a time so memory stays bounded regardless of fan-out.
+         */
+        public Builder pageSize(int pageSize) {
+            if (pageSize < 1) {
+                throw new IllegalArgumentException("pageSize must be greater than zero. pageSize:" + pageSize);
+            }
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * @param latestBackRefIndexSize how many of the most recent back refs per (class, field, id) are indexed for
+         * streamLatestBackRefs. Zero disables the index and streamLatestBackRefs scans every back ref instead.
+         */
+        public Builder latestBackRefIndexSize(int latestBackRefIndexSize) {
+            if (latestBackRefIndexSize < 0) {
+                throw new IllegalArgumentException("latestBackRefIndexSize may not be negative. latestBackRefIndexSize:"
+                        + latestBackRefIndexSize);
+            }
+            this.latestBackRefIndexSize = latestBackRefIndexSize;
+            return this;
+        }
+
+        /**
+         * @param countBackRefs when true link and unlink maintain the number of back refs per (class, field, id) so getBackRefCount
+         * reads a single column instead of scanning every back ref. Counts are lost when another process also links and unlinks.
+         */
+        public Builder countBackRefs(boolean countBackRefs) {
+            this.countBackRefs = countBackRefs;
+            return this;
+        }
+
+        /**
+         * @param linkRowCache when not null forward and back link rows are streamed from it where they are cached, and link,
+         * linkDelta and unlink invalidate every link row they write. Only correct when this process is the only one which writes links.
+         */
+        public Builder linkRowCache(LinkRowCache linkRowCache) {
+            this.linkRowCache = linkRowCache;
+            return this;
+        }
+
+        /**
+         * @param backRefFilter when not null link and linkDelta add every back link row they write to it, and streamBackRefs and
+         * multiStreamRefs skip the back link rows it rules out. Only correct when this process is the only one which writes links.
+         */
+        public Builder backRefFilter(BackRefFilter backRefFilter) {
+            this.backRefFilter = backRefFilter;
+            return this;
+        }
+
+        public ReferenceStore build() {
+            return new ReferenceStore(this);
+        }
     }
 
+    /**
+     * Streams the links of every request. The first page of every link row is read with a single multi row read per link store
+     * and only the rows which hold more than a page of links are then paged through.
+     */
     public void multiStreamRefs(List<RefStreamRequestContext> refStreamRequests) throws Exception {
 
-        List<TenantKeyedColumnValueCallbackStream<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], Long>> fowardRefStreams = new ArrayList<>();
-        List<TenantKeyedColumnValueCallbackStream<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], Long>> backRefStreams = new ArrayList<>();
+        List<RowScan> forwardRefScans = new ArrayList<>();
+        List<RowScan> backRefScans = new ArrayList<>();
+        List<CountingCallbackStream> lookups = new ArrayList<>();
 
         for (RefStreamRequestContext refStreamRequest : refStreamRequests) {
             for (String className : refStreamRequest.getReferringClassNames()) {
                 ClassAndField_IdKey cafik = new ClassAndField_IdKey(className,
                         refStreamRequest.getReferringFieldName(),
                         refStreamRequest.getReferringObjectId());
-
+                CallbackStream<ColumnValueAndTimestamp<ObjectId, byte[], Long>> stream = new NullSwallowingCallbackStream(refStreamRequest);
+                if (refStreamRequest.isBackRefStream() && backRefFilter != null) {
+                    if (!backRefFilter.mightBeLinked(refStreamRequest.getTenantIdAndCentricId(), cafik)) {
+                        continue;
+                    }
+                    CountingCallbackStream lookup = new CountingCallbackStream(stream);
+                    lookups.add(lookup);
+                    stream = lookup;
+                }
+                RowScan rowScan = new RowScan(refStreamRequest.getTenantIdAndCentricId(), cafik, new EntryPageStream(stream));
                 if (refStreamRequest.isBackRefStream()) {
-                    backRefStreams.add(new TenantKeyedColumnValueCallbackStream<>(refStreamRequest.getTenantIdAndCentricId(), cafik,
-                            new NullSwallowingCallbackStream(refStreamRequest)));
+                    backRefScans.add(rowScan);
                 } else {
-                    fowardRefStreams.add(new TenantKeyedColumnValueCallbackStream<>(refStreamRequest.getTenantIdAndCentricId(), cafik,
-                            new NullSwallowingCallbackStream(refStreamRequest)));
+                    forwardRefScans.add(rowScan);
                 }
             }
         }
-        if (!fowardRefStreams.isEmpty()) {
-            multiLinks.multiRowGetAll(fowardRefStreams);
-        }
-        if (!backRefStreams.isEmpty()) {
-            multiBackLinks.multiRowGetAll(backRefStreams);
+        multiScanLinks(multiLinks, false, forwardRefScans);
+        multiScanLinks(multiBackLinks, true, backRefScans);
+        for (CountingCallbackStream lookup : lookups) {
+            backRefFilter.looked(lookup.count == 0);
         }
 
         for (RefStreamRequestContext refStreamRequest : refStreamRequests) {
@@ -98,7 +238,6 @@ public class ReferenceStore {
             final CallbackStream<ReferenceWithTimestamp> forwardRefs) throws Exception {
 
         LOG.inc("get_bIds");
-        final List<ReferenceWithTimestamp> refs = new ArrayList<>();
 
         for (String className : classNames) {
             final ClassAndField_IdKey aClassAndField_aId = new ClassAndField_IdKey(className, fieldName, id);
@@ -107,36 +246,30 @@ public class ReferenceStore {
                 LOG.trace(System.currentTimeMillis() + " |--> Get bIds Tenant={} A={}", tenantIdAndCentricId, aClassAndField_aId);
             }
 
-            multiLinks.getEntrys(tenantIdAndCentricId, aClassAndField_aId, null, Long.MAX_VALUE, 1_000, false, null, null,
-                    new CallbackStream<ColumnValueAndTimestamp<ObjectId, byte[], Long>>() {
+            scanLinks(multiLinks, false, tenantIdAndCentricId, aClassAndField_aId,
+                    new CallbackStream<List<ColumnValueAndTimestamp<ObjectId, byte[], Long>>>() {
                         @Override
-                        public ColumnValueAndTimestamp<ObjectId, byte[], Long> callback(ColumnValueAndTimestamp<ObjectId, byte[], Long> bId) throws Exception {
-                            if (bId != null) {
-
-                                ReferenceWithTimestamp reference = new ReferenceWithTimestamp(bId.getColumn(), fieldName, bId.getTimestamp());
+                        public List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> callback(List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> page)
+                        throws Exception {
+                            for (ColumnValueAndTimestamp<ObjectId, byte[], Long> bId : page) {
                                 if (LOG.isTraceEnabled()) {
 
                                     LOG.trace(System.currentTimeMillis() + " |--> {} Got bIds Tenant={} a={} b={} Timestamp={}", new Object[]{
                                         threadTimestamp, tenantIdAndCentricId, aClassAndField_aId, bId.getColumn(), bId.getTimestamp()});
                                 }
-
-                                refs.add(reference);
-
-                                if (refs.size() > MAX_FAN_OUT_BEFORE_WARN) {
-                                    LOG.warn("TODO: streamForwardRefs reference fan-out is exceeding comfort level. We need break scans into batched scans.");
-                                }
+                                forwardRefs.callback(new ReferenceWithTimestamp(bId.getColumn(), fieldName, bId.getTimestamp()));
                             }
-                            return bId;
+                            return page;
                         }
                     });
-
-            for (ReferenceWithTimestamp ref : refs) {
-                forwardRefs.callback(ref);
-            }
         }
         forwardRefs.callback(null); // EOS
     }
 
+    /**
+     * Streams every back ref of id. The first page of each class's back link row is read with a single multi row read and only
+     * the rows which hold more than a page of back refs are then paged through.
+     */
     public void streamBackRefs(final TenantIdAndCentricId tenantIdAndCentricId,
             final ObjectId id,
             final Set<String> classNames,
@@ -145,41 +278,162 @@ public class ReferenceStore {
             final CallbackStream<ReferenceWithTimestamp> backRefs) throws Exception {
 
         LOG.inc("get_aIds");
-        final List<ReferenceWithTimestamp> refs = new ArrayList<>();
-        List<KeyedColumnValueCallbackStream<ClassAndField_IdKey, ObjectId, byte[], Long>> callbacks = new ArrayList<>(classNames.size());
+
+        List<RowScan> rowScans = new ArrayList<>(classNames.size());
+        final List<AtomicLong> founds = new ArrayList<>(classNames.size());
         for (String className : classNames) {
             final ClassAndField_IdKey aClassAndField_bId = new ClassAndField_IdKey(className, fieldName, id);
-            callbacks.add(new KeyedColumnValueCallbackStream<>(aClassAndField_bId,
-                    new CallbackStream<ColumnValueAndTimestamp<ObjectId, byte[], Long>>() {
+            if (backRefFilter != null && !backRefFilter.mightBeLinked(tenantIdAndCentricId, aClassAndField_bId)) {
+                continue;
+            }
+            final AtomicLong found = new AtomicLong();
+            founds.add(found);
+            rowScans.add(new RowScan(tenantIdAndCentricId, aClassAndField_bId,
+                    new CallbackStream<List<ColumnValueAndTimestamp<ObjectId, byte[], Long>>>() {
                         @Override
-                        public ColumnValueAndTimestamp<ObjectId, byte[], Long> callback(ColumnValueAndTimestamp<ObjectId, byte[], Long> backRef)
+                        public List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> callback(List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> page)
                         throws Exception {
-                            if (backRef != null) {
-                                ReferenceWithTimestamp reference = new ReferenceWithTimestamp(backRef.getColumn(),
-                                        fieldName, backRef.getTimestamp());
+                            found.addAndGet(page.size());
+                            for (ColumnValueAndTimestamp<ObjectId, byte[], Long> backRef : page) {
                                 if (LOG.isTraceEnabled()) {
 
                                     LOG.trace(System.currentTimeMillis() + " |--> {} Got aIds Tenant={} b={} a={} Timestamp={}", new Object[]{
                                         threadTimestamp, tenantIdAndCentricId, aClassAndField_bId, backRef.getColumn(), backRef.getTimestamp()});
                                 }
-                                refs.add(reference);
-
-                                if (refs.size() > MAX_FAN_OUT_BEFORE_WARN) {
-                                    LOG.warn("TODO: streamBackRefs reference fan-out is exceeding comfort level. We need break scans into batched scans.");
-                                }
+                                backRefs.callback(new ReferenceWithTimestamp(backRef.getColumn(), fieldName, backRef.getTimestamp()));
                             }
-                            return backRef;
+                            return page;
                         }
                     }));
         }
-        multiBackLinks.multiRowGetAll(tenantIdAndCentricId, callbacks);
+        multiScanLinks(multiBackLinks, true, rowScans);
+        if (backRefFilter != null) {
+            for (AtomicLong found : founds) {
+                backRefFilter.looked(found.get() == 0);
+            }
+        }
+        backRefs.callback(null); // EOS
+    }
 
-        for (ReferenceWithTimestamp ref : refs) {
-            backRefs.callback(ref);
+    /**
+     * Streams the latestBackRefIndexSize most recent back refs, newest first, without scanning every back ref. Indexed back refs
+     * are checked against the back link rows so unlinked refs are never streamed, and a row whose index holds fewer than
+     * latestBackRefIndexSize live refs is scanned instead.
+     */
+    public void streamLatestBackRefs(final TenantIdAndCentricId tenantIdAndCentricId,
+            final ObjectId id,
+            final Set<String> classNames,
+            final String fieldName,
+            final long threadTimestamp,
+            final CallbackStream<ReferenceWithTimestamp> backRefs) throws Exception {
+
+        if (latestBackRefIndexSize == 0) {
+            streamBackRefs(tenantIdAndCentricId, id, classNames, fieldName, threadTimestamp, backRefs);
+            return;
+        }
+
+        LOG.inc("get_latest_aIds");
+
+        List<ReferenceWithTimestamp> candidates = new ArrayList<>();
+        for (String className : classNames) {
+            ClassAndField_IdKey aClassAndField_bId = new ClassAndField_IdKey(className, fieldName, id);
+            List<ReferenceWithTimestamp> indexed = readLatestBackRefs(tenantIdAndCentricId, aClassAndField_bId);
+            List<ReferenceWithTimestamp> live = new ArrayList<>(indexed.size());
+            if (!indexed.isEmpty()) {
+                ObjectId[] aIds = new ObjectId[indexed.size()];
+                for (int i = 0; i < aIds.length; i++) {
+                    aIds[i] = indexed.get(i).getObjectId();
+                }
+                ColumnValueAndTimestamp<ObjectId, byte[], Long>[] got = multiBackLinks.multiGetEntries(tenantIdAndCentricId,
+                        aClassAndField_bId, aIds, null, null);
+                for (int i = 0; got != null && i < got.length; i++) {
+                    if (got[i] != null) {
+                        live.add(new ReferenceWithTimestamp(got[i].getColumn(), fieldName, got[i].getTimestamp()));
+                    }
+                }
+            }
+            if (live.size() < latestBackRefIndexSize) {
+                LOG.inc("get_latest_aIds>scanned");
+                live = scanLatestBackRefs(tenantIdAndCentricId, aClassAndField_bId);
+            }
+            candidates.addAll(live);
+        }
+
+        for (ReferenceWithTimestamp backRef : latest(candidates)) {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace(System.currentTimeMillis() + " |--> {} Got latest aIds Tenant={} b={} a={} Timestamp={}", new Object[]{
+                    threadTimestamp, tenantIdAndCentricId, id, backRef.getObjectId(), backRef.getTimestamp()});
+            }
+            backRefs.callback(backRef);
         }
         backRefs.callback(null); // EOS
     }
 
+    /**
+     * @return how many instances of the given classes refer to id from fieldName. Rows which were never counted, or every row when
+     * back ref counting is disabled, are counted by scanning their back refs.
+     */
+    public long getBackRefCount(TenantIdAndCentricId tenantIdAndCentricId,
+            ObjectId id,
+            Set<String> classNames,
+            String fieldName) throws Exception {
+
+        LOG.inc("get_aIdCount");
+
+        long count = 0;
+        for (String className : classNames) {
+            ClassAndField_IdKey aClassAndField_bId = new ClassAndField_IdKey(className, fieldName, id);
+            ColumnValueAndTimestamp<ObjectId, byte[], Long> counted = countBackRefs ? readBackRefCount(tenantIdAndCentricId, aClassAndField_bId) : null;
+            if (counted == null) {
+                count += scanBackRefCount(tenantIdAndCentricId, aClassAndField_bId);
+            } else {
+                count += Longs.fromByteArray(counted.getValue());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Like getBackRefCount but, when back refs are counted, also advances the timestamp of every counter read to at least timestamp
+     * and past its previous timestamp, under the same lock adjustments take, and returns the latest of them. Every count written
+     * stamped with the returned timestamp is therefore replaced by any count read after it, whatever the order the writes land in.
+     * When back refs aren't counted the returned timestamp is zero.
+     */
+    public BackRefCount getStampedBackRefCount(TenantIdAndCentricId tenantIdAndCentricId,
+            ObjectId id,
+            Set<String> classNames,
+            String fieldName,
+            long timestamp) throws Exception {
+
+        if (!countBackRefs) {
+            return new BackRefCount(getBackRefCount(tenantIdAndCentricId, id, classNames, fieldName), 0);
+        }
+        LOG.inc("get_aIdStampedCount");
+
+        long count = 0;
+        long stamp = 0;
+        for (String className : classNames) {
+            ClassAndField_IdKey backLinkRow = new ClassAndField_IdKey(className, fieldName, id);
+            ClassAndField_IdKey countRow = backRefCountRow(backLinkRow);
+            synchronized (COUNT_LOCKS.lock(countRow)) {
+                ColumnValueAndTimestamp<ObjectId, byte[], Long> counted = readBackRefCount(tenantIdAndCentricId, backLinkRow);
+                long rowCount;
+                long countTimestamp = timestamp;
+                if (counted == null) {
+                    LOG.inc("backRefCount>initialized");
+                    rowCount = scanBackRefCount(tenantIdAndCentricId, backLinkRow);
+                } else {
+                    rowCount = Longs.fromByteArray(counted.getValue());
+                    countTimestamp = Math.max(counted.getTimestamp() + 1, timestamp);
+                }
+                writeBackRefCount(tenantIdAndCentricId, backLinkRow, rowCount, countTimestamp);
+                count += rowCount;
+                stamp = Math.max(stamp, countTimestamp);
+            }
+        }
+        return new BackRefCount(count, stamp);
+    }
+
     public void link(final TenantIdAndCentricId tenantIdAndCentricId,
             ObjectId from,
             long timestamp,
@@ -198,17 +452,31 @@ public class ReferenceStore {
         try {
             List<TenantRowColumValueTimestampAdd<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[]>> links = new ArrayList<>();
             List<TenantRowColumValueTimestampAdd<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[]>> backLinks = new ArrayList<>();
+            List<ClassAndField_IdKey> backLinkRows = new ArrayList<>();
+            List<ClassAndField_IdKey> newBackLinkRows = new ArrayList<>();
+            List<ClassAndField_IdKey> linkRows = new ArrayList<>();
             for (LinkTo link : batchLinks) {
                 ClassAndField_IdKey classAndField_from = new ClassAndField_IdKey(from.getClassName(), link.fieldName, from);
+                linkRows.add(classAndField_from);
                 ConstantTimestamper constantTimestamper = new ConstantTimestamper(timestamp);
+                Set<ObjectId> alreadyLinked = countBackRefs ? linked(tenantIdAndCentricId, classAndField_from, link.tos)
+                        : Collections.<ObjectId>emptySet();
                 for (Reference to : link.tos) {
                     links.add(new TenantRowColumValueTimestampAdd<>(tenantIdAndCentricId, classAndField_from, to.getObjectId(), EMPTY, constantTimestamper));
                     ClassAndField_IdKey classAndField_to = new ClassAndField_IdKey(from.getClassName(), link.fieldName, to.getObjectId());
                     backLinks.add(new TenantRowColumValueTimestampAdd<>(tenantIdAndCentricId, classAndField_to, from, EMPTY, constantTimestamper));
+                    backLinkRows.add(classAndField_to);
+                    if (countBackRefs && !alreadyLinked.contains(to.getObjectId())) {
+                        newBackLinkRows.add(classAndField_to);
+                    }
                 }
             }
+            addToBackRefFilter(tenantIdAndCentricId, backLinkRows);
             multiLinks.multiRowsMultiAdd(links);
             multiBackLinks.multiRowsMultiAdd(backLinks);
+            invalidateLinkRows(tenantIdAndCentricId, linkRows, backLinkRows);
+            indexLatestBackRefs(tenantIdAndCentricId, from, timestamp, backLinkRows);
+            adjustBackRefCounts(tenantIdAndCentricId, timestamp, newBackLinkRows, 1);
 
         } finally {
             LOG.stopTimer("batchLink");
@@ -218,10 +486,122 @@ public class ReferenceStore {
     }
 
 
+    /**
+     * Like link but only writes the tos which are not already linked from the given field. Existing links keep their timestamp so they
+     * must be kept by passing the same tos as retainTos when unlinking.
+     */
+    public void linkDelta(final TenantIdAndCentricId tenantIdAndCentricId,
+            ObjectId from,
+            long timestamp,
+            List<LinkTo> batchLinks) throws Exception {
+        linkDelta(Collections.singletonMap(tenantIdAndCentricId, batchLinks), from, timestamp);
+    }
+
+    /**
+     * Like linkDelta for the links of from under many centric ids at once. Every centric id's version markers are written by the
+     * same pair of multi row puts, and its links and back links by the same pair of multi row adds.
+     */
+    public void linkDelta(Map<TenantIdAndCentricId, List<LinkTo>> centricBatchLinks,
+            ObjectId from,
+            long timestamp) throws Exception {
+        LOG.inc("linkDelta");
+        LOG.startTimer("linkDelta");
+
+        List<ConcurrencyUpdate> before = new ArrayList<>(centricBatchLinks.size());
+        List<ConcurrencyUpdate> after = new ArrayList<>(centricBatchLinks.size());
+        for (Map.Entry<TenantIdAndCentricId, List<LinkTo>> entry : centricBatchLinks.entrySet()) {
+            List<String> fieldNames = new ArrayList<>(entry.getValue().size() + 1);
+            fieldNames.add("deleted");
+            for (LinkTo link : entry.getValue()) {
+                fieldNames.add(link.fieldName);
+            }
+            String[] fields = fieldNames.toArray(new String[fieldNames.size()]);
+            before.add(new ConcurrencyUpdate(entry.getKey(), from, fields, timestamp - 1));
+            after.add(new ConcurrencyUpdate(entry.getKey(), from, fields, timestamp));
+        }
+        concurrencyStore.updated(before);
+
+        try {
+            List<TenantRowColumValueTimestampAdd<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[]>> links = new ArrayList<>();
+            List<TenantRowColumValueTimestampAdd<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[]>> backLinks = new ArrayList<>();
+            Map<TenantIdAndCentricId, List<ClassAndField_IdKey>> centricBackLinkRows = new HashMap<>();
+            Map<TenantIdAndCentricId, List<ClassAndField_IdKey>> centricLinkRows = new HashMap<>();
+            int retained = 0;
+            ConstantTimestamper constantTimestamper = new ConstantTimestamper(timestamp);
+            for (Map.Entry<TenantIdAndCentricId, List<LinkTo>> entry : centricBatchLinks.entrySet()) {
+                TenantIdAndCentricId tenantIdAndCentricId = entry.getKey();
+                List<ClassAndField_IdKey> backLinkRows = new ArrayList<>();
+                List<ClassAndField_IdKey> linkRows = new ArrayList<>();
+                for (LinkTo link : entry.getValue()) {
+                    if (link.tos.isEmpty()) {
+                        continue;
+                    }
+                    ClassAndField_IdKey classAndField_from = new ClassAndField_IdKey(from.getClassName(), link.fieldName, from);
+
+                    ObjectId[] tos = new ObjectId[link.tos.size()];
+                    int i = 0;
+                    for (Reference to : link.tos) {
+                        tos[i] = to.getObjectId();
+                        i++;
+                    }
+                    ColumnValueAndTimestamp<ObjectId, byte[], Long>[] existing = multiLinks.multiGetEntries(tenantIdAndCentricId,
+                            classAndField_from, tos, null, null);
+
+                    for (i = 0; i < tos.length; i++) {
+                        if (existing != null && existing[i] != null) {
+                            retained++;
+                            continue;
+                        }
+                        links.add(new TenantRowColumValueTimestampAdd<>(tenantIdAndCentricId, classAndField_from, tos[i], EMPTY, constantTimestamper));
+                        linkRows.add(classAndField_from);
+                        ClassAndField_IdKey classAndField_to = new ClassAndField_IdKey(from.getClassName(), link.fieldName, tos[i]);
+                        backLinks.add(new TenantRowColumValueTimestampAdd<>(tenantIdAndCentricId, classAndField_to, from, EMPTY, constantTimestamper));
+                        backLinkRows.add(classAndField_to);
+                    }
+                }
+                if (!backLinkRows.isEmpty()) {
+                    centricBackLinkRows.put(tenantIdAndCentricId, backLinkRows);
+                    centricLinkRows.put(tenantIdAndCentricId, linkRows);
+                    addToBackRefFilter(tenantIdAndCentricId, backLinkRows);
+                }
+            }
+            if (!links.isEmpty()) {
+                multiLinks.multiRowsMultiAdd(links);
+                multiBackLinks.multiRowsMultiAdd(backLinks);
+                for (Map.Entry<TenantIdAndCentricId, List<ClassAndField_IdKey>> entry : centricBackLinkRows.entrySet()) {
+                    TenantIdAndCentricId tenantIdAndCentricId = entry.getKey();
+                    invalidateLinkRows(tenantIdAndCentricId, centricLinkRows.get(tenantIdAndCentricId), entry.getValue());
+                    indexLatestBackRefs(tenantIdAndCentricId, from, timestamp, entry.getValue());
+                    adjustBackRefCounts(tenantIdAndCentricId, timestamp, entry.getValue(), 1);
+                }
+            }
+            LOG.inc("linkDelta>added", links.size());
+            LOG.inc("linkDelta>retained", retained);
+
+        } finally {
+            LOG.stopTimer("linkDelta");
+        }
+
+        concurrencyStore.updated(after);
+    }
+
+    public void unlink(final TenantIdAndCentricId tenantIdAndCentricId,
+            final long timestamp,
+            final ObjectId from,
+            final String fieldName,
+            final long threadTimestamp,
+            final CallbackStream<ReferenceWithTimestamp> removedTos) throws Exception {
+        unlink(tenantIdAndCentricId, timestamp, from, fieldName, Collections.<ObjectId>emptySet(), threadTimestamp, removedTos);
+    }
+
+    /**
+     * Removes every link from the given field which is older than timestamp and not in retainTos, streaming each removed to.
+     */
     public void unlink(final TenantIdAndCentricId tenantIdAndCentricId,
             final long timestamp,
             final ObjectId from,
             final String fieldName,
+            final Set<ObjectId> retainTos,
             final long threadTimestamp,
             final CallbackStream<ReferenceWithTimestamp> removedTos) throws Exception {
 
@@ -235,41 +615,56 @@ public class ReferenceStore {
 
         concurrencyStore.updated(tenantIdAndCentricId, from, new String[]{fieldName, "deleted"}, timestamp - 1);
 
-        final List<ReferenceWithTimestamp> tos = new ArrayList<>();
-        final List<RowColumnTimestampRemove<ClassAndField_IdKey, ObjectId>> removeBackLinks = new ArrayList<>();
-        final List<RowColumnTimestampRemove<ClassAndField_IdKey, ObjectId>> removeLinks = new ArrayList<>();
-
-        multiLinks.getEntrys(tenantIdAndCentricId, aClassAndField_aId, null, Long.MAX_VALUE, 1_000, false, null, null,
-                new CallbackStream<ColumnValueAndTimestamp<ObjectId, byte[], Long>>() {
+        final List<ClassAndField_IdKey> unlinkedBackLinkRows = new ArrayList<>();
+        scanPages(multiLinks, tenantIdAndCentricId, aClassAndField_aId,
+                new CallbackStream<List<ColumnValueAndTimestamp<ObjectId, byte[], Long>>>() {
                     @Override
-                    public ColumnValueAndTimestamp<ObjectId, byte[], Long> callback(ColumnValueAndTimestamp<ObjectId, byte[], Long> to)
+                    public List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> callback(List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> page)
                     throws Exception {
-                        if (to != null) {
-                            if (to.getTimestamp() < timestamp) {
+                        List<RowColumnTimestampRemove<ClassAndField_IdKey, ObjectId>> removeBackLinks = new ArrayList<>();
+                        List<RowColumnTimestampRemove<ClassAndField_IdKey, ObjectId>> removeLinks = new ArrayList<>();
+                        List<ClassAndField_IdKey> removedBackLinkRows = new ArrayList<>();
+                        List<ClassAndField_IdKey> unlinkedRows = new ArrayList<>();
+                        List<ReferenceWithTimestamp> removed = new ArrayList<>();
+                        for (ColumnValueAndTimestamp<ObjectId, byte[], Long> to : page) {
+                            if (to.getTimestamp() < timestamp && !retainTos.contains(to.getColumn())) {
 
                                 ClassAndField_IdKey aClassAndField_bId = new ClassAndField_IdKey(from.getClassName(),
                                         fieldName, to.getColumn());
 
-                                tos.add(new ReferenceWithTimestamp(to.getColumn(), fieldName, to.getTimestamp()));
+                                ReferenceWithTimestamp removedTo = new ReferenceWithTimestamp(to.getColumn(), fieldName, to.getTimestamp());
+                                if (countBackRefs) {
+                                    removed.add(removedTo);
+                                    removedBackLinkRows.add(aClassAndField_bId);
+                                } else {
+                                    removedTos.callback(removedTo);
+                                }
 
                                 removeBackLinks.add(new RowColumnTimestampRemove<>(aClassAndField_bId, from, constantTimestamper));
-                                removeLinks.add(new RowColumnTimestampRemove<>(aClassAndField_aId, to.getColumn(), constantTimestamper));
-
-                                if (tos.size() > MAX_FAN_OUT_BEFORE_WARN) {
-                                    LOG.warn("TODO: unlink reference fan-out is exceeding comfort level. We need break scans into batched scans.");
+                                unlinkedRows.add(aClassAndField_bId);
+                                if (latestBackRefIndexSize > 0) {
+                                    removeBackLinks.add(new RowColumnTimestampRemove<>(latestBackRefRow(aClassAndField_bId), from,
+                                            constantTimestamper));
+                                    unlinkedBackLinkRows.add(aClassAndField_bId);
                                 }
+                                removeLinks.add(new RowColumnTimestampRemove<>(aClassAndField_aId, to.getColumn(), constantTimestamper));
                             }
                         }
-                        return to;
+                        if (!removeLinks.isEmpty()) {
+                            multiBackLinks.multiRowsMultiRemove(tenantIdAndCentricId, removeBackLinks);
+                            multiLinks.multiRowsMultiRemove(tenantIdAndCentricId, removeLinks);
+                            invalidateLinkRows(tenantIdAndCentricId, Collections.singletonList(aClassAndField_aId), unlinkedRows);
+                            adjustBackRefCounts(tenantIdAndCentricId, timestamp + 1, removedBackLinkRows, -1);
+                        }
+                        // when counting, removed tos are streamed once their links are gone so anything they trigger sees the new counts.
+                        for (ReferenceWithTimestamp removedTo : removed) {
+                            removedTos.callback(removedTo);
+                        }
+                        return page;
                     }
                 });
 
-        for (ReferenceWithTimestamp to : tos) {
-            removedTos.callback(to);
-        }
-
-        multiBackLinks.multiRowsMultiRemove(tenantIdAndCentricId, removeBackLinks);
-        multiLinks.multiRowsMultiRemove(tenantIdAndCentricId, removeLinks);
+        reindexLatestBackRefs(tenantIdAndCentricId, timestamp + 1, unlinkedBackLinkRows);
 
         concurrencyStore.updated(tenantIdAndCentricId, from, new String[]{fieldName, "deleted"}, timestamp);
 
@@ -277,6 +672,486 @@ public class ReferenceStore {
 
     }
 
+    /**
+     * Merges the newly linked from into the latest back ref index of each of the given back link rows. A row whose index holds
+     * fewer than latestBackRefIndexSize refs is rebuilt from its back link row, which covers back refs linked before the index existed.
+     */
+    private void indexLatestBackRefs(TenantIdAndCentricId tenantIdAndCentricId,
+            ObjectId from,
+            long timestamp,
+            List<ClassAndField_IdKey> backLinkRows) throws Exception {
+
+        if (latestBackRefIndexSize == 0 || backLinkRows.isEmpty()) {
+            return;
+        }
+        ConstantTimestamper constantTimestamper = new ConstantTimestamper(timestamp);
+        List<TenantRowColumValueTimestampAdd<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[]>> adds = new ArrayList<>();
+        List<RowColumnTimestampRemove<ClassAndField_IdKey, ObjectId>> removes = new ArrayList<>();
+        for (ClassAndField_IdKey backLinkRow : backLinkRows) {
+            ClassAndField_IdKey latestRow = latestBackRefRow(backLinkRow);
+            List<ReferenceWithTimestamp> indexed = readLatestBackRefs(tenantIdAndCentricId, backLinkRow);
+            List<ReferenceWithTimestamp> latest;
+            if (indexed.size() < latestBackRefIndexSize) {
+                LOG.inc("latestBackRefIndex>rebuilt");
+                latest = scanLatestBackRefs(tenantIdAndCentricId, backLinkRow);
+            } else {
+                List<ReferenceWithTimestamp> candidates = new ArrayList<>(indexed);
+                candidates.add(new ReferenceWithTimestamp(from, backLinkRow.getFieldName(), timestamp));
+                latest = latest(candidates);
+            }
+            updateLatestBackRefs(tenantIdAndCentricId, latestRow, indexed, latest, constantTimestamper, adds, removes);
+        }
+        if (!adds.isEmpty()) {
+            multiBackLinks.multiRowsMultiAdd(adds);
+        }
+        if (!removes.isEmpty()) {
+            multiBackLinks.multiRowsMultiRemove(tenantIdAndCentricId, removes);
+        }
+    }
+
+    /**
+     * Refills the latest back ref index of each of the given back link rows which lost indexed refs to an unlink.
+     */
+    private void reindexLatestBackRefs(TenantIdAndCentricId tenantIdAndCentricId,
+            long timestamp,
+            List<ClassAndField_IdKey> backLinkRows) throws Exception {
+
+        if (backLinkRows.isEmpty()) {
+            return;
+        }
+        ConstantTimestamper constantTimestamper = new ConstantTimestamper(timestamp);
+        List<TenantRowColumValueTimestampAdd<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[]>> adds = new ArrayList<>();
+        List<RowColumnTimestampRemove<ClassAndField_IdKey, ObjectId>> removes = new ArrayList<>();
+        for (ClassAndField_IdKey backLinkRow : backLinkRows) {
+            List<ReferenceWithTimestamp> indexed = readLatestBackRefs(tenantIdAndCentricId, backLinkRow);
+            if (indexed.size() < latestBackRefIndexSize) {
+                LOG.inc("latestBackRefIndex>refilled");
+                updateLatestBackRefs(tenantIdAndCentricId, latestBackRefRow(backLinkRow), indexed,
+                        scanLatestBackRefs(tenantIdAndCentricId, backLinkRow), constantTimestamper, adds, removes);
+            }
+        }
+        if (!adds.isEmpty()) {
+            multiBackLinks.multiRowsMultiAdd(adds);
+        }
+        if (!removes.isEmpty()) {
+            multiBackLinks.multiRowsMultiRemove(tenantIdAndCentricId, removes);
+        }
+    }
+
+    /**
+     * Only refs which are new to the index, or whose timestamp changed, are written so an indexed ref keeps the timestamp it was
+     * indexed at and is removed by the unlink of its back link.
+     */
+    private void updateLatestBackRefs(TenantIdAndCentricId tenantIdAndCentricId,
+            ClassAndField_IdKey latestRow,
+            List<ReferenceWithTimestamp> indexed,
+            List<ReferenceWithTimestamp> latest,
+            ConstantTimestamper constantTimestamper,
+            List<TenantRowColumValueTimestampAdd<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[]>> adds,
+            List<RowColumnTimestampRemove<ClassAndField_IdKey, ObjectId>> removes) {
+
+        Map<ObjectId, Long> indexedTimestamps = new HashMap<>();
+        for (ReferenceWithTimestamp ref : indexed) {
+            indexedTimestamps.put(ref.getObjectId(), ref.getTimestamp());
+        }
+        for (ReferenceWithTimestamp ref : latest) {
+            Long indexedTimestamp = indexedTimestamps.remove(ref.getObjectId());
+            if (indexedTimestamp == null || indexedTimestamp != ref.getTimestamp()) {
+                adds.add(new TenantRowColumValueTimestampAdd<>(tenantIdAndCentricId, latestRow, ref.getObjectId(),
+                        Longs.toByteArray(ref.getTimestamp()), constantTimestamper));
+            }
+        }
+        for (ObjectId evicted : indexedTimestamps.keySet()) {
+            removes.add(new RowColumnTimestampRemove<>(latestRow, evicted, constantTimestamper));
+        }
+    }
+
+    /**
+     * The index row only ever holds a handful of refs. Each ref's link timestamp is kept as the value because the index row's own
+     * timestamps are those of the link or unlink which last changed it.
+     */
+    private List<ReferenceWithTimestamp> readLatestBackRefs(TenantIdAndCentricId tenantIdAndCentricId,
+            final ClassAndField_IdKey backLinkRow) throws Exception {
+
+        final List<ReferenceWithTimestamp> indexed = new ArrayList<>();
+        scanPages(multiBackLinks, tenantIdAndCentricId, latestBackRefRow(backLinkRow),
+                new CallbackStream<List<ColumnValueAndTimestamp<ObjectId, byte[], Long>>>() {
+                    @Override
+                    public List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> callback(List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> page)
+                    throws Exception {
+                        for (ColumnValueAndTimestamp<ObjectId, byte[], Long> backRef : page) {
+                            byte[] value = backRef.getValue();
+                            long timestamp = (value != null && value.length == 8) ? Longs.fromByteArray(value) : backRef.getTimestamp();
+                            indexed.add(new ReferenceWithTimestamp(backRef.getColumn(), backLinkRow.getFieldName(), timestamp));
+                        }
+                        return page;
+                    }
+                });
+        return indexed;
+    }
+
+    private List<ReferenceWithTimestamp> scanLatestBackRefs(TenantIdAndCentricId tenantIdAndCentricId,
+            final ClassAndField_IdKey backLinkRow) throws Exception {
+
+        final List<ReferenceWithTimestamp> latest = new ArrayList<>();
+        scanPages(multiBackLinks, tenantIdAndCentricId, backLinkRow,
+                new CallbackStream<List<ColumnValueAndTimestamp<ObjectId, byte[], Long>>>() {
+                    @Override
+                    public List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> callback(List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> page)
+                    throws Exception {
+                        List<ReferenceWithTimestamp> candidates = new ArrayList<>(latest);
+                        for (ColumnValueAndTimestamp<ObjectId, byte[], Long> backRef : page) {
+                            candidates.add(new ReferenceWithTimestamp(backRef.getColumn(), backLinkRow.getFieldName(), backRef.getTimestamp()));
+                        }
+                        latest.clear();
+                        latest.addAll(latest(candidates));
+                        return page;
+                    }
+                });
+        return latest;
+    }
+
+    /**
+     * @return at most latestBackRefIndexSize of the given refs, newest first, with each referring id appearing once.
+     */
+    private List<ReferenceWithTimestamp> latest(List<ReferenceWithTimestamp> refs) {
+        Map<ObjectId, ReferenceWithTimestamp> newest = new HashMap<>();
+        for (ReferenceWithTimestamp ref : refs) {
+            ReferenceWithTimestamp had = newest.get(ref.getObjectId());
+            if (had == null || had.getTimestamp() < ref.getTimestamp()) {
+                newest.put(ref.getObjectId(), ref);
+            }
+        }
+        List<ReferenceWithTimestamp> latest = new ArrayList<>(newest.values());
+        Collections.sort(latest, NEWEST_FIRST);
+        return (latest.size() > latestBackRefIndexSize) ? new ArrayList<>(latest.subList(0, latestBackRefIndexSize)) : latest;
+    }
+
+    /**
+     * Applies delta to the back ref count of each of the given back link rows. Counts are read, adjusted and written under a striped
+     * lock shared by every ReferenceStore of the process, which is only enough when no other process writes links, and every write is
+     * stamped later than the one it replaces so a decrement is never masked by the increment before it. A row which has never been
+     * counted is initialized from its back link row, which already reflects this link or unlink.
+     */
+    private void adjustBackRefCounts(TenantIdAndCentricId tenantIdAndCentricId,
+            long timestamp,
+            List<ClassAndField_IdKey> backLinkRows,
+            int delta) throws Exception {
+
+        if (!countBackRefs || backLinkRows.isEmpty()) {
+            return;
+        }
+        // a back link row appears once per from so repeats within a batch are the same link.
+        for (ClassAndField_IdKey backLinkRow : new LinkedHashSet<>(backLinkRows)) {
+            ClassAndField_IdKey countRow = backRefCountRow(backLinkRow);
+            synchronized (COUNT_LOCKS.lock(countRow)) {
+                ColumnValueAndTimestamp<ObjectId, byte[], Long> counted = readBackRefCount(tenantIdAndCentricId, backLinkRow);
+                long count;
+                long countTimestamp = timestamp;
+                if (counted == null) {
+                    LOG.inc("backRefCount>initialized");
+                    count = scanBackRefCount(tenantIdAndCentricId, backLinkRow);
+                } else {
+                    count = Math.max(0, Longs.fromByteArray(counted.getValue()) + delta);
+                    countTimestamp = Math.max(counted.getTimestamp() + 1, timestamp);
+                }
+                writeBackRefCount(tenantIdAndCentricId, backLinkRow, count, countTimestamp);
+            }
+        }
+    }
+
+    private void writeBackRefCount(TenantIdAndCentricId tenantIdAndCentricId,
+            ClassAndField_IdKey backLinkRow,
+            long count,
+            long countTimestamp) {
+
+        List<TenantRowColumValueTimestampAdd<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[]>> add = new ArrayList<>(1);
+        add.add(new TenantRowColumValueTimestampAdd<>(tenantIdAndCentricId, backRefCountRow(backLinkRow), backLinkRow.getObjectId(),
+                Longs.toByteArray(count), new ConstantTimestamper(countTimestamp)));
+        multiBackLinks.multiRowsMultiAdd(add);
+    }
+
+    private ColumnValueAndTimestamp<ObjectId, byte[], Long> readBackRefCount(TenantIdAndCentricId tenantIdAndCentricId,
+            ClassAndField_IdKey backLinkRow) {
+
+        ColumnValueAndTimestamp<ObjectId, byte[], Long>[] got = multiBackLinks.multiGetEntries(tenantIdAndCentricId,
+                backRefCountRow(backLinkRow), new ObjectId[]{ backLinkRow.getObjectId() }, null, null);
+        if (got == null || got[0] == null || got[0].getValue() == null || got[0].getValue().length != 8) {
+            return null;
+        }
+        return got[0];
+    }
+
+    private long scanBackRefCount(TenantIdAndCentricId tenantIdAndCentricId, ClassAndField_IdKey backLinkRow) throws Exception {
+        final AtomicLong count = new AtomicLong();
+        scanPages(multiBackLinks, tenantIdAndCentricId, backLinkRow,
+                new CallbackStream<List<ColumnValueAndTimestamp<ObjectId, byte[], Long>>>() {
+                    @Override
+                    public List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> callback(List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> page)
+                    throws Exception {
+                        count.addAndGet(page.size());
+                        return page;
+                    }
+                });
+        return count.get();
+    }
+
+    /**
+     * @return the tos which are already linked from the given row.
+     */
+    private Set<ObjectId> linked(TenantIdAndCentricId tenantIdAndCentricId,
+            ClassAndField_IdKey classAndField_from,
+            Collection<Reference> tos) {
+
+        if (tos.isEmpty()) {
+            return Collections.emptySet();
+        }
+        ObjectId[] toIds = new ObjectId[tos.size()];
+        int i = 0;
+        for (Reference to : tos) {
+            toIds[i] = to.getObjectId();
+            i++;
+        }
+        ColumnValueAndTimestamp<ObjectId, byte[], Long>[] existing = multiLinks.multiGetEntries(tenantIdAndCentricId,
+                classAndField_from, toIds, null, null);
+        Set<ObjectId> linked = new HashSet<>();
+        for (i = 0; existing != null && i < existing.length; i++) {
+            if (existing[i] != null) {
+                linked.add(toIds[i]);
+            }
+        }
+        return linked;
+    }
+
+    private static ClassAndField_IdKey backRefCountRow(ClassAndField_IdKey backLinkRow) {
+        return new ClassAndField_IdKey(backLinkRow.getClassName(), BACK_REF_COUNT_PREFIX + backLinkRow.getFieldName(),
+                backLinkRow.getObjectId());
+    }
+
+    /**
+     * @return true when the given back link store row is a latest back ref index or back ref count row rather than a back link row.
+     */
+    static boolean isIndexRow(ClassAndField_IdKey row) {
+        return row.getFieldName().startsWith(LATEST_BACK_REF_INDEX_PREFIX) || row.getFieldName().startsWith(BACK_REF_COUNT_PREFIX);
+    }
+
+    private static ClassAndField_IdKey latestBackRefRow(ClassAndField_IdKey backLinkRow) {
+        return new ClassAndField_IdKey(backLinkRow.getClassName(), LATEST_BACK_REF_INDEX_PREFIX + backLinkRow.getFieldName(),
+                backLinkRow.getObjectId());
+    }
+
+    private void addToBackRefFilter(TenantIdAndCentricId tenantIdAndCentricId, List<ClassAndField_IdKey> backLinkRows) {
+        if (backRefFilter == null) {
+            return;
+        }
+        for (ClassAndField_IdKey backLinkRow : backLinkRows) {
+            backRefFilter.linked(tenantIdAndCentricId, backLinkRow);
+        }
+    }
+
+    private void invalidateLinkRows(TenantIdAndCentricId tenantIdAndCentricId,
+            List<ClassAndField_IdKey> linkRows,
+            List<ClassAndField_IdKey> backLinkRows) {
+
+        if (linkRowCache == null) {
+            return;
+        }
+        for (ClassAndField_IdKey linkRow : new HashSet<>(linkRows)) {
+            linkRowCache.invalidate(tenantIdAndCentricId, false, linkRow);
+        }
+        for (ClassAndField_IdKey backLinkRow : new HashSet<>(backLinkRows)) {
+            linkRowCache.invalidate(tenantIdAndCentricId, true, backLinkRow);
+        }
+    }
+
+    /**
+     * Like scanPages but streams the row from the link row cache when it is cached, a page at a time, and otherwise caches what the
+     * scan streams.
+     */
+    private void scanLinks(RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> store,
+            boolean backLinks,
+            TenantIdAndCentricId tenantIdAndCentricId,
+            ClassAndField_IdKey rowKey,
+            CallbackStream<List<ColumnValueAndTimestamp<ObjectId, byte[], Long>>> pageStream) throws Exception {
+
+        if (linkRowCache == null) {
+            scanPages(store, tenantIdAndCentricId, rowKey, pageStream);
+            return;
+        }
+        List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> cached = linkRowCache.get(tenantIdAndCentricId, backLinks, rowKey);
+        if (cached != null) {
+            streamPages(cached, pageStream);
+            return;
+        }
+        LinkRowCache.Loader loader = linkRowCache.load(tenantIdAndCentricId, backLinks, rowKey);
+        scanPages(store, tenantIdAndCentricId, rowKey, new LoadingPageStream(loader, pageStream));
+        loader.put();
+    }
+
+    /**
+     * Like scanLinks for many rows at once. The first page of every row which isn't cached is read with a single multi row read,
+     * and only the rows which hold more than a page of links are then paged through starting after their first page. Each row's
+     * stream is stopped at the first link past its first page so a row of any fan-out costs the multi row read one page.
+     */
+    private void multiScanLinks(RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> store,
+            boolean backLinks,
+            List<RowScan> rowScans) throws Exception {
+
+        List<TenantKeyedColumnValueCallbackStream<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], Long>> firstPageStreams
+                = new ArrayList<>(rowScans.size());
+        List<RowScan> scanned = new ArrayList<>(rowScans.size());
+        for (RowScan rowScan : rowScans) {
+            if (linkRowCache != null) {
+                List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> cached = linkRowCache.get(rowScan.tenantIdAndCentricId, backLinks,
+                        rowScan.rowKey);
+                if (cached != null) {
+                    streamPages(cached, rowScan.pageStream);
+                    continue;
+                }
+                rowScan.loader = linkRowCache.load(rowScan.tenantIdAndCentricId, backLinks, rowScan.rowKey);
+            }
+            scanned.add(rowScan);
+            firstPageStreams.add(new TenantKeyedColumnValueCallbackStream<>(rowScan.tenantIdAndCentricId, rowScan.rowKey,
+                    rowScan.firstPage));
+        }
+        if (firstPageStreams.isEmpty()) {
+            return;
+        }
+        store.multiRowGetAll(firstPageStreams);
+        LOG.inc("scanFirstPages");
+
+        for (RowScan rowScan : scanned) {
+            CallbackStream<List<ColumnValueAndTimestamp<ObjectId, byte[], Long>>> pageStream = rowScan.pageStream;
+            if (rowScan.loader != null) {
+                pageStream = new LoadingPageStream(rowScan.loader, pageStream);
+            }
+            List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> firstPage = rowScan.firstPage.entries;
+            if (!firstPage.isEmpty()) {
+                pageStream.callback(firstPage);
+            }
+            if (rowScan.firstPage.overflowed) {
+                LOG.inc("scanFirstPages>overflowed");
+                scanPages(store, rowScan.tenantIdAndCentricId, rowScan.rowKey, firstPage.get(firstPage.size() - 1).getColumn(), pageStream);
+            }
+            if (rowScan.loader != null) {
+                rowScan.loader.put();
+            }
+        }
+    }
+
+    private void streamPages(List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> links,
+            CallbackStream<List<ColumnValueAndTimestamp<ObjectId, byte[], Long>>> pageStream) throws Exception {
+        for (int i = 0; i < links.size(); i += pageSize) {
+            pageStream.callback(links.subList(i, Math.min(i + pageSize, links.size())));
+        }
+    }
+
+    private void scanPages(RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> store,
+            TenantIdAndCentricId tenantIdAndCentricId,
+            ClassAndField_IdKey rowKey,
+            CallbackStream<List<ColumnValueAndTimestamp<ObjectId, byte[], Long>>> pageStream) throws Exception {
+        scanPages(store, tenantIdAndCentricId, rowKey, null, pageStream);
+    }
+
+    /**
+     * Scans a link row one page at a time using the last column of each page as the cursor for the next, starting after the given
+     * column or from the start of the row when it is null. Each page is handed to the pageStream only after its scan has completed
+     * so the pageStream is free to read from or remove from the row.
+     */
+    private void scanPages(RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> store,
+            TenantIdAndCentricId tenantIdAndCentricId,
+            ClassAndField_IdKey rowKey,
+            ObjectId after,
+            CallbackStream<List<ColumnValueAndTimestamp<ObjectId, byte[], Long>>> pageStream) throws Exception {
+
+        while (true) {
+            // the start column is inclusive so ask for one more than a page when resuming from a cursor
+            int maxCount = (after == null) ? pageSize : pageSize + 1;
+            Page page = new Page(after, pageSize);
+            store.getEntrys(tenantIdAndCentricId, rowKey, after, (long) maxCount, maxCount, false, null, null, page);
+            LOG.inc("scanPage");
+            if (page.entries.isEmpty()) {
+                break;
+            }
+            pageStream.callback(page.entries);
+            if (page.scanned < maxCount) {
+                break;
+            }
+            after = page.entries.get(page.entries.size() - 1).getColumn();
+        }
+    }
+
+    /**
+     * A link row to be scanned by multiScanLinks.
+     */
+    private class RowScan {
+
+        private final TenantIdAndCentricId tenantIdAndCentricId;
+        private final ClassAndField_IdKey rowKey;
+        private final CallbackStream<List<ColumnValueAndTimestamp<ObjectId, byte[], Long>>> pageStream;
+        private final FirstPage firstPage = new FirstPage(pageSize);
+        private LinkRowCache.Loader loader;
+
+        RowScan(TenantIdAndCentricId tenantIdAndCentricId,
+            ClassAndField_IdKey rowKey,
+            CallbackStream<List<ColumnValueAndTimestamp<ObjectId, byte[], Long>>> pageStream) {
+            this.tenantIdAndCentricId = tenantIdAndCentricId;
+            this.rowKey = rowKey;
+            this.pageStream = pageStream;
+        }
+    }
+
+    /**
+     * Keeps the first pageSize links of a row, notes whether the row held more and then stops the row's stream.
+     */
+    private static class FirstPage implements CallbackStream<ColumnValueAndTimestamp<ObjectId, byte[], Long>> {
+
+        private final int pageSize;
+        private final List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> entries;
+        private boolean overflowed;
+
+        FirstPage(int pageSize) {
+            this.pageSize = pageSize;
+            this.entries = new ArrayList<>();
+        }
+
+        @Override
+        public ColumnValueAndTimestamp<ObjectId, byte[], Long> callback(ColumnValueAndTimestamp<ObjectId, byte[], Long> v) throws Exception {
+            if (v != null) {
+                if (entries.size() < pageSize) {
+                    entries.add(v);
+                } else {
+                    overflowed = true;
+                    return null; // stops the row's stream, the rest of the row is paged through
+                }
+            }
+            return v;
+        }
+    }
+
+    private static class Page implements CallbackStream<ColumnValueAndTimestamp<ObjectId, byte[], Long>> {
+
+        private final ObjectId after;
+        private final List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> entries;
+        private int scanned;
+
+        Page(ObjectId after, int pageSize) {
+            this.after = after;
+            this.entries = new ArrayList<>(pageSize);
+        }
+
+        @Override
+        public ColumnValueAndTimestamp<ObjectId, byte[], Long> callback(ColumnValueAndTimestamp<ObjectId, byte[], Long> v) throws Exception {
+            if (v != null) {
+                scanned++;
+                if (after == null || !after.equals(v.getColumn())) {
+                    entries.add(v);
+                }
+            }
+            return v;
+        }
+    }
+
     /**
      * prevents delegate from getting 'null' aka end of stream marker
      */
@@ -298,6 +1173,71 @@ public class ReferenceStore {
         }
     }
 
+    /**
+     * Adds every link of every page streamed to delegate to a link row cache loader.
+     */
+    static class LoadingPageStream implements CallbackStream<List<ColumnValueAndTimestamp<ObjectId, byte[], Long>>> {
+
+        private final LinkRowCache.Loader loader;
+        private final CallbackStream<List<ColumnValueAndTimestamp<ObjectId, byte[], Long>>> delegate;
+
+        LoadingPageStream(LinkRowCache.Loader loader, CallbackStream<List<ColumnValueAndTimestamp<ObjectId, byte[], Long>>> delegate) {
+            this.loader = loader;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> callback(List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> page)
+            throws Exception {
+            for (ColumnValueAndTimestamp<ObjectId, byte[], Long> link : page) {
+                loader.add(link);
+            }
+            return delegate.callback(page);
+        }
+    }
+
+    /**
+     * Streams every link of every page to delegate.
+     */
+    static class EntryPageStream implements CallbackStream<List<ColumnValueAndTimestamp<ObjectId, byte[], Long>>> {
+
+        private final CallbackStream<ColumnValueAndTimestamp<ObjectId, byte[], Long>> delegate;
+
+        EntryPageStream(CallbackStream<ColumnValueAndTimestamp<ObjectId, byte[], Long>> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> callback(List<ColumnValueAndTimestamp<ObjectId, byte[], Long>> page)
+            throws Exception {
+            for (ColumnValueAndTimestamp<ObjectId, byte[], Long> link : page) {
+                delegate.callback(link);
+            }
+            return page;
+        }
+    }
+
+    /**
+     * Counts the links streamed to delegate so the back ref filter can be told whether a back link row was empty.
+     */
+    static class CountingCallbackStream implements CallbackStream<ColumnValueAndTimestamp<ObjectId, byte[], Long>> {
+
+        private final CallbackStream<ColumnValueAndTimestamp<ObjectId, byte[], Long>> delegate;
+        private long count;
+
+        CountingCallbackStream(CallbackStream<ColumnValueAndTimestamp<ObjectId, byte[], Long>> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ColumnValueAndTimestamp<ObjectId, byte[], Long> callback(ColumnValueAndTimestamp<ObjectId, byte[], Long> v) throws Exception {
+            if (v != null) {
+                count++;
+            }
+            return delegate.callback(v);
+        }
+    }
+
     public static class LinkTo {
 
         private final String fieldName;
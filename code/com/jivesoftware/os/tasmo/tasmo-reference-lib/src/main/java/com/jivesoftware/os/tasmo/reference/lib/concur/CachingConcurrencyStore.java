@@ -0,0 +1,208 @@
+package com.jivesoftware.os.tasmo.reference.lib.concur;
+
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.jive.utils.logger.MetricLogger;
+import com.jivesoftware.os.jive.utils.logger.MetricLoggerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the field versions and existence of the instance an event writes while that event is processed, so the repeated highest,
+ * highests and getExistence calls the event makes for its own instance mostly don't go to storage. Writes go through to the wrapped
+ * store and then update what is remembered: an update raises a remembered version, and anything whose outcome depends on storage,
+ * such as an update of a field remembered as absent or any removal, is forgotten instead.
+ *
+ * Nothing is remembered outside of beginEvent and endEvent, and only for the instance the event writes. Events of an instance are
+ * serialized by the event processor so no other writer of this process can change it meanwhile, and the instance's events are only
+ * processed by this process. checkIfModified always goes to the wrapped store since detecting writes made elsewhere is its job.
+ *
+ * @author jonathan
+ */
+public class CachingConcurrencyStore implements ConcurrencyStore {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+    private static final String EXISTS = "*exists*";
+    private static final Long ABSENT = Long.MIN_VALUE;
+    private static final Long EXISTS_AT_UNKNOWN_VERSION = Long.MAX_VALUE;
+
+    private final ConcurrencyStore concurrencyStore;
+    private final int maxEntriesPerEvent;
+    private final ConcurrentMap<List<Object>, ConcurrentMap<List<Object>, Long>> events = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxEntriesPerEvent how many field versions and existences are remembered per event.
+     */
+    public CachingConcurrencyStore(ConcurrencyStore concurrencyStore, int maxEntriesPerEvent) {
+        this.concurrencyStore = concurrencyStore;
+        this.maxEntriesPerEvent = maxEntriesPerEvent;
+    }
+
+    /**
+     * Starts remembering the given instance. Must be called while holding the lock which serializes the instance's events.
+     */
+    public void beginEvent(TenantId tenantId, ObjectId instanceId) {
+        events.put(Arrays.<Object>asList(tenantId, instanceId), new ConcurrentHashMap<List<Object>, Long>());
+    }
+
+    /**
+     * Forgets everything remembered about the given instance.
+     */
+    public void endEvent(TenantId tenantId, ObjectId instanceId) {
+        events.remove(Arrays.<Object>asList(tenantId, instanceId));
+    }
+
+    private ConcurrentMap<List<Object>, Long> versions(TenantIdAndCentricId tenantIdAndCentricId, ObjectId objectId) {
+        return events.get(Arrays.<Object>asList(tenantIdAndCentricId.getTenantId(), objectId));
+    }
+
+    private static List<Object> key(TenantIdAndCentricId tenantIdAndCentricId, String field) {
+        return Arrays.<Object>asList(tenantIdAndCentricId, field);
+    }
+
+    private void hits(int hits, int misses) {
+        LOG.inc("concurrencyCache>hit", hits);
+        LOG.inc("concurrencyCache>miss", misses);
+    }
+
+    private void remember(ConcurrentMap<List<Object>, Long> versions, List<Object> key, Long version) {
+        if (versions != null && versions.size() < maxEntriesPerEvent) {
+            versions.putIfAbsent(key, (version == null) ? ABSENT : version);
+        }
+    }
+
+    private void raise(TenantIdAndCentricId tenantIdAndCentricId, ObjectId objectId, String field, long timestamp) {
+        ConcurrentMap<List<Object>, Long> versions = versions(tenantIdAndCentricId, objectId);
+        if (versions == null) {
+            return;
+        }
+        List<Object> key = key(tenantIdAndCentricId, field);
+        Long version = versions.get(key);
+        if (version == null) {
+            return;
+        }
+        if (version.equals(ABSENT)) {
+            versions.remove(key);
+        } else if (timestamp > version) {
+            versions.put(key, timestamp);
+        }
+    }
+
+    @Override
+    public void addObjectId(List<ExistenceUpdate> existenceUpdates) {
+        concurrencyStore.addObjectId(existenceUpdates);
+        for (ExistenceUpdate existenceUpdate : existenceUpdates) {
+            raise(existenceUpdate.tenantId, existenceUpdate.objectId, EXISTS, existenceUpdate.timestamp);
+        }
+    }
+
+    @Override
+    public void removeObjectId(List<ExistenceUpdate> existenceUpdates) {
+        concurrencyStore.removeObjectId(existenceUpdates);
+        for (ExistenceUpdate existenceUpdate : existenceUpdates) {
+            ConcurrentMap<List<Object>, Long> versions = versions(existenceUpdate.tenantId, existenceUpdate.objectId);
+            if (versions != null) {
+                versions.remove(key(existenceUpdate.tenantId, EXISTS));
+            }
+        }
+    }
+
+    @Override
+    public void updated(TenantIdAndCentricId tenantIdAndCentricId, ObjectId objectId, String[] fields, long timestamp) {
+        concurrencyStore.updated(tenantIdAndCentricId, objectId, fields, timestamp);
+        for (String field : fields) {
+            raise(tenantIdAndCentricId, objectId, field, timestamp);
+        }
+    }
+
+    @Override
+    public void updated(List<ConcurrencyUpdate> updates) {
+        concurrencyStore.updated(updates);
+        for (ConcurrencyUpdate update : updates) {
+            for (String field : update.fields) {
+                raise(update.tenantId, update.objectId, field, update.timestamp);
+            }
+        }
+    }
+
+    @Override
+    public Set<ObjectId> getExistence(TenantIdAndCentricId tenantId, Set<ObjectId> objectIds) {
+        Set<ObjectId> existence = new HashSet<>();
+        Set<ObjectId> unknown = new HashSet<>();
+        for (ObjectId objectId : objectIds) {
+            ConcurrentMap<List<Object>, Long> versions = versions(tenantId, objectId);
+            Long version = (versions == null) ? null : versions.get(key(tenantId, EXISTS));
+            if (version == null) {
+                unknown.add(objectId);
+            } else if (!version.equals(ABSENT)) {
+                existence.add(objectId);
+            }
+        }
+        hits(objectIds.size() - unknown.size(), unknown.size());
+        if (!unknown.isEmpty()) {
+            Set<ObjectId> got = concurrencyStore.getExistence(tenantId, unknown);
+            for (ObjectId objectId : unknown) {
+                boolean exists = got.contains(objectId);
+                remember(versions(tenantId, objectId), key(tenantId, EXISTS), exists ? EXISTS_AT_UNKNOWN_VERSION : null);
+                if (exists) {
+                    existence.add(objectId);
+                }
+            }
+        }
+        return existence;
+    }
+
+    @Override
+    public long highest(TenantIdAndCentricId tenantIdAndCentricId, ObjectId objectId, String field, long defaultTimestamp) {
+        Long got = highests(tenantIdAndCentricId, objectId, new String[]{ field }).get(0);
+        if (got == null) {
+            return defaultTimestamp;
+        }
+        return got;
+    }
+
+    @Override
+    public List<Long> highests(TenantIdAndCentricId tenantIdAndCentricId, ObjectId objectId, String[] fields) {
+        ConcurrentMap<List<Object>, Long> versions = versions(tenantIdAndCentricId, objectId);
+        if (versions == null) {
+            return concurrencyStore.highests(tenantIdAndCentricId, objectId, fields);
+        }
+        Long[] highests = new Long[fields.length];
+        List<Integer> unknown = new ArrayList<>();
+        for (int i = 0; i < fields.length; i++) {
+            Long version = versions.get(key(tenantIdAndCentricId, fields[i]));
+            if (version == null || version.equals(EXISTS_AT_UNKNOWN_VERSION)) {
+                unknown.add(i);
+            } else if (!version.equals(ABSENT)) {
+                highests[i] = version;
+            }
+        }
+        hits(fields.length - unknown.size(), unknown.size());
+        if (!unknown.isEmpty()) {
+            String[] unknownFields = new String[unknown.size()];
+            for (int i = 0; i < unknownFields.length; i++) {
+                unknownFields[i] = fields[unknown.get(i)];
+            }
+            List<Long> got = concurrencyStore.highests(tenantIdAndCentricId, objectId, unknownFields);
+            for (int i = 0; i < unknownFields.length; i++) {
+                Long version = got.get(i);
+                List<Object> key = key(tenantIdAndCentricId, unknownFields[i]);
+                versions.remove(key, EXISTS_AT_UNKNOWN_VERSION);
+                remember(versions, key, version);
+                highests[unknown.get(i)] = version;
+            }
+        }
+        return Arrays.asList(highests);
+    }
+
+    @Override
+    public Set<FieldVersion> checkIfModified(TenantIdAndCentricId tenantId, Set<FieldVersion> expectedSet) {
+        return concurrencyStore.checkIfModified(tenantId, expectedSet);
+    }
+}
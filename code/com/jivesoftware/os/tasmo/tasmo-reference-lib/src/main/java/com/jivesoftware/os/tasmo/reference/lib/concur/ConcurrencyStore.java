@@ -29,4 +29,9 @@ public interface ConcurrencyStore {
     void removeObjectId(List<ExistenceUpdate> existenceUpdates);
 
     void updated(TenantIdAndCentricId tenantIdAndCentricId, ObjectId objectId, String[] fields, long timestamp);
+
+    /**
+     * Same as calling updated for each of the given updates but written with a single multi row put.
+     */
+    void updated(List<ConcurrencyUpdate> updates);
 }
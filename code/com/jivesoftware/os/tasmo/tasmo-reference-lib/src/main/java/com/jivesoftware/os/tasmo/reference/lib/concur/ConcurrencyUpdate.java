@@ -0,0 +1,19 @@
+package com.jivesoftware.os.tasmo.reference.lib.concur;
+
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+
+public class ConcurrencyUpdate {
+
+    public final TenantIdAndCentricId tenantId;
+    public final ObjectId objectId;
+    public final String[] fields;
+    public final long timestamp;
+
+    public ConcurrencyUpdate(TenantIdAndCentricId tenantId, ObjectId objectId, String[] fields, long timestamp) {
+        this.tenantId = tenantId;
+        this.objectId = objectId;
+        this.fields = fields;
+        this.timestamp = timestamp;
+    }
+}
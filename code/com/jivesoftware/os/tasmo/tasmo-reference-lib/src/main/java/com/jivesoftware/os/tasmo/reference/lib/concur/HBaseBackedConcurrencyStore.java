@@ -46,6 +46,20 @@ public class HBaseBackedConcurrencyStore implements ConcurrencyStore {
         updatedStore.multiAdd(tenantIdAndCentricId, objectId, fields, values, null, new ConstantTimestamper(timestamp));
     }
 
+    @Override
+    public void updated(List<ConcurrencyUpdate> updates) {
+        List<TenantRowColumValueTimestampAdd<TenantIdAndCentricId, ObjectId, String, Long>> batch = new ArrayList<>();
+        for (ConcurrencyUpdate update : updates) {
+            ConstantTimestamper constantTimestamper = new ConstantTimestamper(update.timestamp);
+            for (String field : update.fields) {
+                batch.add(new TenantRowColumValueTimestampAdd<>(update.tenantId, update.objectId, field, update.timestamp, constantTimestamper));
+            }
+        }
+        if (!batch.isEmpty()) {
+            updatedStore.multiRowsMultiAdd(batch);
+        }
+    }
+
     @Override
     public void addObjectId(List<ExistenceUpdate> existenceUpdates) {
 
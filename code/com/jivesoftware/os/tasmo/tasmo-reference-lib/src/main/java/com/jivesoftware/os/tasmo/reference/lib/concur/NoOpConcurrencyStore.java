@@ -44,4 +44,8 @@ public class NoOpConcurrencyStore implements ConcurrencyStore {
     public void updated(TenantIdAndCentricId tenantIdAndCentricId, ObjectId objectId, String[] fields, long timestamp) {
     }
 
+    @Override
+    public void updated(List<ConcurrencyUpdate> updates) {
+    }
+
 }
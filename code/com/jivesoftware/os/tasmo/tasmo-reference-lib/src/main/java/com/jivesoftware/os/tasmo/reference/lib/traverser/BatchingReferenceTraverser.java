@@ -14,18 +14,33 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
+ * Queues ref stream requests from every traversal thread and streams each batch of them with a single ReferenceStore.multiStreamRefs
+ * call. A batch is dispatched once it holds processUpToNRequestAtATime requests or its first request has waited lingerMillis.
  *
  * @author jonathan
  */
 public class BatchingReferenceTraverser implements ReferenceTraverser {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+    private static final BatchingReferenceTraverserStats NO_STATS = new BatchingReferenceTraverserStats() {
+        @Override
+        public void dispatched(int batchSize, int queueDepth, long lingeredMillis) {
+        }
+
+        @Override
+        public void streamed(int batchSize, long elapsedMillis) {
+        }
+    };
+
     private final ReferenceStore referenceStore;
     private final ListeningExecutorService traverserExecutors;
     private final int processUpToNRequestAtATime;
+    private final long lingerMillis;
+    private final BatchingReferenceTraverserStats stats;
     private final BlockingQueue<RefStreamRequestContext> requestsQueue;
     private final AtomicBoolean running = new AtomicBoolean(false);
 
@@ -33,44 +48,86 @@ public class BatchingReferenceTraverser implements ReferenceTraverser {
             ListeningExecutorService traverserExecutors,
             int processUpToNRequestAtATime,
             int requestQueueCapacity) {
+        this(referenceStore, traverserExecutors, processUpToNRequestAtATime, 0, requestQueueCapacity, NO_STATS);
+    }
+
+    /**
+     * @param lingerMillis how long the first queued request waits for others to join its batch. Zero dispatches whatever is queued
+     * immediately.
+     */
+    public BatchingReferenceTraverser(ReferenceStore referenceStore,
+            ListeningExecutorService traverserExecutors,
+            int processUpToNRequestAtATime,
+            long lingerMillis,
+            int requestQueueCapacity,
+            BatchingReferenceTraverserStats stats) {
         this.referenceStore = referenceStore;
         this.traverserExecutors = traverserExecutors;
         this.processUpToNRequestAtATime = processUpToNRequestAtATime;
+        this.lingerMillis = lingerMillis;
+        this.stats = stats;
         this.requestsQueue = new ArrayBlockingQueue<>(requestQueueCapacity);
     }
 
+    /**
+     * Dispatches batches of queued requests until stopProcessingRequests is called or the calling thread is interrupted. Any number of
+     * threads may call this concurrently, each one acting as an independent dispatcher over the shared request queue.
+     */
     public void startProcessingRequests() throws InterruptedException {
-        if (running.compareAndSet(false, true)) {
-            while (running.get()) {
-                final List<RefStreamRequestContext> requests = new ArrayList<>();
-                RefStreamRequestContext took = requestsQueue.take();
-                requests.add(took);
-                requestsQueue.drainTo(requests, processUpToNRequestAtATime);
-                if (requests.isEmpty()) {
-                    return;
+        running.set(true);
+        while (running.get()) {
+            final List<RefStreamRequestContext> requests = new ArrayList<>(processUpToNRequestAtATime);
+            requests.add(requestsQueue.take());
+            long tookFirst = System.currentTimeMillis();
+            long lingerUntil = tookFirst + lingerMillis;
+            while (requests.size() < processUpToNRequestAtATime) {
+                requestsQueue.drainTo(requests, processUpToNRequestAtATime - requests.size());
+                long remaining = lingerUntil - System.currentTimeMillis();
+                if (requests.size() >= processUpToNRequestAtATime || remaining <= 0) {
+                    break;
+                }
+                RefStreamRequestContext next = requestsQueue.poll(remaining, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    break;
                 }
-                traverserExecutors.submit(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            if (requests.size() > 1) {
-                                LOG.debug("Request aggregation size: {}", requests.size());
-                            }
-                            referenceStore.multiStreamRefs(requests);
-                        } catch (Exception ex) {
-                            LOG.warn("Failed to process request:" + requests, ex);
-                            for (RefStreamRequestContext request : requests) {
-                                request.failure(ex);
-                            }
+                requests.add(next);
+            }
+
+            LOG.inc("batchingReferenceTraverser>batches");
+            LOG.inc("batchingReferenceTraverser>requests", requests.size());
+            stats.dispatched(requests.size(), requestsQueue.size(), System.currentTimeMillis() - tookFirst);
+
+            traverserExecutors.submit(new Runnable() {
+                @Override
+                public void run() {
+                    long start = System.currentTimeMillis();
+                    try {
+                        if (requests.size() > 1) {
+                            LOG.debug("Request aggregation size: {}", requests.size());
                         }
+                        referenceStore.multiStreamRefs(requests);
+                    } catch (Exception ex) {
+                        LOG.warn("Failed to process request:" + requests, ex);
+                        for (RefStreamRequestContext request : requests) {
+                            request.failure(ex);
+                        }
+                    } finally {
+                        stats.streamed(requests.size(), System.currentTimeMillis() - start);
                     }
-                });
-            }
+                }
+            });
         }
     }
 
+    /**
+     * Dispatchers stop once they next wake up. Interrupt them to stop a dispatcher which is waiting on an empty queue.
+     */
     public void stopProcessingRequests() {
-        running.compareAndSet(true, false);
+        running.set(false);
+    }
+
+    public int queueDepth() {
+        return requestsQueue.size();
     }
 
     @Override
@@ -113,4 +170,17 @@ public class BatchingReferenceTraverser implements ReferenceTraverser {
         refStreamRequestContext.traverse(refStream);
     }
 
+    /**
+     * Latest back refs are read from a small index row so they are streamed directly rather than batched.
+     */
+    @Override
+    public void traverseLatestBackRefs(TenantIdAndCentricId tenantIdAndCentricId,
+            Set<String> classNames,
+            String fieldName,
+            ObjectId id,
+            long threadTimestamp,
+            CallbackStream<ReferenceWithTimestamp> refStream) throws InterruptedException, Exception {
+        referenceStore.streamLatestBackRefs(tenantIdAndCentricId, id, classNames, fieldName, threadTimestamp, refStream);
+    }
+
 }
@@ -0,0 +1,22 @@
+package com.jivesoftware.os.tasmo.reference.lib.traverser;
+
+/**
+ * Receives the size and timing of every batch a BatchingReferenceTraverser dispatches so they can be recorded as histograms.
+ *
+ * @author jonathan
+ */
+public interface BatchingReferenceTraverserStats {
+
+    /**
+     * @param batchSize number of requests in the batch
+     * @param queueDepth number of requests still queued once the batch was taken
+     * @param lingeredMillis how long the first request of the batch waited for others to join it
+     */
+    void dispatched(int batchSize, int queueDepth, long lingeredMillis);
+
+    /**
+     * @param batchSize number of requests in the batch
+     * @param elapsedMillis how long it took to stream the refs of every request in the batch
+     */
+    void streamed(int batchSize, long elapsedMillis);
+}
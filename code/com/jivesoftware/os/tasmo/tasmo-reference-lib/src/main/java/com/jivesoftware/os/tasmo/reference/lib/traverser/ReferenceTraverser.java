@@ -25,4 +25,14 @@ public interface ReferenceTraverser {
             ObjectId id,
             long threadTimestamp,
             CallbackStream<ReferenceWithTimestamp> refStream) throws InterruptedException, Exception;
+
+    /**
+     * Like traversBackRefs but only streams the most recent back refs, newest first. See ReferenceStore.streamLatestBackRefs.
+     */
+    void traverseLatestBackRefs(TenantIdAndCentricId tenantIdAndCentricId,
+            Set<String> className,
+            String fieldName,
+            ObjectId id,
+            long threadTimestamp,
+            CallbackStream<ReferenceWithTimestamp> refStream) throws InterruptedException, Exception;
 }
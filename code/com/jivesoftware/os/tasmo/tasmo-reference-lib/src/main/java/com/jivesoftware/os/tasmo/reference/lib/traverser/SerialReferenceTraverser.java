@@ -54,4 +54,14 @@ public class SerialReferenceTraverser implements ReferenceTraverser {
         referenceStore.streamBackRefs(tenantIdAndCentricId, id, classNames, fieldName, threadTimestamp, refStream);
     }
 
+    @Override
+    public void traverseLatestBackRefs(TenantIdAndCentricId tenantIdAndCentricId,
+            Set<String> classNames,
+            String fieldName,
+            ObjectId id,
+            long threadTimestamp,
+            CallbackStream<ReferenceWithTimestamp> refStream) throws InterruptedException, Exception {
+        referenceStore.streamLatestBackRefs(tenantIdAndCentricId, id, classNames, fieldName, threadTimestamp, refStream);
+    }
+
 }
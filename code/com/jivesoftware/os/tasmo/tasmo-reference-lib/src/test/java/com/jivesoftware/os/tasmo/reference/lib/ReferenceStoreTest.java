@@ -4,6 +4,7 @@
  */
 package com.jivesoftware.os.tasmo.reference.lib;
 
+import com.google.common.base.Ticker;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.jivesoftware.os.jive.utils.base.interfaces.CallbackStream;
@@ -12,15 +13,26 @@ import com.jivesoftware.os.jive.utils.id.ObjectId;
 import com.jivesoftware.os.jive.utils.id.TenantId;
 import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
 import com.jivesoftware.os.jive.utils.row.column.value.store.api.RowColumnValueStore;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.TenantRowColumValueTimestampAdd;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.timestamper.ConstantTimestamper;
 import com.jivesoftware.os.jive.utils.row.column.value.store.inmemory.RowColumnValueStoreImpl;
 import com.jivesoftware.os.tasmo.reference.lib.concur.ConcurrencyStore;
 import com.jivesoftware.os.tasmo.reference.lib.concur.HBaseBackedConcurrencyStore;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.testng.Assert;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
@@ -120,6 +132,444 @@ public class ReferenceStoreTest {
         results.results.clear();
     }
 
+    @Test
+    public void testLinkDeltaOnlyWritesAndRemovesChanges() throws Exception {
+        TenantIdAndCentricId tenantIdAndCentricId = new TenantIdAndCentricId(new TenantId("delta"), Id.NULL);
+        String aClassName = "Group";
+        String aFieldName = "members";
+        ObjectId aId = new ObjectId(aClassName, new Id(1));
+        Reference b1 = new Reference(new ObjectId("User", new Id(2)), aFieldName);
+        Reference b2 = new Reference(new ObjectId("User", new Id(3)), aFieldName);
+        Reference b3 = new Reference(new ObjectId("User", new Id(4)), aFieldName);
+
+        long firstEventId = 10;
+        referenceStore.linkDelta(tenantIdAndCentricId, aId, firstEventId, Arrays.asList(new ReferenceStore.LinkTo(aFieldName, Arrays.asList(b1, b2))));
+
+        long secondEventId = 20;
+        referenceStore.linkDelta(tenantIdAndCentricId, aId, secondEventId, Arrays.asList(new ReferenceStore.LinkTo(aFieldName, Arrays.asList(b1, b3))));
+        ObjectIdResults removed = new ObjectIdResults();
+        referenceStore.unlink(tenantIdAndCentricId, secondEventId, aId, aFieldName,
+            Sets.newHashSet(b1.getObjectId(), b3.getObjectId()), 0, removed);
+
+        Assert.assertEquals(removed.results.size(), 1);
+        Assert.assertEquals(removed.results.get(0).getObjectId(), b2.getObjectId());
+
+        ObjectIdResults linked = new ObjectIdResults();
+        referenceStore.streamForwardRefs(tenantIdAndCentricId, Collections.singleton(aClassName), aFieldName, aId, 0, linked);
+        Assert.assertEquals(linked.results.size(), 2);
+        for (ReferenceWithTimestamp reference : linked.results) {
+            if (reference.getObjectId().equals(b1.getObjectId())) {
+                Assert.assertEquals(reference.getTimestamp(), firstEventId, "retained link should keep its timestamp");
+            } else {
+                Assert.assertEquals(reference.getObjectId(), b3.getObjectId());
+                Assert.assertEquals(reference.getTimestamp(), secondEventId);
+            }
+        }
+
+        ObjectIdResults backRefs = new ObjectIdResults();
+        referenceStore.streamBackRefs(tenantIdAndCentricId, b2.getObjectId(), Collections.singleton(aClassName), aFieldName, 0, backRefs);
+        Assert.assertTrue(backRefs.results.isEmpty());
+    }
+
+    @Test
+    public void testLinkDeltaAcrossCentricIds() throws Exception {
+        TenantId tenantId = new TenantId("centric");
+        TenantIdAndCentricId globalId = new TenantIdAndCentricId(tenantId, Id.NULL);
+        TenantIdAndCentricId userId = new TenantIdAndCentricId(tenantId, new Id(100));
+        String aClassName = "Group";
+        String aFieldName = "members";
+        ObjectId aId = new ObjectId(aClassName, new Id(1));
+        Reference b1 = new Reference(new ObjectId("User", new Id(2)), aFieldName);
+        Reference b2 = new Reference(new ObjectId("User", new Id(3)), aFieldName);
+
+        Map<TenantIdAndCentricId, List<ReferenceStore.LinkTo>> centricBatchLinks = new HashMap<>();
+        centricBatchLinks.put(globalId, Arrays.asList(new ReferenceStore.LinkTo(aFieldName, Arrays.asList(b1))));
+        centricBatchLinks.put(userId, Arrays.asList(new ReferenceStore.LinkTo(aFieldName, Arrays.asList(b2))));
+        long eventId = 10;
+        referenceStore.linkDelta(centricBatchLinks, aId, eventId);
+
+        ObjectIdResults globalLinks = new ObjectIdResults();
+        referenceStore.streamForwardRefs(globalId, Collections.singleton(aClassName), aFieldName, aId, 0, globalLinks);
+        Assert.assertEquals(globalLinks.results.size(), 1);
+        Assert.assertEquals(globalLinks.results.get(0).getObjectId(), b1.getObjectId());
+
+        ObjectIdResults userBackRefs = new ObjectIdResults();
+        referenceStore.streamBackRefs(userId, b2.getObjectId(), Collections.singleton(aClassName), aFieldName, 0, userBackRefs);
+        Assert.assertEquals(userBackRefs.results.size(), 1);
+        Assert.assertEquals(userBackRefs.results.get(0).getObjectId(), aId);
+
+        ObjectIdResults otherCentric = new ObjectIdResults();
+        referenceStore.streamBackRefs(userId, b1.getObjectId(), Collections.singleton(aClassName), aFieldName, 0, otherCentric);
+        Assert.assertTrue(otherCentric.results.isEmpty());
+
+        String[] fields = new String[]{ "deleted", aFieldName };
+        Assert.assertEquals(concurrencyStore.highests(globalId, aId, fields), Arrays.asList(eventId, eventId));
+        Assert.assertEquals(concurrencyStore.highests(userId, aId, fields), Arrays.asList(eventId, eventId));
+    }
+
+    @Test
+    public void testPagedStreamingAndUnlink() throws Exception {
+        RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiLinks = new RowColumnValueStoreImpl<>();
+        RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiBackLinks = new RowColumnValueStoreImpl<>();
+        ReferenceStore pagedReferenceStore = ReferenceStore.builder(concurrencyStore, multiLinks, multiBackLinks).pageSize(2).build();
+
+        TenantIdAndCentricId tenantIdAndCentricId = new TenantIdAndCentricId(new TenantId("paged"), Id.NULL);
+        String aClassName = "Group";
+        String aFieldName = "members";
+        ObjectId aId = new ObjectId(aClassName, new Id(1));
+        ObjectId bId = new ObjectId("User", new Id(100));
+        List<Reference> members = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            members.add(new Reference(new ObjectId("User", new Id(2 + i)), aFieldName));
+        }
+        pagedReferenceStore.link(tenantIdAndCentricId, aId, 10, Arrays.asList(new ReferenceStore.LinkTo(aFieldName, members)));
+        for (int i = 0; i < 5; i++) {
+            pagedReferenceStore.link(tenantIdAndCentricId, new ObjectId(aClassName, new Id(200 + i)), 10,
+                Arrays.asList(new ReferenceStore.LinkTo(aFieldName, Arrays.asList(new Reference(bId, aFieldName)))));
+        }
+
+        ObjectIdResults forward = new ObjectIdResults();
+        pagedReferenceStore.streamForwardRefs(tenantIdAndCentricId, Collections.singleton(aClassName), aFieldName, aId, 0, forward);
+        Assert.assertEquals(forward.results.size(), members.size());
+        Set<ObjectId> forwardIds = Sets.newHashSet();
+        for (ReferenceWithTimestamp reference : forward.results) {
+            forwardIds.add(reference.getObjectId());
+        }
+        Assert.assertEquals(forwardIds.size(), members.size());
+
+        ObjectIdResults back = new ObjectIdResults();
+        pagedReferenceStore.streamBackRefs(tenantIdAndCentricId, bId, Collections.singleton(aClassName), aFieldName, 0, back);
+        Assert.assertEquals(back.results.size(), 5);
+
+        RefStreamRequestContext multiForward = new RefStreamRequestContext(tenantIdAndCentricId, Collections.singleton(aClassName),
+            aFieldName, aId, 0, false);
+        RefStreamRequestContext multiBack = new RefStreamRequestContext(tenantIdAndCentricId, Collections.singleton(aClassName),
+            aFieldName, bId, 0, true);
+        pagedReferenceStore.multiStreamRefs(Arrays.asList(multiForward, multiBack));
+        ObjectIdResults multiForwardResults = new ObjectIdResults();
+        multiForward.traverse(multiForwardResults);
+        Assert.assertEquals(multiForwardResults.results.size(), members.size());
+        ObjectIdResults multiBackResults = new ObjectIdResults();
+        multiBack.traverse(multiBackResults);
+        Assert.assertEquals(multiBackResults.results.size(), 5);
+
+        ObjectIdResults removed = new ObjectIdResults();
+        pagedReferenceStore.unlink(tenantIdAndCentricId, 20, aId, aFieldName, 0, removed);
+        Assert.assertEquals(removed.results.size(), members.size());
+
+        ObjectIdResults remaining = new ObjectIdResults();
+        pagedReferenceStore.streamForwardRefs(tenantIdAndCentricId, Collections.singleton(aClassName), aFieldName, aId, 0, remaining);
+        Assert.assertTrue(remaining.results.isEmpty());
+    }
+
+    @Test
+    public void testLatestBackRefs() throws Exception {
+        RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiLinks = new RowColumnValueStoreImpl<>();
+        RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiBackLinks = new RowColumnValueStoreImpl<>();
+        ReferenceStore unindexedReferenceStore = ReferenceStore.builder(concurrencyStore, multiLinks, multiBackLinks).pageSize(2).build();
+        ReferenceStore latestReferenceStore = ReferenceStore.builder(concurrencyStore, multiLinks, multiBackLinks).pageSize(2)
+            .latestBackRefIndexSize(2)
+            .build();
+
+        TenantIdAndCentricId tenantIdAndCentricId = new TenantIdAndCentricId(new TenantId("latest"), Id.NULL);
+        Set<String> aClassNames = Collections.singleton("Comment");
+        String aFieldName = "parent";
+        ObjectId bId = new ObjectId("Post", new Id(1));
+        ObjectId c1 = new ObjectId("Comment", new Id(2));
+        ObjectId c2 = new ObjectId("Comment", new Id(3));
+        ObjectId c3 = new ObjectId("Comment", new Id(4));
+        ObjectId c4 = new ObjectId("Comment", new Id(5));
+
+        // linked before the index existed
+        unindexedReferenceStore.link(tenantIdAndCentricId, c1, 10, Arrays.asList(new ReferenceStore.LinkTo(aFieldName,
+            Arrays.asList(new Reference(bId, aFieldName)))));
+        unindexedReferenceStore.link(tenantIdAndCentricId, c2, 30, Arrays.asList(new ReferenceStore.LinkTo(aFieldName,
+            Arrays.asList(new Reference(bId, aFieldName)))));
+
+        ObjectIdResults latest = new ObjectIdResults();
+        latestReferenceStore.streamLatestBackRefs(tenantIdAndCentricId, bId, aClassNames, aFieldName, 0, latest);
+        Assert.assertTrue(equal(latest.results, Arrays.asList(new ReferenceWithTimestamp(c2, aFieldName, 30),
+            new ReferenceWithTimestamp(c1, aFieldName, 10))));
+
+        latestReferenceStore.link(tenantIdAndCentricId, c3, 20, Arrays.asList(new ReferenceStore.LinkTo(aFieldName,
+            Arrays.asList(new Reference(bId, aFieldName)))));
+        latestReferenceStore.link(tenantIdAndCentricId, c4, 5, Arrays.asList(new ReferenceStore.LinkTo(aFieldName,
+            Arrays.asList(new Reference(bId, aFieldName)))));
+
+        latest = new ObjectIdResults();
+        latestReferenceStore.streamLatestBackRefs(tenantIdAndCentricId, bId, aClassNames, aFieldName, 0, latest);
+        Assert.assertTrue(equal(latest.results, Arrays.asList(new ReferenceWithTimestamp(c2, aFieldName, 30),
+            new ReferenceWithTimestamp(c3, aFieldName, 20))));
+        Assert.assertEquals(latest.results.get(1).getTimestamp(), 20L);
+
+        latestReferenceStore.unlink(tenantIdAndCentricId, 40, c2, aFieldName, 0, new ObjectIdResults());
+
+        latest = new ObjectIdResults();
+        latestReferenceStore.streamLatestBackRefs(tenantIdAndCentricId, bId, aClassNames, aFieldName, 0, latest);
+        Assert.assertTrue(equal(latest.results, Arrays.asList(new ReferenceWithTimestamp(c3, aFieldName, 20),
+            new ReferenceWithTimestamp(c1, aFieldName, 10))));
+
+        ObjectIdResults back = new ObjectIdResults();
+        latestReferenceStore.streamBackRefs(tenantIdAndCentricId, bId, aClassNames, aFieldName, 0, back);
+        Assert.assertEquals(back.results.size(), 3, "the index must not show up as back refs");
+    }
+
+    @Test
+    public void testBackRefCounts() throws Exception {
+        RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiLinks = new RowColumnValueStoreImpl<>();
+        RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiBackLinks = new RowColumnValueStoreImpl<>();
+        ReferenceStore uncountedReferenceStore = ReferenceStore.builder(concurrencyStore, multiLinks, multiBackLinks).pageSize(2).build();
+        final ReferenceStore countingReferenceStore = ReferenceStore.builder(concurrencyStore, multiLinks, multiBackLinks).pageSize(2)
+            .countBackRefs(true)
+            .build();
+
+        final TenantIdAndCentricId tenantIdAndCentricId = new TenantIdAndCentricId(new TenantId("count"), Id.NULL);
+        final Set<String> aClassNames = Collections.singleton("Comment");
+        final String aFieldName = "parent";
+        final ObjectId bId = new ObjectId("Post", new Id(1));
+        ObjectId c1 = new ObjectId("Comment", new Id(2));
+        ObjectId c2 = new ObjectId("Comment", new Id(3));
+        ObjectId c3 = new ObjectId("Comment", new Id(4));
+        List<ReferenceStore.LinkTo> toB = Arrays.asList(new ReferenceStore.LinkTo(aFieldName, Arrays.asList(new Reference(bId, aFieldName))));
+
+        // linked before counting was enabled
+        uncountedReferenceStore.link(tenantIdAndCentricId, c1, 10, toB);
+        Assert.assertEquals(countingReferenceStore.getBackRefCount(tenantIdAndCentricId, bId, aClassNames, aFieldName), 1L);
+
+        countingReferenceStore.link(tenantIdAndCentricId, c2, 20, toB);
+        Assert.assertEquals(countingReferenceStore.getBackRefCount(tenantIdAndCentricId, bId, aClassNames, aFieldName), 2L);
+
+        countingReferenceStore.link(tenantIdAndCentricId, c2, 25, toB);
+        Assert.assertEquals(countingReferenceStore.getBackRefCount(tenantIdAndCentricId, bId, aClassNames, aFieldName), 2L,
+            "relinking must not count the same back ref twice");
+
+        countingReferenceStore.linkDelta(tenantIdAndCentricId, c3, 30, toB);
+        countingReferenceStore.linkDelta(tenantIdAndCentricId, c3, 31, toB);
+        Assert.assertEquals(countingReferenceStore.getBackRefCount(tenantIdAndCentricId, bId, aClassNames, aFieldName), 3L);
+
+        final List<Long> countsWhenRemoved = new ArrayList<>();
+        countingReferenceStore.unlink(tenantIdAndCentricId, 40, c2, aFieldName, 0, new CallbackStream<ReferenceWithTimestamp>() {
+
+            @Override
+            public ReferenceWithTimestamp callback(ReferenceWithTimestamp v) throws Exception {
+                if (v != null) {
+                    countsWhenRemoved.add(countingReferenceStore.getBackRefCount(tenantIdAndCentricId, bId, aClassNames, aFieldName));
+                }
+                return v;
+            }
+        });
+        Assert.assertEquals(countsWhenRemoved, Arrays.asList(2L), "removed tos are streamed after their count is updated");
+        Assert.assertEquals(countingReferenceStore.getBackRefCount(tenantIdAndCentricId, bId, aClassNames, aFieldName), 2L);
+        Assert.assertEquals(uncountedReferenceStore.getBackRefCount(tenantIdAndCentricId, bId, aClassNames, aFieldName), 2L);
+
+        ObjectIdResults back = new ObjectIdResults();
+        countingReferenceStore.streamBackRefs(tenantIdAndCentricId, bId, aClassNames, aFieldName, 0, back);
+        Assert.assertEquals(back.results.size(), 2, "the count must not show up as a back ref");
+    }
+
+    @Test
+    public void testStampedBackRefCountsOfRacingLinks() throws Exception {
+        RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiLinks = new RowColumnValueStoreImpl<>();
+        RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiBackLinks = new RowColumnValueStoreImpl<>();
+        final ReferenceStore countingReferenceStore = ReferenceStore.builder(concurrencyStore, multiLinks, multiBackLinks).pageSize(2)
+            .countBackRefs(true)
+            .build();
+
+        final TenantIdAndCentricId tenantIdAndCentricId = new TenantIdAndCentricId(new TenantId("race"), Id.NULL);
+        final Set<String> aClassNames = Collections.singleton("Comment");
+        final String aFieldName = "parent";
+        final ObjectId bId = new ObjectId("Post", new Id(1));
+        final List<ReferenceStore.LinkTo> toB = Arrays.asList(new ReferenceStore.LinkTo(aFieldName, Arrays.asList(new Reference(bId, aFieldName))));
+
+        countingReferenceStore.link(tenantIdAndCentricId, new ObjectId("Comment", new Id(2)), 20, toB);
+        BackRefCount linked = countingReferenceStore.getStampedBackRefCount(tenantIdAndCentricId, bId, aClassNames, aFieldName, 20);
+        // an event with a later id reads the count before the link of an event with an earlier id lands
+        BackRefCount readByLaterEvent = countingReferenceStore.getStampedBackRefCount(tenantIdAndCentricId, bId, aClassNames, aFieldName, 30);
+        countingReferenceStore.link(tenantIdAndCentricId, new ObjectId("Comment", new Id(3)), 25, toB);
+        BackRefCount readByEarlierEvent = countingReferenceStore.getStampedBackRefCount(tenantIdAndCentricId, bId, aClassNames, aFieldName, 25);
+
+        Assert.assertEquals(linked.getCount(), 1L);
+        Assert.assertEquals(readByLaterEvent.getCount(), 1L);
+        Assert.assertEquals(readByEarlierEvent.getCount(), 2L);
+        Assert.assertTrue(linked.getTimestamp() < readByLaterEvent.getTimestamp());
+        Assert.assertTrue(readByLaterEvent.getTimestamp() < readByEarlierEvent.getTimestamp(),
+            "the count read last must be stamped last whatever the ids of the events which read it");
+
+        int threads = 4;
+        final int linksPerThread = 50;
+        final List<BackRefCount> reads = Collections.synchronizedList(new ArrayList<BackRefCount>());
+        ExecutorService linkers = Executors.newFixedThreadPool(threads);
+        List<Future<?>> linking = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            linking.add(linkers.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    for (int i = 0; i < linksPerThread; i++) {
+                        // every thread links with the same small timestamps so their reads land out of timestamp order
+                        long timestamp = 100 + i;
+                        ObjectId referrer = new ObjectId("Comment", new Id(1000 + (thread * linksPerThread) + i));
+                        countingReferenceStore.link(tenantIdAndCentricId, referrer, timestamp, toB);
+                        reads.add(countingReferenceStore.getStampedBackRefCount(tenantIdAndCentricId, bId, aClassNames, aFieldName,
+                            timestamp));
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> future : linking) {
+            future.get();
+        }
+        linkers.shutdownNow();
+
+        BackRefCount latest = null;
+        Set<Long> stamps = new HashSet<>();
+        for (BackRefCount read : reads) {
+            Assert.assertTrue(stamps.add(read.getTimestamp()), "no two reads may share a stamp: " + read);
+            if (latest == null || read.getTimestamp() > latest.getTimestamp()) {
+                latest = read;
+            }
+        }
+        Assert.assertNotNull(latest);
+        Assert.assertEquals(latest.getCount(), 2L + (threads * linksPerThread), "the latest stamped count must be the final count");
+    }
+
+    @Test
+    public void testLinkRowCache() throws Exception {
+        RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiLinks = new RowColumnValueStoreImpl<>();
+        RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiBackLinks = new RowColumnValueStoreImpl<>();
+        final AtomicLong nanos = new AtomicLong();
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        ReferenceStore cachingReferenceStore = ReferenceStore.builder(concurrencyStore, multiLinks, multiBackLinks).pageSize(2)
+            .linkRowCache(new LinkRowCache(1024 * 1024, 1024, 1_000, ticker))
+            .build();
+
+        TenantIdAndCentricId tenantIdAndCentricId = new TenantIdAndCentricId(new TenantId("cached"), Id.NULL);
+        String aClassName = "Group";
+        String aFieldName = "members";
+        ObjectId aId = new ObjectId(aClassName, new Id(1));
+        ObjectId b1 = new ObjectId("User", new Id(2));
+        ObjectId b2 = new ObjectId("User", new Id(3));
+        ObjectId b3 = new ObjectId("User", new Id(4));
+        ObjectId b4 = new ObjectId("User", new Id(5));
+        cachingReferenceStore.link(tenantIdAndCentricId, aId, 10, Arrays.asList(new ReferenceStore.LinkTo(aFieldName,
+            Arrays.asList(new Reference(b1, aFieldName), new Reference(b2, aFieldName), new Reference(b3, aFieldName)))));
+
+        Assert.assertEquals(forwardRefs(cachingReferenceStore, tenantIdAndCentricId, aClassName, aFieldName, aId),
+            Sets.newHashSet(b1, b2, b3));
+
+        // written around the reference store so only a scan would see it
+        multiLinks.multiRowsMultiAdd(Arrays.asList(new TenantRowColumValueTimestampAdd<>(tenantIdAndCentricId,
+            new ClassAndField_IdKey(aClassName, aFieldName, aId), b4, new byte[0], new ConstantTimestamper(10))));
+        Assert.assertEquals(forwardRefs(cachingReferenceStore, tenantIdAndCentricId, aClassName, aFieldName, aId),
+            Sets.newHashSet(b1, b2, b3), "a cached row is streamed without scanning");
+
+        ObjectIdResults back = new ObjectIdResults();
+        cachingReferenceStore.streamBackRefs(tenantIdAndCentricId, b1, Collections.singleton(aClassName), aFieldName, 0, back);
+        Assert.assertEquals(back.results.size(), 1);
+
+        cachingReferenceStore.unlink(tenantIdAndCentricId, 20, aId, aFieldName, Collections.singleton(b2), 0, new ObjectIdResults());
+        Assert.assertEquals(forwardRefs(cachingReferenceStore, tenantIdAndCentricId, aClassName, aFieldName, aId),
+            Sets.newHashSet(b2), "unlink invalidates the forward row");
+        back = new ObjectIdResults();
+        cachingReferenceStore.streamBackRefs(tenantIdAndCentricId, b1, Collections.singleton(aClassName), aFieldName, 0, back);
+        Assert.assertTrue(back.results.isEmpty(), "unlink invalidates the back rows");
+
+        cachingReferenceStore.link(tenantIdAndCentricId, aId, 30, Arrays.asList(new ReferenceStore.LinkTo(aFieldName,
+            Arrays.asList(new Reference(b1, aFieldName)))));
+        Assert.assertEquals(forwardRefs(cachingReferenceStore, tenantIdAndCentricId, aClassName, aFieldName, aId),
+            Sets.newHashSet(b1, b2), "link invalidates the forward row");
+
+        // written by another process, which can't invalidate this cache
+        ObjectId b5 = new ObjectId("User", new Id(6));
+        multiLinks.multiRowsMultiAdd(Arrays.asList(new TenantRowColumValueTimestampAdd<>(tenantIdAndCentricId,
+            new ClassAndField_IdKey(aClassName, aFieldName, aId), b5, new byte[0], new ConstantTimestamper(40))));
+        Assert.assertEquals(forwardRefs(cachingReferenceStore, tenantIdAndCentricId, aClassName, aFieldName, aId),
+            Sets.newHashSet(b1, b2));
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1_001));
+        Assert.assertEquals(forwardRefs(cachingReferenceStore, tenantIdAndCentricId, aClassName, aFieldName, aId),
+            Sets.newHashSet(b1, b2, b5), "an expired row is scanned again");
+    }
+
+    @Test
+    public void testBackRefFilter() throws Exception {
+        RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiLinks = new RowColumnValueStoreImpl<>();
+        RowColumnValueStore<TenantIdAndCentricId, ClassAndField_IdKey, ObjectId, byte[], RuntimeException> multiBackLinks = new RowColumnValueStoreImpl<>();
+        BackRefFilter backRefFilter = new BackRefFilter(2, BackRefFilter.DEFAULT_FALSE_POSITIVE_PROBABILITY);
+        ReferenceStore filteredReferenceStore = ReferenceStore.builder(concurrencyStore, multiLinks, multiBackLinks).pageSize(2)
+            .backRefFilter(backRefFilter)
+            .build();
+        ReferenceStore otherReferenceStore = ReferenceStore.builder(concurrencyStore, multiLinks, multiBackLinks).pageSize(2)
+            .latestBackRefIndexSize(1)
+            .countBackRefs(true)
+            .build();
+
+        TenantIdAndCentricId tenantIdAndCentricId = new TenantIdAndCentricId(new TenantId("filtered"), Id.NULL);
+        String aFieldName = "parent";
+        ObjectId bId = new ObjectId("Post", new Id(1));
+        List<ReferenceStore.LinkTo> toB = Arrays.asList(new ReferenceStore.LinkTo(aFieldName, Arrays.asList(new Reference(bId, aFieldName))));
+
+        // linked before the filter was rebuilt, like links already in storage on startup
+        otherReferenceStore.link(tenantIdAndCentricId, new ObjectId("Comment", new Id(2)), 10, toB);
+        ObjectIdResults back = new ObjectIdResults();
+        filteredReferenceStore.streamBackRefs(tenantIdAndCentricId, bId, Sets.newHashSet("Comment", "Reply"), aFieldName, 0, back);
+        Assert.assertEquals(back.results.size(), 1);
+        Assert.assertEquals(backRefFilter.getSkipped(), 0, "nothing is skipped before the filter is rebuilt");
+
+        backRefFilter.rebuild(multiBackLinks);
+        back = new ObjectIdResults();
+        filteredReferenceStore.streamBackRefs(tenantIdAndCentricId, bId, Sets.newHashSet("Comment", "Reply"), aFieldName, 0, back);
+        Assert.assertEquals(back.results.size(), 1, "rows linked before the rebuild are still read");
+        Assert.assertEquals(backRefFilter.getSkipped(), 1, "Reply.parent was never linked");
+
+        // linked by another reference store, which the filter can't see and which a sole link writer rules out
+        otherReferenceStore.link(tenantIdAndCentricId, new ObjectId("Reply", new Id(3)), 20, toB);
+        back = new ObjectIdResults();
+        filteredReferenceStore.streamBackRefs(tenantIdAndCentricId, bId, Sets.newHashSet("Comment", "Reply"), aFieldName, 0, back);
+        Assert.assertEquals(back.results.size(), 1, "a back link row the filter never saw linked is skipped");
+        Assert.assertEquals(backRefFilter.getSkipped(), 2);
+
+        for (int i = 0; i < 10; i++) {
+            filteredReferenceStore.link(tenantIdAndCentricId, new ObjectId("Reply", new Id(100 + i)), 30, toB);
+        }
+        back = new ObjectIdResults();
+        filteredReferenceStore.streamBackRefs(tenantIdAndCentricId, bId, Sets.newHashSet("Comment", "Reply"), aFieldName, 0, back);
+        Assert.assertEquals(back.results.size(), 12);
+        Assert.assertEquals(backRefFilter.getSkipped(), 2);
+
+        RefStreamRequestContext multiBack = new RefStreamRequestContext(tenantIdAndCentricId, Sets.newHashSet("Comment", "Reply", "Answer"),
+            aFieldName, bId, 0, true);
+        filteredReferenceStore.multiStreamRefs(Arrays.asList(multiBack));
+        back = new ObjectIdResults();
+        multiBack.traverse(back);
+        Assert.assertEquals(back.results.size(), 12);
+        Assert.assertEquals(backRefFilter.getSkipped(), 3, "Answer.parent was never linked");
+
+        back = new ObjectIdResults();
+        filteredReferenceStore.streamBackRefs(new TenantIdAndCentricId(new TenantId("unlinked"), Id.NULL), bId,
+            Sets.newHashSet("Comment", "Reply"), aFieldName, 0, back);
+        Assert.assertTrue(back.results.isEmpty());
+        Assert.assertEquals(backRefFilter.getSkipped(), 5);
+        Assert.assertEquals(backRefFilter.getFalsePositiveRate(), 0d);
+    }
+
+    private Set<ObjectId> forwardRefs(ReferenceStore store, TenantIdAndCentricId tenantIdAndCentricId, String className, String fieldName,
+        ObjectId id) throws Exception {
+        ObjectIdResults forward = new ObjectIdResults();
+        store.streamForwardRefs(tenantIdAndCentricId, Collections.singleton(className), fieldName, id, 0, forward);
+        Set<ObjectId> ids = Sets.newHashSet();
+        for (ReferenceWithTimestamp reference : forward.results) {
+            ids.add(reference.getObjectId());
+        }
+        return ids;
+    }
+
     public boolean equal(List<ReferenceWithTimestamp> a, List<ReferenceWithTimestamp> b) {
         if (a.size() != b.size()) {
             return false;
@@ -0,0 +1,94 @@
+package com.jivesoftware.os.tasmo.reference.lib.concur;
+
+import com.jivesoftware.os.jive.utils.id.Id;
+import com.jivesoftware.os.jive.utils.id.ObjectId;
+import com.jivesoftware.os.jive.utils.id.TenantId;
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.jive.utils.row.column.value.store.api.RowColumnValueStore;
+import com.jivesoftware.os.jive.utils.row.column.value.store.inmemory.RowColumnValueStoreImpl;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author jonathan
+ */
+public class CachingConcurrencyStoreTest {
+
+    private final TenantIdAndCentricId tenantIdAndCentricId = new TenantIdAndCentricId(new TenantId("cache"), Id.NULL);
+    private final ObjectId a = new ObjectId("A", new Id(1));
+    private final ObjectId b = new ObjectId("B", new Id(2));
+
+    @Test
+    public void testReadsAreRememberedAndWritesGoThrough() throws Exception {
+        RowColumnValueStore<TenantIdAndCentricId, ObjectId, String, Long, RuntimeException> updated = new RowColumnValueStoreImpl<>();
+        ConcurrencyStore backing = Mockito.spy(new HBaseBackedConcurrencyStore(updated));
+        CachingConcurrencyStore store = new CachingConcurrencyStore(backing, 100);
+
+        store.beginEvent(tenantIdAndCentricId.getTenantId(), a);
+        store.updated(tenantIdAndCentricId, a, new String[]{ "name" }, 10);
+        Assert.assertEquals(store.highests(tenantIdAndCentricId, a, new String[]{ "name", "title" }), Arrays.asList(10L, null));
+        Assert.assertEquals(store.highest(tenantIdAndCentricId, a, "title", 5), 5);
+        Mockito.verify(backing, Mockito.times(1)).highests(Matchers.eq(tenantIdAndCentricId), Matchers.eq(a), Matchers.any(String[].class));
+
+        store.updated(tenantIdAndCentricId, a, new String[]{ "name" }, 11);
+        store.updated(tenantIdAndCentricId, a, new String[]{ "name" }, 9);
+        Assert.assertEquals(store.highest(tenantIdAndCentricId, a, "name", 0), 11);
+        Mockito.verify(backing, Mockito.times(1)).highests(Matchers.eq(tenantIdAndCentricId), Matchers.eq(a), Matchers.any(String[].class));
+
+        // a field remembered as absent is read again once it is written.
+        store.updated(tenantIdAndCentricId, a, new String[]{ "title" }, 12);
+        Assert.assertEquals(store.highest(tenantIdAndCentricId, a, "title", 0), 12);
+        Mockito.verify(backing, Mockito.times(2)).highests(Matchers.eq(tenantIdAndCentricId), Matchers.eq(a), Matchers.any(String[].class));
+        store.endEvent(tenantIdAndCentricId.getTenantId(), a);
+
+        Assert.assertEquals(store.highest(tenantIdAndCentricId, a, "name", 0), 11);
+        Mockito.verify(backing, Mockito.times(3)).highests(Matchers.eq(tenantIdAndCentricId), Matchers.eq(a), Matchers.any(String[].class));
+    }
+
+    @Test
+    public void testOnlyTheEventsInstanceIsRemembered() throws Exception {
+        RowColumnValueStore<TenantIdAndCentricId, ObjectId, String, Long, RuntimeException> updated = new RowColumnValueStoreImpl<>();
+        ConcurrencyStore backing = Mockito.spy(new HBaseBackedConcurrencyStore(updated));
+        CachingConcurrencyStore store = new CachingConcurrencyStore(backing, 100);
+
+        store.beginEvent(tenantIdAndCentricId.getTenantId(), a);
+        Assert.assertEquals(store.highest(tenantIdAndCentricId, b, "name", 0), 0);
+        Assert.assertEquals(store.highest(tenantIdAndCentricId, b, "name", 0), 0);
+        Mockito.verify(backing, Mockito.times(2)).highests(Matchers.eq(tenantIdAndCentricId), Matchers.eq(b), Matchers.any(String[].class));
+
+        // checkIfModified detects writes made elsewhere so it always asks the store.
+        store.updated(tenantIdAndCentricId, a, new String[]{ "name" }, 10);
+        Assert.assertEquals(store.highest(tenantIdAndCentricId, a, "name", 0), 10);
+        new HBaseBackedConcurrencyStore(updated).updated(tenantIdAndCentricId, a, new String[]{ "name" }, 20);
+        Set<FieldVersion> expected = Collections.singleton(new FieldVersion(a, "name", 10L));
+        Assert.assertNotSame(store.checkIfModified(tenantIdAndCentricId, expected), expected);
+        Mockito.verify(backing, Mockito.times(1)).checkIfModified(Matchers.eq(tenantIdAndCentricId), Matchers.anySetOf(FieldVersion.class));
+        store.endEvent(tenantIdAndCentricId.getTenantId(), a);
+    }
+
+    @Test
+    public void testExistenceIsForgottenOnRemoval() throws Exception {
+        RowColumnValueStore<TenantIdAndCentricId, ObjectId, String, Long, RuntimeException> updated = new RowColumnValueStoreImpl<>();
+        ConcurrencyStore backing = Mockito.spy(new HBaseBackedConcurrencyStore(updated));
+        CachingConcurrencyStore store = new CachingConcurrencyStore(backing, 100);
+
+        store.beginEvent(tenantIdAndCentricId.getTenantId(), a);
+        store.addObjectId(Arrays.asList(new ExistenceUpdate(tenantIdAndCentricId, 10, a)));
+        Set<ObjectId> ids = new HashSet<>(Arrays.asList(a, b));
+        Assert.assertEquals(store.getExistence(tenantIdAndCentricId, ids), Collections.singleton(a));
+        Assert.assertEquals(store.getExistence(tenantIdAndCentricId, Collections.singleton(a)), Collections.singleton(a));
+        Mockito.verify(backing, Mockito.times(1)).getExistence(Matchers.eq(tenantIdAndCentricId), Matchers.anySetOf(ObjectId.class));
+
+        store.removeObjectId(Arrays.asList(new ExistenceUpdate(tenantIdAndCentricId, 11, a)));
+        Assert.assertTrue(store.getExistence(tenantIdAndCentricId, Collections.singleton(a)).isEmpty());
+        Mockito.verify(backing, Mockito.times(2)).getExistence(Matchers.eq(tenantIdAndCentricId), Matchers.anySetOf(ObjectId.class));
+        store.endEvent(tenantIdAndCentricId.getTenantId(), a);
+    }
+}
@@ -19,7 +19,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.testng.Assert;
@@ -122,4 +126,77 @@ public class BatchingReferenceTraverserTest {
         running.set(false);
     }
 
+    @Test
+    public void lingerTest() throws Exception {
+        AtomicInteger order = new AtomicInteger(100);
+        final Reference aId = new Reference(new ObjectId(aClassName, new Id(order.incrementAndGet())), "foo");
+        Reference bId1 = new Reference(new ObjectId("Tag", new Id(order.incrementAndGet())), "foo");
+        Reference bId2 = new Reference(new ObjectId("Tag", new Id(order.incrementAndGet())), "foo");
+        referenceStore.link(tenantIdAndCentricId, aId.getObjectId(), order.incrementAndGet(),
+                Arrays.asList(new ReferenceStore.LinkTo(aFieldName, Arrays.asList(bId1, bId2))));
+
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+        ListeningExecutorService traverserExecutors = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+        final BatchingReferenceTraverser instance = new BatchingReferenceTraverser(referenceStore, traverserExecutors, 10, 1_000, 100,
+                new BatchingReferenceTraverserStats() {
+
+                    @Override
+                    public void dispatched(int batchSize, int queueDepth, long lingeredMillis) {
+                        batchSizes.add(batchSize);
+                    }
+
+                    @Override
+                    public void streamed(int batchSize, long elapsedMillis) {
+                    }
+                });
+
+        ExecutorService dispatcher = Executors.newSingleThreadExecutor();
+        dispatcher.submit(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    instance.startProcessingRequests();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        final long threadTimestamp = order.incrementAndGet();
+        final AtomicInteger got = new AtomicInteger();
+        final CountDownLatch requested = new CountDownLatch(2);
+        ExecutorService requesters = Executors.newFixedThreadPool(2);
+        for (int i = 0; i < 2; i++) {
+            requesters.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    requested.countDown();
+                    instance.traverseForwardRef(tenantIdAndCentricId, Collections.singleton(aClassName), aFieldName, aId.getObjectId(),
+                            threadTimestamp, new CallbackStream<ReferenceWithTimestamp>() {
+
+                                @Override
+                                public ReferenceWithTimestamp callback(ReferenceWithTimestamp v) throws Exception {
+                                    if (v != null) {
+                                        got.incrementAndGet();
+                                    }
+                                    return v;
+                                }
+                            });
+                    return null;
+                }
+            });
+        }
+        requested.await();
+        requesters.shutdown();
+        Assert.assertTrue(requesters.awaitTermination(10, TimeUnit.SECONDS));
+
+        Assert.assertEquals(got.get(), 4);
+        Assert.assertEquals(batchSizes, Arrays.asList(2));
+
+        instance.stopProcessingRequests();
+        dispatcher.shutdownNow();
+        traverserExecutors.shutdownNow();
+    }
 }
@@ -46,6 +46,7 @@ import com.jivesoftware.os.tasmo.lib.process.WrittenInstanceHelper;
 import com.jivesoftware.os.tasmo.lib.process.bookkeeping.BookkeepingEvent;
 import com.jivesoftware.os.tasmo.lib.process.bookkeeping.EventBookKeeper;
 import com.jivesoftware.os.tasmo.lib.process.notification.ViewChangeNotificationProcessor;
+import com.jivesoftware.os.tasmo.lib.process.traversal.SerialPathTraversalExecutor;
 import com.jivesoftware.os.tasmo.lib.process.traversal.TasmoEventTraversal;
 import com.jivesoftware.os.tasmo.lib.process.traversal.TasmoEventTraverser;
 import com.jivesoftware.os.tasmo.lib.read.EventValueStoreFieldValueReader;
@@ -397,6 +398,7 @@ public class Materialization {
             fieldValueReader,
             referenceTraverser,
             commitChange,
+            new SerialPathTraversalExecutor(),
             processingStats);
 
         eventProcessorThreads = newThreadPool(numberOfEventProcessorThreads, "process-event-");
@@ -0,0 +1,203 @@
+/*
+ * $Revision$
+ * $Date$
+ *
+ * Copyright (C) 1999-$year$ Jive Software. All rights reserved.
+ *
+ * This software is the proprietary information of Jive Software. Use is subject to license terms.
+ */
+package com.jivesoftware.os.tasmo.test;
+
+import com.jivesoftware.os.jive.utils.id.TenantIdAndCentricId;
+import com.jivesoftware.os.tasmo.lib.process.WrittenEventContext;
+import com.jivesoftware.os.tasmo.lib.process.traversal.CachedStepWalk;
+import com.jivesoftware.os.tasmo.lib.process.traversal.LeafContext;
+import com.jivesoftware.os.tasmo.lib.process.traversal.PathContext;
+import com.jivesoftware.os.tasmo.lib.process.traversal.PathTraversalContext;
+import com.jivesoftware.os.tasmo.lib.process.traversal.StepStream;
+import com.jivesoftware.os.tasmo.lib.process.traversal.StepTraverser;
+import com.jivesoftware.os.tasmo.lib.process.traversal.StepTree;
+import com.jivesoftware.os.tasmo.lib.process.traversal.StepTreeStreamer;
+import com.jivesoftware.os.tasmo.lib.write.PathId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Times walking the same StepTree with a StepTreeStreamer per traversal, which is what the default PrefixCollapsedStepStreamerFactory
+ * does, and with a CachedStepWalk. The steps do no work besides counting and streaming on, so the timings are those of the walks
+ * alone. Four kinds of step are mixed so the step call sites see as many receiver classes as they do under a real model.
+ *
+ * Run with: java com.jivesoftware.os.tasmo.test.StepWalkBenchmark [walksPerRound] [rounds] [depth] [branching]
+ *
+ * @author jonathan
+ */
+public class StepWalkBenchmark {
+
+    private static long visits;
+
+    public static void main(String[] args) throws Exception {
+        int walksPerRound = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+        int depth = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+        int branching = (args.length > 3) ? Integer.parseInt(args[3]) : 3;
+
+        StepTree stepTree = stepTree(depth, branching);
+        StepStream cached = CachedStepWalk.cache(stepTree);
+
+        long interpretedVisits = walk(new StepTreeStreamer(stepTree));
+        long cachedVisits = walk(cached);
+        if (interpretedVisits != cachedVisits) {
+            throw new IllegalStateException("The walks visited " + interpretedVisits + " and " + cachedVisits + " steps.");
+        }
+        System.out.println("depth:" + depth + " branching:" + branching + " steps per walk:" + cachedVisits);
+
+        // warm both up before anything is timed
+        for (int i = 0; i < rounds; i++) {
+            timeInterpreted(stepTree, walksPerRound);
+            time(cached, walksPerRound);
+        }
+
+        List<Long> interpreted = new ArrayList<>();
+        List<Long> cachedTimes = new ArrayList<>();
+        for (int i = 0; i < rounds; i++) {
+            // alternate which goes first so neither always runs on a warmer heap
+            if (i % 2 == 0) {
+                interpreted.add(timeInterpreted(stepTree, walksPerRound));
+                cachedTimes.add(time(cached, walksPerRound));
+            } else {
+                cachedTimes.add(time(cached, walksPerRound));
+                interpreted.add(timeInterpreted(stepTree, walksPerRound));
+            }
+        }
+
+        long interpretedMedian = median(interpreted) / walksPerRound;
+        long cachedMedian = median(cachedTimes) / walksPerRound;
+        System.out.println("StepTreeStreamer median ns per walk:" + interpretedMedian
+            + " best:" + (Collections.min(interpreted) / walksPerRound));
+        System.out.println("CachedStepWalk median ns per walk:" + cachedMedian
+            + " best:" + (Collections.min(cachedTimes) / walksPerRound));
+        System.out.println(String.format("speedup:%.2fx visits:%d", (double) interpretedMedian / Math.max(1, cachedMedian), visits));
+    }
+
+    private static long timeInterpreted(StepTree stepTree, int walks) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < walks; i++) {
+            new StepTreeStreamer(stepTree).stream(null, null, null, null, null, null, null);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long time(StepStream stepStream, int walks) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < walks; i++) {
+            stepStream.stream(null, null, null, null, null, null, null);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long walk(StepStream stepStream) throws Exception {
+        long before = visits;
+        stepStream.stream(null, null, null, null, null, null, null);
+        return visits - before;
+    }
+
+    private static long median(List<Long> times) {
+        List<Long> sorted = new ArrayList<>(times);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    /**
+     * A tree whose paths share their prefixes the way the paths of a view model's write traversals do, every node below the root
+     * having branching children down to depth.
+     */
+    private static StepTree stepTree(int depth, int branching) {
+        StepTree stepTree = new StepTree();
+        addPaths(stepTree, new ArrayList<StepTraverser>(), depth, branching);
+        return stepTree;
+    }
+
+    private static void addPaths(StepTree stepTree, List<StepTraverser> prefix, int depth, int branching) {
+        if (prefix.size() == depth) {
+            stepTree.add(prefix);
+            return;
+        }
+        int children = prefix.isEmpty() ? 1 : branching;
+        for (int i = 0; i < children; i++) {
+            List<StepTraverser> path = new ArrayList<>(prefix);
+            path.add(step(prefix.size(), i, Arrays.hashCode(prefix.toArray())));
+            addPaths(stepTree, path, depth, branching);
+        }
+    }
+
+    private static StepTraverser step(int level, int index, int parent) {
+        String name = level + "." + index + "@" + parent;
+        switch ((level + index) % 4) {
+            case 0:
+                return new RefStep(name);
+            case 1:
+                return new BackRefStep(name);
+            case 2:
+                return new ValueStep(name);
+            default:
+                return new CountStep(name);
+        }
+    }
+
+    private abstract static class CountingStep implements StepTraverser {
+
+        private final String name;
+
+        CountingStep(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void process(TenantIdAndCentricId globalCentricId,
+                TenantIdAndCentricId userCentricId,
+                WrittenEventContext writtenEventContext,
+                PathTraversalContext viewFieldContext,
+                PathContext pathContext,
+                LeafContext leafContext,
+                PathId pathId,
+                StepStream streamTo) throws Exception {
+            visits++;
+            streamTo.stream(globalCentricId, userCentricId, writtenEventContext, viewFieldContext, pathContext, leafContext, pathId);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static class RefStep extends CountingStep {
+
+        RefStep(String name) {
+            super(name);
+        }
+    }
+
+    private static class BackRefStep extends CountingStep {
+
+        BackRefStep(String name) {
+            super(name);
+        }
+    }
+
+    private static class ValueStep extends CountingStep {
+
+        ValueStep(String name) {
+            super(name);
+        }
+    }
+
+    private static class CountStep extends CountingStep {
+
+        CountStep(String name) {
+            super(name);
+        }
+    }
+}
@@ -28,24 +28,40 @@ import java.util.HashSet;
 import java.util.Set;
 
 /**
- *
+ * Counts the referring instances of a count step. A counter maintained count arrives as a single value keyed by the counted
+ * instance itself, in which case its ReservedFields.BACK_REF_COUNT is used as is and is not filtered by the permitted ids.
  */
 class CountTreeNode implements MultiTreeNode {
 
     public static final String JSON_FIELD = "count";
+    private final ObjectId countedId;
     private final Set<Id> idsSeen = new HashSet<>();
+    private ViewValue counterValue;
 
-    CountTreeNode() {
+    CountTreeNode(ObjectId countedId) {
+        this.countedId = countedId;
     }
 
     @Override
     public void add(ModelPathStep[] steps, ObjectId[] ids, ViewValue value, Long threadTimestamp) {
-        idsSeen.add(ids[0].getId());
+        if (countedId != null && countedId.equals(ids[0])) {
+            counterValue = value;
+        } else {
+            idsSeen.add(ids[0].getId());
+        }
     }
 
     @Override
     public JsonNode merge(JsonViewMerger merger, Set<Id> permittedIds) throws IOException {
         ObjectNode objectNode = merger.createObjectNode();
+        if (counterValue != null) {
+            JsonNode count = merger.toObjectNode(counterValue.getValue()).get(ReservedFields.BACK_REF_COUNT);
+            if (count != null && count.isNumber()) {
+                objectNode.put(JSON_FIELD, count.asInt());
+                return objectNode;
+            }
+            idsSeen.add(countedId.getId());
+        }
         objectNode.put(JSON_FIELD, Sets.intersection(idsSeen, permittedIds).size());
         return objectNode;
     }
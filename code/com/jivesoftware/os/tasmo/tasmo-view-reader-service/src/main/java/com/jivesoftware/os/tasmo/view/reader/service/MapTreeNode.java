@@ -87,7 +87,7 @@ public class MapTreeNode implements TreeNode {
                             break;
                         case count:
                         case centric_count:
-                            treeNode = new CountTreeNode();
+                            treeNode = new CountTreeNode(objectId);
                             break;
                     }
                     multiChildren.put(stepTypeAndFieldName, treeNode);
@@ -23,7 +23,9 @@ import com.jivesoftware.os.tasmo.view.reader.service.writer.ViewWriteFieldChange
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -100,6 +102,50 @@ public class ViewValueStore {
         return got;
     }
 
+    /**
+     * @return the stored value and timestamp of each of the given changes' columns, in the same order as changes, with null where
+     * nothing is stored. Only the changes' columns are read, with one multi column read per view the changes belong to.
+     */
+    public List<ColumnValueAndTimestamp<ImmutableByteArray, ViewValue, Long>> multiGetEntries(TenantIdAndCentricId tenantIdAndCentricId,
+        List<ViewWriteFieldChange> changes) throws IOException {
+
+        List<ColumnValueAndTimestamp<ImmutableByteArray, ViewValue, Long>> got = new ArrayList<>(changes.size());
+        Map<ObjectId, Map<ImmutableByteArray, List<Integer>>> rows = new LinkedHashMap<>();
+        for (int i = 0; i < changes.size(); i++) {
+            ViewWriteFieldChange change = changes.get(i);
+            Map<ImmutableByteArray, List<Integer>> columns = rows.get(change.getViewObjectId());
+            if (columns == null) {
+                columns = new LinkedHashMap<>();
+                rows.put(change.getViewObjectId(), columns);
+            }
+            ImmutableByteArray columnKey = columnKey(change.getModelPathIdHashcode(), change.getModelPathInstanceIds());
+            List<Integer> indexes = columns.get(columnKey);
+            if (indexes == null) {
+                indexes = new ArrayList<>();
+                columns.put(columnKey, indexes);
+            }
+            indexes.add(i);
+            got.add(null);
+        }
+
+        for (Map.Entry<ObjectId, Map<ImmutableByteArray, List<Integer>>> row : rows.entrySet()) {
+            Map<ImmutableByteArray, List<Integer>> columns = row.getValue();
+            ImmutableByteArray[] columnKeys = columns.keySet().toArray(new ImmutableByteArray[columns.size()]);
+            ColumnValueAndTimestamp<ImmutableByteArray, ViewValue, Long>[] stored = viewValueStore.multiGetEntries(tenantIdAndCentricId,
+                rowKey(row.getKey()), columnKeys, null, null);
+            if (stored != null) {
+                for (int c = 0; c < columnKeys.length; c++) {
+                    if (stored[c] != null) {
+                        for (Integer index : columns.get(columnKeys[c])) {
+                            got.set(index, stored[c]);
+                        }
+                    }
+                }
+            }
+        }
+        return got;
+    }
+
     // TODO need a batch version and this has the potential OOM
     public void clear(TenantIdAndCentricId tenantIdAndCentricId, ObjectId viewId, final long timestamp) throws IOException {
 
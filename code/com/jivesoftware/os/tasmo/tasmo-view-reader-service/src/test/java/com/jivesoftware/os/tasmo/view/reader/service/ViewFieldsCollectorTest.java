@@ -6,6 +6,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.jivesoftware.os.jive.utils.id.Id;
 import com.jivesoftware.os.jive.utils.id.ObjectId;
 import com.jivesoftware.os.jive.utils.id.TenantId;
+import com.jivesoftware.os.tasmo.event.api.ReservedFields;
 import com.jivesoftware.os.tasmo.id.ViewValue;
 import com.jivesoftware.os.tasmo.model.path.ModelPath;
 import com.jivesoftware.os.tasmo.model.path.ModelPathStep;
@@ -366,6 +367,27 @@ public class ViewFieldsCollectorTest {
         Assert.assertEquals(view.get("count_parent").asInt(), 4);
     }
 
+    @Test
+    public void testCounterMaintainedCountCollector() throws Exception {
+
+        ModelPath a = ModelPath.builder("Container.parent.count.StatusUpdate|Document|Blog.name.value")
+                .addPathMember(new ModelPathStep(true, newHashSet("StatusUpdate", "Document", "Blog"), "parent",
+                                ModelPathStepType.count, newHashSet("Container"), null))
+                .addPathMember(new ModelPathStep(false, newHashSet("StatusUpdate", "Document", "Blog"), null,
+                                value, null, Arrays.asList("instanceId")))
+                .build();
+
+        // the counted instance sits at both indexes and only the count itself is written
+        viewFieldsCollector.add(viewDescriptor, a, new Id[]{new Id(1), new Id(1)}, new String[]{"Container", "Container"},
+                new ViewValue(new long[]{1, 1}, ("{\"" + ReservedFields.BACK_REF_COUNT + "\":7}").getBytes()), 1L);
+        viewFieldsCollector.done();
+
+        ViewResponse viewResponse = viewFieldsCollector.getView(newHashSet(new Id(1)));
+        ObjectNode view = viewResponse.getViewBody();
+        Assert.assertTrue(view.get("count_parent").isInt());
+        Assert.assertEquals(view.get("count_parent").asInt(), 7);
+    }
+
     @Test
     public void testLatestBackref() throws Exception {
         ModelPath a = ModelPath.builder("Container.parent.latset_backref.StatusUpdate|Document|Blog.name.value")